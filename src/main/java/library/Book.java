@@ -1,6 +1,5 @@
 package library;
 
-import java.time.LocalDate;
 import java.util.Objects;
 
 import library.exception.InvalidIsbnException;
@@ -12,53 +11,79 @@ public class Book {
     private int publishYear;
     private String author;
     private String isbn;
+    // The ISBN packed into a long, used as the catalog key
+    private long isbnValue;
+    // The number of interchangeable copies the library owns
+    private int copies = 1;
 
     public Book(String isbn, String title, String author, int publishYear) throws InvalidIsbnException {
 
-        // Validate ISBN (must be 13 characters long)
-        if (isbn.length() != 13) {
+        // Validate ISBN (must be 13 characters long, with a matching check digit)
+        long isbnValue = BookValidator.validateIsbn(isbn);
+        if (isbnValue == BookValidator.WRONG_LENGTH) {
             throw new InvalidIsbnException("Please provide a valid ISBN number (must be 13 characters long)");
-        }
-
-        // Validate ISBN checksum
-        int checksum = calculateIsbn13Checksum(isbn);
-        if (checksum != Character.getNumericValue(isbn.charAt(12))) {
+        } else if (isbnValue == BookValidator.BAD_CHECKSUM) {
             throw new InvalidIsbnException("Invalid ISBN checksum");
         }
 
         // Validate Publish Year (must be 4 digits and not in the future)
-        if (String.valueOf(publishYear).length() != 4) {
+        int yearStatus = BookValidator.validatePublishYear(publishYear);
+        if (yearStatus == BookValidator.YEAR_NOT_FOUR_DIGITS) {
             throw new IllegalArgumentException("Publish year should be 4 digits long");
-        } else if (publishYear > LocalDate.now().getYear()) {
+        } else if (yearStatus == BookValidator.YEAR_IN_FUTURE) {
             throw new IllegalArgumentException("Publish year should not be in the future");
         }
 
+        // Validate Title and Author (must fit in a journal record)
+        if (!BookValidator.fitsRecord(title) || !BookValidator.fitsRecord(author)) {
+            throw new IllegalArgumentException("Title and author should each take at most "
+                    + BookValidator.MAX_TEXT_BYTES + " bytes");
+        }
+
         this.isbn = isbn;
+        this.isbnValue = isbnValue;
         this.title = title;
         this.author = author;
         this.publishYear = publishYear;
     }
 
-    /** 
-     * This checksum is used to verify the validity of the ISBN.
-     *
-     * @param isbn The 13-digit ISBN number as a String.
-     * @return The calculated checksum digit.
+    /**
+     * Creates a book of which the library owns several copies.
      * 
-     * Refer this to see ISBN Format : https://isbn-information.com/check-digit-for-the-13-digit-isbn.html
+     * @param isbn The ISBN.
+     * @param title The title.
+     * @param author The author.
+     * @param publishYear The publish year.
+     * @param copies The number of copies, at least one.
+     * @throws InvalidIsbnException if the ISBN is not valid.
      */
-    private static int calculateIsbn13Checksum(String isbn) throws InvalidIsbnException {
-        try {
-            int sum = 0;
-            for (int i = 0; i < isbn.length() - 1; i++) {
-                int digit = Character.getNumericValue(isbn.charAt(i));
-                sum += (i % 2 == 0) ? digit : digit * 3;
-            }
-            int remainder = sum % 10;
-            return remainder == 0 ? 0 : (10 - remainder);
-        } catch (Exception e) {
-            throw new InvalidIsbnException("Invalid ISBN checksum");
+    public Book(String isbn, String title, String author, int publishYear, int copies) throws InvalidIsbnException {
+        this(isbn, title, author, publishYear);
+        if (copies < 1) {
+            throw new IllegalArgumentException("Number of copies should be at least 1");
         }
+        this.copies = copies;
+    }
+
+    /**
+     * Creates a book whose fields were validated when they were stored, such as an
+     * entry of a catalog file.
+     * 
+     * Subclasses that read their fields lazily pass null for them and override the
+     * matching getters; equals, hashCode and toString only go through the getters.
+     * 
+     * @param isbnValue The packed ISBN.
+     * @param isbn The ISBN, or null if the getter is overridden.
+     * @param title The title, or null if the getter is overridden.
+     * @param author The author, or null if the getter is overridden.
+     * @param publishYear The publish year.
+     */
+    protected Book(long isbnValue, String isbn, String title, String author, int publishYear) {
+        this.isbnValue = isbnValue;
+        this.isbn = isbn;
+        this.title = title;
+        this.author = author;
+        this.publishYear = publishYear;
     }
 
     // Getter methods for book attributes
@@ -70,6 +95,10 @@ public class Book {
         return isbn;
     }
 
+    public long getIsbnValue() {
+        return isbnValue;
+    }
+
     public int getPublishYear() {
         return publishYear;
     }
@@ -78,6 +107,16 @@ public class Book {
         return title;
     }
 
+    /**
+     * Returns the number of copies the library owns. Copies are not part of a book's
+     * identity, so they are left out of equals and hashCode.
+     * 
+     * @return The number of copies, 1 unless given when the book was created.
+     */
+    public int getCopies() {
+        return copies;
+    }
+
     /**
      * Override equals method to compare books based on their attributes
      * 
@@ -87,12 +126,12 @@ public class Book {
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true; // Check if the same reference
-        if (obj == null || getClass() != obj.getClass()) return false; // Check for null and class type
+        if (!(obj instanceof Book)) return false; // Check for null and type, views of the same book are equal
         Book book = (Book) obj;
-        return isbn.equals(book.isbn) &&
-                title.equals(book.title) &&
-                author.equals(book.author) &&
-                publishYear == book.publishYear;
+        return getIsbnValue() == book.getIsbnValue() &&
+                getTitle().equals(book.getTitle()) &&
+                getAuthor().equals(book.getAuthor()) &&
+                getPublishYear() == book.getPublishYear();
     }
 
     /** 
@@ -102,7 +141,11 @@ public class Book {
      */ 
     @Override
     public int hashCode() {
-        return Objects.hash(isbn, title, author, publishYear);
+        // The same value as Objects.hash over the four fields, but without boxing the year or allocating the varargs array
+        int result = 31 + Objects.hashCode(getIsbn());
+        result = 31 * result + Objects.hashCode(getTitle());
+        result = 31 * result + Objects.hashCode(getAuthor());
+        return 31 * result + getPublishYear();
     }
 
     /**
@@ -112,6 +155,6 @@ public class Book {
      */
     @Override
     public String toString() {
-        return String.format("Book[ ISBN = %s, Title = %s, Author = %s, Publish Year = %s]", isbn, title, author, publishYear);
+        return String.format("Book[ ISBN = %s, Title = %s, Author = %s, Publish Year = %s]", getIsbn(), getTitle(), getAuthor(), getPublishYear());
     }
 }
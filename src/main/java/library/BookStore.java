@@ -0,0 +1,107 @@
+package library;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A place the books of a catalog are kept outside the {@link Library} itself.
+ *
+ * Books are keyed on their packed ISBN (see {@link Isbn}). A store only holds the
+ * catalog; loans and availability stay in the library, which serializes every
+ * change to one ISBN under its own lock. Implementations must still be safe to
+ * call from many threads at once for different ISBNs.
+ *
+ * Books are never removed or replaced once added.
+ */
+public interface BookStore {
+
+    /**
+     * Retrieves a book by its packed ISBN.
+     *
+     * @param isbn The packed ISBN.
+     * @return The book, or null if it is not in the store.
+     */
+    Book get(long isbn);
+
+    /**
+     * Tells whether a book is in the store, without necessarily reading it.
+     *
+     * @param isbn The packed ISBN.
+     * @return true if the store holds a book with the ISBN.
+     */
+    boolean contains(long isbn);
+
+    /**
+     * Adds a book to the store.
+     *
+     * @param book The book to add.
+     * @return false if a book with the same ISBN is already in the store.
+     * @throws UnsupportedOperationException if the store is read-only.
+     */
+    boolean add(Book book);
+
+    /**
+     * Tells whether {@link #add} is supported. New books of a library backed by a
+     * read-only store are kept in the library itself.
+     *
+     * @return true if books cannot be added.
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * Returns the number of books in the store.
+     *
+     * @return The number of books.
+     */
+    int size();
+
+    /**
+     * Finds the smallest ISBN in the store that is greater than the given one, so the
+     * store can be walked in ISBN order starting anywhere.
+     *
+     * @param afterIsbn The packed ISBN to start after, or {@link Isbn#INVALID} for the first one.
+     * @return The next packed ISBN, or {@link Isbn#INVALID} if there is none.
+     */
+    long nextIsbn(long afterIsbn);
+
+    /**
+     * Passes every book to an action, in ISBN order.
+     *
+     * @param action The action to perform on each book.
+     */
+    void forEach(Consumer<? super Book> action);
+
+    /**
+     * Returns a spliterator over the books, in ISBN order. The default walks the store
+     * with {@link #nextIsbn} and splits off batches of the books it has read; stores
+     * that can reach their books by position should split by position instead.
+     *
+     * @return A spliterator over the books.
+     */
+    default Spliterator<Book> spliterator() {
+        Iterator<Book> books = new Iterator<Book>() {
+            private long next = nextIsbn(Isbn.INVALID);
+
+            @Override
+            public boolean hasNext() {
+                return next != Isbn.INVALID;
+            }
+
+            @Override
+            public Book next() {
+                if (next == Isbn.INVALID) {
+                    throw new NoSuchElementException();
+                }
+                Book book = get(next);
+                next = nextIsbn(next);
+                return book;
+            }
+        };
+        return Spliterators.spliteratorUnknownSize(books, Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+}
@@ -0,0 +1,155 @@
+package library;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Validation rules for the fields of a {@link Book}.
+ *
+ * The checks run in a single pass over ASCII characters, report failures as return
+ * codes instead of exceptions and never allocate, so they stay cheap during bulk
+ * imports. The Book constructor turns the codes into exceptions.
+ */
+public final class BookValidator {
+
+    // Returned in place of the packed ISBN when the input is not 13 characters long
+    public static final long WRONG_LENGTH = -2L;
+    // Returned in place of the packed ISBN when a character is not a digit or the check digit does not match
+    public static final long BAD_CHECKSUM = -3L;
+
+    public static final int VALID_YEAR = 0;
+    public static final int YEAR_NOT_FOUR_DIGITS = 1;
+    public static final int YEAR_IN_FUTURE = 2;
+
+    // The most bytes a title, author or patron ID may take in the journal and snapshot records
+    public static final int MAX_TEXT_BYTES = 65535;
+
+    // The current year, and the time at which it stops being current
+    private static volatile CachedYear cachedYear = CachedYear.now();
+
+    private BookValidator() {
+    }
+
+    /**
+     * Validates an ISBN-13 and packs it into a long in the same pass.
+     *
+     * Refer this to see ISBN Format : https://isbn-information.com/check-digit-for-the-13-digit-isbn.html
+     *
+     * @param isbn The 13-digit ISBN.
+     * @return The packed ISBN, or {@link #WRONG_LENGTH} or {@link #BAD_CHECKSUM}.
+     */
+    public static long validateIsbn(CharSequence isbn) {
+        if (isbn == null || isbn.length() != Isbn.LENGTH) {
+            return WRONG_LENGTH;
+        }
+
+        long value = 0;
+        int sum = 0;
+        for (int i = 0; i < Isbn.LENGTH; i++) {
+            int digit = isbn.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return BAD_CHECKSUM;
+            }
+            value = value * 10 + digit;
+            // Digits are weighted 1 and 3 alternately, the check digit has weight 1
+            sum += ((i & 1) == 0) ? digit : digit * 3;
+        }
+
+        // With the check digit included a valid ISBN sums to a multiple of 10
+        return sum % 10 == 0 ? value : BAD_CHECKSUM;
+    }
+
+    /**
+     * Validates a publish year, which must be 4 digits long and not in the future.
+     *
+     * @param publishYear The year to check.
+     * @return {@link #VALID_YEAR}, {@link #YEAR_NOT_FOUR_DIGITS} or {@link #YEAR_IN_FUTURE}.
+     */
+    public static int validatePublishYear(int publishYear) {
+        if (publishYear < 1000 || publishYear > 9999) {
+            return YEAR_NOT_FOUR_DIGITS;
+        }
+        // The year only moves forward, so the clock is read only when the cached year says no
+        if (publishYear <= cachedYear.year || publishYear <= currentYear()) {
+            return VALID_YEAR;
+        }
+        return YEAR_IN_FUTURE;
+    }
+
+    /**
+     * Tells whether a title, author or patron ID fits in the records the library is
+     * journaled and snapshotted in, which store each in modified UTF-8 behind a
+     * 16-bit length.
+     *
+     * @param text The text to check, or null.
+     * @return true if the text is null or takes at most {@link #MAX_TEXT_BYTES} bytes.
+     */
+    public static boolean fitsRecord(CharSequence text) {
+        if (text == null || text.length() <= MAX_TEXT_BYTES / 3) {
+            // No character takes more than 3 bytes
+            return true;
+        }
+        int bytes = 0;
+        for (int i = 0; i < text.length() && bytes <= MAX_TEXT_BYTES; i++) {
+            char c = text.charAt(i);
+            bytes += c >= 0x01 && c <= 0x7F ? 1 : c <= 0x7FF ? 2 : 3;
+        }
+        return bytes <= MAX_TEXT_BYTES;
+    }
+
+    /**
+     * Validates a batch of ISBNs without throwing for the bad ones.
+     *
+     * @param isbns The ISBNs to check.
+     * @return For each index, the packed ISBN, or {@link #WRONG_LENGTH} or {@link #BAD_CHECKSUM}.
+     */
+    public static long[] validateAll(CharSequence[] isbns) {
+        long[] results = new long[isbns.length];
+        for (int i = 0; i < isbns.length; i++) {
+            results[i] = validateIsbn(isbns[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Tells whether a result of {@link #validateIsbn} is a packed ISBN rather than an error.
+     *
+     * @param result The result to check.
+     * @return true if the ISBN was valid.
+     */
+    public static boolean isValid(long result) {
+        return result >= 0;
+    }
+
+    /**
+     * Returns the current year, reading the clock only once it may have changed.
+     *
+     * @return The current year in the system time zone.
+     */
+    static int currentYear() {
+        CachedYear cached = cachedYear;
+        if (System.currentTimeMillis() >= cached.expiresAt) {
+            cached = CachedYear.now();
+            cachedYear = cached;
+        }
+        return cached.year;
+    }
+
+    private static final class CachedYear {
+
+        final int year;
+        final long expiresAt;
+
+        private CachedYear(int year, long expiresAt) {
+            this.year = year;
+            this.expiresAt = expiresAt;
+        }
+
+        static CachedYear now() {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate today = LocalDate.now(zone);
+            long nextYear = LocalDate.of(today.getYear() + 1, 1, 1).atStartOfDay(zone).toInstant().toEpochMilli();
+            return new CachedYear(today.getYear(), nextYear);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package library;
+
+/**
+ * An ISBN-13 packed into a long.
+ *
+ * Every ISBN-13 is 13 decimal digits and therefore fits in a long, which is far
+ * cheaper to store and hash than the equivalent String. The static methods work on
+ * the raw long so hot paths never have to allocate an Isbn object.
+ */
+public final class Isbn implements Comparable<Isbn> {
+
+    public static final int LENGTH = 13;
+
+    // Returned by parse when the input is not 13 ASCII digits
+    public static final long INVALID = -1L;
+
+    private final long value;
+
+    private Isbn(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Wraps an already packed ISBN.
+     *
+     * @param value The packed ISBN, between 0 and 9999999999999.
+     * @return The ISBN.
+     */
+    public static Isbn of(long value) {
+        if (value < 0 || value > 9_999_999_999_999L) {
+            throw new IllegalArgumentException("ISBN should be 13 digits long");
+        }
+        return new Isbn(value);
+    }
+
+    /**
+     * Parses an ISBN-13 string.
+     *
+     * @param isbn The 13-digit ISBN.
+     * @return The ISBN.
+     */
+    public static Isbn of(CharSequence isbn) {
+        long value = parse(isbn);
+        if (value == INVALID) {
+            throw new IllegalArgumentException("ISBN should be 13 digits long");
+        }
+        return new Isbn(value);
+    }
+
+    /**
+     * Packs an ISBN-13 string into a long without allocating.
+     *
+     * The check digit is not verified, this only checks the shape of the input.
+     *
+     * @param isbn The 13-digit ISBN.
+     * @return The packed ISBN, or {@link #INVALID} if the input is not 13 ASCII digits.
+     */
+    public static long parse(CharSequence isbn) {
+        if (isbn == null || isbn.length() != LENGTH) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            int digit = isbn.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Formats a packed ISBN back into its 13-digit form, keeping leading zeros.
+     *
+     * @param value The packed ISBN.
+     * @return The 13-digit ISBN string.
+     */
+    public static String toString(long value) {
+        char[] digits = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + (value % 10));
+            value /= 10;
+        }
+        return new String(digits);
+    }
+
+    public long longValue() {
+        return value;
+    }
+
+    @Override
+    public int compareTo(Isbn other) {
+        return Long.compare(value, other.value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return value == ((Isbn) obj).value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return toString(value);
+    }
+}
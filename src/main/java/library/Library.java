@@ -1,21 +1,327 @@
 package library;
 
+import java.lang.reflect.Array;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import library.exception.BookAlreadyExistException;
 import library.exception.BookNotAvailableException;
 import library.exception.BookNotBorrowedException;
 import library.exception.BookNotFoundException;
+import library.metrics.LibraryMetrics;
+import library.metrics.LibraryMetrics.Operation;
+import library.util.LongObjectHashMap;
+import library.util.PersistentLongMap;
 
+/**
+ * The library catalog and its loans.
+ *
+ * A Library is safe to share between threads. The catalog and the loans are split
+ * into stripes by ISBN, and every operation takes only the lock of the stripe that
+ * its ISBN hashes to, so two patrons can never borrow the same book and operations
+ * on different books do not contend with each other.
+ *
+ * Within a stripe books and loans are keyed on the ISBN packed into a long (see
+ * {@link Isbn}), so lookups neither hash Strings nor box keys. The String-based
+ * methods parse the ISBN once and delegate to the packed form.
+ *
+ * A library can be opened on top of a {@link BookStore}, such as a mapped catalog
+ * file or a file-backed store behind a cache. Books in the store are read through it
+ * on every lookup and never copied into the stripes. New books go to the store
+ * unless it is read-only, in which case they live in the stripes as usual.
+ *
+ * A library may own several copies of a title (see {@link Book#getCopies()}). The
+ * copies are only counted, never told apart: each title with copies out keeps a
+ * counter of the copies on its shelf next to its loans, and the title counts as
+ * available as long as that counter is above zero. A patron holds at most one copy
+ * of a title.
+ *
+ * Each patron may hold at most three books at a time. The limit is tracked per
+ * patron, so it does not become a point of contention between patrons.
+ *
+ * Every loan is due back {@link #LOAN_PERIOD} after it was borrowed, by the
+ * library's clock. Each stripe keeps its loans in a timing wheel ({@link LoanTimer})
+ * as well, so {@link #getOverdueLoans} costs the number of overdue loans rather
+ * than the number of loans.
+ *
+ * A patron who finds a book on loan can place a hold on it with {@link #placeHold}.
+ * Holds queue up per ISBN in the book's stripe, and a returned book goes straight
+ * to the first patron in the queue rather than back on the shelf, so a popular
+ * title's holds and returns only ever take its own stripe lock.
+ *
+ * Readers never lock. The catalog and loans of each stripe are kept in persistent
+ * maps ({@link PersistentLongMap}), and a writer that changes them publishes a new
+ * {@link LibrarySnapshot} before releasing its stripe lock. Lookups, listings and
+ * counts read the latest snapshot, and {@link #snapshot()} hands one out so that a
+ * caller can run several queries against the same point in time.
+ *
+ * Adds, borrows, returns and lookups are always counted and timed in the library's
+ * {@link LibraryMetrics}, along with the exceptions they fail with.
+ *
+ * Borrowing and returning report ordinary failures, such as a book already on
+ * loan, as exceptions. Callers for whom such failures are common can use
+ * {@link #tryBorrowBook} and {@link #tryReturnBook}, which return a
+ * {@link LoanStatus} instead and never build an exception. Setting the system
+ * property library.skipStackTraces makes the exceptions skip their stack trace.
+ */
 public class Library {
 
-    // Map to store all books with ISBN as the key
-    private Map<String, Book> books = new HashMap<>();
-    private Map<String, Book> borrowedBooks = new HashMap<>();
-    static int borrowBookNumber = 0;
+    /**
+     * How many books a patron may hold at once.
+     */
+    public static final int MAX_BORROWED_BOOKS = 3;
+
+    /**
+     * How long a patron may keep a book.
+     */
+    public static final Duration LOAN_PERIOD = Duration.ofDays(14);
+
+    // Patron that the single-argument borrow and return methods act on behalf of
+    public static final String DEFAULT_PATRON_ID = "default";
+
+    /**
+     * Whether the exceptions thrown for ordinary failures, such as a book already on
+     * loan, capture a stack trace. Off when the system property
+     * library.skipStackTraces is set; see {@link #tryBorrowBook} and {@link #tryReturnBook}.
+     */
+    public static final boolean STACK_TRACES = !Boolean.getBoolean("library.skipStackTraces");
+
+    // Maps to store all books and loans with the packed ISBN as the key, one per stripe, replaced on every change
+    private final PersistentLongMap<Book>[] books;
+    private final PersistentLongMap<TitleLoans>[] titleLoans;
+    // The books of each stripe with a copy on the shelf, for paging through the available books
+    private final PersistentLongMap<Book>[] shelved;
+    // Change in the number of available books that each stripe has yet to publish
+    private final int[] availableChange;
+    // The same loans ordered by due date
+    private final LoanTimer[] loanTimers;
+    // Patrons waiting for a borrowed book, in the order they asked, one map per stripe
+    private final LongObjectHashMap<ArrayDeque<Hold>>[] holds;
+    // Books kept outside the stripes, or null if every book lives in the stripes
+    private final BookStore store;
+    // The state of every stripe as last published, read without locks
+    private final AtomicReference<LibrarySnapshot> snapshot;
+    // Books held by each patron, keyed by patron ID
+    private final Map<String, PatronLoans> patrons = new ConcurrentHashMap<>();
+    private final LockStripes stripes;
+    // Copied on write, so notifying costs no more than iterating an array
+    private volatile LibraryListener[] listeners = new LibraryListener[0];
+    // Changes each stripe has made but not yet told the listeners about, see announce
+    private final List<Change>[] unannounced;
+    private final LibraryMetrics metrics = new LibraryMetrics();
+    private final Clock clock;
+
+    /**
+     * Creates a library sized for the number of available processors.
+     */
+    public Library() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Creates a library with the given number of lock stripes.
+     *
+     * @param concurrencyLevel The expected number of concurrently updating threads.
+     */
+    public Library(int concurrencyLevel) {
+        this(concurrencyLevel, null);
+    }
+
+    /**
+     * Creates a library whose catalog is kept in a book store.
+     *
+     * @param store The store to serve books from.
+     */
+    public Library(BookStore store) {
+        this(Runtime.getRuntime().availableProcessors() * 4, store);
+    }
+
+    /**
+     * Creates a library with the given number of lock stripes on top of a book store.
+     *
+     * @param concurrencyLevel The expected number of concurrently updating threads.
+     * @param store The store to serve books from, or null to keep every book in the library.
+     */
+    public Library(int concurrencyLevel, BookStore store) {
+        this(concurrencyLevel, store, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a library with the given number of lock stripes on top of a book store,
+     * dating its loans by the given clock.
+     *
+     * @param concurrencyLevel The expected number of concurrently updating threads.
+     * @param store The store to serve books from, or null to keep every book in the library.
+     * @param clock The clock that loans are dated and found overdue by.
+     */
+    public Library(int concurrencyLevel, BookStore store, Clock clock) {
+        this.store = store;
+        this.clock = clock;
+        this.stripes = new LockStripes(concurrencyLevel);
+        this.books = newArray(PersistentLongMap.class, stripes.size());
+        this.titleLoans = newArray(PersistentLongMap.class, stripes.size());
+        this.shelved = newArray(PersistentLongMap.class, stripes.size());
+        this.availableChange = new int[stripes.size()];
+        this.loanTimers = new LoanTimer[stripes.size()];
+        this.holds = newArray(LongObjectHashMap.class, stripes.size());
+        this.unannounced = newArray(List.class, stripes.size());
+        long now = clock.millis();
+        for (int i = 0; i < stripes.size(); i++) {
+            books[i] = PersistentLongMap.empty();
+            titleLoans[i] = PersistentLongMap.empty();
+            shelved[i] = PersistentLongMap.empty();
+            loanTimers[i] = new LoanTimer(now);
+            holds[i] = new LongObjectHashMap<>();
+            unannounced[i] = new ArrayList<>();
+        }
+        this.snapshot = new AtomicReference<>(new LibrarySnapshot(0, books.clone(), titleLoans.clone(), shelved.clone(),
+                store == null ? 0 : store.size(), stripes, store));
+    }
+
+    /**
+     * Creates a library and rebuilds its state from a history of its own records, such
+     * as a journal. Loans in the history are restored through the {@link Recovery}
+     * handed to the procedure, without checking the borrowing limit again, and only
+     * until the procedure returns.
+     *
+     * @param <E> The exception the history may fail to be read with.
+     * @param procedure Replays the history.
+     * @return The recovered library.
+     * @throws E if the procedure fails.
+     */
+    public static <E extends Exception> Library recover(Recovery.Procedure<E> procedure) throws E {
+        Library library = new Library();
+        Recovery recovery = new Recovery(library);
+        try {
+            procedure.replay(recovery);
+        } finally {
+            recovery.finish();
+        }
+        return library;
+    }
+
+    /**
+     * Creates an array of a generic type, such as one map per stripe, which Java cannot
+     * create directly.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newArray(Class<?> componentType, int length) {
+        return (T[]) Array.newInstance(componentType, length);
+    }
+
+    /**
+     * Returns the catalog and loans as of the last completed change, without locking.
+     * 
+     * @return A snapshot that later changes leave untouched.
+     */
+    public LibrarySnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Publishes the state of a stripe in a new snapshot, then tells the listeners what
+     * changed. Callers must hold the stripe lock.
+     */
+    private void publish(int stripe) {
+        int change = availableChange[stripe];
+        availableChange[stripe] = 0;
+        LibrarySnapshot current;
+        do {
+            current = snapshot.get();
+        } while (!snapshot.compareAndSet(current, current.next(stripe, books[stripe], titleLoans[stripe], shelved[stripe], change)));
+        announce(stripe);
+    }
+
+    /**
+     * Publishes the state of several stripes in one new snapshot, so no reader sees
+     * part of a batch. Callers must hold the lock of each stripe.
+     */
+    private void publish(boolean[] changed) {
+        int change = 0;
+        for (int stripe = 0; stripe < changed.length; stripe++) {
+            if (changed[stripe]) {
+                change += availableChange[stripe];
+                availableChange[stripe] = 0;
+            }
+        }
+        LibrarySnapshot current;
+        do {
+            current = snapshot.get();
+        } while (!snapshot.compareAndSet(current, current.next(changed, books, titleLoans, shelved, change)));
+
+        RuntimeException failure = null;
+        for (int stripe = 0; stripe < changed.length; stripe++) {
+            if (changed[stripe]) {
+                try {
+                    announce(stripe);
+                } catch (RuntimeException e) {
+                    failure = addFailure(failure, e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Tells the listeners about the changes a stripe has published, in the order they
+     * were made. Listeners are only told once a change is complete and published, so a
+     * listener that throws cannot leave the stripe half-updated: every listener is
+     * still told about every change, and the first exception is rethrown afterwards.
+     * Callers must hold the stripe lock, which keeps each stripe's changes in order.
+     */
+    private void announce(int stripe) {
+        List<Change> changes = unannounced[stripe];
+        if (changes.isEmpty()) {
+            return;
+        }
+        RuntimeException failure = null;
+        try {
+            for (Change change : changes) {
+                for (LibraryListener listener : listeners) {
+                    try {
+                        change.tell(listener);
+                    } catch (RuntimeException e) {
+                        failure = addFailure(failure, e);
+                    }
+                }
+                if (change.returned != null) {
+                    // Free the patron's slot only after the return is told, so a borrow the
+                    // slot makes room for on another stripe is always told after it
+                    patrons.get(change.returned.getPatronId()).remove(change.returned.getBook().getIsbn());
+                }
+            }
+        } finally {
+            changes.clear();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static RuntimeException addFailure(RuntimeException failure, RuntimeException e) {
+        if (failure == null) {
+            return e;
+        }
+        failure.addSuppressed(e);
+        return failure;
+    }
 
     /**
      * Adds a new book to the library.
@@ -24,75 +330,970 @@ public class Library {
      * @throws BookAlreadyExistException if a book with the given ISBN already exists.
      */
     public void addBook(Book newBook) throws BookAlreadyExistException {
+        long start = System.nanoTime();
+        try {
+            doAddBook(newBook);
+        } catch (BookAlreadyExistException | RuntimeException e) {
+            metrics.recordError(e);
+            throw e;
+        } finally {
+            metrics.recordLatency(Operation.ADD, start);
+        }
+    }
 
-        // Check if book already exists based on ISBN
-        if (books.containsKey(newBook.getIsbn())) {
-            throw new BookAlreadyExistException("Book with the given ISBN already exists in the library");
+    private void doAddBook(Book newBook) throws BookAlreadyExistException {
+        long key = newBook.getIsbnValue();
+        int stripe = stripes.indexFor(key);
+        ReentrantLock lock = stripes.lockAt(stripe);
+        lock.lock();
+        try {
+            // Check if book already exists based on ISBN, atomically with the insert
+            PersistentLongMap.Editor<Book> editor = books[stripe].edit();
+            PersistentLongMap.Editor<Book> shelf = shelved[stripe].edit();
+            if (!insert(stripe, newBook, editor, shelf)) {
+                throw new BookAlreadyExistException("Book with the given ISBN already exists in the library");
+            }
+            books[stripe] = editor.toMap();
+            shelved[stripe] = shelf.toMap();
+            publish(stripe);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds many books at once, taking each stripe lock only once for the whole batch.
+     * 
+     * Books whose ISBN is already in the library, or earlier in the same batch, are
+     * skipped rather than aborting the batch.
+     * 
+     * @param newBooks The books to be added.
+     * @return The books that were not added because their ISBN already exists.
+     */
+    public List<Book> addBooks(Collection<Book> newBooks) {
+
+        // Group the books by stripe so each lock is taken once
+        List<Book>[] byStripe = newArray(List.class, stripes.size());
+        for (Book book : newBooks) {
+            int stripe = stripes.indexFor(book.getIsbnValue());
+            if (byStripe[stripe] == null) {
+                byStripe[stripe] = new ArrayList<>();
+            }
+            byStripe[stripe].add(book);
+        }
+
+        List<Book> duplicates = new ArrayList<>();
+        for (int stripe = 0; stripe < byStripe.length; stripe++) {
+            List<Book> batch = byStripe[stripe];
+            if (batch == null) {
+                continue;
+            }
+
+            ReentrantLock lock = stripes.lockAt(stripe);
+            lock.lock();
+            try {
+                // One editor for the batch, so each node is copied once however many books land under it
+                PersistentLongMap.Editor<Book> editor = books[stripe].edit();
+                PersistentLongMap.Editor<Book> shelf = shelved[stripe].edit();
+                try {
+                    for (Book book : batch) {
+                        if (!insert(stripe, book, editor, shelf)) {
+                            duplicates.add(book);
+                        }
+                    }
+                } finally {
+                    // Keep the books added before a store failure, they are counted and may be in the store already
+                    books[stripe] = editor.toMap();
+                    shelved[stripe] = shelf.toMap();
+                    publish(stripe);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Adds a book to the store or to the stripe's editors unless its ISBN is taken. Callers must hold the stripe lock.
+     */
+    private boolean insert(int stripe, Book book, PersistentLongMap.Editor<Book> editor,
+                           PersistentLongMap.Editor<Book> shelf) {
+        long key = book.getIsbnValue();
+        if (editor.get(key) != null || (store != null && store.contains(key))) {
+            return false;
+        }
+
+        if (writesToStore()) {
+            // Stored books are listed straight from the store, so they are not indexed here
+            if (!store.add(book)) {
+                return false;
+            }
+        } else {
+            editor.put(key, book);
+            shelf.put(key, book);
+        }
+        availableChange[stripe]++;
+        metrics.recordSuccess(Operation.ADD);
+        if (listeners.length > 0) {
+            unannounced[stripe].add(new Change(book, null, null, null));
+        }
+        return true;
+    }
+
+    private boolean writesToStore() {
+        return store != null && !store.isReadOnly();
+    }
+
+    /**
+     * Removes a book from the catalog, provided every copy of it is on the shelf.
+     * 
+     * Only books kept in the library itself can be removed; those of a
+     * {@link BookStore} stay in the store.
+     * 
+     * @param isbn The ISBN of the book to be removed.
+     * @return {@link LoanStatus#OK}, {@link LoanStatus#NOT_FOUND} if the library does not
+     *         have the book, or {@link LoanStatus#NOT_AVAILABLE} if a copy is on loan.
+     * @throws UnsupportedOperationException if the book is kept in the library's book store.
+     */
+    public LoanStatus tryRemoveBook(String isbn) {
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return LoanStatus.NOT_FOUND;
         }
 
-        books.put(newBook.getIsbn(), newBook);
+        int stripe = stripes.indexFor(key);
+        ReentrantLock lock = stripes.lockAt(stripe);
+        lock.lock();
+        try {
+            Book book = books[stripe].get(key);
+            if (book == null) {
+                if (inStore(key)) {
+                    throw new UnsupportedOperationException("Books of a book store cannot be removed");
+                }
+                return LoanStatus.NOT_FOUND;
+            }
+            if (titleLoans[stripe].containsKey(key)) {
+                return LoanStatus.NOT_AVAILABLE;
+            }
+
+            // With every copy on the shelf, only holds already given up can be queued
+            holds[stripe].remove(key);
+            books[stripe] = books[stripe].remove(key);
+            shelved[stripe] = shelved[stripe].remove(key);
+            availableChange[stripe]--;
+            if (listeners.length > 0) {
+                unannounced[stripe].add(new Change(null, null, null, book));
+            }
+            publish(stripe);
+            return LoanStatus.OK;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Borrows a book from the library.
+     * Borrows a book from the library on behalf of the default patron.
      * 
      * @param isbn The ISBN of the book to be borrowed.
      * @throws BookNotAvailableException if the book is already borrowed
      * @throws BookNotFoundException if book does not exist in the library.
      */
     public void borrowBook(String isbn) throws BookNotFoundException, BookNotAvailableException {
+        borrowBook(DEFAULT_PATRON_ID, isbn);
+    }
+
+    /**
+     * Borrows a book from the library on behalf of a patron.
+     * 
+     * @param patronId The ID of the patron borrowing the book.
+     * @param isbn The ISBN of the book to be borrowed.
+     * @throws BookNotAvailableException if the book is already borrowed
+     * @throws BookNotFoundException if book does not exist in the library.
+     * @throws IllegalArgumentException if the patron already holds the maximum number of books.
+     */
+    public void borrowBook(String patronId, String isbn) throws BookNotFoundException, BookNotAvailableException {
+        switch (tryBorrowBook(patronId, isbn)) {
+            case OK:
+                return;
+            case NOT_AVAILABLE:
+                throw new BookNotAvailableException("Book is already borrowed", STACK_TRACES);
+            case LIMIT_REACHED:
+                throw new IllegalArgumentException("User can not borrow more than 3 books");
+            default:
+                throw new BookNotFoundException("Book with the given ISBN does not exist", STACK_TRACES);
+        }
+    }
+
+    /**
+     * Borrows a book from the library on behalf of a patron, reporting an ordinary
+     * failure as a status instead of throwing.
+     * 
+     * @param patronId The ID of the patron borrowing the book.
+     * @param isbn The ISBN of the book to be borrowed.
+     * @return {@link LoanStatus#OK}, or why the book could not be borrowed.
+     */
+    public LoanStatus tryBorrowBook(String patronId, String isbn) {
+        long start = System.nanoTime();
+        try {
+            LoanStatus status = doBorrowBook(patronId, isbn);
+            if (status == LoanStatus.OK) {
+                metrics.recordSuccess(Operation.BORROW);
+            } else {
+                metrics.recordFailure(status);
+            }
+            return status;
+        } catch (RuntimeException e) {
+            metrics.recordError(e);
+            throw e;
+        } finally {
+            metrics.recordLatency(Operation.BORROW, start);
+        }
+    }
 
-        if(borrowBookNumber > 3){
-            throw new IllegalArgumentException("User can not borrow more than 3 books");
+    private LoanStatus doBorrowBook(String patronId, String isbn) {
+        checkPatronId(patronId);
+        PatronLoans patronLoans = patrons.computeIfAbsent(patronId, id -> new PatronLoans());
+        if (patronLoans.size() >= MAX_BORROWED_BOOKS) {
+            return LoanStatus.LIMIT_REACHED;
         }
 
-        // Check if the book is already borrowed
-        if (borrowedBooks.containsKey(isbn)) {
-            throw new BookNotAvailableException("Book is already borrowed");
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return LoanStatus.NOT_FOUND;
         }
 
-        // Check if the book exists in the library
-        if (!books.containsKey(isbn)) {
-            throw new BookNotFoundException("Book with the given ISBN does not exist");
+        int stripe = stripes.indexFor(key);
+        ReentrantLock lock = stripes.lockAt(stripe);
+        lock.lock();
+        try {
+            // Check if a copy is left on the shelf, and that the patron does not already have one
+            if (!canLend(titleLoans[stripe].get(key), patronId)) {
+                return LoanStatus.NOT_AVAILABLE;
+            }
+
+            // Check if the book exists in the library
+            Book borrowedBook = findBook(stripe, key);
+            if (borrowedBook == null) {
+                return LoanStatus.NOT_FOUND;
+            }
 
+            // Take a slot atomically, the patron may be borrowing on another stripe meanwhile
+            if (!patronLoans.tryReserve(MAX_BORROWED_BOOKS)) {
+                return LoanStatus.LIMIT_REACHED;
+            }
+
+            borrowFromShelf(stripe, key, newLoan(borrowedBook, patronId), patronLoans);
+            publish(stripe);
+            return LoanStatus.OK;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // Move the book from available to borrowed
-        Book borrowedBook = books.get(isbn);
-        borrowBookNumber++;
+    /**
+     * Rejects a patron ID that would not fit in a journal or snapshot record, before
+     * anything is changed on its behalf.
+     */
+    private static void checkPatronId(String patronId) {
+        if (!BookValidator.fitsRecord(patronId)) {
+            throw new IllegalArgumentException("Patron ID should take at most " + BookValidator.MAX_TEXT_BYTES + " bytes");
+        }
+    }
+
+    /**
+     * Records a loan taken from history that did not keep its dates, dating it now as
+     * if it had just been made.
+     *
+     * @param patronId The ID of the patron who borrowed the book.
+     * @param key The packed ISBN of the book.
+     * @return {@link LoanStatus#OK}, or why the loan cannot exist in this library.
+     */
+    LoanStatus restoreLoan(String patronId, long key) {
+        long now = clock.millis();
+        return restoreLoan(patronId, key, now, now + LOAN_PERIOD.toMillis());
+    }
 
-        borrowedBooks.put(isbn, borrowedBook);
+    /**
+     * Records a loan taken from history that was validated when it was first made, such
+     * as a journal being replayed. The borrowing limit is not checked again: the order
+     * in which a history interleaves one patron's loans on different stripes need not
+     * be one in which the limit held at every step.
+     * 
+     * @param patronId The ID of the patron who borrowed the book.
+     * @param key The packed ISBN of the book.
+     * @param borrowedAt When the book was borrowed, in milliseconds since the epoch.
+     * @param dueAt When the book is due back, in milliseconds since the epoch; a loan
+     *              already past it is overdue as soon as it is restored.
+     * @return {@link LoanStatus#OK}, or why the loan cannot exist in this library.
+     */
+    LoanStatus restoreLoan(String patronId, long key, long borrowedAt, long dueAt) {
+        PatronLoans patronLoans = patrons.computeIfAbsent(patronId, id -> new PatronLoans());
+        int stripe = stripes.indexFor(key);
+        ReentrantLock lock = stripes.lockAt(stripe);
+        lock.lock();
+        try {
+            if (!canLend(titleLoans[stripe].get(key), patronId)) {
+                return LoanStatus.NOT_AVAILABLE;
+            }
+            Book book = findBook(stripe, key);
+            if (book == null) {
+                return LoanStatus.NOT_FOUND;
+            }
+            patronLoans.tryReserve(Integer.MAX_VALUE);
+            borrowFromShelf(stripe, key, new Loan(book, patronId, borrowedAt, dueAt), patronLoans);
+            publish(stripe);
+            return LoanStatus.OK;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Returns a borrowed book to the library.
+     * Returns a borrowed book to the library, whoever borrowed it.
      * 
      * @param isbn The ISBN of the book to be returned.
      * @throws BookNotFoundException if the book does not exist in the library.
      * @throws BookNotBorrowedException if the book is not borrowed
      */
     public void returnBook(String isbn) throws BookNotFoundException, BookNotBorrowedException {
+        returnBook(null, isbn);
+    }
 
-        // Check if the book is exist in the library
-        if (!books.containsKey(isbn)) {
-            throw new BookNotFoundException("Book with the given ISBN does not exist");
+    /**
+     * Returns a book borrowed by a patron to the library.
+     * 
+     * @param patronId The ID of the patron returning the book, or null to accept any borrower.
+     * @param isbn The ISBN of the book to be returned.
+     * @throws BookNotFoundException if the book does not exist in the library.
+     * @throws BookNotBorrowedException if the book is not borrowed by the patron
+     */
+    public void returnBook(String patronId, String isbn) throws BookNotFoundException, BookNotBorrowedException {
+        switch (tryReturnBook(patronId, isbn)) {
+            case OK:
+                return;
+            case NOT_BORROWED:
+                throw new BookNotBorrowedException("Book is not borrowed", STACK_TRACES);
+            default:
+                throw new BookNotFoundException("Book with the given ISBN does not exist", STACK_TRACES);
         }
+    }
 
-        // Check if book is not borrowed
-        if (!borrowedBooks.containsKey(isbn)) {
-            throw new BookNotBorrowedException("Book is not borrowed");
+    /**
+     * Returns a book borrowed by a patron to the library, reporting an ordinary
+     * failure as a status instead of throwing.
+     * 
+     * @param patronId The ID of the patron returning the book, or null to accept any borrower.
+     * @param isbn The ISBN of the book to be returned.
+     * @return {@link LoanStatus#OK}, or why the book could not be returned.
+     */
+    public LoanStatus tryReturnBook(String patronId, String isbn) {
+        long start = System.nanoTime();
+        try {
+            LoanStatus status = doReturnBook(patronId, isbn);
+            if (status == LoanStatus.OK) {
+                metrics.recordSuccess(Operation.RETURN);
+            } else {
+                metrics.recordFailure(status);
+            }
+            return status;
+        } catch (RuntimeException e) {
+            metrics.recordError(e);
+            throw e;
+        } finally {
+            metrics.recordLatency(Operation.RETURN, start);
         }
+    }
+
+    private LoanStatus doReturnBook(String patronId, String isbn) {
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return LoanStatus.NOT_FOUND;
+        }
+
+        int stripe = stripes.indexFor(key);
+        ReentrantLock lock = stripes.lockAt(stripe);
+        List<Hold> settled = Collections.emptyList();
+        lock.lock();
+        try {
+            // Check if the book is exist in the library
+            if (!books[stripe].containsKey(key) && !inStore(key)) {
+                return LoanStatus.NOT_FOUND;
+            }
+
+            // Check if book is not borrowed, or borrowed by someone else
+            TitleLoans title = titleLoans[stripe].get(key);
+            Loan loan = loanToReturn(title, patronId);
+            if (loan == null) {
+                return LoanStatus.NOT_BORROWED;
+            }
 
-        borrowedBooks.remove(isbn);
+            endLoan(stripe, key, loan);
+            settled = shelve(stripe, key, loan.getBook());
+            publish(stripe);
+        } finally {
+            lock.unlock();
+            complete(settled);
+        }
+        return LoanStatus.OK;
+    }
+
+    /**
+     * Places a hold on a book on behalf of a patron.
+     * 
+     * If a copy is on the shelf it is borrowed at once. Otherwise the patron joins
+     * the back of the book's hold queue, and when a copy is returned it is lent
+     * straight to the first patron in the queue who has a free borrowing slot. A
+     * patron whose turn comes while they hold the maximum number of books, or a copy
+     * of this one, loses their place. A patron already in the queue keeps their place
+     * and is handed the future of their first hold. Cancelling the future gives up
+     * the hold.
+     * 
+     * The future is completed outside the library's locks, so its dependent actions
+     * may call back into the library.
+     * 
+     * @param patronId The ID of the patron placing the hold.
+     * @param isbn The ISBN of the book.
+     * @return A future completed with the patron's loan once they have the book, or
+     *         exceptionally with the exception {@link #borrowBook(String, String)} would
+     *         throw if the book does not exist or the patron can never be lent it.
+     */
+    public CompletableFuture<Loan> placeHold(String patronId, String isbn) {
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return failedFuture(LoanStatus.NOT_FOUND);
+        }
+        checkPatronId(patronId);
+        PatronLoans patronLoans = patrons.computeIfAbsent(patronId, id -> new PatronLoans());
+
+        int stripe = stripes.indexFor(key);
+        ReentrantLock lock = stripes.lockAt(stripe);
+        lock.lock();
+        try {
+            Book book = findBook(stripe, key);
+            if (book == null) {
+                return failedFuture(LoanStatus.NOT_FOUND);
+            }
+
+            TitleLoans title = titleLoans[stripe].get(key);
+            if (title != null && title.loanOf(patronId) != null) {
+                // The patron already has a copy
+                return failedFuture(LoanStatus.NOT_AVAILABLE);
+            }
+            if (title == null || title.onShelf() > 0) {
+                if (!patronLoans.tryReserve(MAX_BORROWED_BOOKS)) {
+                    return failedFuture(LoanStatus.LIMIT_REACHED);
+                }
+                metrics.recordSuccess(Operation.BORROW);
+                Loan loan = borrowFromShelf(stripe, key, newLoan(book, patronId), patronLoans);
+                publish(stripe);
+                return CompletableFuture.completedFuture(loan);
+            }
+
+            ArrayDeque<Hold> queue = holds[stripe].get(key);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                holds[stripe].put(key, queue);
+            }
+            for (Hold queued : queue) {
+                if (queued.patronId.equals(patronId) && !queued.future.isDone()) {
+                    return queued.future;
+                }
+            }
+            Hold hold = new Hold(patronId);
+            queue.add(hold);
+            return hold.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of patrons waiting for a book, counting holds given up since
+     * the book was last returned.
+     * 
+     * @param isbn The ISBN of the book.
+     * @return The length of the book's hold queue.
+     */
+    public int getHoldCount(String isbn) {
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return 0;
+        }
+
+        int stripe = stripes.indexFor(key);
+        ReentrantLock lock = stripes.lockAt(stripe);
+        lock.lock();
+        try {
+            ArrayDeque<Hold> queue = holds[stripe].get(key);
+            return queue == null ? 0 : queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lends one of the copies on the shelf, taking the title off the list of available
+     * books along with its last copy. Callers must hold the stripe lock and have
+     * reserved the patron's slot.
+     */
+    private Loan borrowFromShelf(int stripe, long key, Loan loan, PatronLoans patronLoans) {
+        lend(stripe, key, loan, patronLoans);
+        if (titleLoans[stripe].get(key).onShelf() == 0) {
+            availableChange[stripe]--;
+            shelved[stripe] = shelved[stripe].remove(key);
+        }
+        return loan;
+    }
+
+    /**
+     * Records a new loan of a copy, schedules it on the stripe's timer and queues it for
+     * the listeners. Callers must hold the stripe lock and have reserved the patron's slot.
+     */
+    private Loan lend(int stripe, long key, Loan loan, PatronLoans patronLoans) {
+        Book book = loan.getBook();
+        TitleLoans title = titleLoans[stripe].get(key);
+        if (title == null) {
+            title = new TitleLoans(book.getCopies());
+        }
+        loanTimers[stripe].schedule(loan);
+        titleLoans[stripe] = titleLoans[stripe].put(key, title.with(loan));
+        patronLoans.add(book);
+        if (listeners.length > 0) {
+            unannounced[stripe].add(new Change(null, loan, null, null));
+        }
+        return loan;
+    }
+
+    /**
+     * Ends a loan and queues it for the listeners, leaving the copy to {@link #shelve}.
+     * Callers must hold the stripe lock.
+     */
+    private void endLoan(int stripe, long key, Loan loan) {
+        TitleLoans title = titleLoans[stripe].get(key).without(loan);
+        // Titles with every copy on the shelf have no entry
+        titleLoans[stripe] = title.size() == 0 ? titleLoans[stripe].remove(key) : titleLoans[stripe].put(key, title);
+        loanTimers[stripe].cancel(loan);
+        if (listeners.length > 0) {
+            // The patron's slot is freed once the return has been told, see announce
+            unannounced[stripe].add(new Change(null, null, loan, null));
+        } else {
+            patrons.get(loan.getPatronId()).remove(loan.getBook().getIsbn());
+        }
+    }
+
+    /**
+     * A change queued for the listeners: exactly one of a book added, a loan made, a
+     * loan ended or a book removed.
+     */
+    private static final class Change {
+
+        final Book added;
+        final Loan borrowed;
+        final Loan returned;
+        final Book removed;
+
+        Change(Book added, Loan borrowed, Loan returned, Book removed) {
+            this.added = added;
+            this.borrowed = borrowed;
+            this.returned = returned;
+            this.removed = removed;
+        }
+
+        void tell(LibraryListener listener) {
+            if (added != null) {
+                listener.bookAdded(added);
+            } else if (borrowed != null) {
+                listener.bookBorrowed(borrowed);
+            } else if (returned != null) {
+                listener.bookReturned(returned);
+            } else {
+                listener.bookRemoved(removed);
+            }
+        }
+    }
+
+    /**
+     * Lends a returned copy to the first patron in the hold queue who can take it, or
+     * puts it back on the shelf if there is none. Callers must hold the stripe lock, and
+     * complete the holds this settles once they have released it.
+     */
+    private List<Hold> shelve(int stripe, long key, Book book) {
+        List<Hold> settled = Collections.emptyList();
+        ArrayDeque<Hold> queue = holds[stripe].get(key);
+        if (queue != null) {
+            settled = new ArrayList<>();
+            for (Hold hold; (hold = queue.poll()) != null; ) {
+                // Skip the holds given up by cancelling their future
+                if (hold.future.isDone()) {
+                    continue;
+                }
+                settled.add(hold);
+                TitleLoans title = titleLoans[stripe].get(key);
+                if (title != null && title.loanOf(hold.patronId) != null) {
+                    // Borrowed a copy some other way while waiting
+                    hold.failure = LoanStatus.NOT_AVAILABLE;
+                    continue;
+                }
+                PatronLoans patronLoans = patrons.computeIfAbsent(hold.patronId, id -> new PatronLoans());
+                if (patronLoans.tryReserve(MAX_BORROWED_BOOKS)) {
+                    hold.loan = lend(stripe, key, newLoan(book, hold.patronId), patronLoans);
+                    metrics.recordSuccess(Operation.BORROW);
+                    if (queue.isEmpty()) {
+                        holds[stripe].remove(key);
+                    }
+                    return settled;
+                }
+            }
+            holds[stripe].remove(key);
+        }
+
+        TitleLoans title = titleLoans[stripe].get(key);
+        if ((title == null ? book.getCopies() : title.onShelf()) == 1) {
+            // The first copy back puts the title back on the list
+            availableChange[stripe]++;
+            if (books[stripe].get(key) != null) {
+                shelved[stripe] = shelved[stripe].put(key, book);
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Whether a copy can be lent to a patron, given the title's loans or null if it has none.
+     */
+    private static boolean canLend(TitleLoans title, String patronId) {
+        return title == null || (title.onShelf() > 0 && title.loanOf(patronId) == null);
+    }
+
+    /**
+     * The loan a patron returns, the oldest if any borrower is accepted, or null if there is none.
+     */
+    private static Loan loanToReturn(TitleLoans title, String patronId) {
+        if (title == null) {
+            return null;
+        }
+        return patronId == null ? title.oldest() : title.loanOf(patronId);
+    }
+
+    private void complete(List<Hold> settled) {
+        for (Hold hold : settled) {
+            if (hold.loan == null) {
+                hold.future.completeExceptionally(borrowFailure(hold.failure));
+            } else if (!hold.future.complete(hold.loan)) {
+                // Given up after the book was lent, so pass it on to the next in line
+                tryReturnBook(hold.patronId, hold.loan.getBook().getIsbn());
+            }
+        }
+    }
+
+    private static CompletableFuture<Loan> failedFuture(LoanStatus status) {
+        CompletableFuture<Loan> future = new CompletableFuture<>();
+        future.completeExceptionally(borrowFailure(status));
+        return future;
+    }
+
+    /**
+     * Returns the exception {@link #borrowBook(String, String)} throws for a failed status.
+     */
+    private static Exception borrowFailure(LoanStatus status) {
+        switch (status) {
+            case NOT_AVAILABLE:
+                return new BookNotAvailableException("Book is already borrowed", STACK_TRACES);
+            case LIMIT_REACHED:
+                return new IllegalArgumentException("User can not borrow more than 3 books");
+            default:
+                return new BookNotFoundException("Book with the given ISBN does not exist", STACK_TRACES);
+        }
+    }
+
+    /**
+     * A patron waiting for a borrowed book, and the loan they were given once settled.
+     */
+    private static final class Hold {
+
+        final String patronId;
+        final CompletableFuture<Loan> future = new CompletableFuture<>();
+        Loan loan;
+        // Why the patron lost their place, if they were not lent the book
+        LoanStatus failure = LoanStatus.LIMIT_REACHED;
+
+        Hold(String patronId) {
+            this.patronId = patronId;
+        }
+    }
+
+    /**
+     * Borrows a whole basket of books on behalf of a patron, either all of them or none.
+     * 
+     * The batch is checked and applied in one pass while the lock of every stripe it
+     * touches is held, each lock taken once. If any book cannot be borrowed, nothing
+     * is borrowed and the other books are reported as {@link LoanStatus#ABORTED}.
+     * An ISBN listed twice counts as {@link LoanStatus#NOT_AVAILABLE}.
+     * 
+     * @param patronId The ID of the patron borrowing the books.
+     * @param isbns The ISBNs of the books to be borrowed.
+     * @return The outcome for each ISBN, in the order of the batch.
+     */
+    public Map<String, LoanStatus> borrowAll(String patronId, Collection<String> isbns) {
+        checkPatronId(patronId);
+        PatronLoans patronLoans = patrons.computeIfAbsent(patronId, id -> new PatronLoans());
+        Batch batch = new Batch(isbns);
+        batch.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                long key = batch.keys[i];
+                if (batch.statuses[i] != LoanStatus.OK) {
+                    continue;
+                }
+                int stripe = stripes.indexFor(key);
+                if (findBook(stripe, key) == null) {
+                    batch.fail(i, LoanStatus.NOT_FOUND);
+                } else if (batch.duplicate[i] || !canLend(titleLoans[stripe].get(key), patronId)) {
+                    batch.fail(i, LoanStatus.NOT_AVAILABLE);
+                }
+            }
+            // Take every slot at once, the patron may be borrowing on other stripes meanwhile
+            if (batch.failed == 0 && !patronLoans.tryReserve(MAX_BORROWED_BOOKS, batch.size())) {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.fail(i, LoanStatus.LIMIT_REACHED);
+                }
+            }
+            if (batch.failed > 0) {
+                return batch.abort();
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                long key = batch.keys[i];
+                int stripe = stripes.indexFor(key);
+                metrics.recordSuccess(Operation.BORROW);
+                borrowFromShelf(stripe, key, newLoan(findBook(stripe, key), patronId), patronLoans);
+            }
+            publish(batch.stripesToLock);
+            return batch.results();
+        } finally {
+            batch.unlock();
+        }
+    }
+
+    /**
+     * Returns a whole basket of books borrowed by a patron, either all of them or none.
+     * 
+     * Like {@link #borrowAll}, the batch is checked and applied while the lock of every
+     * stripe it touches is held, and if any book cannot be returned, nothing is returned.
+     * An ISBN listed twice counts as {@link LoanStatus#NOT_BORROWED}.
+     * 
+     * @param patronId The ID of the patron returning the books, or null to accept any borrower.
+     * @param isbns The ISBNs of the books to be returned.
+     * @return The outcome for each ISBN, in the order of the batch.
+     */
+    public Map<String, LoanStatus> returnAll(String patronId, Collection<String> isbns) {
+        Batch batch = new Batch(isbns);
+        List<Hold> settled = new ArrayList<>();
+        batch.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                long key = batch.keys[i];
+                if (batch.statuses[i] != LoanStatus.OK) {
+                    continue;
+                }
+                int stripe = stripes.indexFor(key);
+                Loan loan = loanToReturn(titleLoans[stripe].get(key), patronId);
+                if (findBook(stripe, key) == null) {
+                    batch.fail(i, LoanStatus.NOT_FOUND);
+                } else if (batch.duplicate[i] || loan == null) {
+                    batch.fail(i, LoanStatus.NOT_BORROWED);
+                }
+            }
+            if (batch.failed > 0) {
+                return batch.abort();
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                long key = batch.keys[i];
+                int stripe = stripes.indexFor(key);
+                Loan loan = loanToReturn(titleLoans[stripe].get(key), patronId);
+                metrics.recordSuccess(Operation.RETURN);
+                endLoan(stripe, key, loan);
+                settled.addAll(shelve(stripe, key, loan.getBook()));
+            }
+            publish(batch.stripesToLock);
+            return batch.results();
+        } finally {
+            batch.unlock();
+            complete(settled);
+        }
+    }
+
+    /**
+     * Creates a loan dated now, due back after {@link #LOAN_PERIOD}.
+     */
+    private Loan newLoan(Book book, String patronId) {
+        long now = clock.millis();
+        return new Loan(book, patronId, now, now + LOAN_PERIOD.toMillis());
+    }
+
+    /**
+     * The parsed ISBNs of a batch, their outcomes so far and the stripes they lock.
+     */
+    private final class Batch {
+
+        final String[] isbns;
+        final long[] keys;
+        final LoanStatus[] statuses;
+        // Whether the same ISBN appears earlier in the batch
+        final boolean[] duplicate;
+        final boolean[] stripesToLock = new boolean[stripes.size()];
+        int failed;
+        int locked = -1;
+
+        Batch(Collection<String> batch) {
+            isbns = batch.toArray(new String[0]);
+            keys = new long[isbns.length];
+            statuses = new LoanStatus[isbns.length];
+            duplicate = new boolean[isbns.length];
+            LongObjectHashMap<String> seen = new LongObjectHashMap<>(isbns.length);
+            for (int i = 0; i < isbns.length; i++) {
+                keys[i] = Isbn.parse(isbns[i]);
+                statuses[i] = LoanStatus.OK;
+                if (keys[i] == Isbn.INVALID) {
+                    fail(i, LoanStatus.NOT_FOUND);
+                    continue;
+                }
+                duplicate[i] = seen.putIfAbsent(keys[i], isbns[i]) != null;
+                stripesToLock[stripes.indexFor(keys[i])] = true;
+            }
+        }
+
+        int size() {
+            return isbns.length;
+        }
+
+        void fail(int i, LoanStatus status) {
+            if (statuses[i] == LoanStatus.OK) {
+                failed++;
+            }
+            statuses[i] = status;
+        }
+
+        /**
+         * Locks the stripes in ascending order, the same order {@link #visitState} uses.
+         */
+        void lock() {
+            for (int stripe = 0; stripe < stripesToLock.length; stripe++) {
+                if (stripesToLock[stripe]) {
+                    stripes.lockAt(stripe).lock();
+                    locked = stripe;
+                }
+            }
+        }
+
+        void unlock() {
+            for (int stripe = locked; stripe >= 0; stripe--) {
+                if (stripesToLock[stripe]) {
+                    stripes.lockAt(stripe).unlock();
+                }
+            }
+        }
+
+        Map<String, LoanStatus> abort() {
+            for (int i = 0; i < statuses.length; i++) {
+                if (statuses[i] == LoanStatus.OK) {
+                    statuses[i] = LoanStatus.ABORTED;
+                }
+            }
+            return results();
+        }
+
+        Map<String, LoanStatus> results() {
+            Map<String, LoanStatus> results = new LinkedHashMap<>();
+            for (int i = 0; i < isbns.length; i++) {
+                // An ISBN listed twice reports why it failed rather than being aborted
+                results.merge(isbns[i], statuses[i], (first, second) -> first == LoanStatus.ABORTED ? second : first);
+            }
+            return results;
+        }
     }
 
     /**
      * Retrieves a list of all borrowed books.
      * 
-     * @return A list of books that are currently borrowed.
+     * @return A list of books that are currently borrowed, once for each copy on loan.
      */
     public List<Book> getBorrowedBooks() { 
-        return new ArrayList<>(borrowedBooks.values()); 
+        List<Book> borrowed = new ArrayList<>();
+        snapshot().forEachLoan(loan -> borrowed.add(loan.getBook()));
+        return borrowed;
+    }
+
+    /**
+     * Retrieves the loans that are past their due date.
+     * 
+     * Each stripe's timer is advanced to the current time and its overdue list read
+     * off, so the cost grows with the number of overdue loans, not with the number of
+     * loans. A loan is reported within a second of falling due.
+     * 
+     * @return The overdue loans, the longest overdue first.
+     */
+    public List<Loan> getOverdueLoans() {
+        List<Loan> overdue = new ArrayList<>();
+        for (int stripe = 0; stripe < stripes.size(); stripe++) {
+            ReentrantLock lock = stripes.lockAt(stripe);
+            lock.lock();
+            try {
+                loanTimers[stripe].advance(clock.millis());
+                loanTimers[stripe].collectOverdue(overdue);
+            } finally {
+                lock.unlock();
+            }
+        }
+        overdue.sort(Comparator.comparingLong(Loan::getDueAt));
+        return overdue;
+    }
+
+    /**
+     * Retrieves the books currently held by a patron.
+     * 
+     * @param patronId The ID of the patron.
+     * @return A list of books borrowed by the patron, empty if they hold none.
+     */
+    public List<Book> getBorrowedBooks(String patronId) {
+        PatronLoans patronLoans = patrons.get(patronId);
+        if (patronLoans == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(patronLoans.books().values());
+    }
+
+    /**
+     * Retrieves the loan of a borrowed book.
+     * 
+     * @param isbn The ISBN of the book.
+     * @return The loan of the copy that has been out the longest, or null if no copy is borrowed.
+     */
+    public Loan getLoan(String isbn) {
+        List<Loan> loans = getLoans(isbn);
+        return loans.isEmpty() ? null : loans.get(0);
+    }
+
+    /**
+     * Retrieves the loans of every borrowed copy of a book.
+     * 
+     * @param isbn The ISBN of the book.
+     * @return The loans of the book, oldest first, empty if no copy is borrowed.
+     */
+    public List<Loan> getLoans(String isbn) {
+        return snapshot().getLoans(isbn);
+    }
+
+    /**
+     * Returns the number of copies of a book on the shelf.
+     * 
+     * @param isbn The ISBN of the book.
+     * @return The copies not on loan, or 0 if the book does not exist.
+     */
+    public int getCopiesOnShelf(String isbn) {
+        return snapshot().getCopiesOnShelf(isbn);
     }
 
     /**
@@ -102,24 +1303,200 @@ public class Library {
      * @return The book with the specified ISBN, or null if not found.
      */
     public Book getBookByIsbn(String isbn) {
-        return books.get(isbn);
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            metrics.recordLookup(false);
+            return null;
+        }
+        return getBookByIsbn(key);
     }
 
     /**
-     * Retrieves a list of available (not borrowed) books in the library.
+     * Retrieves a book by its packed ISBN.
      * 
-     * @return A list of books that are currently available for borrowing.
+     * @param isbn The packed ISBN of the book to retrieve.
+     * @return The book with the specified ISBN, or null if not found.
+     */
+    public Book getBookByIsbn(long isbn) {
+        long start = System.nanoTime();
+        Book book = snapshot().getBook(isbn);
+        metrics.recordLookup(book != null);
+        metrics.recordLatency(Operation.LOOKUP, start);
+        return book;
+    }
+
+    /**
+     * Retrieves a list of available books in the library, those with at least one copy on the shelf.
+     * 
+     * @return A list of books that are currently available for borrowing, ordered by ISBN.
      */
     public List<Book> getAvailableBooks() {
-        List<Book> availableBooks = new ArrayList<>();
+        return new ArrayList<>(snapshot().availableBooks());
+    }
+
+    /**
+     * Retrieves one page of the available books, ordered by ISBN.
+     * 
+     * Pass the ISBN of the last book of the previous page as the cursor to get the
+     * next page. See {@link LibrarySnapshot#getAvailableBooks(String, int)} for the
+     * cost; to page through one point in time, page through a {@link #snapshot()}.
+     * 
+     * @param afterIsbn The ISBN after which the page starts, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit available books with an ISBN greater than afterIsbn.
+     */
+    public List<Book> getAvailableBooks(String afterIsbn, int limit) {
+        return snapshot().getAvailableBooks(afterIsbn, limit);
+    }
+
+    /**
+     * Returns a live, read-only view of the available books, ordered by ISBN.
+     * 
+     * The view reflects later borrows and returns and can be iterated or streamed
+     * without copying the catalog. Each iteration reads the latest snapshot.
+     * 
+     * @return A view of the books that are currently available for borrowing.
+     */
+    public Collection<Book> availableBooks() {
+        return new AbstractCollection<Book>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return snapshot().availableBooks().iterator();
+            }
+
+            @Override
+            public int size() {
+                return availableCount();
+            }
+        };
+    }
 
-        // Add books that are not borrowed to the available list
-        for (Book book : books.values()) {
-            if (!borrowedBooks.containsKey(book.getIsbn())) {
-                availableBooks.add(book);
+    /**
+     * Returns the number of available books, those with at least one copy on the shelf, in constant time.
+     * 
+     * @return The number of books that are currently available for borrowing.
+     */
+    public int availableCount() {
+        return snapshot().availableCount();
+    }
+
+    /**
+     * Looks a book up in its stripe, then in the book store. Callers must hold the stripe lock.
+     */
+    private Book findBook(int stripe, long isbn) {
+        Book book = books[stripe].get(isbn);
+        if (book == null && store != null) {
+            book = store.get(isbn);
+        }
+        return book;
+    }
+
+    private boolean inStore(long isbn) {
+        return store != null && store.contains(isbn);
+    }
+
+    /**
+     * Returns the counters and latency histograms of this library.
+     * 
+     * @return The metrics of this library.
+     */
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Registers a listener to be told about every later change.
+     * 
+     * @param listener The listener to add.
+     */
+    public synchronized void addListener(LibraryListener listener) {
+        LibraryListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Registers a listener and returns the snapshot it picks up from: the listener is
+     * told about every change the snapshot does not show, and about none that it does.
+     * This takes every stripe lock, but only long enough to read the snapshot and add
+     * the listener, so a caller can copy the snapshot's catalog without blocking writers.
+     * 
+     * @param listener The listener to add.
+     * @return The snapshot the listener's changes follow on from.
+     */
+    public LibrarySnapshot addListenerAtSnapshot(LibraryListener listener) {
+        int locked = 0;
+        try {
+            for (; locked < stripes.size(); locked++) {
+                stripes.lockAt(locked).lock();
+            }
+            // Changes are published and told under their stripe lock, so none is in between
+            addListener(listener);
+            return snapshot.get();
+        } finally {
+            for (int stripe = locked - 1; stripe >= 0; stripe--) {
+                stripes.lockAt(stripe).unlock();
             }
         }
-        return availableBooks;
+    }
+
+    /**
+     * Unregisters a listener.
+     * 
+     * @param listener The listener to remove.
+     */
+    public synchronized void removeListener(LibraryListener listener) {
+        List<LibraryListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        updated.remove(listener);
+        listeners = updated.toArray(new LibraryListener[0]);
+    }
+
+    /**
+     * Visits a consistent copy of the whole catalog and its loans.
+     * 
+     * Every stripe is locked for the duration of the visit, so no change can happen
+     * between the first book visited and {@link StateVisitor#visitEnd()}. This stops
+     * all writers, so the visitor should only copy what it needs and do slow work later.
+     * 
+     * @param visitor The visitor that receives every book and then every loan.
+     */
+    public void visitState(StateVisitor visitor) {
+        int locked = 0;
+        try {
+            for (; locked < stripes.size(); locked++) {
+                stripes.lockAt(locked).lock();
+            }
+            if (store != null) {
+                store.forEach(visitor::visitBook);
+            }
+            for (int stripe = 0; stripe < stripes.size(); stripe++) {
+                books[stripe].forEachValue(visitor::visitBook);
+            }
+            for (int stripe = 0; stripe < stripes.size(); stripe++) {
+                titleLoans[stripe].forEachValue(title -> title.forEach(visitor::visitLoan));
+            }
+            visitor.visitEnd();
+        } finally {
+            for (int stripe = locked - 1; stripe >= 0; stripe--) {
+                stripes.lockAt(stripe).unlock();
+            }
+        }
+    }
+
+    /**
+     * Receives the state of a library from {@link #visitState}.
+     */
+    public interface StateVisitor {
+
+        void visitBook(Book book);
+
+        void visitLoan(Loan loan);
+
+        /**
+         * Called after the last loan, while the library is still locked.
+         */
+        default void visitEnd() {
+        }
     }
 
     public boolean borrowBookCheckLibrary(int numberOfBooks) {
@@ -0,0 +1,47 @@
+package library;
+
+/**
+ * Receives every change made to a {@link Library}.
+ *
+ * Callbacks run on the mutating thread while it still holds the lock of the book's
+ * stripe, so for any one ISBN they arrive in exactly the order the changes were
+ * applied. They must therefore be quick and must not call back into the library.
+ *
+ * A change is only passed on once it is complete and published, so a callback that
+ * throws cannot undo or tear it: the exception reaches the caller that made the change,
+ * after every listener has been told.
+ */
+public interface LibraryListener {
+
+    /**
+     * Called after a book has been added to the catalog.
+     *
+     * @param book The added book.
+     */
+    default void bookAdded(Book book) {
+    }
+
+    /**
+     * Called after a book has been borrowed.
+     *
+     * @param loan The new loan.
+     */
+    default void bookBorrowed(Loan loan) {
+    }
+
+    /**
+     * Called after a book has been returned.
+     *
+     * @param loan The loan that ended.
+     */
+    default void bookReturned(Loan loan) {
+    }
+
+    /**
+     * Called after a book has been removed from the catalog.
+     *
+     * @param book The removed book.
+     */
+    default void bookRemoved(Book book) {
+    }
+}
@@ -0,0 +1,427 @@
+package library;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import library.util.PersistentLongMap;
+
+/**
+ * The catalog and loans of a {@link Library} as they stood at one point in time.
+ *
+ * A snapshot never changes. Every change to a library publishes a new snapshot that
+ * shares all but the changed paths of the catalog with the one before, so taking a
+ * snapshot costs a single volatile read and reading it takes no locks. A reader that
+ * runs a whole query against one snapshot sees the books and loans of one moment,
+ * however many writers are busy meanwhile.
+ *
+ * Books served from the library's {@link BookStore} are read through the store, so a
+ * snapshot may list a book that was added to the store after the snapshot was taken.
+ * Loans of those books are still those of the snapshot.
+ */
+public final class LibrarySnapshot {
+
+    private final long version;
+    // One map per stripe, keyed by the packed ISBN like the library's own
+    private final PersistentLongMap<Book>[] books;
+    private final PersistentLongMap<TitleLoans>[] titleLoans;
+    // The books of each stripe with a copy on the shelf; books of the store are not indexed
+    private final PersistentLongMap<Book>[] shelved;
+    private final int availableCount;
+    private final LockStripes stripes;
+    private final BookStore store;
+
+    LibrarySnapshot(long version, PersistentLongMap<Book>[] books, PersistentLongMap<TitleLoans>[] titleLoans,
+                    PersistentLongMap<Book>[] shelved, int availableCount, LockStripes stripes, BookStore store) {
+        this.version = version;
+        this.books = books;
+        this.titleLoans = titleLoans;
+        this.shelved = shelved;
+        this.availableCount = availableCount;
+        this.stripes = stripes;
+        this.store = store;
+    }
+
+    /**
+     * Returns the snapshot that follows this one after some stripes changed.
+     *
+     * @param changed Whether each stripe changed.
+     * @param stripeBooks The current books of every stripe; only the changed ones are read.
+     * @param stripeLoans The current loans of every stripe; only the changed ones are read.
+     * @param stripeShelved The current books on the shelf of every stripe; only the changed ones are read.
+     * @param availableChange The change in the number of available books.
+     */
+    LibrarySnapshot next(boolean[] changed, PersistentLongMap<Book>[] stripeBooks,
+                         PersistentLongMap<TitleLoans>[] stripeLoans, PersistentLongMap<Book>[] stripeShelved,
+                         int availableChange) {
+        PersistentLongMap<Book>[] nextBooks = books.clone();
+        PersistentLongMap<TitleLoans>[] nextLoans = titleLoans.clone();
+        PersistentLongMap<Book>[] nextShelved = shelved.clone();
+        for (int stripe = 0; stripe < changed.length; stripe++) {
+            if (changed[stripe]) {
+                nextBooks[stripe] = stripeBooks[stripe];
+                nextLoans[stripe] = stripeLoans[stripe];
+                nextShelved[stripe] = stripeShelved[stripe];
+            }
+        }
+        return new LibrarySnapshot(version + 1, nextBooks, nextLoans, nextShelved, availableCount + availableChange,
+                stripes, store);
+    }
+
+    /**
+     * Returns the snapshot that follows this one after a single stripe changed.
+     */
+    LibrarySnapshot next(int stripe, PersistentLongMap<Book> stripeBooks, PersistentLongMap<TitleLoans> stripeLoans,
+                         PersistentLongMap<Book> stripeShelved, int availableChange) {
+        PersistentLongMap<Book>[] nextBooks = books.clone();
+        PersistentLongMap<TitleLoans>[] nextLoans = titleLoans.clone();
+        PersistentLongMap<Book>[] nextShelved = shelved.clone();
+        nextBooks[stripe] = stripeBooks;
+        nextLoans[stripe] = stripeLoans;
+        nextShelved[stripe] = stripeShelved;
+        return new LibrarySnapshot(version + 1, nextBooks, nextLoans, nextShelved, availableCount + availableChange,
+                stripes, store);
+    }
+
+    /**
+     * Returns the number of changes the library had published when this snapshot was
+     * taken. A later snapshot of the same library has a higher version.
+     *
+     * @return The version of this snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Retrieves a book by its ISBN.
+     *
+     * @param isbn The ISBN of the book to retrieve.
+     * @return The book with the specified ISBN, or null if not found.
+     */
+    public Book getBook(String isbn) {
+        long key = Isbn.parse(isbn);
+        return key == Isbn.INVALID ? null : getBook(key);
+    }
+
+    /**
+     * Retrieves a book by its packed ISBN.
+     *
+     * @param isbn The packed ISBN of the book to retrieve.
+     * @return The book with the specified ISBN, or null if not found.
+     */
+    public Book getBook(long isbn) {
+        Book book = books[stripes.indexFor(isbn)].get(isbn);
+        if (book == null && store != null) {
+            book = store.get(isbn);
+        }
+        return book;
+    }
+
+    /**
+     * Retrieves the loans of every borrowed copy of a book.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The loans of the book, oldest first, empty if no copy is borrowed.
+     */
+    public List<Loan> getLoans(String isbn) {
+        List<Loan> loans = new ArrayList<>();
+        TitleLoans title = titleOf(Isbn.parse(isbn));
+        if (title != null) {
+            title.forEach(loans::add);
+        }
+        return loans;
+    }
+
+    /**
+     * Returns the number of copies of a book on the shelf.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The copies not on loan, or 0 if the book does not exist.
+     */
+    public int getCopiesOnShelf(String isbn) {
+        return getCopiesOnShelf(Isbn.parse(isbn));
+    }
+
+    /**
+     * Returns the number of copies of a book on the shelf.
+     *
+     * @param key The packed ISBN of the book.
+     * @return The copies not on loan, or 0 if the book does not exist.
+     */
+    public int getCopiesOnShelf(long key) {
+        if (key == Isbn.INVALID) {
+            return 0;
+        }
+        TitleLoans title = titleOf(key);
+        if (title != null) {
+            return title.onShelf();
+        }
+        Book book = getBook(key);
+        return book == null ? 0 : book.getCopies();
+    }
+
+    /**
+     * Performs an action for every loan, stripe by stripe and in ISBN order within a stripe.
+     *
+     * @param action The action to perform.
+     */
+    public void forEachLoan(Consumer<? super Loan> action) {
+        for (PersistentLongMap<TitleLoans> stripeLoans : titleLoans) {
+            stripeLoans.forEachValue(title -> title.forEach(action));
+        }
+    }
+
+    /**
+     * Returns a stream over every book of the catalog, from the stripes and the book
+     * store, in no particular order. Each stripe and the store are read through their
+     * own spliterator, and the stream splits across them before splitting any one of
+     * them, so it runs well in parallel without copying the catalog into a list.
+     *
+     * @return A sequential stream over the books, which may be made parallel.
+     */
+    public Stream<Book> books() {
+        List<Spliterator<Book>> parts = new ArrayList<>(books.length + 1);
+        for (PersistentLongMap<Book> stripeBooks : books) {
+            parts.add(stripeBooks.spliterator());
+        }
+        if (store != null) {
+            parts.add(store.spliterator());
+        }
+        return concat(parts, 0, parts.size());
+    }
+
+    /**
+     * Returns a stream over every loan, in no particular order, split like {@link #books()}.
+     *
+     * @return A sequential stream over the loans, which may be made parallel.
+     */
+    public Stream<Loan> loans() {
+        List<Spliterator<TitleLoans>> parts = new ArrayList<>(titleLoans.length);
+        for (PersistentLongMap<TitleLoans> stripeLoans : titleLoans) {
+            parts.add(stripeLoans.spliterator());
+        }
+        return concat(parts, 0, parts.size()).flatMap(TitleLoans::stream);
+    }
+
+    /**
+     * Joins spliterators into a balanced tree of concatenated streams, whose first
+     * splits hand out whole halves of the list.
+     */
+    private static <T> Stream<T> concat(List<Spliterator<T>> parts, int from, int to) {
+        if (to - from == 1) {
+            return StreamSupport.stream(parts.get(from), false);
+        }
+        if (from == to) {
+            return Stream.empty();
+        }
+        int mid = (from + to) >>> 1;
+        return Stream.concat(concat(parts, from, mid), concat(parts, mid, to));
+    }
+
+    /**
+     * Returns the number of available books, those with at least one copy on the shelf.
+     *
+     * @return The number of books that were available for borrowing.
+     */
+    public int availableCount() {
+        return availableCount;
+    }
+
+    /**
+     * Returns a read-only view of the available books, ordered by ISBN. Iterating
+     * the view copies nothing.
+     *
+     * @return A view of the books that were available for borrowing.
+     */
+    public Collection<Book> availableBooks() {
+        return new AbstractCollection<Book>() {
+            @Override
+            public Iterator<Book> iterator() {
+                return bookIterator(Isbn.INVALID, true);
+            }
+
+            @Override
+            public int size() {
+                return availableCount;
+            }
+        };
+    }
+
+    /**
+     * Retrieves one page of the available books, ordered by ISBN.
+     *
+     * Pass the ISBN of the last book of the previous page as the cursor to get the
+     * next page. The books kept in the library's stripes are paged from an index of
+     * those with a copy on the shelf, so with s stripes a page of them costs
+     * O(s log n + limit log s) no matter how deep into the catalog it is or how many books
+     * are on loan. The books of a {@link BookStore} are not indexed, and a page also
+     * steps over each of them that has every copy on loan.
+     *
+     * @param afterIsbn The ISBN after which the page starts, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit available books with an ISBN greater than afterIsbn.
+     */
+    public List<Book> getAvailableBooks(String afterIsbn, int limit) {
+        return page(afterIsbn, limit, true);
+    }
+
+    /**
+     * Retrieves one page of every book in the catalog, on loan or not, ordered by ISBN.
+     * Pages are chained like those of {@link #getAvailableBooks(String, int)}, and with
+     * s stripes each costs O(s log n + limit log s).
+     *
+     * @param afterIsbn The ISBN after which the page starts, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit books with an ISBN greater than afterIsbn.
+     */
+    public List<Book> getBooks(String afterIsbn, int limit) {
+        return page(afterIsbn, limit, false);
+    }
+
+    private List<Book> page(String afterIsbn, int limit, boolean availableOnly) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit should not be negative");
+        }
+        long after = Isbn.INVALID;
+        if (afterIsbn != null) {
+            after = Isbn.parse(afterIsbn);
+            if (after == Isbn.INVALID) {
+                throw new IllegalArgumentException("Cursor should be a 13-digit ISBN");
+            }
+        }
+
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<Book> books = bookIterator(after, availableOnly);
+        while (page.size() < limit && books.hasNext()) {
+            page.add(books.next());
+        }
+        return page;
+    }
+
+    private TitleLoans titleOf(long isbn) {
+        return isbn == Isbn.INVALID ? null : titleLoans[stripes.indexFor(isbn)].get(isbn);
+    }
+
+    private boolean isOnShelf(long isbn) {
+        TitleLoans title = titleOf(isbn);
+        return title == null || title.onShelf() > 0;
+    }
+
+    /**
+     * Iterates over the books in ISBN order, merging the stripes with each other and
+     * with the book store. The sources are kept in a min-heap on their next ISBN, so
+     * each step costs O(log s) with s stripes.
+     *
+     * @param afterIsbn The packed ISBN after which to start, or {@link Isbn#INVALID} to start at the beginning.
+     * @param availableOnly Whether to skip the books with every copy on loan.
+     * @return An iterator over the books.
+     */
+    private Iterator<Book> bookIterator(long afterIsbn, boolean availableOnly) {
+        return new Iterator<Book>() {
+            // The next available ISBN of each stripe and, in the last slot, of the store
+            private final long[] heads = new long[books.length + 1];
+            // The sources that are not exhausted, ordered as a binary heap on their head
+            private final int[] heap = new int[heads.length];
+            private int size;
+            private Book next;
+
+            {
+                for (int stripe = 0; stripe < books.length; stripe++) {
+                    heads[stripe] = nextInStripe(stripe, afterIsbn, availableOnly);
+                }
+                heads[books.length] = nextInStore(afterIsbn, availableOnly);
+                for (int source = 0; source < heads.length; source++) {
+                    if (heads[source] != Isbn.INVALID) {
+                        heap[size++] = source;
+                    }
+                }
+                for (int i = size / 2 - 1; i >= 0; i--) {
+                    siftDown(i);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = advance();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Book next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Book book = next;
+                next = null;
+                return book;
+            }
+
+            private Book advance() {
+                if (size == 0) {
+                    return null;
+                }
+                int lowest = heap[0];
+                long isbn = heads[lowest];
+                Book book;
+                if (lowest == books.length) {
+                    heads[lowest] = nextInStore(isbn, availableOnly);
+                    book = store.get(isbn);
+                } else {
+                    heads[lowest] = nextInStripe(lowest, isbn, availableOnly);
+                    book = books[lowest].get(isbn);
+                }
+                if (heads[lowest] == Isbn.INVALID) {
+                    // The source is exhausted, so the last one takes its place
+                    heap[0] = heap[--size];
+                }
+                siftDown(0);
+                return book;
+            }
+
+            private void siftDown(int i) {
+                int source = heap[i];
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && heads[heap[child + 1]] < heads[heap[child]]) {
+                        child++;
+                    }
+                    if (heads[heap[child]] >= heads[source]) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = source;
+            }
+        };
+    }
+
+    private long nextInStripe(int stripe, long after, boolean availableOnly) {
+        long isbn = (availableOnly ? shelved : books)[stripe].higherKey(after);
+        return isbn == -1 ? Isbn.INVALID : isbn;
+    }
+
+    private long nextInStore(long after, boolean availableOnly) {
+        if (store == null) {
+            return Isbn.INVALID;
+        }
+        long isbn = store.nextIsbn(after);
+        while (availableOnly && isbn != Isbn.INVALID && !isOnShelf(isbn)) {
+            isbn = store.nextIsbn(isbn);
+        }
+        return isbn;
+    }
+}
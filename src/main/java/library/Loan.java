@@ -0,0 +1,51 @@
+package library;
+
+/**
+ * A book that is currently lent out to a patron, with when it was borrowed and when
+ * it is due back, both in milliseconds since the epoch.
+ */
+public class Loan {
+
+    private final Book book;
+    private final String patronId;
+    private final long borrowedAt;
+    private final long dueAt;
+
+    // Links of the LoanTimer slot the loan waits in, guarded by its stripe lock
+    Loan timerPrev;
+    Loan timerNext;
+    int timerSlot = LoanTimer.UNSCHEDULED;
+
+    public Loan(Book book, String patronId) {
+        this(book, patronId, 0, Long.MAX_VALUE);
+    }
+
+    public Loan(Book book, String patronId, long borrowedAt, long dueAt) {
+        this.book = book;
+        this.patronId = patronId;
+        this.borrowedAt = borrowedAt;
+        this.dueAt = dueAt;
+    }
+
+    // Getter methods for loan attributes
+    public Book getBook() {
+        return book;
+    }
+
+    public String getPatronId() {
+        return patronId;
+    }
+
+    public long getBorrowedAt() {
+        return borrowedAt;
+    }
+
+    public long getDueAt() {
+        return dueAt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Loan[ ISBN = %s, Patron = %s]", book.getIsbn(), patronId);
+    }
+}
@@ -0,0 +1,26 @@
+package library;
+
+/**
+ * The outcome of borrowing or returning one book, for the methods that report
+ * ordinary failures as a value instead of throwing.
+ */
+public enum LoanStatus {
+
+    /** The book was borrowed or returned. */
+    OK,
+
+    /** No book with the ISBN exists in the library, or the ISBN is malformed. */
+    NOT_FOUND,
+
+    /** The book is already borrowed. */
+    NOT_AVAILABLE,
+
+    /** The book is not borrowed, or not by the given patron. */
+    NOT_BORROWED,
+
+    /** The patron already holds the maximum number of books. */
+    LIMIT_REACHED,
+
+    /** The book could have been borrowed or returned, but another book of the same batch could not. */
+    ABORTED
+}
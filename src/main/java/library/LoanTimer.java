@@ -0,0 +1,184 @@
+package library;
+
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel that surfaces loans once they fall due.
+ *
+ * Time is counted in one-second ticks. Level 0 has a slot for each of the next 64
+ * ticks, level 1 a slot for each of the next 64 spans of 64 ticks, and so on, with
+ * enough levels to cover any due date. A loan waits in the slot of the coarsest span
+ * that still separates its due tick from the current one. When the wheel reaches
+ * that span the loan drops to a finer level, and when it reaches the loan's own tick
+ * the loan moves to the overdue list, so each loan moves at most once per level. A
+ * bitmap of the occupied slots of each level lets the wheel jump straight over empty
+ * stretches of time, however long it was left alone.
+ *
+ * Loans are linked into the slots through their own fields, so scheduling and
+ * cancelling take constant time and allocate nothing. A timer is not thread-safe;
+ * each stripe of a library has its own, guarded by the stripe lock.
+ */
+final class LoanTimer {
+
+    static final long TICK_MILLIS = 1000;
+    static final int UNSCHEDULED = -1;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+    // Index of the overdue list, after the slots of every level
+    private static final int OVERDUE = LEVELS * SLOTS;
+
+    private final Loan[] heads = new Loan[OVERDUE + 1];
+    private final long[] occupied = new long[LEVELS];
+    private long currentTick;
+
+    /**
+     * Creates an empty timer.
+     *
+     * @param nowMillis The current time.
+     */
+    LoanTimer(long nowMillis) {
+        currentTick = Math.floorDiv(nowMillis, TICK_MILLIS);
+    }
+
+    /**
+     * Starts watching a loan, which surfaces from the first tick at or after its due date.
+     *
+     * @param loan A loan not yet scheduled.
+     */
+    void schedule(Loan loan) {
+        place(loan);
+    }
+
+    /**
+     * Stops watching a loan, whether it has fallen due yet or not.
+     *
+     * @param loan The loan, which need not be scheduled.
+     */
+    void cancel(Loan loan) {
+        if (loan.timerSlot != UNSCHEDULED) {
+            unlink(loan);
+        }
+    }
+
+    /**
+     * Moves the timer forward, moving every loan due by then to the overdue list.
+     * Costs O(1) per loan that changes level, plus O(levels) per occupied slot reached.
+     *
+     * @param nowMillis The current time; a time earlier than the last one is ignored.
+     */
+    void advance(long nowMillis) {
+        long nowTick = Math.floorDiv(nowMillis, TICK_MILLIS);
+        while (currentTick < nowTick) {
+            long next = nextOccupiedTick();
+            if (next > nowTick) {
+                currentTick = nowTick;
+                return;
+            }
+            currentTick = next;
+
+            // Spans starting at this tick hand their loans down, coarsest first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = level * SLOT_BITS;
+                if ((currentTick & ((1L << shift) - 1)) == 0) {
+                    replace(level * SLOTS + ((int) (currentTick >>> shift) & SLOT_MASK));
+                }
+            }
+            replace((int) currentTick & SLOT_MASK);
+        }
+    }
+
+    /**
+     * Adds the loans that have fallen due as of the last {@link #advance} to a list.
+     *
+     * @param overdue The list to add to.
+     */
+    void collectOverdue(List<Loan> overdue) {
+        for (Loan loan = heads[OVERDUE]; loan != null; loan = loan.timerNext) {
+            overdue.add(loan);
+        }
+    }
+
+    /**
+     * Finds the next tick at which some slot has to be handed down or fired.
+     *
+     * Every loan in a level waits in a slot after the current one within the current
+     * span of the level above, so the finest level holding any loan has the earliest.
+     */
+    private long nextOccupiedTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            int digit = (int) (currentTick >>> shift) & SLOT_MASK;
+            long later = digit == SLOT_MASK ? 0 : occupied[level] & (-1L << (digit + 1));
+            if (later != 0) {
+                int parentShift = shift + SLOT_BITS;
+                long spanStart = parentShift >= Long.SIZE ? 0 : currentTick >>> parentShift << parentShift;
+                return spanStart | (long) Long.numberOfTrailingZeros(later) << shift;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Empties a slot, placing each of its loans again relative to the current tick.
+     */
+    private void replace(int index) {
+        Loan loan = heads[index];
+        if (loan == null) {
+            return;
+        }
+        heads[index] = null;
+        occupied[index / SLOTS] &= ~(1L << (index & SLOT_MASK));
+        while (loan != null) {
+            Loan next = loan.timerNext;
+            place(loan);
+            loan = next;
+        }
+    }
+
+    private void place(Loan loan) {
+        // Rounded up, so a loan never surfaces before it is due
+        long dueTick = -Math.floorDiv(-loan.getDueAt(), TICK_MILLIS);
+        if (dueTick <= currentTick) {
+            link(loan, OVERDUE);
+            return;
+        }
+        // The level of the highest digit in which the due tick differs from the current one
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(dueTick ^ currentTick)) / SLOT_BITS;
+        link(loan, level * SLOTS + ((int) (dueTick >>> (level * SLOT_BITS)) & SLOT_MASK));
+    }
+
+    private void link(Loan loan, int index) {
+        Loan head = heads[index];
+        loan.timerPrev = null;
+        loan.timerNext = head;
+        loan.timerSlot = index;
+        if (head != null) {
+            head.timerPrev = loan;
+        }
+        heads[index] = loan;
+        if (index < OVERDUE) {
+            occupied[index / SLOTS] |= 1L << (index & SLOT_MASK);
+        }
+    }
+
+    private void unlink(Loan loan) {
+        int index = loan.timerSlot;
+        if (loan.timerNext != null) {
+            loan.timerNext.timerPrev = loan.timerPrev;
+        }
+        if (loan.timerPrev != null) {
+            loan.timerPrev.timerNext = loan.timerNext;
+        } else {
+            heads[index] = loan.timerNext;
+            if (heads[index] == null && index < OVERDUE) {
+                occupied[index / SLOTS] &= ~(1L << (index & SLOT_MASK));
+            }
+        }
+        loan.timerPrev = null;
+        loan.timerNext = null;
+        loan.timerSlot = UNSCHEDULED;
+    }
+}
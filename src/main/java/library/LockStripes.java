@@ -0,0 +1,66 @@
+package library;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import library.util.LongObjectHashMap;
+
+/**
+ * A fixed set of locks that ISBNs are hashed onto, so that operations on
+ * different books can proceed in parallel while operations on the same book
+ * are serialized.
+ */
+final class LockStripes {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * Creates the stripes.
+     *
+     * @param concurrencyLevel The expected number of concurrently updating threads,
+     *                         rounded up to the next power of two.
+     */
+    LockStripes(int concurrencyLevel) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("Concurrency level should be at least 1");
+        }
+        int size = Integer.highestOneBit(concurrencyLevel - 1) << 1;
+        if (size == 0) {
+            size = 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the lock guarding the given ISBN.
+     *
+     * @param isbn The packed ISBN of the book.
+     * @return The stripe lock for the ISBN.
+     */
+    ReentrantLock lockFor(long isbn) {
+        return locks[indexFor(isbn)];
+    }
+
+    /**
+     * Returns the index of the stripe guarding the given ISBN.
+     *
+     * @param isbn The packed ISBN of the book.
+     * @return The stripe index, between 0 and {@link #size()} - 1.
+     */
+    int indexFor(long isbn) {
+        // Use the high bits so that stripes and the per-stripe tables do not correlate
+        return (LongObjectHashMap.mix(isbn) >>> 16) & mask;
+    }
+
+    ReentrantLock lockAt(int index) {
+        return locks[index];
+    }
+
+    int size() {
+        return locks.length;
+    }
+}
@@ -0,0 +1,61 @@
+package library;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The books a single patron currently holds, together with a counter used to
+ * enforce the borrowing limit without a global lock.
+ */
+final class PatronLoans {
+
+    private final Map<String, Book> books = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Takes one of the patron's borrowing slots, without ever going over the limit.
+     *
+     * @param limit The maximum number of books the patron may hold.
+     * @return true if a slot was reserved, false if the limit has been reached.
+     */
+    boolean tryReserve(int limit) {
+        return tryReserve(limit, 1);
+    }
+
+    /**
+     * Takes several borrowing slots at once, or none if they would go over the limit.
+     *
+     * @param limit The maximum number of books the patron may hold.
+     * @param slots The number of slots to take.
+     * @return true if the slots were reserved, false if the limit would be exceeded.
+     */
+    boolean tryReserve(int limit, int slots) {
+        while (true) {
+            int current = count.get();
+            if (current + slots > limit) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + slots)) {
+                return true;
+            }
+        }
+    }
+
+    void add(Book book) {
+        books.put(book.getIsbn(), book);
+    }
+
+    void remove(String isbn) {
+        books.remove(isbn);
+        count.decrementAndGet();
+    }
+
+    int size() {
+        return count.get();
+    }
+
+    Map<String, Book> books() {
+        return books;
+    }
+}
@@ -0,0 +1,86 @@
+package library;
+
+/**
+ * Rebuilds a library from its own records, such as those of
+ * {@link library.io.PersistentLibrary}, applying them without the checks that only
+ * make sense for new requests.
+ *
+ * A Recovery is only handed to the procedure passed to {@link Library#recover}, and
+ * stops working once that returns, so it can fill a library that nobody else has seen
+ * yet but cannot bypass the borrowing limit of a library in use.
+ */
+public final class Recovery {
+
+    /**
+     * Replays a history into the library being recovered.
+     *
+     * @param <E> The exception the history may fail to be read with.
+     */
+    @FunctionalInterface
+    public interface Procedure<E extends Exception> {
+
+        /**
+         * Applies every record of the history.
+         *
+         * @param recovery The recovery of the new library.
+         * @throws E if the history cannot be read or applied.
+         */
+        void replay(Recovery recovery) throws E;
+    }
+
+    private final Library library;
+    private volatile boolean finished;
+
+    Recovery(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Returns the library being recovered, for the records that go through its usual methods.
+     *
+     * @return The library.
+     */
+    public Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Records a loan from a replayed history that did not keep its dates, dated now and
+     * without checking the borrowing limit.
+     *
+     * @param patronId The ID of the patron who borrowed the book.
+     * @param isbn The packed ISBN of the book.
+     * @return {@link LoanStatus#OK}, or why the loan cannot exist in the library.
+     * @throws IllegalStateException if the recovery has finished.
+     */
+    public LoanStatus restoreLoan(String patronId, long isbn) {
+        checkOpen();
+        return library.restoreLoan(patronId, isbn);
+    }
+
+    /**
+     * Records a loan from a replayed history with the dates it was made with, without
+     * checking the borrowing limit. A loan past its due date is overdue at once.
+     *
+     * @param patronId The ID of the patron who borrowed the book.
+     * @param isbn The packed ISBN of the book.
+     * @param borrowedAt When the book was borrowed, in milliseconds since the epoch.
+     * @param dueAt When the book is due back, in milliseconds since the epoch.
+     * @return {@link LoanStatus#OK}, or why the loan cannot exist in the library.
+     * @throws IllegalStateException if the recovery has finished.
+     */
+    public LoanStatus restoreLoan(String patronId, long isbn, long borrowedAt, long dueAt) {
+        checkOpen();
+        return library.restoreLoan(patronId, isbn, borrowedAt, dueAt);
+    }
+
+    void finish() {
+        finished = true;
+    }
+
+    private void checkOpen() {
+        if (finished) {
+            throw new IllegalStateException("Loans can only be restored while the library is recovered");
+        }
+    }
+}
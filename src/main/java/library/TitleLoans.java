@@ -0,0 +1,109 @@
+package library;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The loans of one title, and the number of its copies still on the shelf.
+ *
+ * Copies are interchangeable, so they are only ever counted: a borrow takes one off
+ * the counter and records who has it, a return puts one back. A library only keeps
+ * an entry for titles with at least one copy out, replaced under the lock of the
+ * stripe the ISBN hashes to.
+ *
+ * An entry never changes once created, so the snapshots that share it can read it
+ * without locks; borrowing and returning build a new entry instead.
+ */
+final class TitleLoans {
+
+    private static final Loan[] NO_LOANS = new Loan[0];
+
+    // Oldest first
+    private final Loan[] loans;
+    private final int onShelf;
+
+    /**
+     * Creates the entry of a title with every copy on the shelf.
+     *
+     * @param copies The number of copies the library owns.
+     */
+    TitleLoans(int copies) {
+        this(NO_LOANS, copies);
+    }
+
+    private TitleLoans(Loan[] loans, int onShelf) {
+        this.loans = loans;
+        this.onShelf = onShelf;
+    }
+
+    int onShelf() {
+        return onShelf;
+    }
+
+    int size() {
+        return loans.length;
+    }
+
+    /**
+     * Returns the loan that has been out the longest.
+     *
+     * @return The oldest loan, or null if every copy is on the shelf.
+     */
+    Loan oldest() {
+        return loans.length == 0 ? null : loans[0];
+    }
+
+    /**
+     * Returns the loan of the copy a patron holds.
+     *
+     * @param patronId The ID of the patron.
+     * @return The patron's loan, or null if they do not hold a copy.
+     */
+    Loan loanOf(String patronId) {
+        for (Loan loan : loans) {
+            if (loan.getPatronId().equals(patronId)) {
+                return loan;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes a copy off the shelf for a loan. Callers must have checked that one is there.
+     *
+     * @return The entry with the loan added.
+     */
+    TitleLoans with(Loan loan) {
+        Loan[] updated = Arrays.copyOf(loans, loans.length + 1);
+        updated[loans.length] = loan;
+        return new TitleLoans(updated, onShelf - 1);
+    }
+
+    /**
+     * Puts the copy of an ended loan back on the shelf.
+     *
+     * @return The entry with the loan removed, or this entry if it does not have the loan.
+     */
+    TitleLoans without(Loan loan) {
+        for (int i = 0; i < loans.length; i++) {
+            if (loans[i] == loan) {
+                Loan[] updated = new Loan[loans.length - 1];
+                System.arraycopy(loans, 0, updated, 0, i);
+                System.arraycopy(loans, i + 1, updated, i, updated.length - i);
+                return new TitleLoans(updated, onShelf + 1);
+            }
+        }
+        return this;
+    }
+
+    void forEach(Consumer<? super Loan> action) {
+        for (Loan loan : loans) {
+            action.accept(loan);
+        }
+    }
+
+    Stream<Loan> stream() {
+        return Arrays.stream(loans);
+    }
+}
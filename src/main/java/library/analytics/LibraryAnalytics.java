@@ -0,0 +1,262 @@
+package library.analytics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+import library.Book;
+import library.Isbn;
+import library.Library;
+import library.LibraryListener;
+import library.LibrarySnapshot;
+import library.Loan;
+
+/**
+ * Aggregate queries over the catalog and loans of a library: loans per author,
+ * availability by decade of publication and the most borrowed titles.
+ *
+ * Each query runs against one {@link LibrarySnapshot} as a parallel stream over the
+ * spliterators of the snapshot's maps, so it neither copies the catalog into a list
+ * first nor holds up the library's writers, and its answer is that of one moment.
+ *
+ * The library itself only knows the loans that are still out, so the analytics
+ * listen to it and count every borrow per ISBN from the time they are attached. The
+ * loans already out at that time count as one borrow each.
+ */
+public class LibraryAnalytics implements LibraryListener {
+
+    // Most borrowed first, then in ISBN order
+    private static final Comparator<Ranked> MOST_BORROWED = Comparator.<Ranked>comparingLong(ranked -> -ranked.count)
+            .thenComparingLong(ranked -> ranked.isbn);
+
+    private final Library library;
+    private final Map<Long, AtomicLong> borrowCounts = new ConcurrentHashMap<>();
+
+    private LibraryAnalytics(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Starts counting the borrows of a library.
+     *
+     * @param library The library to analyze.
+     * @return The analytics.
+     */
+    public static LibraryAnalytics attach(Library library) {
+        LibraryAnalytics analytics = new LibraryAnalytics(library);
+        library.visitState(new Library.StateVisitor() {
+            @Override
+            public void visitBook(Book book) {
+            }
+
+            @Override
+            public void visitLoan(Loan loan) {
+                analytics.bookBorrowed(loan);
+            }
+
+            @Override
+            public void visitEnd() {
+                library.addListener(analytics);
+            }
+        });
+        return analytics;
+    }
+
+    /**
+     * Stops counting borrows. The counts so far can still be queried.
+     */
+    public void detach() {
+        library.removeListener(this);
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+    }
+
+    @Override
+    public void bookBorrowed(Loan loan) {
+        borrowCounts.computeIfAbsent(loan.getBook().getIsbnValue(), isbn -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Override
+    public void bookReturned(Loan loan) {
+    }
+
+    /**
+     * Returns the number of times a book has been borrowed since the analytics were attached.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The number of borrows, 0 if there were none or the book does not exist.
+     */
+    public long getBorrowCount(String isbn) {
+        AtomicLong count = borrowCounts.get(Isbn.parse(isbn));
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Counts the loans currently out per author, as the author is written in the catalog.
+     *
+     * @return The number of copies on loan for each author with at least one.
+     */
+    public Map<String, Long> loansPerAuthor() {
+        return library.snapshot().loans().parallel().unordered()
+                .collect(Collectors.groupingByConcurrent(loan -> loan.getBook().getAuthor(), Collectors.counting()));
+    }
+
+    /**
+     * Counts the books published in each decade and how many of them have a copy on the shelf.
+     *
+     * @return The availability of each decade with at least one book, keyed on its
+     *         first year (1990 for 1990 to 1999) and ordered by decade.
+     */
+    public SortedMap<Integer, Availability> availabilityByDecade() {
+        LibrarySnapshot snapshot = library.snapshot();
+        // Each decade's books and available books, summed per split and then merged
+        Collector<Book, long[], Availability> availability = Collector.of(
+                () -> new long[2],
+                (counts, book) -> {
+                    counts[0]++;
+                    if (snapshot.getCopiesOnShelf(book.getIsbnValue()) > 0) {
+                        counts[1]++;
+                    }
+                },
+                (left, right) -> {
+                    left[0] += right[0];
+                    left[1] += right[1];
+                    return left;
+                },
+                counts -> new Availability(counts[0], counts[1]),
+                Collector.Characteristics.UNORDERED);
+        return snapshot.books().parallel().unordered()
+                .collect(Collectors.groupingBy(book -> book.getPublishYear() / 10 * 10, TreeMap::new, availability));
+    }
+
+    /**
+     * Finds the most borrowed books since the analytics were attached. Each part of
+     * the parallel scan keeps its own top k in a bounded heap, and the heaps are
+     * merged, so the scan never holds more than k entries per part.
+     *
+     * @param k The number of books to return.
+     * @return Up to k books with their borrow counts, the most borrowed first and
+     *         ties in ISBN order.
+     */
+    public List<BorrowCount> mostBorrowed(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Number of books should not be negative");
+        }
+        if (k == 0) {
+            return Collections.emptyList();
+        }
+        // The heap keeps the least borrowed of the top k at its head, ready to be evicted
+        Collector<Ranked, PriorityQueue<Ranked>, PriorityQueue<Ranked>> topK = Collector.of(
+                () -> new PriorityQueue<>(k + 1, MOST_BORROWED.reversed()),
+                (heap, ranked) -> offer(heap, ranked, k),
+                (left, right) -> {
+                    for (Ranked ranked : right) {
+                        offer(left, ranked, k);
+                    }
+                    return left;
+                },
+                Collector.Characteristics.UNORDERED, Collector.Characteristics.IDENTITY_FINISH);
+        List<Ranked> top = new ArrayList<>(borrowCounts.entrySet().parallelStream()
+                .map(entry -> new Ranked(entry.getKey(), entry.getValue().get()))
+                .collect(topK));
+        top.sort(MOST_BORROWED);
+
+        // Only the winners are looked up
+        LibrarySnapshot snapshot = library.snapshot();
+        List<BorrowCount> ranking = new ArrayList<>(top.size());
+        for (Ranked ranked : top) {
+            Book book = snapshot.getBook(ranked.isbn);
+            if (book != null) {
+                ranking.add(new BorrowCount(book, ranked.count));
+            }
+        }
+        return ranking;
+    }
+
+    private static void offer(PriorityQueue<Ranked> heap, Ranked ranked, int k) {
+        if (heap.size() < k) {
+            heap.add(ranked);
+        } else if (MOST_BORROWED.compare(ranked, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(ranked);
+        }
+    }
+
+    /**
+     * A packed ISBN and its borrow count, as ranked before the book is looked up.
+     */
+    private static final class Ranked {
+
+        final long isbn;
+        final long count;
+
+        Ranked(long isbn, long count) {
+            this.isbn = isbn;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The number of books of a decade and how many of them are available.
+     */
+    public static final class Availability {
+
+        private final long books;
+        private final long available;
+
+        Availability(long books, long available) {
+            this.books = books;
+            this.available = available;
+        }
+
+        public long getBooks() {
+            return books;
+        }
+
+        public long getAvailable() {
+            return available;
+        }
+
+        /**
+         * Returns the share of the books with at least one copy on the shelf.
+         *
+         * @return The ratio of available books, between 0 and 1.
+         */
+        public double getRatio() {
+            return books == 0 ? 0 : (double) available / books;
+        }
+    }
+
+    /**
+     * A book and the number of times it has been borrowed.
+     */
+    public static final class BorrowCount {
+
+        private final Book book;
+        private final long count;
+
+        BorrowCount(Book book, long count) {
+            this.book = book;
+            this.count = count;
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
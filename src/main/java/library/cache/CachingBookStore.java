@@ -0,0 +1,265 @@
+package library.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import library.Book;
+import library.BookStore;
+import library.util.LongObjectHashMap;
+
+/**
+ * A bounded read-through cache in front of another book store.
+ *
+ * A lookup that misses reads the book from the backing store and offers it to the
+ * cache. The cache evicts the least recently used book, but only admits a new book
+ * if a {@link FrequencySketch} says it has been asked for more often lately than the
+ * book it would evict (TinyLFU). A scan over the long tail therefore passes through
+ * without flushing the hot titles.
+ *
+ * The cache is split into segments by ISBN, each with its own lock, LRU list and
+ * sketch, so lookups of different books rarely contend. Reads from the backing
+ * store happen outside the segment lock.
+ */
+public class CachingBookStore implements BookStore {
+
+    private static final int MIN_SEGMENT_CAPACITY = 64;
+
+    private final BookStore backingStore;
+    private final Segment[] segments;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Creates a cache in front of a book store.
+     *
+     * @param backingStore The store to read books from on a miss.
+     * @param capacity The maximum number of books to keep in memory.
+     */
+    public CachingBookStore(BookStore backingStore, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity should be positive");
+        }
+        this.backingStore = backingStore;
+
+        // Enough segments to spread the threads out, but large enough that the hot books
+        // falling unevenly into them costs little
+        int count = 1;
+        while (count < Runtime.getRuntime().availableProcessors() * 2 && count * 2 * MIN_SEGMENT_CAPACITY <= capacity) {
+            count <<= 1;
+        }
+        this.segments = new Segment[count];
+        this.mask = count - 1;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    @Override
+    public Book get(long isbn) {
+        Segment segment = segmentFor(isbn);
+        segment.lock.lock();
+        try {
+            segment.sketch.increment(isbn);
+            Node node = segment.nodes.get(isbn);
+            if (node != null) {
+                segment.moveToFront(node);
+                hits.increment();
+                return node.book;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        misses.increment();
+        Book book = backingStore.get(isbn);
+        if (book != null) {
+            admit(segment, book);
+        }
+        return book;
+    }
+
+    @Override
+    public boolean contains(long isbn) {
+        Segment segment = segmentFor(isbn);
+        segment.lock.lock();
+        try {
+            if (segment.nodes.containsKey(isbn)) {
+                return true;
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        return backingStore.contains(isbn);
+    }
+
+    @Override
+    public boolean add(Book book) {
+        // New books earn their place in the cache like any other book, by being asked for
+        return backingStore.add(book);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return backingStore.isReadOnly();
+    }
+
+    @Override
+    public int size() {
+        return backingStore.size();
+    }
+
+    @Override
+    public long nextIsbn(long afterIsbn) {
+        return backingStore.nextIsbn(afterIsbn);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Book> action) {
+        // A full scan would only churn the cache, so it goes straight to the backing store
+        backingStore.forEach(action);
+    }
+
+    /**
+     * Returns the number of lookups answered from memory.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to read the backing store.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of books evicted to make room for more popular ones.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of books read on a miss but not admitted, because they were
+     * asked for less often than the book they would have replaced.
+     *
+     * @return The number of rejected admissions.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Returns the number of books currently held in memory.
+     *
+     * @return The number of cached books.
+     */
+    public int getCachedCount() {
+        int cached = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                cached += segment.nodes.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return cached;
+    }
+
+    private void admit(Segment segment, Book book) {
+        long isbn = book.getIsbnValue();
+        segment.lock.lock();
+        try {
+            // Another thread may have read the same book meanwhile
+            if (segment.nodes.containsKey(isbn)) {
+                return;
+            }
+            if (segment.nodes.size() >= segment.capacity) {
+                Node victim = segment.head.prev;
+                if (segment.sketch.frequency(isbn) <= segment.sketch.frequency(victim.isbn)) {
+                    rejections.increment();
+                    return;
+                }
+                segment.unlink(victim);
+                segment.nodes.remove(victim.isbn);
+                evictions.increment();
+            }
+            Node node = new Node(isbn, book);
+            segment.linkFirst(node);
+            segment.nodes.put(isbn, node);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private Segment segmentFor(long isbn) {
+        // The high bits, as the low bits of the same hash pick the slot within the segment's map
+        return segments[(LongObjectHashMap.mix(isbn) >>> 16) & mask];
+    }
+
+    /**
+     * One lock's share of the cache: its books, in LRU order, and its frequency sketch.
+     */
+    private static final class Segment {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final int capacity;
+        final LongObjectHashMap<Node> nodes;
+        final FrequencySketch sketch;
+        // Sentinel of the circular LRU list, head.next is the most and head.prev the least recently used
+        final Node head = new Node(0, null);
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.nodes = new LongObjectHashMap<>(capacity);
+            this.sketch = new FrequencySketch(capacity);
+            head.prev = head;
+            head.next = head;
+        }
+
+        void linkFirst(Node node) {
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+        }
+
+        void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+        }
+
+        void moveToFront(Node node) {
+            if (head.next != node) {
+                unlink(node);
+                linkFirst(node);
+            }
+        }
+    }
+
+    private static final class Node {
+
+        final long isbn;
+        final Book book;
+        Node prev;
+        Node next;
+
+        Node(long isbn, Book book) {
+            this.isbn = isbn;
+            this.book = book;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package library.cache;
+
+/**
+ * An approximate count of how often each key was asked for lately, used to decide
+ * whether a new entry is worth evicting an old one for.
+ *
+ * This is a count-min sketch of 4-bit counters packed sixteen to a long: each key
+ * increments four counters chosen by four hashes, and its frequency is the smallest
+ * of them. Once the sketch has counted ten times its capacity, every counter is
+ * halved, so keys that were popular long ago fade out.
+ *
+ * This class is not thread-safe; callers must guard it with their own lock.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Creates a sketch sized for the number of entries the cache holds.
+     *
+     * @param capacity The maximum number of cached entries.
+     */
+    FrequencySketch(int capacity) {
+        int size = Integer.highestOneBit(Math.max(64, capacity) - 1) << 1;
+        this.table = new long[size];
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * Returns the estimated number of recent requests for a key.
+     *
+     * @param key The key.
+     * @return The estimate, between 0 and 15.
+     */
+    int frequency(long key) {
+        int hash = spread(key);
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, (int) (table[indexOf(hash, i)] >>> offsetOf(hash, i)) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+    /**
+     * Counts one request for a key.
+     *
+     * @param key The key.
+     */
+    void increment(long key) {
+        int hash = spread(key);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int offset = offsetOf(hash, i);
+            if (((table[index] >>> offset) & MAX_COUNT) < MAX_COUNT) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    // Independent of the hash that picks the cache segment, so keys of one segment still spread over the table
+    private static int spread(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    // Bit offset of the counter within its long, a different one for each hash
+    private static int offsetOf(int hash, int i) {
+        return ((hash >>> (i << 3)) & 15) << 2;
+    }
+}
@@ -0,0 +1,63 @@
+package library.events;
+
+import library.Book;
+import library.Loan;
+
+/**
+ * One change to a library, numbered by its position in a {@link ChangeStream}.
+ */
+public final class ChangeEvent {
+
+    /**
+     * The kinds of change.
+     */
+    public enum Type {
+        BOOK_ADDED,
+        BOOK_BORROWED,
+        BOOK_RETURNED,
+        BOOK_REMOVED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final Book book;
+    private final Loan loan;
+
+    ChangeEvent(long sequence, Type type, Book book, Loan loan) {
+        this.sequence = sequence;
+        this.type = type;
+        this.book = book;
+        this.loan = loan;
+    }
+
+    /**
+     * Returns the position of the event in its stream, counting from 0 without gaps.
+     *
+     * @return The sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Returns the loan that was started or ended.
+     *
+     * @return The loan, or null for an added or removed book.
+     */
+    public Loan getLoan() {
+        return loan;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChangeEvent[ %d %s ISBN = %s]", sequence, type, book.getIsbn());
+    }
+}
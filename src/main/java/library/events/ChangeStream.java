@@ -0,0 +1,225 @@
+package library.events;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import library.Book;
+import library.Library;
+import library.LibraryListener;
+import library.Loan;
+
+/**
+ * A bounded ring of the most recent changes to a library, for downstream systems
+ * that want to follow the library instead of polling and diffing its listings.
+ *
+ * Every add, borrow and return is numbered with the next sequence number and written
+ * to the slot that number maps to. Writers claim numbers with a single atomic
+ * increment and never wait for readers: once the ring is full, each new event takes
+ * the place of the oldest one. Since the events are written from the library's
+ * listener, under the stripe lock, the events of any one ISBN are numbered in the
+ * order the changes were applied.
+ *
+ * Any number of readers follow the stream through their own {@link Subscription},
+ * which is nothing but a position, so readers cost the writers nothing. A reader
+ * drains events in batches and may save its position to resume from later. A reader
+ * that falls more than the capacity behind loses the overwritten events; it skips to
+ * the oldest event still held and counts what it missed, so it knows to resynchronize.
+ *
+ * Each slot holds an immutable event carrying its own sequence number, which tells a
+ * reader whether the slot has been written yet for the number it is waiting on, or
+ * already overwritten by a later one. A writer only ever replaces an older event, so
+ * one that stalls between claiming its number and storing its event until the ring
+ * has come round again drops its event, which readers then count as lost, instead
+ * of burying the newer event in that slot.
+ */
+public class ChangeStream implements LibraryListener {
+
+    private final Library library;
+    private final AtomicReferenceArray<ChangeEvent> slots;
+    private final int mask;
+    // The sequence number the next event will take
+    private final AtomicLong next = new AtomicLong();
+
+    private ChangeStream(Library library, int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity should be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        this.library = library;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Starts publishing the changes of a library, from the next one on.
+     *
+     * @param library The library to follow.
+     * @param capacity The number of events kept for readers, rounded up to a power of two.
+     * @return The stream.
+     */
+    public static ChangeStream attach(Library library, int capacity) {
+        ChangeStream stream = new ChangeStream(library, capacity);
+        library.addListener(stream);
+        return stream;
+    }
+
+    /**
+     * Stops publishing the library's changes. Events already published can still be read.
+     */
+    public void detach() {
+        library.removeListener(this);
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * Returns the sequence number the next event will take, which is also the number of
+     * events published so far. A subscription from this position sees only new events.
+     *
+     * @return The next sequence number.
+     */
+    public long nextSequence() {
+        return next.get();
+    }
+
+    /**
+     * Returns the sequence number of the oldest event the ring may still hold.
+     *
+     * @return The oldest retained sequence number.
+     */
+    public long oldestSequence() {
+        return Math.max(0, next.get() - slots.length());
+    }
+
+    /**
+     * Starts reading at a given position, such as one saved by an earlier reader.
+     *
+     * @param sequence The sequence number of the first event to read.
+     * @return A subscription positioned at that event.
+     */
+    public Subscription subscribe(long sequence) {
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Sequence should not be negative");
+        }
+        return new Subscription(sequence);
+    }
+
+    /**
+     * Starts reading at the next event to be published.
+     *
+     * @return A subscription that sees only later events.
+     */
+    public Subscription subscribe() {
+        return subscribe(nextSequence());
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        publish(ChangeEvent.Type.BOOK_ADDED, book, null);
+    }
+
+    @Override
+    public void bookBorrowed(Loan loan) {
+        publish(ChangeEvent.Type.BOOK_BORROWED, loan.getBook(), loan);
+    }
+
+    @Override
+    public void bookReturned(Loan loan) {
+        publish(ChangeEvent.Type.BOOK_RETURNED, loan.getBook(), loan);
+    }
+
+    @Override
+    public void bookRemoved(Book book) {
+        publish(ChangeEvent.Type.BOOK_REMOVED, book, null);
+    }
+
+    private void publish(ChangeEvent.Type type, Book book, Loan loan) {
+        store(new ChangeEvent(next.getAndIncrement(), type, book, loan));
+    }
+
+    /**
+     * Writes an event to its slot unless the slot already holds a later one.
+     *
+     * @param event The event, numbered with a sequence number claimed from next.
+     */
+    void store(ChangeEvent event) {
+        int slot = (int) event.getSequence() & mask;
+        while (true) {
+            ChangeEvent current = slots.get(slot);
+            if (current != null && current.getSequence() > event.getSequence()) {
+                // The ring came round while this writer stalled, so its event is already lost
+                return;
+            }
+            if (slots.compareAndSet(slot, current, event)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * One reader's position in the stream. A subscription is meant for a single thread.
+     */
+    public final class Subscription {
+
+        private long position;
+        private long lost;
+
+        Subscription(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Returns the sequence number of the next event this subscription reads. Save it
+         * to resume later with {@link ChangeStream#subscribe(long)}.
+         *
+         * @return The position.
+         */
+        public long position() {
+            return position;
+        }
+
+        /**
+         * Returns the number of events this subscription skipped because they were
+         * overwritten before it read them.
+         *
+         * @return The number of lost events.
+         */
+        public long lost() {
+            return lost;
+        }
+
+        /**
+         * Hands the published events from the current position to a handler, in order,
+         * and moves past them. Returns at once if there is nothing to read.
+         *
+         * @param handler Receives each event.
+         * @param maxEvents The most events to hand over.
+         * @return The number of events handed over.
+         */
+        public int drain(Consumer<? super ChangeEvent> handler, int maxEvents) {
+            int drained = 0;
+            while (drained < maxEvents) {
+                ChangeEvent event = slots.get((int) position & mask);
+                if (event == null || event.getSequence() < position) {
+                    // Not written yet
+                    break;
+                }
+                if (event.getSequence() > position) {
+                    // Overwritten, so skip to the oldest event that may still be there
+                    long oldest = oldestSequence();
+                    lost += oldest - position;
+                    position = oldest;
+                    continue;
+                }
+                handler.accept(event);
+                position++;
+                drained++;
+            }
+            return drained;
+        }
+    }
+}
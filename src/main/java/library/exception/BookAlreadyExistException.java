@@ -4,4 +4,8 @@ public class BookAlreadyExistException extends Exception {
     public BookAlreadyExistException(String message) {
         super(message);
     }
+
+    public BookAlreadyExistException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
@@ -4,4 +4,8 @@ public class BookNotAvailableException extends Exception {
     public BookNotAvailableException(String message) {
         super(message);
     }
-}
\ No newline at end of file
+
+    public BookNotAvailableException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+}
@@ -4,4 +4,8 @@ public class BookNotBorrowedException extends Exception {
     public BookNotBorrowedException (String message) {
         super(message);
     }
+
+    public BookNotBorrowedException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
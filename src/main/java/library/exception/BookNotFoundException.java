@@ -4,4 +4,8 @@ public class BookNotFoundException extends Exception {
     public BookNotFoundException(String message) {
         super(message);
     }
+
+    public BookNotFoundException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
@@ -3,5 +3,9 @@ package library.exception;
 public class InvalidIsbnException extends  Exception {
     public InvalidIsbnException (String message) {
         super(message);
-    }    
-}
\ No newline at end of file
+    }
+
+    public InvalidIsbnException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+}
@@ -0,0 +1,26 @@
+package library.io;
+
+import java.nio.file.Path;
+
+/**
+ * The file formats a catalog can be imported from.
+ */
+public enum CatalogFormat {
+
+    /** One book per line: isbn,title,author,publishYear, with an optional header row. */
+    CSV,
+
+    /** One JSON object per line with isbn, title, author and publishYear fields. */
+    NDJSON;
+
+    /**
+     * Picks the format from the file extension.
+     *
+     * @param file The catalog file.
+     * @return NDJSON for .ndjson and .jsonl files, CSV otherwise.
+     */
+    public static CatalogFormat forFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl") ? NDJSON : CSV;
+    }
+}
@@ -0,0 +1,258 @@
+package library.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import library.Book;
+import library.BookValidator;
+import library.Library;
+import library.exception.InvalidIsbnException;
+
+/**
+ * Loads a catalog file into a {@link Library}.
+ *
+ * The file is streamed in batches of lines, so it never has to fit in memory. Each
+ * batch is parsed and validated in parallel across cores and then inserted with
+ * {@link Library#addBooks}, which takes each stripe lock once per batch. Rows that
+ * cannot be imported are collected in the {@link ImportReport} and do not stop the load.
+ *
+ * Rows are read one line at a time, so CSV fields may be quoted but must not span lines.
+ */
+public class CatalogImporter {
+
+    static final int DEFAULT_BATCH_SIZE = 8192;
+
+    private static final String[] FIELDS = {"isbn", "title", "author", "publishYear"};
+
+    private final Library library;
+    private final int batchSize;
+
+    public CatalogImporter(Library library) {
+        this(library, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param library The library to add the books to.
+     * @param batchSize The number of rows validated and inserted together.
+     */
+    public CatalogImporter(Library library, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size should be at least 1");
+        }
+        this.library = library;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports a catalog file, picking the format from its extension.
+     *
+     * @param file The CSV or NDJSON catalog file.
+     * @return The import report.
+     * @throws IOException if the file cannot be read.
+     */
+    public ImportReport importFile(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, CatalogFormat.forFile(file));
+        }
+    }
+
+    /**
+     * Imports a catalog from a stream of rows.
+     *
+     * @param in The catalog rows.
+     * @param format The format of the rows.
+     * @return The import report.
+     * @throws IOException if the rows cannot be read.
+     */
+    public ImportReport importFrom(Reader in, CatalogFormat format) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+
+        long imported = 0;
+        List<ImportReport.Rejection> rejections = new ArrayList<>();
+        String[] lines = new String[batchSize];
+        // Line numbers are kept per row so the report matches the file despite skipped lines
+        long[] lineNumbers = new long[batchSize];
+        long lineNumber = 0;
+        int count = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || (lineNumber == 1 && format == CatalogFormat.CSV && isCsvHeader(line))) {
+                continue;
+            }
+            lines[count] = line;
+            lineNumbers[count] = lineNumber;
+            if (++count == batchSize) {
+                imported += importBatch(lines, lineNumbers, count, format, rejections);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            imported += importBatch(lines, lineNumbers, count, format, rejections);
+        }
+
+        return new ImportReport(imported, rejections);
+    }
+
+    /**
+     * Validates a batch of rows in parallel and inserts the valid ones.
+     *
+     * @return The number of books added.
+     */
+    private long importBatch(String[] lines, long[] lineNumbers, int count, CatalogFormat format,
+                             List<ImportReport.Rejection> rejections) {
+
+        // Each slot ends up holding either a Book or a Rejection
+        Object[] results = new Object[count];
+        IntStream.range(0, count).parallel().forEach(i ->
+                results[i] = parseRow(lines[i], lineNumbers[i], format));
+
+        List<Book> books = new ArrayList<>(count);
+        for (Object result : results) {
+            if (result instanceof Book) {
+                books.add((Book) result);
+            }
+        }
+
+        Set<Book> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        duplicates.addAll(library.addBooks(books));
+
+        // Report rejections in file order
+        for (int i = 0; i < count; i++) {
+            if (results[i] instanceof ImportReport.Rejection) {
+                rejections.add((ImportReport.Rejection) results[i]);
+            } else if (duplicates.contains(results[i])) {
+                rejections.add(new ImportReport.Rejection(lineNumbers[i], ImportReport.Reason.DUPLICATE_ISBN,
+                        "Book with the given ISBN already exists in the library"));
+            }
+        }
+        return books.size() - duplicates.size();
+    }
+
+    private static Object parseRow(String line, long lineNumber, CatalogFormat format) {
+        String[] fields = new String[FIELDS.length];
+        boolean parsed = format == CatalogFormat.CSV
+                ? parseCsvLine(line, fields)
+                : FlatJson.parseObject(line, FIELDS, fields) && fields[0] != null && fields[3] != null;
+        if (!parsed) {
+            return new ImportReport.Rejection(lineNumber, ImportReport.Reason.MALFORMED_ROW, "Row could not be parsed");
+        }
+
+        long isbn = BookValidator.validateIsbn(fields[0]);
+        if (isbn == BookValidator.WRONG_LENGTH) {
+            return new ImportReport.Rejection(lineNumber, ImportReport.Reason.INVALID_ISBN,
+                    "Please provide a valid ISBN number (must be 13 characters long)");
+        } else if (isbn == BookValidator.BAD_CHECKSUM) {
+            return new ImportReport.Rejection(lineNumber, ImportReport.Reason.INVALID_ISBN, "Invalid ISBN checksum");
+        }
+
+        int publishYear = parseYear(fields[3]);
+        int yearStatus = BookValidator.validatePublishYear(publishYear);
+        if (yearStatus == BookValidator.YEAR_IN_FUTURE) {
+            return new ImportReport.Rejection(lineNumber, ImportReport.Reason.INVALID_PUBLISH_YEAR,
+                    "Publish year should not be in the future");
+        } else if (yearStatus != BookValidator.VALID_YEAR) {
+            return new ImportReport.Rejection(lineNumber, ImportReport.Reason.INVALID_PUBLISH_YEAR,
+                    "Publish year should be 4 digits long");
+        }
+
+        try {
+            return new Book(fields[0], nullToEmpty(fields[1]), nullToEmpty(fields[2]), publishYear);
+        } catch (InvalidIsbnException | IllegalArgumentException e) {
+            return new ImportReport.Rejection(lineNumber, ImportReport.Reason.INVALID_ISBN, e.getMessage());
+        }
+    }
+
+    /**
+     * Splits a CSV row into exactly four fields, honouring double-quoted fields.
+     *
+     * @return false if the row does not have four fields or has an unterminated quote.
+     */
+    static boolean parseCsvLine(String line, String[] fields) {
+        int field = 0;
+        int i = 0;
+        int length = line.length();
+        while (true) {
+            if (field == fields.length) {
+                return false;
+            }
+            StringBuilder value = new StringBuilder();
+            if (i < length && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        return false;
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        // A doubled quote is an escaped quote, a single one closes the field
+                        if (i < length && line.charAt(i) == '"') {
+                            value.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        value.append(c);
+                    }
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    return false;
+                }
+            } else {
+                while (i < length && line.charAt(i) != ',') {
+                    value.append(line.charAt(i++));
+                }
+            }
+            fields[field++] = value.toString().trim();
+
+            if (i >= length) {
+                return field == fields.length;
+            }
+            // Skip the comma
+            i++;
+        }
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return line.trim().regionMatches(true, 0, "isbn", 0, 4);
+    }
+
+    /**
+     * Parses a year without throwing.
+     *
+     * @return The year, or -1 if the text is not a number.
+     */
+    private static int parseYear(String text) {
+        int length = text.length();
+        if (length == 0 || length > 9) {
+            return -1;
+        }
+        int year = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            year = year * 10 + digit;
+        }
+        return year;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
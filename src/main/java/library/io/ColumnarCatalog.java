@@ -0,0 +1,294 @@
+package library.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import library.Book;
+import library.BookStore;
+import library.Isbn;
+
+/**
+ * A read-only catalog held on the heap column by column instead of as one object per book.
+ *
+ * The packed ISBNs are kept in ascending order in a long[], the publish years in a
+ * short[] and the titles and authors as references into a single array of UTF-8
+ * bytes, in which every distinct string is stored once. A book therefore costs
+ * about 18 bytes plus its share of the distinct strings, against the three strings,
+ * their byte arrays and the object header of a {@link Book}, and the whole catalog
+ * is a handful of arrays for the garbage collector to trace.
+ *
+ * Books are handed out as views created on demand: a lookup is a binary search over
+ * the ISBNs, and the returned book decodes its title and author on first use. The
+ * layout is that of {@link MappedCatalog}, kept in memory, so a catalog is built
+ * once from all its books; as a {@link BookStore} it is read-only.
+ */
+public final class ColumnarCatalog implements BookStore {
+
+    // The size of an array header, used to estimate the footprint
+    private static final int ARRAY_HEADER = 16;
+
+    private final long[] isbns;
+    private final short[] years;
+    // The distinct string each title and author refers to
+    private final int[] titles;
+    private final int[] authors;
+    // The copies of each book, or null if every book has a single copy
+    private final int[] copies;
+    // Distinct string i is arena[starts[i]] up to arena[starts[i + 1]]
+    private final int[] starts;
+    private final byte[] arena;
+
+    private ColumnarCatalog(long[] isbns, short[] years, int[] titles, int[] authors, int[] copies,
+                            int[] starts, byte[] arena) {
+        this.isbns = isbns;
+        this.years = years;
+        this.titles = titles;
+        this.authors = authors;
+        this.copies = copies;
+        this.starts = starts;
+        this.arena = arena;
+    }
+
+    /**
+     * Lays out books column by column.
+     *
+     * @param books The books, in any order and with distinct ISBNs.
+     * @return The catalog.
+     */
+    public static ColumnarCatalog of(Collection<? extends Book> books) {
+        List<Book> sorted = new ArrayList<>(books);
+        sorted.sort(Comparator.comparingLong(Book::getIsbnValue));
+        int size = sorted.size();
+
+        long[] isbns = new long[size];
+        short[] years = new short[size];
+        int[] titles = new int[size];
+        int[] authors = new int[size];
+        int[] copies = null;
+        Arena strings = new Arena();
+        long previous = -1;
+        for (int i = 0; i < size; i++) {
+            Book book = sorted.get(i);
+            if (book.getIsbnValue() == previous) {
+                throw new IllegalArgumentException("Duplicate ISBN " + book.getIsbn());
+            }
+            previous = book.getIsbnValue();
+            isbns[i] = previous;
+            years[i] = (short) book.getPublishYear();
+            titles[i] = strings.intern(book.getTitle());
+            authors[i] = strings.intern(book.getAuthor());
+            if (book.getCopies() != 1) {
+                if (copies == null) {
+                    copies = new int[size];
+                    Arrays.fill(copies, 1);
+                }
+                copies[i] = book.getCopies();
+            }
+        }
+        return new ColumnarCatalog(isbns, years, titles, authors, copies,
+                Arrays.copyOf(strings.starts, strings.count + 1), Arrays.copyOf(strings.bytes, strings.length()));
+    }
+
+    /**
+     * Returns the number of books in the catalog.
+     *
+     * @return The number of books.
+     */
+    @Override
+    public int size() {
+        return isbns.length;
+    }
+
+    /**
+     * Returns the number of distinct titles and authors the catalog stores.
+     *
+     * @return The number of distinct strings.
+     */
+    public int distinctStrings() {
+        return starts.length - 1;
+    }
+
+    /**
+     * Estimates the heap the catalog takes up, counting every array with its header.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long estimatedBytes() {
+        long bytes = 6L * ARRAY_HEADER + isbns.length * 8L + years.length * 2L
+                + titles.length * 4L + authors.length * 4L + starts.length * 4L + arena.length;
+        return copies == null ? bytes : bytes + ARRAY_HEADER + copies.length * 4L;
+    }
+
+    /**
+     * Finds the position of an ISBN by binary search.
+     *
+     * @param isbn The packed ISBN.
+     * @return The index of the ISBN, or (-(insertion point) - 1) if it is absent.
+     */
+    public int indexOf(long isbn) {
+        return Arrays.binarySearch(isbns, isbn);
+    }
+
+    @Override
+    public boolean contains(long isbn) {
+        return indexOf(isbn) >= 0;
+    }
+
+    @Override
+    public boolean add(Book book) {
+        throw new UnsupportedOperationException("Columnar catalogs are read-only");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public long nextIsbn(long afterIsbn) {
+        int index = indexOf(afterIsbn);
+        index = index >= 0 ? index + 1 : -(index + 1);
+        return index < isbns.length ? isbns[index] : Isbn.INVALID;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Book> action) {
+        for (int i = 0; i < isbns.length; i++) {
+            action.accept(bookAt(i));
+        }
+    }
+
+    @Override
+    public Spliterator<Book> spliterator() {
+        return IntStream.range(0, isbns.length).mapToObj(this::bookAt).spliterator();
+    }
+
+    /**
+     * Retrieves a book by its packed ISBN.
+     *
+     * @param isbn The packed ISBN.
+     * @return A view of the book, or null if it is not in the catalog.
+     */
+    @Override
+    public Book get(long isbn) {
+        int index = indexOf(isbn);
+        return index < 0 ? null : bookAt(index);
+    }
+
+    /**
+     * Returns the packed ISBN at a position.
+     *
+     * @param index The position, between 0 and size() - 1, in ascending ISBN order.
+     * @return The packed ISBN.
+     */
+    public long isbnAt(int index) {
+        return isbns[index];
+    }
+
+    /**
+     * Returns the book at a position.
+     *
+     * @param index The position, between 0 and size() - 1, in ascending ISBN order.
+     * @return A view of the book.
+     */
+    public Book bookAt(int index) {
+        return new ColumnarBook(this, index);
+    }
+
+    private String stringAt(int id) {
+        return new String(arena, starts[id], starts[id + 1] - starts[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The distinct strings seen while building a catalog, appended to a growing byte array.
+     */
+    private static final class Arena {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        int[] starts = new int[1024];
+        byte[] bytes = new byte[1 << 16];
+        int count;
+
+        int intern(String value) {
+            Integer id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            int start = length();
+            if ((long) start + encoded.length > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Catalog strings do not fit in one array");
+            }
+            if (start + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(start + encoded.length, (int) Math.min(bytes.length * 2L, Integer.MAX_VALUE - 8)));
+            }
+            System.arraycopy(encoded, 0, bytes, start, encoded.length);
+            if (count + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            starts[count + 1] = start + encoded.length;
+            ids.put(value, count);
+            return count++;
+        }
+
+        int length() {
+            return starts[count];
+        }
+    }
+
+    /**
+     * A view of one row of the catalog, decoding its strings only when they are asked for.
+     */
+    private static final class ColumnarBook extends Book {
+
+        private final ColumnarCatalog catalog;
+        private final int index;
+        private String isbn;
+        private String title;
+        private String author;
+
+        ColumnarBook(ColumnarCatalog catalog, int index) {
+            super(catalog.isbns[index], null, null, null, catalog.years[index]);
+            this.catalog = catalog;
+            this.index = index;
+        }
+
+        @Override
+        public String getIsbn() {
+            if (isbn == null) {
+                isbn = Isbn.toString(getIsbnValue());
+            }
+            return isbn;
+        }
+
+        @Override
+        public String getTitle() {
+            if (title == null) {
+                title = catalog.stringAt(catalog.titles[index]);
+            }
+            return title;
+        }
+
+        @Override
+        public String getAuthor() {
+            if (author == null) {
+                author = catalog.stringAt(catalog.authors[index]);
+            }
+            return author;
+        }
+
+        @Override
+        public int getCopies() {
+            return catalog.copies == null ? 1 : catalog.copies[index];
+        }
+    }
+}
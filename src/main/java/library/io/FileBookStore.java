@@ -0,0 +1,247 @@
+package library.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import library.Book;
+import library.BookStore;
+import library.Isbn;
+
+/**
+ * A book store that keeps its books in an append-only file and only their
+ * locations in memory.
+ *
+ * Each book is written as one record framed like a journal record: its length, a
+ * CRC32 of the payload and the payload, which holds the packed ISBN, publish year,
+ * title, author and number of copies. Records written before copies were stored
+ * end after the author and are read as single copies. Opening the store scans the file once to
+ * rebuild the index from ISBN to record, dropping a record torn by a crash. A
+ * lookup is then one positional read, which any number of threads can do at once,
+ * so the heap holds an index entry per book instead of the book itself. Put a
+ * {@link library.cache.CachingBookStore} in front of it to keep the hot titles in memory.
+ *
+ * Appends are handed to the OS but only forced to the device by {@link #sync()}
+ * and {@link #close()}.
+ */
+public class FileBookStore implements BookStore, Closeable {
+
+    private static final int MAX_RECORD_LENGTH = 1 << 24;
+
+    private final FileChannel channel;
+    // Maps each packed ISBN to the position of its payload, shifted left 24 bits, ored with its length
+    private final ConcurrentNavigableMap<Long, Long> index = new ConcurrentSkipListMap<>();
+    // Guarded by this
+    private long end;
+
+    private FileBookStore(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a store, creating the file if it does not exist yet.
+     *
+     * @param file The store file.
+     * @return The store.
+     * @throws IOException if the file cannot be opened or read.
+     */
+    public static FileBookStore open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileBookStore store = new FileBookStore(channel);
+            store.load();
+            return store;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Book get(long isbn) {
+        Long location = index.get(isbn);
+        if (location == null) {
+            return null;
+        }
+        try {
+            return read(location);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean contains(long isbn) {
+        return index.containsKey(isbn);
+    }
+
+    @Override
+    public synchronized boolean add(Book book) {
+        if (index.containsKey(book.getIsbnValue())) {
+            return false;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            // Leave room for the length and the checksum, filled in once the payload is known
+            out.writeLong(0);
+            out.writeLong(book.getIsbnValue());
+            out.writeShort(book.getPublishYear());
+            out.writeUTF(book.getTitle());
+            out.writeUTF(book.getAuthor());
+            out.writeInt(book.getCopies());
+
+            ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+            int length = record.capacity() - 8;
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 8, length);
+            record.putInt(0, length);
+            record.putInt(4, (int) crc.getValue());
+
+            long position = end;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            index.put(book.getIsbnValue(), (end + 8) << 24 | length);
+            end = position;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public long nextIsbn(long afterIsbn) {
+        Long next = index.higherKey(afterIsbn);
+        return next == null ? Isbn.INVALID : next;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Book> action) {
+        try {
+            for (Long location : index.values()) {
+                action.accept(read(location));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces the books added so far to the device.
+     *
+     * @throws IOException if the file cannot be forced.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Rebuilds the index, truncating the file after the last intact record.
+     */
+    private synchronized void load() throws IOException {
+        long position = 0;
+        // The channel is not closed here, the stream only borrows it
+        InputStream in = Channels.newInputStream(channel);
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        byte[] payload = new byte[256];
+        CRC32 crc = new CRC32();
+        while (true) {
+            int length;
+            long checksum;
+            try {
+                length = data.readInt();
+                checksum = data.readInt() & 0xFFFFFFFFL;
+                if (length <= 0 || length >= MAX_RECORD_LENGTH) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[length];
+                }
+                data.readFully(payload, 0, length);
+            } catch (EOFException e) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(payload, 0, length);
+            if (crc.getValue() != checksum) {
+                break;
+            }
+            index.put(ByteBuffer.wrap(payload).getLong(0), (position + 8) << 24 | length);
+            position += 8 + length;
+        }
+
+        if (position < channel.size()) {
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    private Book read(long location) throws IOException {
+        long position = location >>> 24;
+        ByteBuffer payload = ByteBuffer.allocate((int) (location & (MAX_RECORD_LENGTH - 1)));
+        while (payload.hasRemaining()) {
+            if (channel.read(payload, position + payload.position()) < 0) {
+                throw new EOFException("Book store file is truncated");
+            }
+        }
+
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload.array()));
+        long isbn = record.readLong();
+        int publishYear = record.readShort();
+        String title = record.readUTF();
+        String author = record.readUTF();
+        int copies = record.available() > 0 ? record.readInt() : 1;
+        return new StoredBook(isbn, title, author, publishYear, copies);
+    }
+
+    /**
+     * A book read back from the file, which was validated before it was first added.
+     */
+    private static final class StoredBook extends Book {
+
+        private final int copies;
+
+        StoredBook(long isbnValue, String title, String author, int publishYear, int copies) {
+            super(isbnValue, Isbn.toString(isbnValue), title, author, publishYear);
+            this.copies = copies;
+        }
+
+        @Override
+        public int getCopies() {
+            return copies;
+        }
+    }
+}
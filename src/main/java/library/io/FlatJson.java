@@ -0,0 +1,223 @@
+package library.io;
+
+/**
+ * A minimal reader and writer for flat JSON objects whose values are strings or
+ * numbers, which is all the catalog formats need.
+ */
+public final class FlatJson {
+
+    private FlatJson() {
+    }
+
+    /**
+     * Reads the values of the given keys from a flat JSON object.
+     *
+     * Values of other keys are skipped, and numbers and literals are returned as their text.
+     *
+     * @param json The JSON object.
+     * @param keys The keys to read.
+     * @param values Receives the value of each key at the same index, or null if the key is absent.
+     * @return true if the input was a well-formed flat object, false otherwise.
+     */
+    public static boolean parseObject(String json, String[] keys, String[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = null;
+        }
+
+        int[] position = {skipWhitespace(json, 0)};
+        if (position[0] >= json.length() || json.charAt(position[0]) != '{') {
+            return false;
+        }
+        position[0] = skipWhitespace(json, position[0] + 1);
+        if (position[0] < json.length() && json.charAt(position[0]) == '}') {
+            return skipWhitespace(json, position[0] + 1) == json.length();
+        }
+
+        while (true) {
+            String key = readString(json, position);
+            if (key == null) {
+                return false;
+            }
+            position[0] = skipWhitespace(json, position[0]);
+            if (position[0] >= json.length() || json.charAt(position[0]) != ':') {
+                return false;
+            }
+            position[0] = skipWhitespace(json, position[0] + 1);
+
+            String value = position[0] < json.length() && json.charAt(position[0]) == '"'
+                    ? readString(json, position)
+                    : readLiteral(json, position);
+            if (value == null) {
+                return false;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    values[i] = value;
+                }
+            }
+
+            position[0] = skipWhitespace(json, position[0]);
+            if (position[0] >= json.length()) {
+                return false;
+            }
+            char separator = json.charAt(position[0]);
+            position[0] = skipWhitespace(json, position[0] + 1);
+            if (separator == '}') {
+                return position[0] == json.length();
+            } else if (separator != ',') {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Appends a string to the output as a quoted, escaped JSON string.
+     *
+     * @param out The output.
+     * @param value The string to write.
+     * @return The output.
+     */
+    public static StringBuilder appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Finds the end of the JSON object that starts at a position, such as one element
+     * of an array of flat objects, so it can be passed to {@link #parseObject}.
+     *
+     * @param json The JSON text.
+     * @param start The position of the opening brace.
+     * @return The position just after the closing brace, or -1 if the object is not closed.
+     */
+    public static int objectEnd(String json, int start) {
+        int depth = 0;
+        int[] position = {start};
+        while (position[0] < json.length()) {
+            char c = json.charAt(position[0]);
+            if (c == '"') {
+                if (readString(json, position) == null) {
+                    return -1;
+                }
+                continue;
+            }
+            position[0]++;
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return position[0];
+            }
+        }
+        return -1;
+    }
+
+    private static String readString(String json, int[] position) {
+        int i = position[0];
+        if (i >= json.length() || json.charAt(i) != '"') {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        i++;
+        while (i < json.length()) {
+            char c = json.charAt(i++);
+            if (c == '"') {
+                position[0] = i;
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (i >= json.length()) {
+                return null;
+            }
+            char escaped = json.charAt(i++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append(escaped);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 > json.length()) {
+                        return null;
+                    }
+                    try {
+                        value.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                    i += 4;
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private static String readLiteral(String json, int[] position) {
+        int start = position[0];
+        int i = start;
+        while (i < json.length()) {
+            char c = json.charAt(i);
+            if (c == ',' || c == '}' || Character.isWhitespace(c)) {
+                break;
+            }
+            i++;
+        }
+        if (i == start) {
+            return null;
+        }
+        position[0] = i;
+        return json.substring(start, i);
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,75 @@
+package library.io;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a catalog import: how many books were added and which rows were rejected.
+ */
+public class ImportReport {
+
+    /**
+     * Why a row was not imported.
+     */
+    public enum Reason {
+        MALFORMED_ROW,
+        INVALID_ISBN,
+        INVALID_PUBLISH_YEAR,
+        DUPLICATE_ISBN
+    }
+
+    /**
+     * A row that was not imported.
+     */
+    public static class Rejection {
+
+        private final long lineNumber;
+        private final Reason reason;
+        private final String message;
+
+        public Rejection(long lineNumber, Reason reason, String message) {
+            this.lineNumber = lineNumber;
+            this.reason = reason;
+            this.message = message;
+        }
+
+        // Getter methods for rejection attributes
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Line %d: %s (%s)", lineNumber, message, reason);
+        }
+    }
+
+    private final long imported;
+    private final List<Rejection> rejections;
+
+    public ImportReport(long imported, List<Rejection> rejections) {
+        this.imported = imported;
+        this.rejections = Collections.unmodifiableList(rejections);
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Retrieves the rejected rows, in file order.
+     *
+     * @return The rejected rows.
+     */
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+}
@@ -0,0 +1,373 @@
+package library.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import library.Book;
+import library.LibraryListener;
+import library.Loan;
+
+/**
+ * An append-only log of the changes made to a library.
+ *
+ * The journal listens to the library and encodes each change into an in-memory
+ * buffer while the change's stripe lock is held, so the log order matches the
+ * apply order for every ISBN. Writing and fsyncing happen later, in {@link #sync()},
+ * using group commit: the first thread to sync writes and forces everything
+ * buffered so far, and the threads that queued up behind it usually find their
+ * records already durable when they get the lock.
+ *
+ * Each record is framed as its length, a CRC32 of the payload and the payload, so
+ * a record torn by a crash is detected and dropped on recovery.
+ *
+ * A failed write or force leaves the end of the segment unknown, so the journal
+ * fails for good: the records it was writing are never reported durable, and every
+ * later sync rethrows the failure.
+ */
+public class Journal implements LibraryListener, Closeable {
+
+    static final byte BOOK_ADDED = 1;
+    static final byte BOOK_BORROWED = 2;
+    static final byte BOOK_RETURNED = 3;
+    static final byte BOOK_REMOVED = 4;
+
+    private final boolean fsync;
+
+    // Guards the buffer and the appended sequence
+    private final Object appendLock = new Object();
+    private Buffer pending = new Buffer();
+    private long appendedSequence;
+
+    // Held by the thread currently writing out the buffer
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile long durableSequence;
+    private FileChannel channel;
+    private long bytesWritten;
+    // The first write or force that failed, after which nothing more is written
+    private IOException failure;
+
+    private final ThreadLocal<long[]> lastAppendedByThread = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * Opens a new journal segment.
+     *
+     * @param file The segment file, which must not exist yet.
+     * @param fsync Whether {@link #sync()} forces the data to the device, or only hands it to the OS.
+     * @throws IOException if the file cannot be created.
+     */
+    public Journal(Path file, boolean fsync) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), fsync);
+    }
+
+    /**
+     * Writes a journal to an open channel, positioned where the records should start.
+     */
+    Journal(FileChannel channel, boolean fsync) {
+        this.fsync = fsync;
+        this.channel = channel;
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        append(BOOK_ADDED, book.getIsbnValue(), book.getTitle(), book.getAuthor(), book.getPublishYear(), book.getCopies(), 0, 0);
+    }
+
+    @Override
+    public void bookBorrowed(Loan loan) {
+        append(BOOK_BORROWED, loan.getBook().getIsbnValue(), loan.getPatronId(), null, 0, 0, loan.getBorrowedAt(), loan.getDueAt());
+    }
+
+    @Override
+    public void bookReturned(Loan loan) {
+        append(BOOK_RETURNED, loan.getBook().getIsbnValue(), loan.getPatronId(), null, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void bookRemoved(Book book) {
+        append(BOOK_REMOVED, book.getIsbnValue(), null, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Waits until every change this thread has made is durable.
+     *
+     * @throws IOException if the journal cannot be written.
+     */
+    public void sync() throws IOException {
+        awaitDurable(lastAppendedByThread.get()[0]);
+    }
+
+    /**
+     * Waits until every change made so far, by any thread, is durable.
+     *
+     * @throws IOException if the journal cannot be written.
+     */
+    public void syncAll() throws IOException {
+        long target;
+        synchronized (appendLock) {
+            target = appendedSequence;
+        }
+        awaitDurable(target);
+    }
+
+    /**
+     * Makes everything buffered so far durable and continues the log in a new segment.
+     *
+     * Call this while the library is locked, so the new segment starts exactly where
+     * a snapshot taken under the same lock ends.
+     *
+     * @param file The new segment file, which must not exist yet.
+     * @throws IOException if the current segment cannot be flushed or the new one created.
+     */
+    public void rotate(Path file) throws IOException {
+        syncLock.lock();
+        try {
+            flush();
+            FileChannel next = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            channel.close();
+            channel = next;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to the journal since it was opened.
+     *
+     * @return The number of bytes written.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncLock.lock();
+        try {
+            flush();
+        } finally {
+            channel.close();
+            syncLock.unlock();
+        }
+    }
+
+    private void append(byte type, long isbn, String first, String second, int number, int copies,
+                        long borrowedAt, long dueAt) {
+        synchronized (appendLock) {
+            pending.appendRecord(type, isbn, first, second, number, copies, borrowedAt, dueAt);
+            lastAppendedByThread.get()[0] = ++appendedSequence;
+        }
+    }
+
+    private void awaitDurable(long sequence) throws IOException {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            // Another thread may have written our records while we waited for the lock
+            if (durableSequence < sequence) {
+                flush();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Writes out and forces everything buffered so far. Callers must hold the sync lock.
+     */
+    private void flush() throws IOException {
+        if (failure != null) {
+            throw new IOException("Journal failed earlier and is no longer written", failure);
+        }
+        Buffer toWrite;
+        long upTo;
+        synchronized (appendLock) {
+            toWrite = pending;
+            upTo = appendedSequence;
+            pending = new Buffer();
+        }
+        if (toWrite.size() > 0) {
+            try {
+                ByteBuffer data = ByteBuffer.wrap(toWrite.array(), 0, toWrite.size());
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // Part of the buffer may be in the file, so retrying could tear the log
+                failure = e;
+                throw e;
+            }
+            bytesWritten += toWrite.size();
+        }
+        durableSequence = upTo;
+    }
+
+    /**
+     * Reads the records of a journal segment and applies them in order.
+     *
+     * Reading stops quietly at the first incomplete or corrupt record, which is
+     * what a crash in the middle of a write leaves behind.
+     *
+     * @param file The segment file.
+     * @param replay Receives each record.
+     * @return The number of records read.
+     * @throws IOException if the file cannot be read.
+     */
+    static long read(Path file, Replay replay) throws IOException {
+        long records = 0;
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            byte[] payload = new byte[256];
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                long checksum;
+                try {
+                    length = data.readInt();
+                    checksum = data.readInt() & 0xFFFFFFFFL;
+                    if (length <= 0 || length > (1 << 24)) {
+                        return records;
+                    }
+                    if (payload.length < length) {
+                        payload = new byte[length];
+                    }
+                    data.readFully(payload, 0, length);
+                } catch (EOFException e) {
+                    return records;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if (crc.getValue() != checksum) {
+                    return records;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload, 0, length));
+                byte type = record.readByte();
+                long isbn = record.readLong();
+                switch (type) {
+                    case BOOK_ADDED:
+                        String title = record.readUTF();
+                        String author = record.readUTF();
+                        int publishYear = record.readInt();
+                        // Segments written before books had copies end here
+                        int copies = record.available() > 0 ? record.readInt() : 1;
+                        replay.bookAdded(isbn, title, author, publishYear, copies);
+                        break;
+                    case BOOK_BORROWED:
+                        String patronId = record.readUTF();
+                        // Segments written before loans kept their dates end here
+                        if (record.available() > 0) {
+                            replay.bookBorrowed(isbn, patronId, record.readLong(), record.readLong());
+                        } else {
+                            replay.bookBorrowed(isbn, patronId);
+                        }
+                        break;
+                    case BOOK_RETURNED:
+                        replay.bookReturned(isbn, record.readUTF());
+                        break;
+                    case BOOK_REMOVED:
+                        replay.bookRemoved(isbn);
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record type " + type + " in " + file);
+                }
+                records++;
+            }
+        }
+    }
+
+    /**
+     * Receives the records of a journal segment.
+     */
+    interface Replay {
+
+        void bookAdded(long isbn, String title, String author, int publishYear, int copies) throws IOException;
+
+        /**
+         * Receives a loan recorded without its dates, which is dated when it is replayed.
+         */
+        void bookBorrowed(long isbn, String patronId) throws IOException;
+
+        void bookBorrowed(long isbn, String patronId, long borrowedAt, long dueAt) throws IOException;
+
+        void bookReturned(long isbn, String patronId) throws IOException;
+
+        void bookRemoved(long isbn) throws IOException;
+    }
+
+    /**
+     * A growable byte buffer that frames each record as it is appended.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        private final DataOutputStream out = new DataOutputStream(this);
+        private final CRC32 crc = new CRC32();
+
+        Buffer() {
+            super(4096);
+        }
+
+        void appendRecord(byte type, long isbn, String first, String second, int number, int copies,
+                          long borrowedAt, long dueAt) {
+            int start = count;
+            try {
+                // Leave room for the length and the checksum, filled in once the payload is known
+                out.writeLong(0);
+                out.writeByte(type);
+                out.writeLong(isbn);
+                if (type != BOOK_REMOVED) {
+                    out.writeUTF(first);
+                }
+                if (type == BOOK_ADDED) {
+                    out.writeUTF(second);
+                    out.writeInt(number);
+                    out.writeInt(copies);
+                } else if (type == BOOK_BORROWED) {
+                    out.writeLong(borrowedAt);
+                    out.writeLong(dueAt);
+                }
+            } catch (IOException e) {
+                // Writing to memory does not fail, except for strings too long to encode
+                count = start;
+                throw new UncheckedIOException(e);
+            }
+            int payloadStart = start + 8;
+            int length = count - payloadStart;
+            crc.reset();
+            crc.update(buf, payloadStart, length);
+            putInt(start, length);
+            putInt(start + 4, (int) crc.getValue());
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        private void putInt(int offset, int value) {
+            buf[offset] = (byte) (value >>> 24);
+            buf[offset + 1] = (byte) (value >>> 16);
+            buf[offset + 2] = (byte) (value >>> 8);
+            buf[offset + 3] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package library.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import library.Book;
+import library.BookStore;
+import library.Isbn;
+
+/**
+ * A read-only catalog stored in a fixed-layout binary file and read through a memory mapping.
+ *
+ * The file holds a header, the packed ISBNs in ascending order, the publish years,
+ * the number of copies of each book, the offsets of every title and author, and a
+ * heap of UTF-8 strings. Files written before copies were stored (version 1) have no
+ * copies section and are read as single copies. Opening the
+ * file only maps it, so even a catalog of millions of titles opens in milliseconds
+ * and stays off-heap: a lookup is a binary search over the mapped ISBNs, and the
+ * returned {@link Book} reads its title and author from the mapping on first use.
+ *
+ * The whole file is mapped at once, so it must be smaller than 2 GB. As a
+ * {@link BookStore} it is read-only.
+ */
+public final class MappedCatalog implements BookStore, Closeable {
+
+    private static final int MAGIC = 0x4C494243; // "LIBC"
+    private static final int VERSION = 2;
+    // The version before the copies section was added
+    private static final int VERSION_WITHOUT_COPIES = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private final FileChannel channel;
+    private final int size;
+    private final LongBuffer isbns;
+    private final ByteBuffer data;
+    private final int yearsOffset;
+    // Where the copies section starts, or -1 if the file has none
+    private final int copiesOffset;
+    private final int stringOffsetsOffset;
+    private final int heapOffset;
+
+    private MappedCatalog(FileChannel channel, MappedByteBuffer data) throws IOException {
+        this.channel = channel;
+        this.data = data;
+        int version = data.getInt(4);
+        if (data.getInt(0) != MAGIC || (version != VERSION && version != VERSION_WITHOUT_COPIES)) {
+            throw new IOException("Not a library catalog file");
+        }
+        this.size = data.getInt(8);
+        this.yearsOffset = HEADER_SIZE + size * 8;
+        if (version == VERSION) {
+            this.copiesOffset = align(yearsOffset + size * 2);
+            this.stringOffsetsOffset = align(copiesOffset + size * 4);
+        } else {
+            this.copiesOffset = -1;
+            this.stringOffsetsOffset = align(yearsOffset + size * 2);
+        }
+        this.heapOffset = stringOffsetsOffset + (2 * size + 1) * 4;
+        if ((long) heapOffset + data.getInt(heapOffset - 4) != data.capacity()) {
+            throw new IOException("Truncated library catalog file");
+        }
+
+        ByteBuffer view = data.duplicate();
+        view.position(HEADER_SIZE).limit(yearsOffset);
+        this.isbns = view.slice().asLongBuffer();
+    }
+
+    /**
+     * Maps a catalog file.
+     *
+     * @param file The catalog file written by {@link #write}.
+     * @return The catalog.
+     * @throws IOException if the file cannot be mapped or is not a catalog.
+     */
+    public static MappedCatalog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Library catalog file is larger than 2 GB: " + file);
+            }
+            return new MappedCatalog(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes books to a catalog file, replacing it atomically if it exists.
+     *
+     * @param file The catalog file.
+     * @param books The books, in any order and with distinct ISBNs.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(Path file, Collection<? extends Book> books) throws IOException {
+        List<Book> sorted = new ArrayList<>(books);
+        sorted.sort(Comparator.comparingLong(Book::getIsbnValue));
+        int size = sorted.size();
+
+        // First pass: the string offsets have to be known before the heap is written
+        int[] offsets = new int[2 * size + 1];
+        long heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            offsets[2 * i] = (int) heapSize;
+            heapSize += sorted.get(i).getTitle().getBytes(StandardCharsets.UTF_8).length;
+            offsets[2 * i + 1] = (int) heapSize;
+            heapSize += sorted.get(i).getAuthor().getBytes(StandardCharsets.UTF_8).length;
+            if (heapSize > Integer.MAX_VALUE) {
+                throw new IOException("Library catalog is too large for one file");
+            }
+        }
+        offsets[2 * size] = (int) heapSize;
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(size);
+            data.write(new byte[HEADER_SIZE - 12]);
+
+            long previous = -1;
+            for (Book book : sorted) {
+                if (book.getIsbnValue() == previous) {
+                    throw new IllegalArgumentException("Duplicate ISBN " + book.getIsbn());
+                }
+                previous = book.getIsbnValue();
+                data.writeLong(previous);
+            }
+            for (Book book : sorted) {
+                data.writeShort(book.getPublishYear());
+            }
+            int yearsEnd = HEADER_SIZE + size * 8 + size * 2;
+            data.write(new byte[align(yearsEnd) - yearsEnd]);
+            for (Book book : sorted) {
+                data.writeInt(book.getCopies());
+            }
+            int copiesEnd = align(yearsEnd) + size * 4;
+            data.write(new byte[align(copiesEnd) - copiesEnd]);
+            for (int offset : offsets) {
+                data.writeInt(offset);
+            }
+            for (Book book : sorted) {
+                data.write(book.getTitle().getBytes(StandardCharsets.UTF_8));
+                data.write(book.getAuthor().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the number of books in the catalog.
+     *
+     * @return The number of books.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the position of an ISBN by binary search.
+     *
+     * @param isbn The packed ISBN.
+     * @return The index of the ISBN, or (-(insertion point) - 1) if it is absent.
+     */
+    public int indexOf(long isbn) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = isbns.get(mid);
+            if (value < isbn) {
+                low = mid + 1;
+            } else if (value > isbn) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public boolean contains(long isbn) {
+        return indexOf(isbn) >= 0;
+    }
+
+    @Override
+    public boolean add(Book book) {
+        throw new UnsupportedOperationException("Mapped catalogs are read-only");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public long nextIsbn(long afterIsbn) {
+        int index = indexOf(afterIsbn);
+        index = index >= 0 ? index + 1 : -(index + 1);
+        return index < size ? isbns.get(index) : Isbn.INVALID;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Book> action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(bookAt(i));
+        }
+    }
+
+    @Override
+    public Spliterator<Book> spliterator() {
+        return IntStream.range(0, size).mapToObj(this::bookAt).spliterator();
+    }
+
+    /**
+     * Retrieves a book by its packed ISBN.
+     *
+     * @param isbn The packed ISBN.
+     * @return A view of the book, or null if it is not in the catalog.
+     */
+    @Override
+    public Book get(long isbn) {
+        int index = indexOf(isbn);
+        return index < 0 ? null : bookAt(index);
+    }
+
+    /**
+     * Returns the packed ISBN at a position.
+     *
+     * @param index The position, between 0 and size() - 1, in ascending ISBN order.
+     * @return The packed ISBN.
+     */
+    public long isbnAt(int index) {
+        return isbns.get(index);
+    }
+
+    /**
+     * Returns the book at a position.
+     *
+     * @param index The position, between 0 and size() - 1, in ascending ISBN order.
+     * @return A view of the book.
+     */
+    public Book bookAt(int index) {
+        return new MappedBook(this, index, isbns.get(index), data.getShort(yearsOffset + index * 2));
+    }
+
+    private int copiesAt(int index) {
+        return copiesOffset < 0 ? 1 : data.getInt(copiesOffset + index * 4);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The mapping itself stays valid until it is garbage collected
+        channel.close();
+    }
+
+    private String stringAt(int slot) {
+        int start = data.getInt(stringOffsetsOffset + slot * 4);
+        int end = data.getInt(stringOffsetsOffset + (slot + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = data.duplicate();
+        view.position(heapOffset + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    /**
+     * A book read from the mapping, decoding its strings only when they are asked for.
+     */
+    private static final class MappedBook extends Book {
+
+        private final MappedCatalog catalog;
+        private final int index;
+        private String isbn;
+        private String title;
+        private String author;
+
+        MappedBook(MappedCatalog catalog, int index, long isbnValue, int publishYear) {
+            super(isbnValue, null, null, null, publishYear);
+            this.catalog = catalog;
+            this.index = index;
+        }
+
+        @Override
+        public String getIsbn() {
+            if (isbn == null) {
+                isbn = Isbn.toString(getIsbnValue());
+            }
+            return isbn;
+        }
+
+        @Override
+        public String getTitle() {
+            if (title == null) {
+                title = catalog.stringAt(2 * index);
+            }
+            return title;
+        }
+
+        @Override
+        public String getAuthor() {
+            if (author == null) {
+                author = catalog.stringAt(2 * index + 1);
+            }
+            return author;
+        }
+
+        @Override
+        public int getCopies() {
+            return catalog.copiesAt(index);
+        }
+    }
+}
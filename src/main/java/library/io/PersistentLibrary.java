@@ -0,0 +1,382 @@
+package library.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import library.Book;
+import library.Isbn;
+import library.Library;
+import library.Loan;
+import library.LoanStatus;
+import library.Recovery;
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotAvailableException;
+import library.exception.BookNotBorrowedException;
+import library.exception.BookNotFoundException;
+import library.exception.InvalidIsbnException;
+
+/**
+ * A {@link Library} whose state survives restarts.
+ *
+ * Changes are recorded in a {@link Journal} that is split into numbered segments.
+ * A snapshot numbered N holds the whole state at the moment segment N was started,
+ * so recovery loads the newest snapshot and replays segment N and every later one.
+ * Older snapshots and segments are deleted once a newer snapshot is in place.
+ *
+ * The mutating methods return only once their change is durable. Changes made
+ * directly on {@link #getLibrary()}, such as a bulk import, are journaled too and
+ * become durable at the next {@link #sync()}.
+ */
+public class PersistentLibrary implements Closeable {
+
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final Path directory;
+    private final Library library;
+    private final Journal journal;
+    private long generation;
+    private ScheduledExecutorService snapshotScheduler;
+    // Why the last scheduled snapshot failed, until snapshot() or close() reports it
+    private IOException snapshotFailure;
+
+    private PersistentLibrary(Path directory, Library library, Journal journal, long generation) {
+        this.directory = directory;
+        this.library = library;
+        this.journal = journal;
+        this.generation = generation;
+    }
+
+    /**
+     * Opens the library stored in a directory, recovering its state, with fsync on every commit.
+     *
+     * @param directory The directory holding the snapshots and journal, created if missing.
+     * @return The recovered library.
+     * @throws IOException if the state cannot be read.
+     */
+    public static PersistentLibrary open(Path directory) throws IOException {
+        return open(directory, true);
+    }
+
+    /**
+     * Opens the library stored in a directory, recovering its state.
+     *
+     * @param directory The directory holding the snapshots and journal, created if missing.
+     * @param fsync Whether commits force the journal to the device.
+     * @return The recovered library.
+     * @throws IOException if the state cannot be read.
+     */
+    public static PersistentLibrary open(Path directory, boolean fsync) throws IOException {
+        Files.createDirectories(directory);
+
+        TreeMap<Long, Path> snapshots = list(directory, SNAPSHOT_PREFIX, ".bin");
+        TreeMap<Long, Path> journals = list(directory, JOURNAL_PREFIX, ".log");
+
+        // Start from the newest snapshot and replay every segment written since
+        long from = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+        Library library = Library.recover(recovery -> {
+            Journal.Replay replay = new LibraryReplay(recovery);
+            if (!snapshots.isEmpty()) {
+                SnapshotFile.read(snapshots.lastEntry().getValue(), replay);
+            }
+            for (Path segment : journals.tailMap(from, true).values()) {
+                Journal.read(segment, replay);
+            }
+        });
+
+        // Always continue in a fresh segment, never after a possibly torn tail
+        long last = Math.max(from, journals.isEmpty() ? 0 : journals.lastKey());
+        long generation = last + 1;
+        Journal journal = new Journal(segmentPath(directory, generation), fsync);
+        library.addListener(journal);
+        return new PersistentLibrary(directory, library, journal, generation);
+    }
+
+    /**
+     * Returns the underlying library, for reads and for changes that are synced later.
+     *
+     * @return The library.
+     */
+    public Library getLibrary() {
+        return library;
+    }
+
+    /**
+     * Adds a new book and waits until the change is durable.
+     *
+     * @param newBook The book to be added.
+     * @throws BookAlreadyExistException if a book with the given ISBN already exists.
+     * @throws UncheckedIOException if the journal cannot be written.
+     */
+    public void addBook(Book newBook) throws BookAlreadyExistException {
+        library.addBook(newBook);
+        commit();
+    }
+
+    /**
+     * Borrows a book on behalf of a patron and waits until the change is durable.
+     *
+     * @param patronId The ID of the patron borrowing the book.
+     * @param isbn The ISBN of the book to be borrowed.
+     * @throws BookNotAvailableException if the book is already borrowed
+     * @throws BookNotFoundException if book does not exist in the library.
+     * @throws UncheckedIOException if the journal cannot be written.
+     */
+    public void borrowBook(String patronId, String isbn) throws BookNotFoundException, BookNotAvailableException {
+        library.borrowBook(patronId, isbn);
+        commit();
+    }
+
+    /**
+     * Returns a book borrowed by a patron and waits until the change is durable.
+     *
+     * @param patronId The ID of the patron returning the book, or null to accept any borrower.
+     * @param isbn The ISBN of the book to be returned.
+     * @throws BookNotFoundException if the book does not exist in the library.
+     * @throws BookNotBorrowedException if the book is not borrowed by the patron
+     * @throws UncheckedIOException if the journal cannot be written.
+     */
+    public void returnBook(String patronId, String isbn) throws BookNotFoundException, BookNotBorrowedException {
+        library.returnBook(patronId, isbn);
+        commit();
+    }
+
+    /**
+     * Waits until every change made so far, including those made directly on the library, is durable.
+     *
+     * @throws IOException if the journal cannot be written.
+     */
+    public void sync() throws IOException {
+        journal.syncAll();
+    }
+
+    /**
+     * Writes a snapshot of the current state and deletes the files it makes obsolete.
+     *
+     * Writers are paused only while the state is copied and the journal moves to a
+     * new segment; the snapshot itself is written afterwards.
+     *
+     * @throws IOException if the snapshot cannot be written, or if a scheduled snapshot
+     *                     failed since the last call, in which case none is written.
+     */
+    public synchronized void snapshot() throws IOException {
+        throwSnapshotFailure();
+        writeSnapshot();
+    }
+
+    private synchronized void writeSnapshot() throws IOException {
+        List<Book> books = new ArrayList<>();
+        List<Loan> loans = new ArrayList<>();
+        long snapshotGeneration = generation + 1;
+        IOException[] failure = new IOException[1];
+
+        library.visitState(new Library.StateVisitor() {
+            @Override
+            public void visitBook(Book book) {
+                books.add(book);
+            }
+
+            @Override
+            public void visitLoan(Loan loan) {
+                loans.add(loan);
+            }
+
+            @Override
+            public void visitEnd() {
+                try {
+                    journal.rotate(segmentPath(directory, snapshotGeneration));
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        generation = snapshotGeneration;
+
+        SnapshotFile.write(directory.resolve(String.format("%s%016d.bin", SNAPSHOT_PREFIX, snapshotGeneration)), books, loans);
+
+        // Everything before the new snapshot is now redundant
+        for (Path old : list(directory, SNAPSHOT_PREFIX, ".bin").headMap(snapshotGeneration, false).values()) {
+            Files.deleteIfExists(old);
+        }
+        for (Path old : list(directory, JOURNAL_PREFIX, ".log").headMap(snapshotGeneration, false).values()) {
+            Files.deleteIfExists(old);
+        }
+    }
+
+    /**
+     * Takes a snapshot periodically on a background thread. A failed snapshot is
+     * counted in the library's metrics and retried next period, and the next call to
+     * {@link #snapshot()} or {@link #close()} throws it.
+     *
+     * @param period The time between snapshots.
+     * @param unit The unit of the period.
+     */
+    public synchronized void scheduleSnapshots(long period, TimeUnit unit) {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "library-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                // Keep the journal as the source of truth and try again next period
+                library.getMetrics().recordError(e);
+                synchronized (this) {
+                    snapshotFailure = e;
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops the scheduled snapshots and closes the journal.
+     *
+     * @throws IOException if the journal cannot be closed, or if a scheduled snapshot
+     *                     failed since the last call to {@link #snapshot()}.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure;
+        synchronized (this) {
+            if (snapshotScheduler != null) {
+                snapshotScheduler.shutdownNow();
+            }
+            failure = snapshotFailure;
+            snapshotFailure = null;
+        }
+        library.removeListener(journal);
+        try {
+            journal.close();
+        } catch (IOException e) {
+            if (failure != null) {
+                e.addSuppressed(failure);
+            }
+            throw e;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized void throwSnapshotFailure() throws IOException {
+        IOException failure = snapshotFailure;
+        if (failure != null) {
+            snapshotFailure = null;
+            throw failure;
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to the journal since the library was opened.
+     *
+     * @return The number of journal bytes written.
+     */
+    public long getJournalBytesWritten() {
+        return journal.getBytesWritten();
+    }
+
+    private void commit() {
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path segmentPath(Path directory, long generation) {
+        return directory.resolve(String.format("%s%016d.log", JOURNAL_PREFIX, generation));
+    }
+
+    /**
+     * Lists the numbered files with the given prefix and suffix, keyed by number.
+     */
+    private static TreeMap<Long, Path> list(Path directory, String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Applies snapshot and journal records to a library that is not journaled yet.
+     */
+    private static final class LibraryReplay implements Journal.Replay {
+
+        private final Recovery recovery;
+        private final Library library;
+
+        LibraryReplay(Recovery recovery) {
+            this.recovery = recovery;
+            this.library = recovery.getLibrary();
+        }
+
+        @Override
+        public void bookAdded(long isbn, String title, String author, int publishYear, int copies) throws IOException {
+            try {
+                library.addBook(new Book(Isbn.toString(isbn), title, author, publishYear, copies));
+            } catch (InvalidIsbnException | BookAlreadyExistException | IllegalArgumentException e) {
+                throw new IOException("Cannot replay adding " + Isbn.toString(isbn) + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void bookBorrowed(long isbn, String patronId) throws IOException {
+            // The borrowing limit was checked when the loan was made
+            checkRestored(isbn, recovery.restoreLoan(patronId, isbn));
+        }
+
+        @Override
+        public void bookBorrowed(long isbn, String patronId, long borrowedAt, long dueAt) throws IOException {
+            checkRestored(isbn, recovery.restoreLoan(patronId, isbn, borrowedAt, dueAt));
+        }
+
+        private static void checkRestored(long isbn, LoanStatus status) throws IOException {
+            if (status != LoanStatus.OK) {
+                throw new IOException("Cannot replay borrowing " + Isbn.toString(isbn) + ": " + status);
+            }
+        }
+
+        @Override
+        public void bookReturned(long isbn, String patronId) throws IOException {
+            try {
+                library.returnBook(patronId, Isbn.toString(isbn));
+            } catch (BookNotFoundException | BookNotBorrowedException e) {
+                throw new IOException("Cannot replay returning " + Isbn.toString(isbn) + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void bookRemoved(long isbn) throws IOException {
+            LoanStatus status = library.tryRemoveBook(Isbn.toString(isbn));
+            if (status != LoanStatus.OK) {
+                throw new IOException("Cannot replay removing " + Isbn.toString(isbn) + ": " + status);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package library.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import library.Book;
+import library.Loan;
+
+/**
+ * Reads and writes compact binary snapshots of a library's books and loans.
+ *
+ * A snapshot holds a header, every book as its packed ISBN, publish year, title,
+ * author and number of copies, every loan as its packed ISBN, patron and the times it
+ * was borrowed and is due, and a trailing CRC32 of all of it. Snapshots are written to a temporary file and moved into place, so a crash
+ * never leaves a half-written snapshot under the final name.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    private static final int VERSION = 3;
+    // Snapshots of this version and older carry no loan dates
+    private static final int VERSION_WITHOUT_LOAN_DATES = 2;
+    // Snapshots of this version and older carry no copy counts
+    private static final int VERSION_WITHOUT_COPIES = 1;
+
+    private SnapshotFile() {
+    }
+
+    static void write(Path file, List<Book> books, List<Loan> loans) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream out = Files.newOutputStream(temporary);
+             DataOutputStream data = new DataOutputStream(
+                     new CheckedOutputStream(new BufferedOutputStream(out, 1 << 16), crc))) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(books.size());
+            for (Book book : books) {
+                data.writeLong(book.getIsbnValue());
+                data.writeShort(book.getPublishYear());
+                data.writeUTF(book.getTitle());
+                data.writeUTF(book.getAuthor());
+                data.writeInt(book.getCopies());
+            }
+            data.writeInt(loans.size());
+            for (Loan loan : loans) {
+                data.writeLong(loan.getBook().getIsbnValue());
+                data.writeUTF(loan.getPatronId());
+                data.writeLong(loan.getBorrowedAt());
+                data.writeLong(loan.getDueAt());
+            }
+            // The checksum covers everything written before it
+            data.writeLong(crc.getValue());
+        }
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot back. The checksum is verified over the whole file before any
+     * record is replayed, so a corrupt snapshot replays nothing.
+     *
+     * @param file The snapshot file.
+     * @param replay Receives each book and then each loan.
+     * @throws IOException if the file cannot be read or is corrupt.
+     */
+    static void read(Path file, Journal.Replay replay) throws IOException {
+        verify(file);
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16))) {
+            int version = data.readInt() == MAGIC ? data.readInt() : -1;
+            if (version < VERSION_WITHOUT_COPIES || version > VERSION) {
+                throw new IOException("Not a library snapshot: " + file);
+            }
+            int bookCount = data.readInt();
+            for (int i = 0; i < bookCount; i++) {
+                long isbn = data.readLong();
+                int publishYear = data.readShort();
+                String title = data.readUTF();
+                String author = data.readUTF();
+                int copies = version == VERSION_WITHOUT_COPIES ? 1 : data.readInt();
+                replay.bookAdded(isbn, title, author, publishYear, copies);
+            }
+            int loanCount = data.readInt();
+            for (int i = 0; i < loanCount; i++) {
+                long isbn = data.readLong();
+                String patronId = data.readUTF();
+                if (version <= VERSION_WITHOUT_LOAN_DATES) {
+                    replay.bookBorrowed(isbn, patronId);
+                } else {
+                    replay.bookBorrowed(isbn, patronId, data.readLong(), data.readLong());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the trailing CRC32 of a snapshot against the rest of the file.
+     */
+    private static void verify(Path file) throws IOException {
+        long bodySize = Files.size(file) - 8;
+        if (bodySize < 0) {
+            throw new IOException("Not a library snapshot: " + file);
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new CheckedInputStream(in, crc))) {
+            for (long remaining = bodySize; remaining > 0; ) {
+                int length = (int) Math.min(buffer.length, remaining);
+                data.readFully(buffer, 0, length);
+                remaining -= length;
+            }
+            long expected = crc.getValue();
+            if (data.readLong() != expected) {
+                throw new IOException("Corrupt library snapshot: " + file);
+            }
+        }
+    }
+}
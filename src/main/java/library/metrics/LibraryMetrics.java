@@ -0,0 +1,299 @@
+package library.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import library.LoanStatus;
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotAvailableException;
+import library.exception.BookNotBorrowedException;
+import library.exception.BookNotFoundException;
+import library.exception.InvalidIsbnException;
+
+/**
+ * Counters and latency histograms for the operations of a library.
+ *
+ * Every recording method only bumps a {@link LongAdder} or a {@link LatencyHistogram},
+ * so recording never allocates or takes a lock and can stay on in production. The
+ * values can be read as a {@link Snapshot} or over JMX once {@link #registerMBean}
+ * has been called.
+ */
+public class LibraryMetrics implements LibraryMetricsMXBean {
+
+    /**
+     * The instrumented operations.
+     */
+    public enum Operation {
+        ADD, BORROW, RETURN, LOOKUP
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    // The exceptions counted by type, checked in order; anything else is counted as other
+    private static final Class<?>[] ERROR_TYPES = {
+            BookAlreadyExistException.class,
+            BookNotAvailableException.class,
+            BookNotBorrowedException.class,
+            BookNotFoundException.class,
+            InvalidIsbnException.class,
+            IllegalArgumentException.class
+    };
+    private static final String OTHER_ERRORS = "Other";
+    // Positions in ERROR_TYPES of the exceptions that stand for each LoanStatus
+    private static final int NOT_AVAILABLE_INDEX = 1;
+    private static final int NOT_BORROWED_INDEX = 2;
+    private static final int NOT_FOUND_INDEX = 3;
+    private static final int LIMIT_REACHED_INDEX = 5;
+
+    private final LongAdder[] completed = newAdders(OPERATIONS.length);
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder lookupHits = new LongAdder();
+    private final LongAdder lookupMisses = new LongAdder();
+    private final LongAdder[] errors = newAdders(ERROR_TYPES.length + 1);
+
+    public LibraryMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Counts an operation that completed without an exception.
+     *
+     * @param operation The operation.
+     */
+    public void recordSuccess(Operation operation) {
+        completed[operation.ordinal()].increment();
+    }
+
+    /**
+     * Counts a lookup as a hit or a miss. Lookups are counted as completed either way.
+     *
+     * @param hit Whether the book was found.
+     */
+    public void recordLookup(boolean hit) {
+        completed[Operation.LOOKUP.ordinal()].increment();
+        (hit ? lookupHits : lookupMisses).increment();
+    }
+
+    /**
+     * Counts a failed operation by the type of its exception.
+     *
+     * @param error The exception the operation failed with.
+     */
+    public void recordError(Throwable error) {
+        for (int i = 0; i < ERROR_TYPES.length; i++) {
+            if (ERROR_TYPES[i].isInstance(error)) {
+                errors[i].increment();
+                return;
+            }
+        }
+        errors[ERROR_TYPES.length].increment();
+    }
+
+    /**
+     * Counts an operation that reported an ordinary failure as a status, under the
+     * exception it would have thrown.
+     *
+     * @param status The failure.
+     */
+    public void recordFailure(LoanStatus status) {
+        switch (status) {
+            case NOT_FOUND:
+                errors[NOT_FOUND_INDEX].increment();
+                break;
+            case NOT_AVAILABLE:
+                errors[NOT_AVAILABLE_INDEX].increment();
+                break;
+            case NOT_BORROWED:
+                errors[NOT_BORROWED_INDEX].increment();
+                break;
+            case LIMIT_REACHED:
+                errors[LIMIT_REACHED_INDEX].increment();
+                break;
+            default:
+                errors[ERROR_TYPES.length].increment();
+        }
+    }
+
+    /**
+     * Records the latency of an operation, successful or not.
+     *
+     * @param operation The operation.
+     * @param startNanos When the operation started, from {@link System#nanoTime()}.
+     */
+    public void recordLatency(Operation operation, long startNanos) {
+        latencies[operation.ordinal()].recordSince(startNanos);
+    }
+
+    /**
+     * Copies the current values.
+     *
+     * @return A snapshot of the metrics.
+     */
+    public Snapshot snapshot() {
+        Map<Operation, Long> counts = new EnumMap<>(Operation.class);
+        Map<Operation, LatencyHistogram.Snapshot> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            counts.put(operation, completed[operation.ordinal()].sum());
+            histograms.put(operation, latencies[operation.ordinal()].snapshot());
+        }
+        return new Snapshot(counts, histograms, lookupHits.sum(), lookupMisses.sum(), getErrorCounts());
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     *
+     * @param name The name that tells this library's metrics apart from others in the same JVM.
+     * @return The name the metrics were registered under.
+     * @throws JMException if the metrics cannot be registered.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("library:type=LibraryMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public long getAddCount() {
+        return completed[Operation.ADD.ordinal()].sum();
+    }
+
+    @Override
+    public long getBorrowCount() {
+        return completed[Operation.BORROW.ordinal()].sum();
+    }
+
+    @Override
+    public long getReturnCount() {
+        return completed[Operation.RETURN.ordinal()].sum();
+    }
+
+    @Override
+    public long getLookupHitCount() {
+        return lookupHits.sum();
+    }
+
+    @Override
+    public long getLookupMissCount() {
+        return lookupMisses.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < ERROR_TYPES.length; i++) {
+            counts.put(ERROR_TYPES[i].getSimpleName(), errors[i].sum());
+        }
+        counts.put(OTHER_ERRORS, errors[ERROR_TYPES.length].sum());
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Nanos() {
+        return latencyPercentiles(50);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Nanos() {
+        return latencyPercentiles(99);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMaxNanos() {
+        return latencyPercentiles(100);
+    }
+
+    private Map<String, Long> latencyPercentiles(double percentile) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            values.put(operation.name(), latencies[operation.ordinal()].snapshot().getValueAtPercentile(percentile));
+        }
+        return values;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * An immutable copy of the metrics of a library.
+     */
+    public static final class Snapshot {
+
+        private final Map<Operation, Long> counts;
+        private final Map<Operation, LatencyHistogram.Snapshot> latencies;
+        private final long lookupHits;
+        private final long lookupMisses;
+        private final Map<String, Long> errorCounts;
+
+        Snapshot(Map<Operation, Long> counts, Map<Operation, LatencyHistogram.Snapshot> latencies,
+                 long lookupHits, long lookupMisses, Map<String, Long> errorCounts) {
+            this.counts = counts;
+            this.latencies = latencies;
+            this.lookupHits = lookupHits;
+            this.lookupMisses = lookupMisses;
+            this.errorCounts = Collections.unmodifiableMap(errorCounts);
+        }
+
+        /**
+         * Returns the number of times an operation completed without an exception.
+         *
+         * @param operation The operation.
+         * @return The number of completed operations.
+         */
+        public long getCount(Operation operation) {
+            return counts.get(operation);
+        }
+
+        /**
+         * Returns the latencies of an operation, including the calls that failed.
+         *
+         * @param operation The operation.
+         * @return The latency histogram of the operation.
+         */
+        public LatencyHistogram.Snapshot getLatency(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        public long getLookupHits() {
+            return lookupHits;
+        }
+
+        public long getLookupMisses() {
+            return lookupMisses;
+        }
+
+        /**
+         * Returns the number of failed operations by exception type.
+         *
+         * @return The error counts keyed by the simple name of the exception class.
+         */
+        public Map<String, Long> getErrorCounts() {
+            return errorCounts;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            for (Operation operation : OPERATIONS) {
+                report.append(operation).append(": completed=").append(counts.get(operation))
+                        .append(' ').append(latencies.get(operation)).append('\n');
+            }
+            report.append("Lookups: hits=").append(lookupHits).append(" misses=").append(lookupMisses).append('\n');
+            report.append("Errors: ").append(errorCounts);
+            return report.toString();
+        }
+    }
+}
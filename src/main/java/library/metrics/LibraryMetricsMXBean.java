@@ -0,0 +1,28 @@
+package library.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link LibraryMetrics}. Maps are keyed by operation name, or by
+ * exception class name for the error counts.
+ */
+public interface LibraryMetricsMXBean {
+
+    long getAddCount();
+
+    long getBorrowCount();
+
+    long getReturnCount();
+
+    long getLookupHitCount();
+
+    long getLookupMissCount();
+
+    Map<String, Long> getErrorCounts();
+
+    Map<String, Long> getLatencyP50Nanos();
+
+    Map<String, Long> getLatencyP99Nanos();
+
+    Map<String, Long> getLatencyMaxNanos();
+}
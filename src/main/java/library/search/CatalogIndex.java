@@ -0,0 +1,276 @@
+package library.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import library.Book;
+import library.Isbn;
+import library.Library;
+import library.LibraryListener;
+import library.LibrarySnapshot;
+import library.util.PersistentLongMap;
+
+/**
+ * Secondary indexes on the publish year and the author of a library's books, for
+ * range queries that would otherwise scan the whole catalog.
+ *
+ * Both indexes order books by publish year, then by ISBN, under a single long key
+ * holding the year above the packed ISBN. The year index is one such ordered map,
+ * and the author index keeps one per normalized author (see {@link #normalizeAuthor}).
+ * A query seeks to its first key and walks forward, so a page costs O(log n + limit)
+ * however large the catalog is. Pages are chained by passing the ISBN of the last
+ * book of a page as the cursor of the next.
+ *
+ * The maps are persistent ({@link PersistentLongMap}) and swapped in with a
+ * compare-and-set, so queries never lock and each page reads one consistent version
+ * of each map. The year index is split by ISBN into a partition per processor, so
+ * books added on different threads rarely race for the same compare-and-set, and a
+ * year query merges the partitions as it walks them. Like {@link SearchIndex}, the
+ * index listens to the library and picks up added and removed books as they change, and it
+ * is first built from a snapshot, one editor per map, outside the library's locks.
+ */
+public class CatalogIndex implements LibraryListener {
+
+    // The packed ISBN takes the low 44 bits of a key, as 13 decimal digits fit in them
+    private static final int YEAR_SHIFT = 44;
+    // Publish years have four digits
+    private static final int MAX_YEAR = 9999;
+
+    // A power of two, at least the number of processors and at least four
+    private static final int YEAR_PARTITIONS = Integer.highestOneBit(Math.max(4, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+
+    private final Library library;
+    // The year index, split by ISBN
+    private final AtomicReferenceArray<PersistentLongMap<Book>> byYear = new AtomicReferenceArray<>(YEAR_PARTITIONS);
+    private final NavigableMap<String, AtomicReference<PersistentLongMap<Book>>> byAuthor = new ConcurrentSkipListMap<>();
+    // The listener registered with the library on the index's behalf
+    private LibraryListener registration;
+
+    private CatalogIndex(Library library) {
+        this.library = library;
+        for (int i = 0; i < YEAR_PARTITIONS; i++) {
+            byYear.set(i, PersistentLongMap.empty());
+        }
+    }
+
+    /**
+     * Indexes the books of a library and keeps the indexes up to date as books are added.
+     *
+     * @param library The library to index.
+     * @return The index.
+     */
+    public static CatalogIndex attach(Library library) {
+        CatalogIndex index = new CatalogIndex(library);
+        index.registration = CatchUpListener.attach(library, index, index::load);
+        return index;
+    }
+
+    /**
+     * Stops following the library's changes.
+     */
+    public void detach() {
+        library.removeListener(registration);
+    }
+
+    /**
+     * Indexes the catalog of a snapshot into the empty maps, with one editor per map
+     * rather than a compare-and-set per book.
+     */
+    private void load(LibrarySnapshot snapshot) {
+        List<PersistentLongMap.Editor<Book>> years = new ArrayList<>(YEAR_PARTITIONS);
+        for (int i = 0; i < YEAR_PARTITIONS; i++) {
+            years.add(byYear.get(i).edit());
+        }
+        Map<String, PersistentLongMap.Editor<Book>> authors = new HashMap<>();
+        snapshot.books().forEach(book -> {
+            long key = keyOf(book.getPublishYear(), book.getIsbnValue());
+            years.get(partitionOf(book.getIsbnValue())).put(key, book);
+            authors.computeIfAbsent(normalizeAuthor(book.getAuthor()), author -> PersistentLongMap.<Book>empty().edit())
+                    .put(key, book);
+        });
+        for (int i = 0; i < YEAR_PARTITIONS; i++) {
+            byYear.set(i, years.get(i).toMap());
+        }
+        for (Map.Entry<String, PersistentLongMap.Editor<Book>> entry : authors.entrySet()) {
+            byAuthor.put(entry.getKey(), new AtomicReference<>(entry.getValue().toMap()));
+        }
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        long key = keyOf(book.getPublishYear(), book.getIsbnValue());
+        int partition = partitionOf(book.getIsbnValue());
+        PersistentLongMap<Book> current;
+        do {
+            current = byYear.get(partition);
+        } while (!byYear.compareAndSet(partition, current, current.put(key, book)));
+        insert(byAuthor.computeIfAbsent(normalizeAuthor(book.getAuthor()),
+                author -> new AtomicReference<>(PersistentLongMap.empty())), key, book);
+    }
+
+    @Override
+    public void bookRemoved(Book book) {
+        long key = keyOf(book.getPublishYear(), book.getIsbnValue());
+        int partition = partitionOf(book.getIsbnValue());
+        PersistentLongMap<Book> current;
+        do {
+            current = byYear.get(partition);
+        } while (!byYear.compareAndSet(partition, current, current.remove(key)));
+        AtomicReference<PersistentLongMap<Book>> books = byAuthor.get(normalizeAuthor(book.getAuthor()));
+        if (books != null) {
+            PersistentLongMap<Book> map;
+            do {
+                map = books.get();
+            } while (!books.compareAndSet(map, map.remove(key)));
+        }
+    }
+
+    /**
+     * Retrieves one page of the books published within a range of years, ordered by
+     * publish year and then by ISBN.
+     *
+     * @param fromYear The first year of the range.
+     * @param toYear The last year of the range, inclusive.
+     * @param afterIsbn The ISBN of the last book of the previous page, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit books published between fromYear and toYear, after the cursor.
+     */
+    public List<Book> publishedBetween(int fromYear, int toYear, String afterIsbn, int limit) {
+        PersistentLongMap<Book>[] partitions = newArray(YEAR_PARTITIONS);
+        for (int i = 0; i < YEAR_PARTITIONS; i++) {
+            partitions[i] = byYear.get(i);
+        }
+        return page(partitions, fromYear, toYear, afterIsbn, limit);
+    }
+
+    /**
+     * Retrieves one page of the books by an author, ordered by publish year and then
+     * by ISBN. The author is matched after normalizing, so "Émile Zola" also finds
+     * books listed under "EMILE ZOLA" or "Emile  Zola", though not under "Zola, Émile".
+     *
+     * @param author The author.
+     * @param afterIsbn The ISBN of the last book of the previous page, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit books by the author, after the cursor.
+     */
+    public List<Book> byAuthor(String author, String afterIsbn, int limit) {
+        AtomicReference<PersistentLongMap<Book>> books = byAuthor.get(normalizeAuthor(author));
+        PersistentLongMap<Book>[] map = newArray(1);
+        map[0] = books == null ? PersistentLongMap.<Book>empty() : books.get();
+        return page(map, 0, MAX_YEAR, afterIsbn, limit);
+    }
+
+    /**
+     * Retrieves one page of the indexed authors in normalized form, in alphabetical order.
+     *
+     * @param afterAuthor The last author of the previous page, or null for the first page.
+     * @param limit The maximum number of authors to return.
+     * @return Up to limit normalized authors that sort after afterAuthor.
+     */
+    public List<String> authors(String afterAuthor, int limit) {
+        checkLimit(limit);
+        NavigableMap<String, ?> authors = afterAuthor == null ? byAuthor : byAuthor.tailMap(normalizeAuthor(afterAuthor), false);
+        List<String> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String author : authors.keySet()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(author);
+        }
+        return page;
+    }
+
+    /**
+     * Brings an author to the form the index is keyed on: accents dropped, lower case,
+     * and every run of punctuation and spaces turned into a single space.
+     *
+     * @param author The author as written.
+     * @return The normalized author.
+     */
+    public static String normalizeAuthor(String author) {
+        String stripped = Normalizer.normalize(author, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        return String.join(" ", SearchIndex.tokenize(stripped));
+    }
+
+    /**
+     * Walks maps keyed by year and ISBN in key order, taking the smallest next key of any
+     * map at each step.
+     */
+    private List<Book> page(PersistentLongMap<Book>[] maps, int fromYear, int toYear, String afterIsbn, int limit) {
+        checkLimit(limit);
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        fromYear = Math.max(fromYear, 0);
+        toYear = Math.min(toYear, MAX_YEAR);
+        if (fromYear > toYear) {
+            return page;
+        }
+        long end = keyOf(toYear + 1, 0);
+        long key = keyOf(fromYear, 0) - 1;
+        if (afterIsbn != null) {
+            key = Math.max(key, cursorKey(afterIsbn));
+        }
+        long[] next = new long[maps.length];
+        for (int i = 0; i < maps.length; i++) {
+            next[i] = maps[i].higherKey(key);
+        }
+        while (page.size() < limit) {
+            int smallest = -1;
+            for (int i = 0; i < maps.length; i++) {
+                if (next[i] != -1 && next[i] < end && (smallest < 0 || next[i] < next[smallest])) {
+                    smallest = i;
+                }
+            }
+            if (smallest < 0) {
+                break;
+            }
+            page.add(maps[smallest].get(next[smallest]));
+            next[smallest] = maps[smallest].higherKey(next[smallest]);
+        }
+        return page;
+    }
+
+    /**
+     * Finds the key of the book a page ended with, from the book's publish year.
+     */
+    private long cursorKey(String afterIsbn) {
+        long isbn = Isbn.parse(afterIsbn);
+        Book book = isbn == Isbn.INVALID ? null : library.snapshot().getBook(isbn);
+        if (book == null) {
+            throw new IllegalArgumentException("Cursor should be the ISBN of a book in the library");
+        }
+        return keyOf(book.getPublishYear(), isbn);
+    }
+
+    private static long keyOf(int year, long isbn) {
+        return (long) year << YEAR_SHIFT | isbn;
+    }
+
+    private static int partitionOf(long isbn) {
+        return Long.hashCode(isbn) & (YEAR_PARTITIONS - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PersistentLongMap<Book>[] newArray(int length) {
+        return (PersistentLongMap<Book>[]) new PersistentLongMap<?>[length];
+    }
+
+    private static void insert(AtomicReference<PersistentLongMap<Book>> books, long key, Book book) {
+        PersistentLongMap<Book> current;
+        do {
+            current = books.get();
+        } while (!books.compareAndSet(current, current.put(key, book)));
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit should not be negative");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package library.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import library.Book;
+import library.Library;
+import library.LibraryListener;
+import library.LibrarySnapshot;
+import library.Loan;
+
+/**
+ * Attaches an index to a library without holding the library's locks while the
+ * catalog is indexed.
+ *
+ * The listener is registered against a snapshot, and holds back the changes that
+ * arrive while the index is built from that snapshot. Once it is built, the held
+ * changes are passed on in the order they arrived, and later ones go straight
+ * through. A change to one ISBN is therefore never passed on before an earlier one.
+ */
+final class CatchUpListener implements LibraryListener {
+
+    private final LibraryListener target;
+    // Changes held back until the index has caught up, or null once it has
+    private List<Runnable> pending = new ArrayList<>();
+    private volatile boolean caughtUp;
+
+    private CatchUpListener(LibraryListener target) {
+        this.target = target;
+    }
+
+    /**
+     * Registers a listener with a library, then builds the index from the snapshot it
+     * starts from, outside the library's locks.
+     *
+     * @param library The library to follow.
+     * @param target The listener, usually the index being built.
+     * @param build Indexes the catalog of the snapshot.
+     * @return The listener registered with the library, to remove when detaching.
+     */
+    static LibraryListener attach(Library library, LibraryListener target, Consumer<LibrarySnapshot> build) {
+        CatchUpListener listener = new CatchUpListener(target);
+        build.accept(library.addListenerAtSnapshot(listener));
+        listener.catchUp();
+        return listener;
+    }
+
+    private synchronized void catchUp() {
+        for (Runnable change : pending) {
+            change.run();
+        }
+        pending = null;
+        caughtUp = true;
+    }
+
+    /**
+     * Holds a change back if the index has not caught up yet.
+     *
+     * @return false if the index has caught up and the change should be passed on now.
+     */
+    private synchronized boolean holdBack(Runnable change) {
+        if (pending == null) {
+            return false;
+        }
+        pending.add(change);
+        return true;
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        if (caughtUp || !holdBack(() -> target.bookAdded(book))) {
+            target.bookAdded(book);
+        }
+    }
+
+    @Override
+    public void bookBorrowed(Loan loan) {
+        if (caughtUp || !holdBack(() -> target.bookBorrowed(loan))) {
+            target.bookBorrowed(loan);
+        }
+    }
+
+    @Override
+    public void bookReturned(Loan loan) {
+        if (caughtUp || !holdBack(() -> target.bookReturned(loan))) {
+            target.bookReturned(loan);
+        }
+    }
+
+    @Override
+    public void bookRemoved(Book book) {
+        if (caughtUp || !holdBack(() -> target.bookRemoved(book))) {
+            target.bookRemoved(book);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package library.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import library.Book;
+import library.Library;
+import library.LibraryListener;
+import library.util.LongObjectHashMap;
+
+/**
+ * An inverted index over the titles and authors of a library's books.
+ *
+ * Titles and authors are split into lower-cased tokens of letters and digits, and
+ * every token maps to the ISBNs of the books that contain it. The index listens to
+ * the library, so books added later become searchable as soon as they are added,
+ * and removed books stop matching once they are removed.
+ *
+ * A query matches the books that contain all of its tokens, in the title or the
+ * author, with the last token also matching as a prefix so partially typed words
+ * find results. Matches are ranked by the rarity of the matched tokens, with title
+ * matches counting twice as much as author matches.
+ */
+public class SearchIndex implements LibraryListener {
+
+    private static final byte IN_TITLE = 1;
+    private static final byte IN_AUTHOR = 2;
+    private static final float TITLE_WEIGHT = 2f;
+    private static final float AUTHOR_WEIGHT = 1f;
+
+    private final Library library;
+    // Sorted so that prefix queries are a range scan
+    private final NavigableMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    private final AtomicInteger documentCount = new AtomicInteger();
+    // The listener registered with the library on the index's behalf
+    private LibraryListener registration;
+
+    private SearchIndex(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Builds an index over the books of a library and keeps it up to date as books are added.
+     *
+     * @param library The library to index.
+     * @return The index.
+     */
+    public static SearchIndex attach(Library library) {
+        SearchIndex index = new SearchIndex(library);
+        // The catalog is indexed from a snapshot, so writers are not held up meanwhile
+        index.registration = CatchUpListener.attach(library, index, snapshot -> snapshot.books().forEach(index::bookAdded));
+        return index;
+    }
+
+    /**
+     * Stops following the library's changes.
+     */
+    public void detach() {
+        library.removeListener(registration);
+    }
+
+    @Override
+    public void bookAdded(Book book) {
+        // Collect each token once per book, remembering which fields it appears in
+        Map<String, byte[]> fields = new HashMap<>();
+        for (String token : tokenize(book.getTitle())) {
+            fields.computeIfAbsent(token, t -> new byte[1])[0] |= IN_TITLE;
+        }
+        for (String token : tokenize(book.getAuthor())) {
+            fields.computeIfAbsent(token, t -> new byte[1])[0] |= IN_AUTHOR;
+        }
+
+        for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+            terms.computeIfAbsent(entry.getKey(), t -> new Postings()).add(book.getIsbnValue(), entry.getValue()[0]);
+        }
+        documentCount.incrementAndGet();
+    }
+
+    @Override
+    public void bookRemoved(Book book) {
+        Set<String> tokens = new HashSet<>(tokenize(book.getTitle()));
+        tokens.addAll(tokenize(book.getAuthor()));
+        for (String token : tokens) {
+            Postings postings = terms.get(token);
+            if (postings != null) {
+                // An emptied postings list is left in place, a concurrent add may be using it
+                postings.remove(book.getIsbnValue());
+            }
+        }
+        documentCount.decrementAndGet();
+    }
+
+    /**
+     * Finds the best matching books.
+     *
+     * @param query The words to look for.
+     * @param limit The maximum number of results.
+     * @return Up to limit books, best match first.
+     */
+    public List<Book> search(String query, int limit) {
+        List<Hit> hits = searchHits(query, limit);
+        List<Book> books = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            Book book = library.getBookByIsbn(hit.getIsbn());
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Finds the best matching books, returning their ISBNs and scores.
+     *
+     * @param query The words to look for.
+     * @param limit The maximum number of results.
+     * @return Up to limit hits, best match first.
+     */
+    public List<Hit> searchHits(String query, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit should not be negative");
+        }
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || limit == 0) {
+            return Collections.emptyList();
+        }
+
+        int documents = Math.max(1, documentCount.get());
+
+        // Expand every token to its matching postings, and start from the rarest token
+        List<List<Postings>> matches = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            matches.add(match(tokens.get(i), i == tokens.size() - 1));
+        }
+        matches.sort((a, b) -> Long.compare(totalSize(a), totalSize(b)));
+
+        LongObjectHashMap<Hit> candidates = new LongObjectHashMap<>();
+        for (Postings postings : matches.get(0)) {
+            postings.score(candidates, documents, 0, true);
+        }
+        for (int round = 1; round < matches.size() && !candidates.isEmpty(); round++) {
+            for (Postings postings : matches.get(round)) {
+                postings.score(candidates, documents, round, false);
+            }
+
+            // Keep only the books that matched this token as well
+            LongObjectHashMap<Hit> survivors = new LongObjectHashMap<>();
+            int current = round;
+            candidates.forEachValue(hit -> {
+                if (hit.round == current) {
+                    survivors.put(hit.isbn, hit);
+                }
+            });
+            candidates = survivors;
+        }
+
+        // Keep the best results in a bounded min-heap
+        PriorityQueue<Hit> best = new PriorityQueue<>(limit + 1, Hit::compareTo);
+        candidates.forEachValue(hit -> {
+            hit.score += hit.roundScore;
+            best.offer(hit);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        });
+        List<Hit> ranked = new ArrayList<>(best);
+        ranked.sort(Collections.reverseOrder(Hit::compareTo));
+        return ranked;
+    }
+
+    /**
+     * Returns the number of distinct tokens in the index.
+     *
+     * @return The number of tokens.
+     */
+    public int termCount() {
+        return terms.size();
+    }
+
+    /**
+     * Estimates the heap used by the index, counting the postings arrays and the tokens.
+     *
+     * @return The approximate size of the index in bytes.
+     */
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+            // Skip list node, String and its array, and the postings object
+            bytes += 64 + 2L * entry.getKey().length() + entry.getValue().estimatedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds the postings of a token, or of every token starting with it.
+     */
+    private List<Postings> match(String token, boolean prefix) {
+        if (prefix) {
+            return new ArrayList<>(terms.subMap(token, true, token + Character.MAX_VALUE, false).values());
+        }
+        Postings postings = terms.get(token);
+        return postings == null ? Collections.<Postings>emptyList() : Collections.singletonList(postings);
+    }
+
+    private static long totalSize(List<Postings> postings) {
+        long size = 0;
+        for (Postings p : postings) {
+            size += p.size();
+        }
+        return size;
+    }
+
+    /**
+     * Splits text into lower-cased tokens of letters and digits.
+     *
+     * @param text The text to split.
+     * @return The tokens, in order, possibly with repeats.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A scored search result.
+     */
+    public static final class Hit implements Comparable<Hit> {
+
+        private final long isbn;
+        private float score;
+        // The last query token this book matched, and its best score for that token
+        private int round = -1;
+        private float roundScore;
+
+        Hit(long isbn) {
+            this.isbn = isbn;
+        }
+
+        public long getIsbn() {
+            return isbn;
+        }
+
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public int compareTo(Hit other) {
+            int byScore = Float.compare(score, other.score);
+            // Break ties by ISBN so results are stable
+            return byScore != 0 ? byScore : Long.compare(other.isbn, isbn);
+        }
+    }
+
+    /**
+     * The books containing one token, as parallel arrays of ISBNs and field flags.
+     */
+    private static final class Postings {
+
+        private long[] isbns = new long[4];
+        private byte[] fields = new byte[4];
+        private int size;
+
+        synchronized void add(long isbn, byte field) {
+            if (size == isbns.length) {
+                isbns = Arrays.copyOf(isbns, size * 2);
+                fields = Arrays.copyOf(fields, size * 2);
+            }
+            isbns[size] = isbn;
+            fields[size] = field;
+            size++;
+        }
+
+        /**
+         * Scores this token for each of its books in the given round, keeping the best
+         * score when a book matches several tokens sharing the same prefix.
+         *
+         * @param hits The books matched so far.
+         * @param documents The number of indexed books.
+         * @param round The position of the query token being matched.
+         * @param addMissing Whether books not matched so far are added, or skipped.
+         */
+        synchronized void score(LongObjectHashMap<Hit> hits, int documents, int round, boolean addMissing) {
+            float idf = (float) Math.log(1 + (double) documents / size);
+            for (int i = 0; i < size; i++) {
+                Hit hit = hits.get(isbns[i]);
+                if (hit == null) {
+                    if (!addMissing) {
+                        continue;
+                    }
+                    hit = new Hit(isbns[i]);
+                    hits.put(isbns[i], hit);
+                }
+
+                float weight = ((fields[i] & IN_TITLE) != 0 ? TITLE_WEIGHT : 0)
+                        + ((fields[i] & IN_AUTHOR) != 0 ? AUTHOR_WEIGHT : 0);
+                float score = idf * weight;
+                if (hit.round != round) {
+                    // First match in this round, bank the previous round's best
+                    hit.score += hit.roundScore;
+                    hit.round = round;
+                    hit.roundScore = score;
+                } else if (score > hit.roundScore) {
+                    hit.roundScore = score;
+                }
+            }
+        }
+
+        synchronized void remove(long isbn) {
+            for (int i = 0; i < size; i++) {
+                if (isbns[i] == isbn) {
+                    size--;
+                    System.arraycopy(isbns, i + 1, isbns, i, size - i);
+                    System.arraycopy(fields, i + 1, fields, i, size - i);
+                    return;
+                }
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long estimatedBytes() {
+            return 48 + 8L * isbns.length + fields.length;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package library.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An HTTP/1.1 request read off a connection, with just enough of the protocol for
+ * the library's JSON API: a request line, headers, and a body of known length.
+ */
+final class HttpRequest {
+
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_HEADERS = 100;
+    private static final int MAX_BODY_LENGTH = 1 << 20;
+
+    private final String method;
+    private final String path;
+    private final Map<String, String> query;
+    private final String body;
+    private final boolean keepAlive;
+
+    private HttpRequest(String method, String path, Map<String, String> query, String body, boolean keepAlive) {
+        this.method = method;
+        this.path = path;
+        this.query = query;
+        this.body = body;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Reads the next request from a connection.
+     *
+     * @param in The connection's input, buffered.
+     * @return The request, or null if the client closed the connection between requests.
+     * @throws ProtocolException if the request is malformed or too large.
+     * @throws IOException if the connection fails.
+     */
+    static HttpRequest read(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null) {
+            return null;
+        }
+        String[] parts = requestLine.split(" ");
+        if (parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+            throw new ProtocolException("Malformed request line");
+        }
+
+        // HTTP/1.1 connections stay open unless the client says otherwise, HTTP/1.0 ones the other way round
+        boolean keepAlive = parts[2].equals("HTTP/1.1");
+        int contentLength = 0;
+        for (int headers = 0; ; headers++) {
+            String line = readLine(in);
+            if (line == null) {
+                throw new ProtocolException("Connection closed inside the headers");
+            }
+            if (line.isEmpty()) {
+                break;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0 || headers == MAX_HEADERS) {
+                throw new ProtocolException("Malformed header");
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Malformed Content-Length");
+                }
+                if (contentLength < 0 || contentLength > MAX_BODY_LENGTH) {
+                    throw new ProtocolException("Unsupported Content-Length");
+                }
+            } else if (name.equalsIgnoreCase("Connection")) {
+                keepAlive = value.equalsIgnoreCase("keep-alive") || (keepAlive && !value.equalsIgnoreCase("close"));
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                throw new ProtocolException("Chunked requests are not supported");
+            }
+        }
+
+        byte[] body = new byte[contentLength];
+        for (int read = 0; read < contentLength; ) {
+            int count = in.read(body, read, contentLength - read);
+            if (count < 0) {
+                throw new ProtocolException("Connection closed inside the body");
+            }
+            read += count;
+        }
+
+        String target = parts[1];
+        int question = target.indexOf('?');
+        String path = question < 0 ? target : target.substring(0, question);
+        Map<String, String> query = question < 0 ? new HashMap<>() : parseQuery(target.substring(question + 1));
+        return new HttpRequest(parts[0], path, query, new String(body, StandardCharsets.UTF_8), keepAlive);
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns a query parameter.
+     *
+     * @param name The parameter name.
+     * @return The decoded value, or null if the parameter is absent.
+     */
+    String getParameter(String name) {
+        return query.get(name);
+    }
+
+    String getBody() {
+        return body;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Reads a CRLF or LF terminated line of ASCII.
+     *
+     * @return The line without its terminator, or null at the end of the stream before any byte.
+     */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                throw new ProtocolException("Connection closed inside a line");
+            }
+            if (line.size() == MAX_LINE_LENGTH) {
+                throw new ProtocolException("Line too long");
+            }
+            line.write(b);
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private static Map<String, String> parseQuery(String query) throws ProtocolException {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                parameters.put(name, value);
+            } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+                throw new ProtocolException("Malformed query");
+            }
+        }
+        return parameters;
+    }
+}
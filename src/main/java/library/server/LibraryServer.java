@@ -0,0 +1,391 @@
+package library.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import library.Book;
+import library.Library;
+import library.LoanStatus;
+import library.exception.BookAlreadyExistException;
+import library.exception.InvalidIsbnException;
+import library.io.CatalogImporter;
+import library.io.FlatJson;
+import library.io.ImportReport;
+
+/**
+ * An HTTP/JSON front end for a {@link Library}.
+ *
+ * The API is:
+ * <pre>
+ * POST /books                       add a book: {"isbn", "title", "author", "publishYear"[, "copies"]}
+ * GET  /books?after=&amp;limit=           one page of every book, on loan or not
+ * GET  /books/{isbn}                look a book up, with the number of its copies on the shelf
+ * DELETE /books/{isbn}              remove a book that has every copy on the shelf
+ * POST /books/{isbn}/borrow?patron= borrow a book
+ * POST /books/{isbn}/return?patron= return a book, by any borrower if no patron is given
+ * GET  /books/available?after=&amp;limit= one page of the available books
+ * </pre>
+ *
+ * Each connection is served by its own virtual thread when the JVM has them, or by
+ * a pooled platform thread otherwise, so a slow client only ever blocks itself.
+ * Connections are kept alive, and requests a client pipelines are answered in
+ * order with their responses flushed together once no more requests are buffered.
+ */
+public class LibraryServer implements Closeable {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String[] BOOK_KEYS = {"isbn", "title", "author", "publishYear", "copies"};
+    // The keys before this one are required
+    private static final int OPTIONAL_KEYS_START = 4;
+
+    private final Library library;
+    private final ExecutorService connectionExecutor = newConnectionExecutor();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    public LibraryServer(Library library) {
+        this.library = library;
+    }
+
+    /**
+     * Starts accepting connections.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), 1024);
+        acceptor = new Thread(this::acceptConnections, "library-server-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The local port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket == null) {
+            return;
+        }
+        serverSocket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        connectionExecutor.shutdown();
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            Socket connection;
+            try {
+                connection = serverSocket.accept();
+            } catch (IOException e) {
+                // Closed by close(), or a client that gave up before being accepted
+                continue;
+            }
+            connections.add(connection);
+            connectionExecutor.execute(() -> serve(connection));
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (Socket socket = connection) {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 8192);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            while (true) {
+                HttpRequest request;
+                try {
+                    request = HttpRequest.read(in);
+                } catch (ProtocolException e) {
+                    writeResponse(out, new Response(400, error(e.getMessage())), false);
+                    out.flush();
+                    return;
+                }
+                if (request == null) {
+                    return;
+                }
+
+                writeResponse(out, handle(request), request.isKeepAlive());
+                if (!request.isKeepAlive()) {
+                    out.flush();
+                    return;
+                }
+                // Answer the requests already pipelined behind this one before flushing, so they share a write
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Routes a request to the library.
+     *
+     * @param request The request.
+     * @return The response to send.
+     */
+    Response handle(HttpRequest request) {
+        String[] path = request.getPath().split("/");
+        // A leading slash leaves an empty first element
+        if (path.length < 2 || !path[0].isEmpty() || !path[1].equals("books")) {
+            return new Response(404, error("No such resource"));
+        }
+        String method = request.getMethod();
+
+        if (path.length == 2) {
+            if (method.equals("GET")) {
+                return listBooks(request, false);
+            }
+            return method.equals("POST") ? addBook(request) : methodNotAllowed();
+        }
+        if (path.length == 3 && path[2].equals("available")) {
+            return method.equals("GET") ? listBooks(request, true) : methodNotAllowed();
+        }
+        if (path.length == 3) {
+            if (method.equals("DELETE")) {
+                return removeBook(path[2]);
+            }
+            return method.equals("GET") ? lookUp(path[2]) : methodNotAllowed();
+        }
+        if (path.length == 4 && path[3].equals("borrow")) {
+            if (!method.equals("POST")) {
+                return methodNotAllowed();
+            }
+            String patron = request.getParameter("patron");
+            return status(library.tryBorrowBook(patron == null ? Library.DEFAULT_PATRON_ID : patron, path[2]));
+        }
+        if (path.length == 4 && path[3].equals("return")) {
+            return method.equals("POST") ? status(library.tryReturnBook(request.getParameter("patron"), path[2])) : methodNotAllowed();
+        }
+        return new Response(404, error("No such resource"));
+    }
+
+    private Response addBook(HttpRequest request) {
+        String[] values = new String[BOOK_KEYS.length];
+        if (!FlatJson.parseObject(request.getBody(), BOOK_KEYS, values)) {
+            return new Response(400, error("Body should be a JSON object"));
+        }
+        for (int i = 0; i < OPTIONAL_KEYS_START; i++) {
+            if (values[i] == null) {
+                return new Response(400, error("Missing " + BOOK_KEYS[i]));
+            }
+        }
+        try {
+            int copies = values[4] == null ? 1 : Integer.parseInt(values[4]);
+            Book book = new Book(values[0], values[1], values[2], Integer.parseInt(values[3]), copies);
+            library.addBook(book);
+            return new Response(201, appendBook(new StringBuilder(), book).toString());
+        } catch (NumberFormatException e) {
+            return new Response(400, error("Publish year and copies should be numbers"));
+        } catch (InvalidIsbnException | IllegalArgumentException e) {
+            return new Response(400, error(e.getMessage()));
+        } catch (BookAlreadyExistException e) {
+            return new Response(409, error(e.getMessage()));
+        }
+    }
+
+    private Response removeBook(String isbn) {
+        try {
+            return status(library.tryRemoveBook(isbn));
+        } catch (UnsupportedOperationException e) {
+            return new Response(409, error(e.getMessage()));
+        }
+    }
+
+    private Response lookUp(String isbn) {
+        Book book = library.getBookByIsbn(isbn);
+        if (book == null) {
+            return status(LoanStatus.NOT_FOUND);
+        }
+        StringBuilder json = appendBookFields(new StringBuilder(), book).append(",\"onShelf\":");
+        return new Response(200, json.append(library.getCopiesOnShelf(isbn)).append('}').toString());
+    }
+
+    private Response listBooks(HttpRequest request, boolean availableOnly) {
+        int limit = DEFAULT_PAGE_SIZE;
+        List<Book> page;
+        try {
+            String limitParameter = request.getParameter("limit");
+            if (limitParameter != null) {
+                limit = Math.min(Integer.parseInt(limitParameter), MAX_PAGE_SIZE);
+            }
+            String after = request.getParameter("after");
+            page = availableOnly ? library.getAvailableBooks(after, limit) : library.snapshot().getBooks(after, limit);
+        } catch (IllegalArgumentException e) {
+            return new Response(400, error(e.getMessage()));
+        }
+
+        StringBuilder json = new StringBuilder(64 + page.size() * 96).append("{\"books\":[");
+        for (int i = 0; i < page.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendBook(json, page.get(i));
+        }
+        json.append("],\"next\":");
+        if (page.size() == limit && limit > 0) {
+            FlatJson.appendString(json, page.get(page.size() - 1).getIsbn());
+        } else {
+            json.append("null");
+        }
+        return new Response(200, json.append('}').toString());
+    }
+
+    private static Response status(LoanStatus status) {
+        int code;
+        switch (status) {
+            case OK:
+                code = 200;
+                break;
+            case NOT_FOUND:
+                code = 404;
+                break;
+            default:
+                code = 409;
+        }
+        return new Response(code, "{\"status\":\"" + status + "\"}");
+    }
+
+    private static Response methodNotAllowed() {
+        return new Response(405, error("Method not allowed"));
+    }
+
+    private static String error(String message) {
+        return FlatJson.appendString(new StringBuilder("{\"error\":"), String.valueOf(message)).append('}').toString();
+    }
+
+    private static StringBuilder appendBook(StringBuilder json, Book book) {
+        return appendBookFields(json, book).append('}');
+    }
+
+    // Leaves the object open for more fields
+    private static StringBuilder appendBookFields(StringBuilder json, Book book) {
+        json.append("{\"isbn\":");
+        FlatJson.appendString(json, book.getIsbn()).append(",\"title\":");
+        FlatJson.appendString(json, book.getTitle()).append(",\"author\":");
+        FlatJson.appendString(json, book.getAuthor()).append(",\"publishYear\":");
+        return json.append(book.getPublishYear()).append(",\"copies\":").append(book.getCopies());
+    }
+
+    private static void writeResponse(OutputStream out, Response response, boolean keepAlive) throws IOException {
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + response.status + ' ' + reason(response.status) + "\r\n"
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + (keepAlive ? "" : "Connection: close\r\n")
+                + "\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 409:
+                return "Conflict";
+            default:
+                return "Unknown";
+        }
+    }
+
+    /**
+     * Creates the executor that runs one task per connection: a virtual thread per
+     * task on JDK 21 and later, found reflectively so the code still builds for older
+     * JDKs, or else a cached pool of daemon platform threads.
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "library-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * A status code and a JSON body.
+     */
+    static final class Response {
+
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Serves a library over HTTP until the process is stopped.
+     *
+     * @param args The port to listen on, 8080 by default, and optionally a CSV or NDJSON catalog to import first.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        Library library = new Library();
+        if (args.length > 1) {
+            ImportReport report = new CatalogImporter(library).importFile(Paths.get(args[1]));
+            System.out.println("Imported " + report.getImported() + " books, rejected " + report.getRejections().size());
+        }
+
+        LibraryServer server = new LibraryServer(library);
+        server.start(port);
+        System.out.println("Library server listening on port " + server.getPort());
+    }
+}
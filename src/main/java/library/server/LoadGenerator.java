@@ -0,0 +1,250 @@
+package library.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import library.Isbn;
+import library.Library;
+import library.metrics.LatencyHistogram;
+
+/**
+ * Drives a {@link LibraryServer} with a growing number of concurrent clients and
+ * reports the throughput and latency at each step.
+ *
+ * Every client holds one keep-alive connection and sends a mix of lookups (90%)
+ * and borrow and return pairs (10%) against a catalog it seeds first. With a
+ * pipeline depth above one, each client writes that many requests before reading
+ * their responses.
+ */
+public class LoadGenerator {
+
+    private static final int[] CONCURRENCY_LEVELS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int CATALOG_SIZE = 10_000;
+    private static final int SEED_BATCH_SIZE = 100;
+
+    private final String host;
+    private final int port;
+    private final String[] isbns = new String[CATALOG_SIZE];
+
+    public LoadGenerator(String host, int port) {
+        this.host = host;
+        this.port = port;
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            isbns[i] = isbn(i);
+        }
+    }
+
+    /**
+     * Adds the catalog the clients work on, skipping books the server already has.
+     *
+     * @throws IOException if the server cannot be reached.
+     */
+    public void seed() throws IOException {
+        try (Client client = new Client()) {
+            // Pipelined in batches, as a client that never reads would stall the server once the socket buffers fill
+            for (int batch = 0; batch < CATALOG_SIZE; batch += SEED_BATCH_SIZE) {
+                int end = Math.min(batch + SEED_BATCH_SIZE, CATALOG_SIZE);
+                for (int i = batch; i < end; i++) {
+                    String body = "{\"isbn\":\"" + isbns[i] + "\",\"title\":\"Title " + i
+                            + "\",\"author\":\"Author " + (i % 1000) + "\",\"publishYear\":" + (1900 + i % 120) + "}";
+                    client.send("POST", "/books", body);
+                }
+                client.flush();
+                for (int i = batch; i < end; i++) {
+                    client.readStatus();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the clients for a while and measures them.
+     *
+     * @param concurrency The number of concurrent clients.
+     * @param seconds How long to run.
+     * @param pipelineDepth The number of requests each client keeps in flight.
+     * @return One line of the report.
+     * @throws Exception if a client fails.
+     */
+    public String run(int concurrency, int seconds, int pipelineDepth) throws Exception {
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder requests = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        for (int c = 0; c < concurrency; c++) {
+            String patron = "client-" + c;
+            Thread thread = new Thread(() -> {
+                try (Client client = new Client()) {
+                    drive(client, patron, deadline, pipelineDepth, latencies, requests);
+                } catch (Exception e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        return String.format("%11d %13.0f %10.1f %10.1f", concurrency, requests.sum() / elapsedSeconds,
+                snapshot.getValueAtPercentile(50) / 1e3, snapshot.getValueAtPercentile(99) / 1e3);
+    }
+
+    private void drive(Client client, String patron, long deadline, int pipelineDepth,
+                       LatencyHistogram latencies, LongAdder requests) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] sentAt = new long[pipelineDepth * 2];
+        while (System.nanoTime() < deadline) {
+            int sent = 0;
+            for (int i = 0; i < pipelineDepth; i++) {
+                String isbn = isbns[random.nextInt(CATALOG_SIZE)];
+                if (random.nextInt(10) == 0) {
+                    sentAt[sent++] = System.nanoTime();
+                    client.send("POST", "/books/" + isbn + "/borrow?patron=" + patron, "");
+                    sentAt[sent++] = System.nanoTime();
+                    client.send("POST", "/books/" + isbn + "/return?patron=" + patron, "");
+                } else {
+                    sentAt[sent++] = System.nanoTime();
+                    client.send("GET", "/books/" + isbn, "");
+                }
+            }
+            client.flush();
+            for (int i = 0; i < sent; i++) {
+                client.readStatus();
+                latencies.recordSince(sentAt[i]);
+            }
+            requests.add(sent);
+        }
+    }
+
+    /**
+     * The ISBN of the i-th seeded book, with a correct check digit.
+     */
+    static String isbn(int i) {
+        long body = 979_000_000_000L + i;
+        int sum = 0;
+        long rest = body;
+        for (int position = 11; position >= 0; position--) {
+            int digit = (int) (rest % 10);
+            rest /= 10;
+            sum += (position % 2 == 0) ? digit : digit * 3;
+        }
+        return Isbn.toString(body * 10 + (10 - sum % 10) % 10);
+    }
+
+    /**
+     * A keep-alive connection to the server.
+     */
+    private final class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Client() throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), 8192);
+            out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        void send(String method, String target, String body) throws IOException {
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            String head = method + ' ' + target + " HTTP/1.1\r\nHost: " + host + "\r\nContent-Length: " + content.length + "\r\n\r\n";
+            out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+            out.write(content);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Reads one response, discarding its body.
+         *
+         * @return The status code.
+         */
+        int readStatus() throws IOException {
+            String statusLine = HttpRequest.readLine(in);
+            if (statusLine == null || statusLine.length() < 12) {
+                throw new ProtocolException("Malformed status line: " + statusLine);
+            }
+            int contentLength = 0;
+            String line;
+            while ((line = HttpRequest.readLine(in)) != null && !line.isEmpty()) {
+                if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Integer.parseInt(line.substring(15).trim());
+                }
+            }
+            for (long skipped = 0; skipped < contentLength; ) {
+                long count = in.skip(contentLength - skipped);
+                if (count <= 0) {
+                    throw new ProtocolException("Connection closed inside a response");
+                }
+                skipped += count;
+            }
+            return Integer.parseInt(statusLine.substring(9, 12));
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * Runs the load test against a server, starting one in this process if no port is given.
+     *
+     * @param args The server port, the seconds to run each concurrency level (5 by default)
+     *             and the pipeline depth (1 by default).
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int pipelineDepth = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        LibraryServer localServer = null;
+        int port;
+        if (args.length > 0 && !args[0].equals("0")) {
+            port = Integer.parseInt(args[0]);
+        } else {
+            localServer = new LibraryServer(new Library());
+            localServer.start(0);
+            port = localServer.getPort();
+        }
+
+        try {
+            LoadGenerator generator = new LoadGenerator("localhost", port);
+            generator.seed();
+            System.out.println("concurrency  requests/sec   p50 (us)   p99 (us)");
+            for (int concurrency : CONCURRENCY_LEVELS) {
+                System.out.println(generator.run(concurrency, seconds, pipelineDepth));
+            }
+        } finally {
+            if (localServer != null) {
+                localServer.close();
+            }
+        }
+    }
+}
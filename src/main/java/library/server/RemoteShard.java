@@ -0,0 +1,293 @@
+package library.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import library.Book;
+import library.LoanStatus;
+import library.exception.InvalidIsbnException;
+import library.io.FlatJson;
+import library.shard.Shard;
+
+/**
+ * A shard served by a {@link LibraryServer}, usually in another process on the same
+ * machine, reached over keep-alive HTTP connections.
+ *
+ * Each request borrows an idle connection from a pool, or opens one if there is none,
+ * and puts it back once the response is read, so concurrent callers each get their
+ * own connection. Failures to reach the server are thrown as {@link UncheckedIOException}.
+ */
+public class RemoteShard implements Shard {
+
+    // The server never sends more than this many books in one page
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String[] BOOK_KEYS = {"isbn", "title", "author", "publishYear", "copies", "onShelf"};
+
+    private final String host;
+    private final int port;
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    public RemoteShard(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public boolean addBook(Book book) {
+        StringBuilder body = new StringBuilder("{\"isbn\":");
+        FlatJson.appendString(body, book.getIsbn()).append(",\"title\":");
+        FlatJson.appendString(body, book.getTitle()).append(",\"author\":");
+        FlatJson.appendString(body, book.getAuthor()).append(",\"publishYear\":").append(book.getPublishYear());
+        body.append(",\"copies\":").append(book.getCopies()).append('}');
+
+        Response response = request("POST", "/books", body.toString());
+        if (response.status == 400) {
+            throw new IllegalArgumentException(response.body);
+        }
+        return response.status == 201;
+    }
+
+    @Override
+    public Book getBook(String isbn) {
+        String[] values = lookUp(isbn);
+        return values == null ? null : toBook(values);
+    }
+
+    @Override
+    public int getCopiesOnShelf(String isbn) {
+        String[] values = lookUp(isbn);
+        return values == null ? 0 : Integer.parseInt(values[5]);
+    }
+
+    @Override
+    public LoanStatus tryBorrowBook(String patronId, String isbn) {
+        return status(request("POST", "/books/" + isbn + "/borrow?patron=" + encode(patronId), ""));
+    }
+
+    @Override
+    public LoanStatus tryReturnBook(String patronId, String isbn) {
+        String query = patronId == null ? "" : "?patron=" + encode(patronId);
+        return status(request("POST", "/books/" + isbn + "/return" + query, ""));
+    }
+
+    @Override
+    public LoanStatus tryRemoveBook(String isbn) {
+        return status(request("DELETE", "/books/" + isbn, ""));
+    }
+
+    @Override
+    public List<Book> getAvailableBooks(String afterIsbn, int limit) {
+        return pages("/books/available", afterIsbn, limit);
+    }
+
+    @Override
+    public List<Book> getBooks(String afterIsbn, int limit) {
+        return pages("/books", afterIsbn, limit);
+    }
+
+    /**
+     * Closes the idle connections. Connections in use are closed when they are put back.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Connection connection; (connection = idle.poll()) != null; ) {
+            connection.socket.close();
+        }
+    }
+
+    private String[] lookUp(String isbn) {
+        Response response = request("GET", "/books/" + isbn, "");
+        if (response.status == 404) {
+            return null;
+        }
+        String[] values = new String[BOOK_KEYS.length];
+        if (response.status != 200 || !FlatJson.parseObject(response.body, BOOK_KEYS, values)) {
+            throw malformed(response);
+        }
+        return values;
+    }
+
+    /**
+     * Fetches pages of books until the limit is reached, as the server caps the size of a page.
+     */
+    private List<Book> pages(String path, String afterIsbn, int limit) {
+        List<Book> books = new ArrayList<>(Math.min(limit, 1024));
+        while (books.size() < limit) {
+            int pageSize = Math.min(limit - books.size(), MAX_PAGE_SIZE);
+            String target = path + "?limit=" + pageSize + (afterIsbn == null ? "" : "&after=" + afterIsbn);
+            Response response = request("GET", target, "");
+            if (response.status == 400) {
+                throw new IllegalArgumentException(response.body);
+            }
+            int fetched = parsePage(response, books);
+            if (fetched < pageSize) {
+                break;
+            }
+            afterIsbn = books.get(books.size() - 1).getIsbn();
+        }
+        return books;
+    }
+
+    /**
+     * Adds the books of a {"books":[...],"next":...} page to a list.
+     *
+     * @return The number of books on the page.
+     */
+    private static int parsePage(Response response, List<Book> books) {
+        String json = response.body;
+        int position = json.indexOf('[');
+        if (response.status != 200 || position < 0) {
+            throw malformed(response);
+        }
+        int count = 0;
+        String[] values = new String[BOOK_KEYS.length];
+        while (true) {
+            position = skipSeparators(json, position + 1);
+            if (position >= json.length() || json.charAt(position) != '{') {
+                return count;
+            }
+            int end = FlatJson.objectEnd(json, position);
+            if (end < 0 || !FlatJson.parseObject(json.substring(position, end), BOOK_KEYS, values)) {
+                throw malformed(response);
+            }
+            books.add(toBook(values));
+            count++;
+            position = end - 1;
+        }
+    }
+
+    private static int skipSeparators(String json, int position) {
+        while (position < json.length() && (json.charAt(position) == ',' || Character.isWhitespace(json.charAt(position)))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static Book toBook(String[] values) {
+        try {
+            int copies = values[4] == null ? 1 : Integer.parseInt(values[4]);
+            return new Book(values[0], values[1], values[2], Integer.parseInt(values[3]), copies);
+        } catch (InvalidIsbnException | IllegalArgumentException e) {
+            throw new UncheckedIOException(new ProtocolException("Malformed book from shard: " + e.getMessage()));
+        }
+    }
+
+    private static LoanStatus status(Response response) {
+        String[] values = new String[1];
+        if (!FlatJson.parseObject(response.body, new String[] {"status"}, values) || values[0] == null) {
+            throw malformed(response);
+        }
+        return LoanStatus.valueOf(values[0]);
+    }
+
+    private static UncheckedIOException malformed(Response response) {
+        return new UncheckedIOException(new ProtocolException("Unexpected response " + response.status + ": " + response.body));
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Response request(String method, String target, String body) {
+        Connection connection = idle.poll();
+        try {
+            if (connection == null) {
+                connection = new Connection();
+            }
+            Response response = connection.exchange(method, target, body);
+            if (closed) {
+                connection.socket.close();
+            } else {
+                idle.add(connection);
+            }
+            return response;
+        } catch (IOException e) {
+            if (connection != null) {
+                try {
+                    connection.socket.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A status code and a body.
+     */
+    private static final class Response {
+
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * A keep-alive connection to the server, used by one request at a time.
+     */
+    private final class Connection {
+
+        final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection() throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream(), 8192);
+            out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        }
+
+        Response exchange(String method, String target, String body) throws IOException {
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            String head = method + ' ' + target + " HTTP/1.1\r\nHost: " + host + "\r\nContent-Length: " + content.length + "\r\n\r\n";
+            out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+            out.write(content);
+            out.flush();
+
+            String statusLine = HttpRequest.readLine(in);
+            if (statusLine == null || statusLine.length() < 12) {
+                throw new ProtocolException("Malformed status line: " + statusLine);
+            }
+            int contentLength = 0;
+            String line;
+            while ((line = HttpRequest.readLine(in)) != null && !line.isEmpty()) {
+                if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Integer.parseInt(line.substring(15).trim());
+                }
+            }
+            byte[] responseBody = new byte[contentLength];
+            for (int read = 0; read < contentLength; ) {
+                int count = in.read(responseBody, read, contentLength - read);
+                if (count < 0) {
+                    throw new ProtocolException("Connection closed inside a response");
+                }
+                read += count;
+            }
+            return new Response(Integer.parseInt(statusLine.substring(9, 12)), new String(responseBody, StandardCharsets.UTF_8));
+        }
+    }
+}
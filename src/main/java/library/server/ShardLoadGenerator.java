@@ -0,0 +1,164 @@
+package library.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import library.Book;
+import library.LoanStatus;
+import library.shard.ShardedLibrary;
+
+/**
+ * Measures how the throughput of a {@link ShardedLibrary} grows with the number of
+ * shards, each a {@link LibraryServer} in its own local process.
+ *
+ * For each shard count the generator starts that many server processes, seeds a
+ * catalog through the coordinator and then runs a fixed number of client threads
+ * against it: lookups (90%) and borrow and return pairs (10%), the same mix as
+ * {@link LoadGenerator}. The scaling it can show is bounded by the cores of the
+ * machine, since the clients and every shard share them.
+ */
+public class ShardLoadGenerator {
+
+    private static final int[] SHARD_COUNTS = {1, 2, 4, 8};
+    private static final int CATALOG_SIZE = 10_000;
+    private static final String READY_PREFIX = "Library server listening on port ";
+
+    private final String[] isbns = new String[CATALOG_SIZE];
+
+    public ShardLoadGenerator() {
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            isbns[i] = LoadGenerator.isbn(i);
+        }
+    }
+
+    /**
+     * Starts the shards, seeds them and runs the clients for a while.
+     *
+     * @param shardCount The number of shard processes.
+     * @param clients The number of concurrent client threads.
+     * @param seconds How long to run.
+     * @return The number of requests per second.
+     * @throws Exception if a shard cannot be started or a client fails.
+     */
+    public double run(int shardCount, int clients, int seconds) throws Exception {
+        List<Process> processes = new ArrayList<>();
+        List<RemoteShard> shards = new ArrayList<>();
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                Process process = startShard();
+                processes.add(process);
+                shards.add(new RemoteShard("localhost", awaitPort(process)));
+            }
+            try (ShardedLibrary library = new ShardedLibrary(shards)) {
+                for (int i = 0; i < CATALOG_SIZE; i++) {
+                    library.addBook(new Book(isbns[i], "Title " + i, "Author " + (i % 1000), 1900 + i % 120));
+                }
+                return drive(library, clients, seconds);
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+            for (Process process : processes) {
+                process.waitFor();
+            }
+        }
+    }
+
+    private double drive(ShardedLibrary library, int clients, int seconds) throws Exception {
+        LongAdder requests = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            String patron = "client-" + c;
+            Thread thread = new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        String isbn = isbns[random.nextInt(CATALOG_SIZE)];
+                        if (random.nextInt(10) == 0) {
+                            if (library.tryBorrowBook(patron, isbn) == LoanStatus.OK) {
+                                library.tryReturnBook(patron, isbn);
+                            }
+                            requests.add(2);
+                        } else {
+                            library.getBookByIsbn(isbn);
+                            requests.increment();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+        return requests.sum() / elapsedSeconds;
+    }
+
+    /**
+     * Starts a server on any free port in a new JVM with this one's class path.
+     */
+    private static Process startShard() throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LibraryServer.class.getName(), "0");
+        builder.redirectErrorStream(true);
+        return builder.start();
+    }
+
+    /**
+     * Reads the port a started server reports on its output.
+     */
+    private static int awaitPort(Process process) throws IOException {
+        BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        for (String line; (line = output.readLine()) != null; ) {
+            if (line.startsWith(READY_PREFIX)) {
+                return Integer.parseInt(line.substring(READY_PREFIX.length()).trim());
+            }
+        }
+        throw new IOException("Shard exited before listening");
+    }
+
+    /**
+     * Runs the scaling test.
+     *
+     * @param args The number of client threads (32 by default) and the seconds to run
+     *             each shard count (5 by default).
+     */
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        ShardLoadGenerator generator = new ShardLoadGenerator();
+        System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println("shards  requests/sec  speedup");
+        double baseline = 0;
+        for (int shardCount : SHARD_COUNTS) {
+            double throughput = generator.run(shardCount, clients, seconds);
+            if (baseline == 0) {
+                baseline = throughput;
+            }
+            System.out.println(String.format("%6d %13.0f %8.2f", shardCount, throughput, throughput / baseline));
+        }
+    }
+}
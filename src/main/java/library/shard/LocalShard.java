@@ -0,0 +1,73 @@
+package library.shard;
+
+import java.util.List;
+
+import library.Book;
+import library.Library;
+import library.LoanStatus;
+import library.exception.BookAlreadyExistException;
+
+/**
+ * A shard kept in the coordinator's own process.
+ */
+public class LocalShard implements Shard {
+
+    private final Library library;
+
+    public LocalShard(Library library) {
+        this.library = library;
+    }
+
+    public Library getLibrary() {
+        return library;
+    }
+
+    @Override
+    public boolean addBook(Book book) {
+        try {
+            library.addBook(book);
+            return true;
+        } catch (BookAlreadyExistException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Book getBook(String isbn) {
+        return library.getBookByIsbn(isbn);
+    }
+
+    @Override
+    public int getCopiesOnShelf(String isbn) {
+        return library.getCopiesOnShelf(isbn);
+    }
+
+    @Override
+    public LoanStatus tryBorrowBook(String patronId, String isbn) {
+        return library.tryBorrowBook(patronId, isbn);
+    }
+
+    @Override
+    public LoanStatus tryReturnBook(String patronId, String isbn) {
+        return library.tryReturnBook(patronId, isbn);
+    }
+
+    @Override
+    public LoanStatus tryRemoveBook(String isbn) {
+        return library.tryRemoveBook(isbn);
+    }
+
+    @Override
+    public List<Book> getAvailableBooks(String afterIsbn, int limit) {
+        return library.getAvailableBooks(afterIsbn, limit);
+    }
+
+    @Override
+    public List<Book> getBooks(String afterIsbn, int limit) {
+        return library.snapshot().getBooks(afterIsbn, limit);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,72 @@
+package library.shard;
+
+import java.io.Closeable;
+import java.util.List;
+
+import library.Book;
+import library.LoanStatus;
+
+/**
+ * One partition of a {@link ShardedLibrary}: a library that owns the books whose
+ * ISBNs are routed to it, together with their loans.
+ *
+ * The methods mirror those of {@link library.Library}. A shard may live in the same
+ * process ({@link LocalShard}) or behind a connection, so every method may be slow,
+ * and failures to reach the shard surface as unchecked exceptions.
+ */
+public interface Shard extends Closeable {
+
+    /**
+     * Adds a book.
+     *
+     * @param book The book to add.
+     * @return true if the book was added, false if its ISBN already exists on this shard.
+     */
+    boolean addBook(Book book);
+
+    /**
+     * Retrieves a book by its ISBN.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The book, or null if this shard does not have it.
+     */
+    Book getBook(String isbn);
+
+    /**
+     * Returns the number of copies of a book on the shelf.
+     *
+     * @param isbn The ISBN of the book.
+     * @return The copies not on loan, or 0 if this shard does not have the book.
+     */
+    int getCopiesOnShelf(String isbn);
+
+    LoanStatus tryBorrowBook(String patronId, String isbn);
+
+    LoanStatus tryReturnBook(String patronId, String isbn);
+
+    /**
+     * Removes a book that has every copy on the shelf.
+     *
+     * @param isbn The ISBN of the book.
+     * @return {@link LoanStatus#OK}, or why the book could not be removed.
+     */
+    LoanStatus tryRemoveBook(String isbn);
+
+    /**
+     * Retrieves one page of the available books, ordered by ISBN.
+     *
+     * @param afterIsbn The ISBN after which the page starts, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit available books with an ISBN greater than afterIsbn.
+     */
+    List<Book> getAvailableBooks(String afterIsbn, int limit);
+
+    /**
+     * Retrieves one page of all books, on loan or not, ordered by ISBN.
+     *
+     * @param afterIsbn The ISBN after which the page starts, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit books with an ISBN greater than afterIsbn.
+     */
+    List<Book> getBooks(String afterIsbn, int limit);
+}
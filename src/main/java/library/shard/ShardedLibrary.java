@@ -0,0 +1,443 @@
+package library.shard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import library.Book;
+import library.Isbn;
+import library.Library;
+import library.LoanStatus;
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotAvailableException;
+import library.exception.BookNotBorrowedException;
+import library.exception.BookNotFoundException;
+import library.util.LongObjectHashMap;
+
+/**
+ * A library partitioned by ISBN across several shards, each of which owns its books
+ * and their loans.
+ *
+ * Every ISBN is routed to one shard by a jump consistent hash of the packed ISBN, so
+ * lookups, borrows and returns go straight to the owning shard, and the coordinator
+ * itself keeps no per-book state. Listing the available books asks every shard for
+ * a page and merges the pages in ISBN order.
+ *
+ * Adding a shard ({@link #addShard}) routes about 1/n of the ISBNs to it, always
+ * taken from the existing shards and never moved between them. The books concerned
+ * are copied to the new shard if none of their copies is on loan. A book with copies
+ * out stays pinned to its old shard, which keeps serving it, until
+ * {@link #rebalance()} finds it back on the shelf and moves it too. A moved book is
+ * removed from its old shard once it is in place on the new one. Moving books holds up every other operation of the coordinator, which otherwise
+ * only share a read lock.
+ *
+ * The coordinator enforces the borrowing limit of a patron across all shards. It
+ * counts each patron's loans itself and takes one of their slots before a borrow is
+ * routed, giving it back if the shard refuses the book or once the book is returned.
+ * A patron's loans must therefore be made and ended through the coordinator, and
+ * returns must name the patron.
+ */
+public class ShardedLibrary implements Closeable {
+
+    private static final int MIGRATION_PAGE_SIZE = 1000;
+
+    // Shared by every routed operation, taken exclusively to move books between shards
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Both replaced or changed only under the write lock
+    private Shard[] shards;
+    // Books waiting for their loans to end before moving, with the shard that still has them
+    private final LongObjectHashMap<Shard> pinned = new LongObjectHashMap<>();
+    // The number of books each patron holds across the shards, keyed by patron ID
+    private final Map<String, AtomicInteger> patronLoans = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a coordinator over a fixed set of empty or already partitioned shards.
+     *
+     * @param shards The shards, in the order they were added.
+     */
+    public ShardedLibrary(List<? extends Shard> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = shards.toArray(new Shard[0]);
+    }
+
+    public int getShardCount() {
+        lock.readLock().lock();
+        try {
+            return shards.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a new book to the shard that owns its ISBN.
+     *
+     * @param newBook The book to be added.
+     * @throws BookAlreadyExistException if a book with the given ISBN already exists.
+     */
+    public void addBook(Book newBook) throws BookAlreadyExistException {
+        lock.readLock().lock();
+        try {
+            if (!route(newBook.getIsbnValue()).addBook(newBook)) {
+                throw new BookAlreadyExistException("Book with the given ISBN already exists in the library");
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves a book by its ISBN from the shard that owns it.
+     *
+     * @param isbn The ISBN of the book to retrieve.
+     * @return The book with the specified ISBN, or null if not found.
+     */
+    public Book getBookByIsbn(String isbn) {
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            return route(key).getBook(isbn);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Borrows a book on behalf of a patron, see {@link Library#borrowBook(String, String)}.
+     *
+     * @param patronId The ID of the patron borrowing the book.
+     * @param isbn The ISBN of the book to be borrowed.
+     * @throws BookNotAvailableException if the book is already borrowed
+     * @throws BookNotFoundException if book does not exist in the library.
+     * @throws IllegalArgumentException if the patron already holds the maximum number of books.
+     */
+    public void borrowBook(String patronId, String isbn) throws BookNotFoundException, BookNotAvailableException {
+        switch (tryBorrowBook(patronId, isbn)) {
+            case OK:
+                return;
+            case NOT_AVAILABLE:
+                throw new BookNotAvailableException("Book is already borrowed", Library.STACK_TRACES);
+            case LIMIT_REACHED:
+                throw new IllegalArgumentException("User can not borrow more than 3 books");
+            default:
+                throw new BookNotFoundException("Book with the given ISBN does not exist", Library.STACK_TRACES);
+        }
+    }
+
+    /**
+     * Borrows a book on behalf of a patron, reporting an ordinary failure as a status.
+     *
+     * @param patronId The ID of the patron borrowing the book.
+     * @param isbn The ISBN of the book to be borrowed.
+     * @return {@link LoanStatus#OK}, or why the book could not be borrowed.
+     */
+    public LoanStatus tryBorrowBook(String patronId, String isbn) {
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return LoanStatus.NOT_FOUND;
+        }
+        // Take a slot first, the patron may be borrowing from another shard meanwhile
+        AtomicInteger count = patronLoans.computeIfAbsent(patronId, id -> new AtomicInteger());
+        if (!tryReserve(count)) {
+            return LoanStatus.LIMIT_REACHED;
+        }
+        LoanStatus status = LoanStatus.NOT_FOUND;
+        lock.readLock().lock();
+        try {
+            status = route(key).tryBorrowBook(patronId, isbn);
+            return status;
+        } finally {
+            lock.readLock().unlock();
+            if (status != LoanStatus.OK) {
+                count.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Takes one of a patron's borrowing slots, without ever going over the limit.
+     */
+    private static boolean tryReserve(AtomicInteger count) {
+        while (true) {
+            int current = count.get();
+            if (current >= Library.MAX_BORROWED_BOOKS) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns a book borrowed by a patron, see {@link Library#returnBook(String, String)}.
+     *
+     * @param patronId The ID of the patron returning the book.
+     * @param isbn The ISBN of the book to be returned.
+     * @throws BookNotFoundException if the book does not exist in the library.
+     * @throws BookNotBorrowedException if the book is not borrowed by the patron
+     */
+    public void returnBook(String patronId, String isbn) throws BookNotFoundException, BookNotBorrowedException {
+        switch (tryReturnBook(patronId, isbn)) {
+            case OK:
+                return;
+            case NOT_BORROWED:
+                throw new BookNotBorrowedException("Book is not borrowed", Library.STACK_TRACES);
+            default:
+                throw new BookNotFoundException("Book with the given ISBN does not exist", Library.STACK_TRACES);
+        }
+    }
+
+    /**
+     * Returns a book borrowed by a patron, reporting an ordinary failure as a status.
+     *
+     * @param patronId The ID of the patron returning the book, whose slot is freed.
+     * @param isbn The ISBN of the book to be returned.
+     * @return {@link LoanStatus#OK}, or why the book could not be returned.
+     * @throws IllegalArgumentException if no patron is given.
+     */
+    public LoanStatus tryReturnBook(String patronId, String isbn) {
+        if (patronId == null) {
+            throw new IllegalArgumentException("Patron should be given to return a book");
+        }
+        long key = Isbn.parse(isbn);
+        if (key == Isbn.INVALID) {
+            return LoanStatus.NOT_FOUND;
+        }
+        LoanStatus status;
+        lock.readLock().lock();
+        try {
+            status = route(key).tryReturnBook(patronId, isbn);
+        } finally {
+            lock.readLock().unlock();
+        }
+        AtomicInteger count = patronLoans.get(patronId);
+        if (status == LoanStatus.OK && count != null) {
+            // A loan a shard already had before this coordinator took no slot
+            count.updateAndGet(current -> Math.max(current - 1, 0));
+        }
+        return status;
+    }
+
+    /**
+     * Retrieves one page of the available books of every shard, ordered by ISBN.
+     *
+     * Each shard is asked for pages of up to limit books after the cursor, fetched only
+     * as the merge reaches their end, so a page costs at most one request per shard
+     * unless a shard still holds books that moved away, such as after a move that
+     * failed part-way.
+     *
+     * @param afterIsbn The ISBN after which the page starts, or null for the first page.
+     * @param limit The maximum number of books to return.
+     * @return Up to limit available books with an ISBN greater than afterIsbn.
+     */
+    public List<Book> getAvailableBooks(String afterIsbn, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit should not be negative");
+        }
+        if (afterIsbn != null && Isbn.parse(afterIsbn) == Isbn.INVALID) {
+            throw new IllegalArgumentException("Cursor should be a 13-digit ISBN");
+        }
+
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        lock.readLock().lock();
+        try {
+            ShardCursor[] cursors = new ShardCursor[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                cursors[i] = new ShardCursor(shards[i], afterIsbn, Math.max(limit, 1));
+            }
+            while (page.size() < limit) {
+                ShardCursor lowest = null;
+                for (ShardCursor cursor : cursors) {
+                    Book head = cursor.peek();
+                    if (head != null && (lowest == null || head.getIsbnValue() < lowest.peek().getIsbnValue())) {
+                        lowest = cursor;
+                    }
+                }
+                if (lowest == null) {
+                    break;
+                }
+                Book book = lowest.poll();
+                // Leave out the entries left behind by books that moved
+                if (route(book.getIsbnValue()) == lowest.shard) {
+                    page.add(book);
+                }
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a shard and moves to it the books that now belong to it.
+     *
+     * @param shard The new, empty shard.
+     */
+    public void addShard(Shard shard) {
+        lock.writeLock().lock();
+        try {
+            int previousCount = shards.length;
+            Shard[] updated = Arrays.copyOf(shards, previousCount + 1);
+            updated[previousCount] = shard;
+            shards = updated;
+            migrate(previousCount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the pinned books that are no longer on loan to the shards they belong to.
+     *
+     * @return The number of books still pinned to their old shard.
+     */
+    public int rebalance() {
+        lock.writeLock().lock();
+        try {
+            migrate(shards.length);
+            return pinned.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Walks every book of every shard and moves those that the current shard count
+     * routes elsewhere. Callers must hold the write lock.
+     *
+     * @param previousCount The shard count the books were placed with.
+     */
+    private void migrate(int previousCount) {
+        for (Shard source : shards) {
+            String after = null;
+            for (List<Book> page; !(page = source.getBooks(after, MIGRATION_PAGE_SIZE)).isEmpty(); ) {
+                for (Book book : page) {
+                    long key = book.getIsbnValue();
+                    Shard home = pinned.get(key);
+                    if (home == null) {
+                        home = shards[bucketOf(key, previousCount)];
+                    }
+                    Shard owner = shards[bucketOf(key, shards.length)];
+                    if (home != source) {
+                        // An entry left behind by an earlier move that failed part-way
+                        continue;
+                    }
+                    if (owner == source) {
+                        pinned.remove(key);
+                    } else if (source.getCopiesOnShelf(book.getIsbn()) == book.getCopies() && move(book, source, owner)) {
+                        pinned.remove(key);
+                    } else {
+                        pinned.put(key, source);
+                    }
+                }
+                after = page.get(page.size() - 1).getIsbn();
+            }
+        }
+    }
+
+    /**
+     * Copies a book to its new shard, then removes it from the old one. Callers must
+     * hold the write lock.
+     *
+     * @return false if a copy was lent by the old shard meanwhile, in which case the
+     *         book stays where it was.
+     */
+    private static boolean move(Book book, Shard source, Shard owner) {
+        // The new shard may have it already from a move that failed part-way
+        boolean added = owner.addBook(book);
+        if (source.tryRemoveBook(book.getIsbn()) == LoanStatus.OK) {
+            return true;
+        }
+        if (added) {
+            owner.tryRemoveBook(book.getIsbn());
+        }
+        return false;
+    }
+
+    /**
+     * Finds the shard that serves an ISBN. Callers must hold the read or the write lock.
+     */
+    private Shard route(long isbn) {
+        Shard shard = pinned.isEmpty() ? null : pinned.get(isbn);
+        return shard != null ? shard : shards[bucketOf(isbn, shards.length)];
+    }
+
+    /**
+     * Maps a key to one of n buckets with the jump consistent hash of Lamping and
+     * Veach: going from n to n + 1 buckets moves only the keys that land in the new one.
+     */
+    static int bucketOf(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    /**
+     * Closes every shard.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Shard shard : shards) {
+                shard.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the available books of one shard a page at a time.
+     */
+    private static final class ShardCursor {
+
+        final Shard shard;
+        private final int pageSize;
+        private List<Book> page;
+        private int position;
+        private String after;
+        private boolean exhausted;
+
+        ShardCursor(Shard shard, String after, int pageSize) {
+            this.shard = shard;
+            this.after = after;
+            this.pageSize = pageSize;
+        }
+
+        Book peek() {
+            if ((page == null || position == page.size()) && !exhausted) {
+                page = shard.getAvailableBooks(after, pageSize);
+                position = 0;
+                exhausted = page.size() < pageSize;
+                if (!page.isEmpty()) {
+                    after = page.get(page.size() - 1).getIsbn();
+                }
+            }
+            return position < page.size() ? page.get(position) : null;
+        }
+
+        Book poll() {
+            Book book = peek();
+            position++;
+            return book;
+        }
+    }
+}
@@ -1,5 +1,12 @@
 package library.ui;
 
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Scanner;
 
@@ -10,7 +17,13 @@ public class App {
    static Library library = new Library();
    static Scanner scanner = new Scanner(System.in);
 
-   public static void main(String[] args) {
+   public static void main(String[] args) throws IOException {
+
+       // --batch [file] replays commands from the file, or from stdin, without prompting
+       if (args.length > 0 && args[0].equals("--batch")) {
+           runBatch(args.length > 1 ? args[1] : null);
+           return;
+       }
 
        System.out.println("Welcome to the Library Management System!");
 
@@ -41,6 +54,18 @@ public class App {
        }
    }
 
+   private static void runBatch(String file) throws IOException {
+       InputStream in = file == null || file.equals("-") ? System.in : new FileInputStream(file);
+       Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+       try {
+           new BatchRunner(library, out).run(in);
+       } finally {
+           if (in != System.in) {
+               in.close();
+           }
+       }
+   }
+
    private static void printMenu() {
        System.out.println("\nPlease choose an option:");
        System.out.println("1. Add Book");
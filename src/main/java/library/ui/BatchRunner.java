@@ -0,0 +1,309 @@
+package library.ui;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import library.Book;
+import library.Library;
+import library.LoanStatus;
+import library.exception.InvalidIsbnException;
+
+/**
+ * Replays a file of library commands without prompting, for scripted runs and load tests.
+ *
+ * Each line holds one command, its fields separated by tabs:
+ *
+ * <pre>
+ * add     isbn  title  author  year  [copies]
+ * borrow  isbn  [patron]
+ * return  isbn  [patron]
+ * list
+ * </pre>
+ *
+ * Blank lines and lines starting with '#' are skipped. Borrows and returns without a
+ * patron act for {@link Library#DEFAULT_PATRON_ID}. Each command writes one line with
+ * its outcome: OK, a {@link LoanStatus} name, EXISTS for an ISBN already added, or
+ * ERROR and the reason for a malformed line. A list writes the available books, one
+ * per line, after its OK. A summary of the run follows the last command, on lines
+ * starting with '#'.
+ *
+ * The input is read in large blocks and split into lines and fields in place; only the
+ * fields a command passes on to the library become strings. Consecutive adds are
+ * handed to {@link Library#addBooks} together, and everything is written through the
+ * one writer given, which should be buffered.
+ */
+public class BatchRunner {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FIELDS = 6;
+    private static final int ADD_BATCH_SIZE = 1024;
+
+    private static final byte[] ADD = ascii("add");
+    private static final byte[] BORROW = ascii("borrow");
+    private static final byte[] RETURN = ascii("return");
+    private static final byte[] LIST = ascii("list");
+
+    private final Library library;
+    private final Writer out;
+
+    // The start and end of each field of the current line in the buffer
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    // Consecutive adds waiting to be applied together
+    private final List<Book> pendingAdds = new ArrayList<>(ADD_BATCH_SIZE);
+
+    private long commands;
+    private long succeeded;
+    private long failed;
+    private long malformed;
+
+    public BatchRunner(Library library, Writer out) {
+        this.library = library;
+        this.out = out;
+    }
+
+    /**
+     * Runs every command of a stream and writes the summary. The writer is flushed
+     * but not closed.
+     *
+     * @param in The commands.
+     * @throws IOException if the commands cannot be read or the results written.
+     */
+    public void run(InputStream in) throws IOException {
+        long start = System.nanoTime();
+        int length = 0;
+        int position = 0;
+        boolean eof = false;
+        while (true) {
+            int newline = indexOf(buffer, (byte) '\n', position, length);
+            if (newline < 0 && !eof) {
+                // Move the partial line to the front and read more behind it
+                length -= position;
+                System.arraycopy(buffer, position, buffer, 0, length);
+                position = 0;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+                continue;
+            }
+            int end = newline < 0 ? length : newline;
+            if (end > position) {
+                execute(position, end);
+            }
+            if (newline < 0) {
+                break;
+            }
+            position = newline + 1;
+        }
+        flushAdds();
+        writeSummary(System.nanoTime() - start);
+        out.flush();
+    }
+
+    public long getCommandCount() {
+        return commands;
+    }
+
+    public long getFailedCount() {
+        return failed;
+    }
+
+    public long getMalformedCount() {
+        return malformed;
+    }
+
+    private void execute(int from, int to) throws IOException {
+        if (buffer[to - 1] == '\r') {
+            to--;
+        }
+        if (to == from || buffer[from] == '#') {
+            return;
+        }
+        int fields = split(from, to);
+        commands++;
+        if (is(ADD, 0)) {
+            add(fields);
+            return;
+        }
+        // Anything else has to see the adds before it
+        flushAdds();
+        if ((is(BORROW, 0) || is(RETURN, 0)) && (fields == 2 || fields == 3)) {
+            String isbn = field(1);
+            String patronId = fields == 3 ? field(2) : Library.DEFAULT_PATRON_ID;
+            LoanStatus status = is(BORROW, 0) ? library.tryBorrowBook(patronId, isbn) : library.tryReturnBook(patronId, isbn);
+            if (status == LoanStatus.OK) {
+                succeeded++;
+            } else {
+                failed++;
+            }
+            writeLine(status.name());
+        } else if (is(LIST, 0) && fields == 1) {
+            succeeded++;
+            writeLine("OK");
+            for (Book book : library.availableBooks()) {
+                out.write(book.getIsbn());
+                out.write('\t');
+                out.write(book.getTitle());
+                out.write('\t');
+                out.write(book.getAuthor());
+                out.write('\t');
+                out.write(Integer.toString(book.getPublishYear()));
+                out.write('\n');
+            }
+        } else {
+            malformed++;
+            writeLine("ERROR\tUnknown command or wrong number of fields");
+        }
+    }
+
+    private void add(int fields) throws IOException {
+        if (fields != 5 && fields != 6) {
+            flushAdds();
+            malformed++;
+            writeLine("ERROR\tUnknown command or wrong number of fields");
+            return;
+        }
+        int publishYear = number(4);
+        int copies = fields == 6 ? number(5) : 1;
+        try {
+            if (publishYear < 0 || copies < 0) {
+                throw new IllegalArgumentException("Publish year and copies should be numbers");
+            }
+            pendingAdds.add(new Book(field(1), field(2), field(3), publishYear, copies));
+        } catch (InvalidIsbnException | IllegalArgumentException e) {
+            flushAdds();
+            malformed++;
+            writeLine("ERROR\t" + e.getMessage());
+            return;
+        }
+        if (pendingAdds.size() == ADD_BATCH_SIZE) {
+            flushAdds();
+        }
+    }
+
+    /**
+     * Adds the pending books in one batch and writes their outcomes in order.
+     */
+    private void flushAdds() throws IOException {
+        if (pendingAdds.isEmpty()) {
+            return;
+        }
+        List<Book> duplicates = library.addBooks(pendingAdds);
+        Set<Book> rejected = duplicates.isEmpty()
+                ? Collections.<Book>emptySet() : Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.addAll(duplicates);
+        for (Book book : pendingAdds) {
+            if (rejected.contains(book)) {
+                failed++;
+                writeLine("EXISTS");
+            } else {
+                succeeded++;
+                writeLine("OK");
+            }
+        }
+        pendingAdds.clear();
+    }
+
+    private void writeSummary(long elapsedNanos) throws IOException {
+        double seconds = elapsedNanos / 1e9;
+        out.write(String.format("# %d commands in %.3f s (%.0f commands/s)%n",
+                commands, seconds, seconds == 0 ? 0 : commands / seconds));
+        out.write(String.format("# %d succeeded, %d failed, %d malformed%n", succeeded, failed, malformed));
+    }
+
+    private void writeLine(String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+    }
+
+    /**
+     * Finds the tab-separated fields of a line.
+     *
+     * @return The number of fields, or MAX_FIELDS + 1 if there are more.
+     */
+    private int split(int from, int to) {
+        int count = 0;
+        int start = from;
+        while (true) {
+            int tab = indexOf(buffer, (byte) '\t', start, to);
+            int end = tab < 0 ? to : tab;
+            if (count == MAX_FIELDS) {
+                return MAX_FIELDS + 1;
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+            if (tab < 0) {
+                return count;
+            }
+            start = tab + 1;
+        }
+    }
+
+    private boolean is(byte[] keyword, int field) {
+        int length = ends[field] - starts[field];
+        if (length != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[starts[field] + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String field(int field) {
+        return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a field of decimal digits.
+     *
+     * @return The number, or -1 if the field is empty, not a number or too long.
+     */
+    private int number(int field) {
+        int length = ends[field] - starts[field];
+        if (length == 0 || length > 9) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = starts[field]; i < ends[field]; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String keyword) {
+        return keyword.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,234 @@
+package library.util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * An open-addressing hash map from primitive long keys to objects.
+ *
+ * Keys are stored unboxed in a flat array and collisions are resolved with linear
+ * probing, so a lookup is a couple of array reads with no allocation. An empty slot
+ * is marked by a null value, which means null values cannot be stored.
+ *
+ * This class is not thread-safe; callers must guard it with their own lock.
+ *
+ * @param <V> The type of the mapped values.
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a map that can hold the given number of entries without resizing.
+     *
+     * @param expectedSize The expected number of entries.
+     */
+    public LongObjectHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size should not be negative");
+        }
+        allocate(tableSizeFor((int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(expectedSize / LOAD_FACTOR))));
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     *
+     * @param key The key to look up.
+     * @return The mapped value, or null if the key is absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexFor(key);
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps the key to the value, replacing any previous mapping.
+     *
+     * @param key The key.
+     * @param value The value, which must not be null.
+     * @return The previous value, or null if the key was absent.
+     */
+    public V put(long key, V value) {
+        return put(key, value, false);
+    }
+
+    /**
+     * Maps the key to the value only if the key is absent.
+     *
+     * @param key The key.
+     * @param value The value, which must not be null.
+     * @return The existing value, or null if the value was inserted.
+     */
+    public V putIfAbsent(long key, V value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * Removes the mapping of the key.
+     *
+     * @param key The key to remove.
+     * @return The removed value, or null if the key was absent.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexFor(key);
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                values[index] = null;
+                size--;
+                closeGap(index);
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Ensures the map can hold the given number of entries without resizing.
+     *
+     * @param expectedSize The expected number of entries.
+     */
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize > resizeThreshold) {
+            rehash(tableSizeFor((int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(expectedSize / LOAD_FACTOR))));
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Passes every value in the map to the action, in no particular order.
+     *
+     * @param action The action to run for each value.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(long key, V value, boolean onlyIfAbsent) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+        int index = indexFor(key);
+        Object existing;
+        while ((existing = values[index]) != null) {
+            if (keys[index] == key) {
+                if (!onlyIfAbsent) {
+                    values[index] = value;
+                }
+                return (V) existing;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Shifts back the entries that follow a freed slot, so lookups never stop early
+     * at a hole in their probe sequence.
+     */
+    private void closeGap(int gap) {
+        int index = (gap + 1) & mask;
+        while (values[index] != null) {
+            int home = indexFor(keys[index]);
+            // Move the entry if the gap lies between its home slot and its current slot
+            if (((index - home) & mask) >= ((index - gap) & mask)) {
+                keys[gap] = keys[index];
+                values[gap] = values[index];
+                values[index] = null;
+                gap = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int index = indexFor(oldKeys[i]);
+                while (values[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int indexFor(long key) {
+        return mix(key) & mask;
+    }
+
+    /**
+     * Scrambles the key so that sequential ISBNs spread over the whole table.
+     *
+     * @param key The key.
+     * @return A well distributed 32-bit hash of the key.
+     */
+    public static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        return size < 0 ? 1 << 30 : size;
+    }
+}
@@ -0,0 +1,514 @@
+package library.util;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * An immutable map from non-negative long keys to objects, ordered by key, whose
+ * versions share structure.
+ *
+ * The map is a radix trie that takes six bits of the key per level. Each node keeps
+ * its children in an array compacted by a 64-bit occupancy bitmap, and chains of
+ * single-child nodes are collapsed, so a node records the key bits above it as a
+ * prefix and may skip levels. An update copies only the nodes on the path to its key
+ * and returns a new map, leaving the old one untouched. A map that has been safely
+ * published can therefore be read by any number of threads without locks.
+ *
+ * An {@link Editor} applies a series of updates, changing the nodes it has already
+ * copied in place instead of copying them again. Null values cannot be stored.
+ *
+ * @param <V> The type of the mapped values.
+ */
+public final class PersistentLongMap<V> {
+
+    private static final int BITS = 6;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentLongMap EMPTY = new PersistentLongMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <V> The type of the mapped values.
+     * @return A map without entries.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentLongMap<V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the value mapped to the key.
+     *
+     * @param key The key to look up.
+     * @return The mapped value, or null if the key is absent.
+     */
+    public V get(long key) {
+        return get(root, key);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V get(Node root, long key) {
+        if (key < 0) {
+            return null;
+        }
+        Node node = root;
+        while (node != null && node.covers(key)) {
+            int index = node.indexOf(key);
+            if ((node.bitmap & (1L << index)) == 0) {
+                return null;
+            }
+            Object child = node.children[node.position(index)];
+            if (node.shift == 0) {
+                return (V) child;
+            }
+            node = (Node) child;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a map with the key mapped to the value.
+     *
+     * @param key The key, not negative.
+     * @param value The value, not null.
+     * @return The updated map, or this map if the key was already mapped to the same value.
+     */
+    public PersistentLongMap<V> put(long key, V value) {
+        Editor<V> editor = new Editor<>(root, size, null);
+        editor.put(key, value);
+        return editor.root == root ? this : editor.toMap();
+    }
+
+    /**
+     * Returns a map without the key.
+     *
+     * @param key The key to remove.
+     * @return The updated map, or this map if the key was absent.
+     */
+    public PersistentLongMap<V> remove(long key) {
+        Editor<V> editor = new Editor<>(root, size, null);
+        editor.remove(key);
+        return editor.root == root ? this : editor.toMap();
+    }
+
+    /**
+     * Starts a series of updates to this map. The map itself is left untouched.
+     *
+     * @return An editor holding the entries of this map.
+     */
+    public Editor<V> edit() {
+        return new Editor<>(root, size, new Object());
+    }
+
+    /**
+     * Returns the smallest key above the given one, so the map can be walked in key
+     * order from any point.
+     *
+     * @param key The key to start after, or -1 to start at the beginning.
+     * @return The next key, or -1 if there is none.
+     */
+    public long higherKey(long key) {
+        return root == null ? -1 : higherKey(root, key);
+    }
+
+    /**
+     * Performs the given action for each value, in key order.
+     *
+     * @param action The action to perform.
+     */
+    public void forEachValue(Consumer<? super V> action) {
+        if (root != null) {
+            forEachValue(root, action);
+        }
+    }
+
+    /**
+     * Returns a spliterator over the values, in key order. It splits along the trie,
+     * handing half of the pending subtrees to the new spliterator, so the map can be
+     * walked by parallel streams without copying it first.
+     *
+     * @return A spliterator over the values.
+     */
+    public Spliterator<V> spliterator() {
+        return new TrieSpliterator<>(root, size);
+    }
+
+    private static long higherKey(Node node, long after) {
+        long base = node.base();
+        if (after < base) {
+            return firstKey(node);
+        }
+        if (!node.covers(after)) {
+            // The whole node lies below the key
+            return -1;
+        }
+        int index = node.indexOf(after);
+        if (node.shift > 0 && (node.bitmap & (1L << index)) != 0) {
+            long key = higherKey((Node) node.children[node.position(index)], after);
+            if (key != -1) {
+                return key;
+            }
+        }
+        long later = node.bitmap & (-2L << index);
+        if (later == 0) {
+            return -1;
+        }
+        int next = Long.numberOfTrailingZeros(later);
+        return node.shift == 0 ? base | next : firstKey((Node) node.children[node.position(next)]);
+    }
+
+    private static long firstKey(Node node) {
+        while (node.shift > 0) {
+            node = (Node) node.children[0];
+        }
+        return node.base() | Long.numberOfTrailingZeros(node.bitmap);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEachValue(Node node, Consumer<? super V> action) {
+        for (Object child : node.children) {
+            if (node.shift == 0) {
+                action.accept((V) child);
+            } else {
+                forEachValue((Node) child, action);
+            }
+        }
+    }
+
+    private static long prefixOf(long key, int shift) {
+        int above = shift + BITS;
+        return above >= Long.SIZE ? 0 : key >>> above;
+    }
+
+    /**
+     * Applies updates to a copy of a map, reusing the nodes it copied for later updates.
+     *
+     * An editor is not thread-safe, and the maps it returns are independent of its
+     * later updates.
+     *
+     * @param <V> The type of the mapped values.
+     */
+    public static final class Editor<V> {
+
+        private Node root;
+        private int size;
+        // Marks the nodes this editor may change in place; null if it may change none
+        private Object owner;
+
+        Editor(Node root, int size, Object owner) {
+            this.root = root;
+            this.size = size;
+            this.owner = owner;
+        }
+
+        /**
+         * Maps a key to a value.
+         *
+         * @param key The key, not negative.
+         * @param value The value, not null.
+         * @return This editor.
+         */
+        public Editor<V> put(long key, V value) {
+            if (key < 0) {
+                throw new IllegalArgumentException("Key should not be negative");
+            }
+            if (value == null) {
+                throw new NullPointerException("Value should not be null");
+            }
+            root = put(root, key, value);
+            return this;
+        }
+
+        /**
+         * Removes a key.
+         *
+         * @param key The key to remove.
+         * @return This editor.
+         */
+        public Editor<V> remove(long key) {
+            if (key >= 0) {
+                root = remove(root, key);
+            }
+            return this;
+        }
+
+        /**
+         * Returns the value mapped to a key by the updates so far.
+         *
+         * @param key The key to look up.
+         * @return The mapped value, or null if the key is absent.
+         */
+        public V get(long key) {
+            return PersistentLongMap.get(root, key);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the entries so far as a map. Later updates copy the nodes the map
+         * shares with the editor rather than change them.
+         *
+         * @return A map of the entries.
+         */
+        public PersistentLongMap<V> toMap() {
+            if (owner != null) {
+                owner = new Object();
+            }
+            return root == null ? empty() : new PersistentLongMap<>(root, size);
+        }
+
+        private Node put(Node node, long key, V value) {
+            if (node == null) {
+                size++;
+                return leaf(key, value);
+            }
+            if (!node.covers(key)) {
+                size++;
+                return branch(node, leaf(key, value), key);
+            }
+
+            int index = node.indexOf(key);
+            int position = node.position(index);
+            if ((node.bitmap & (1L << index)) != 0) {
+                Object current = node.children[position];
+                Object updated = node.shift == 0 ? value : put((Node) current, key, value);
+                if (updated == current) {
+                    return node;
+                }
+                Node target = editable(node);
+                target.children[position] = updated;
+                return target;
+            }
+
+            size++;
+            Object child = node.shift == 0 ? value : leaf(key, value);
+            Object[] children = new Object[node.children.length + 1];
+            System.arraycopy(node.children, 0, children, 0, position);
+            children[position] = child;
+            System.arraycopy(node.children, position, children, position + 1, node.children.length - position);
+            return update(node, node.bitmap | 1L << index, children);
+        }
+
+        private Node remove(Node node, long key) {
+            if (node == null || !node.covers(key)) {
+                return node;
+            }
+            int index = node.indexOf(key);
+            if ((node.bitmap & (1L << index)) == 0) {
+                return node;
+            }
+
+            int position = node.position(index);
+            if (node.shift > 0) {
+                Node current = (Node) node.children[position];
+                Node updated = remove(current, key);
+                if (updated == current) {
+                    return node;
+                }
+                if (updated != null) {
+                    Node target = editable(node);
+                    target.children[position] = updated;
+                    return target;
+                }
+            } else {
+                size--;
+            }
+
+            long bitmap = node.bitmap & ~(1L << index);
+            if (bitmap == 0) {
+                return null;
+            }
+            if (node.shift > 0 && node.children.length == 2) {
+                // A single child takes the place of its parent, keeping paths collapsed
+                return (Node) node.children[1 - position];
+            }
+            Object[] children = new Object[node.children.length - 1];
+            System.arraycopy(node.children, 0, children, 0, position);
+            System.arraycopy(node.children, position + 1, children, position, children.length - position);
+            return update(node, bitmap, children);
+        }
+
+        private Node leaf(long key, Object value) {
+            return new Node(0, prefixOf(key, 0), 1L << (key & MASK), new Object[] {value}, owner);
+        }
+
+        /**
+         * Joins a node and a leaf for a key outside it under a new node, at the highest
+         * level where their keys differ.
+         */
+        private Node branch(Node node, Node leaf, long key) {
+            long base = node.base();
+            int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(key ^ base)) / BITS * BITS;
+            int nodeIndex = (int) (base >>> shift) & MASK;
+            int leafIndex = (int) (key >>> shift) & MASK;
+            Object[] children = nodeIndex < leafIndex ? new Object[] {node, leaf} : new Object[] {leaf, node};
+            return new Node(shift, prefixOf(key, shift), 1L << nodeIndex | 1L << leafIndex, children, owner);
+        }
+
+        private Node editable(Node node) {
+            if (owner != null && node.owner == owner) {
+                return node;
+            }
+            return new Node(node.shift, node.prefix, node.bitmap, node.children.clone(), owner);
+        }
+
+        private Node update(Node node, long bitmap, Object[] children) {
+            if (owner != null && node.owner == owner) {
+                node.bitmap = bitmap;
+                node.children = children;
+                return node;
+            }
+            return new Node(node.shift, node.prefix, bitmap, children, owner);
+        }
+    }
+
+    /**
+     * Walks a trie depth first. The pending work is a queue, in key order, of subtrees
+     * and of values taken from leaf nodes.
+     */
+    private static final class TrieSpliterator<V> implements Spliterator<V> {
+
+        private final ArrayDeque<Object> pending;
+        private long estimate;
+
+        TrieSpliterator(Node root, long estimate) {
+            this.pending = new ArrayDeque<>();
+            if (root != null) {
+                pending.add(root);
+            }
+            this.estimate = estimate;
+        }
+
+        private TrieSpliterator(ArrayDeque<Object> pending, long estimate) {
+            this.pending = pending;
+            this.estimate = estimate;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            Object next;
+            while ((next = pending.pollFirst()) instanceof Node) {
+                expand((Node) next);
+            }
+            if (next == null) {
+                return false;
+            }
+            action.accept((V) next);
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super V> action) {
+            for (Object next; (next = pending.pollFirst()) != null; ) {
+                if (next instanceof Node) {
+                    forEachValue((Node) next, action);
+                } else {
+                    action.accept((V) next);
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<V> trySplit() {
+            // Open up a lone subtree until there is something to share
+            while (pending.size() == 1 && pending.peekFirst() instanceof Node) {
+                expand((Node) pending.pollFirst());
+            }
+            int half = pending.size() / 2;
+            if (half == 0) {
+                return null;
+            }
+            ArrayDeque<Object> prefix = new ArrayDeque<>(half);
+            for (int i = 0; i < half; i++) {
+                prefix.add(pending.pollFirst());
+            }
+            estimate >>>= 1;
+            return new TrieSpliterator<>(prefix, estimate);
+        }
+
+        // Puts the children of a node at the front of the queue, keeping them in key order
+        private void expand(Node node) {
+            for (int i = node.children.length - 1; i >= 0; i--) {
+                pending.addFirst(node.children[i]);
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * A trie node. At shift 0 the children are the values, otherwise they are nodes
+     * with a lower shift. Only the editor that owns a node may change it.
+     */
+    private static final class Node {
+
+        final int shift;
+        // The key bits above the six this node indexes on
+        final long prefix;
+        final Object owner;
+        long bitmap;
+        Object[] children;
+
+        Node(int shift, long prefix, long bitmap, Object[] children, Object owner) {
+            this.shift = shift;
+            this.prefix = prefix;
+            this.bitmap = bitmap;
+            this.children = children;
+            this.owner = owner;
+        }
+
+        boolean covers(long key) {
+            return prefixOf(key, shift) == prefix;
+        }
+
+        int indexOf(long key) {
+            return (int) (key >>> shift) & MASK;
+        }
+
+        // The position in children of the child at an index, which is the number of children before it
+        int position(int index) {
+            return Long.bitCount(bitmap & ((1L << index) - 1));
+        }
+
+        // The smallest key the node can hold
+        long base() {
+            int above = shift + BITS;
+            return above >= Long.SIZE ? 0 : prefix << above;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package library;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+
+public class BookValidatorTest {
+
+    /**
+     * Tests that ISBNs are validated and packed in one pass.
+     */
+    @Test
+    public void shouldValidateAndPackIsbn() {
+        assertEquals(9780306406157L, BookValidator.validateIsbn("9780306406157"));
+        assertEquals(BookValidator.WRONG_LENGTH, BookValidator.validateIsbn("1234567"));
+        assertEquals(BookValidator.WRONG_LENGTH, BookValidator.validateIsbn(null));
+        assertEquals(BookValidator.BAD_CHECKSUM, BookValidator.validateIsbn("1234567890123"));
+        assertEquals(BookValidator.BAD_CHECKSUM, BookValidator.validateIsbn("123456789012A"));
+
+        // Non-ASCII digits were accepted by Character.getNumericValue, they are not ISBNs
+        assertEquals(BookValidator.BAD_CHECKSUM, BookValidator.validateIsbn("978030640615٧"));
+    }
+
+    /**
+     * Tests that a batch reports the failure of each ISBN at its own index.
+     */
+    @Test
+    public void shouldReportFailuresPerIndex() {
+        long[] results = BookValidator.validateAll(new CharSequence[] {"9780306406157", "1234567", "1234567890123"});
+
+        assertArrayEquals(new long[] {9780306406157L, BookValidator.WRONG_LENGTH, BookValidator.BAD_CHECKSUM}, results);
+        assertEquals(true, BookValidator.isValid(results[0]));
+        assertEquals(false, BookValidator.isValid(results[1]));
+    }
+
+    /**
+     * Tests that publish years must be 4 digits long and not in the future.
+     */
+    @Test
+    public void shouldValidatePublishYear() {
+        int currentYear = LocalDate.now().getYear();
+
+        assertEquals(BookValidator.VALID_YEAR, BookValidator.validatePublishYear(currentYear));
+        assertEquals(BookValidator.YEAR_IN_FUTURE, BookValidator.validatePublishYear(currentYear + 1));
+        assertEquals(BookValidator.YEAR_NOT_FOUR_DIGITS, BookValidator.validatePublishYear(999));
+        assertEquals(BookValidator.YEAR_NOT_FOUR_DIGITS, BookValidator.validatePublishYear(-999));
+
+        Throwable exception = assertThrows(IllegalArgumentException.class, () -> new Book("9780306406157", "Title", "Author", currentYear + 1));
+        assertEquals("Publish year should not be in the future", exception.getMessage());
+    }
+}
@@ -0,0 +1,39 @@
+package library;
+
+import library.exception.InvalidIsbnException;
+
+/**
+ * Generates valid, distinct books for the tests and benchmarks.
+ */
+public final class CatalogFixtures {
+
+    private CatalogFixtures() {
+    }
+
+    /**
+     * Returns the i-th ISBN of a 978 prefixed sequence, with a correct check digit.
+     *
+     * @param i The position in the sequence.
+     * @return A valid 13-digit ISBN.
+     */
+    public static String isbn(long i) {
+        long body = 978_000_000_000L + i;
+        int sum = 0;
+        long rest = body;
+        for (int position = 11; position >= 0; position--) {
+            int digit = (int) (rest % 10);
+            rest /= 10;
+            sum += (position % 2 == 0) ? digit : digit * 3;
+        }
+        int check = (10 - sum % 10) % 10;
+        return Isbn.toString(body * 10 + check);
+    }
+
+    public static Book book(long i) {
+        try {
+            return new Book(isbn(i), "Title " + i, "Author " + (i % 1000), 1900 + (int) (i % 120));
+        } catch (InvalidIsbnException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
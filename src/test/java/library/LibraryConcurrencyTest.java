@@ -0,0 +1,288 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotAvailableException;
+import library.exception.BookNotBorrowedException;
+import library.exception.InvalidIsbnException;
+
+
+public class LibraryConcurrencyTest {
+
+    private static final String[] ISBNS = {"9780596520687", "9789295055025", "9780306406157"};
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20_000;
+
+    /**
+     * Tests that many threads racing to borrow the same books never hold the same ISBN at once.
+     */
+    @Test
+    public void shouldNeverBorrowSameBookTwiceConcurrently() throws Exception {
+
+        Library library = libraryWithBooks();
+
+        AtomicIntegerArray holders = new AtomicIntegerArray(ISBNS.length);
+        AtomicInteger doubleBorrows = new AtomicInteger();
+        AtomicInteger successfulBorrows = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int seed = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    int index = (seed + i) % ISBNS.length;
+                    try {
+                        library.borrowBook(ISBNS[index]);
+                    } catch (BookNotAvailableException | IllegalArgumentException e) {
+                        // Someone else holds the book, or all slots are momentarily taken
+                        continue;
+                    }
+
+                    // Only the thread that borrowed the book may be holding it now
+                    if (holders.incrementAndGet(index) != 1) {
+                        doubleBorrows.incrementAndGet();
+                    }
+                    successfulBorrows.incrementAndGet();
+                    holders.decrementAndGet(index);
+
+                    library.returnBook(ISBNS[index]);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Verify that no ISBN was ever held by two threads and that everything was returned
+        assertEquals(0, doubleBorrows.get());
+        assertTrue(successfulBorrows.get() > 0);
+        assertEquals(0, library.getBorrowedBooks().size());
+        assertEquals(ISBNS.length, library.getAvailableBooks().size());
+        assertEquals(ISBNS.length, library.availableCount());
+    }
+
+    /**
+     * Tests that when several threads borrow the same book only one of them succeeds.
+     */
+    @Test
+    public void shouldLetExactlyOneThreadBorrowABook() throws Exception {
+
+        for (int round = 0; round < 200; round++) {
+            Library library = libraryWithBooks();
+            AtomicInteger winners = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        library.borrowBook(ISBNS[0]);
+                        winners.incrementAndGet();
+                    } catch (BookNotAvailableException e) {
+                        // Expected for every thread but one
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(1, winners.get());
+            assertEquals(1, library.getBorrowedBooks().size());
+        }
+    }
+
+    /**
+     * Tests that concurrent returns of a single loan only succeed once.
+     */
+    @Test
+    public void shouldLetExactlyOneThreadReturnABook() throws Exception {
+
+        Library library = libraryWithBooks();
+        library.borrowBook(ISBNS[1]);
+
+        AtomicInteger returns = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    library.returnBook(ISBNS[1]);
+                    returns.incrementAndGet();
+                } catch (BookNotBorrowedException e) {
+                    // Expected for every thread but one
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(1, returns.get());
+        assertTrue(library.getBorrowedBooks().isEmpty());
+    }
+
+    /**
+     * Tests that a patron borrowing from many threads at once never exceeds the limit.
+     */
+    @Test
+    public void shouldNeverExceedPatronLimitConcurrently() throws Exception {
+
+        for (int round = 0; round < 200; round++) {
+            Library library = libraryWithBooks();
+            library.addBook(new Book("9781603095020", "Book Title 3", "Author Name 3", 2020));
+            String[] isbns = {ISBNS[0], ISBNS[1], ISBNS[2], "9781603095020"};
+
+            AtomicInteger successfulBorrows = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(isbns.length);
+            List<Future<?>> futures = new ArrayList<>();
+            for (String isbn : isbns) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        library.borrowBook("alice", isbn);
+                        successfulBorrows.incrementAndGet();
+                    } catch (IllegalArgumentException e) {
+                        // Expected for the borrow that would exceed the limit
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(Library.MAX_BORROWED_BOOKS, successfulBorrows.get());
+            assertEquals(Library.MAX_BORROWED_BOOKS, library.getBorrowedBooks("alice").size());
+        }
+    }
+
+    /**
+     * Tests that overlapping baskets borrowed concurrently are each applied whole or not at all.
+     */
+    @Test
+    public void shouldApplyOverlappingBasketsAtomically() throws Exception {
+
+        Library library = libraryWithBooks();
+        AtomicInteger partialBaskets = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final String patron = "patron" + t;
+            final List<String> basket = List.of(ISBNS[t % ISBNS.length], ISBNS[(t + 1) % ISBNS.length]);
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ITERATIONS / 10; i++) {
+                    Map<String, LoanStatus> borrowed = library.borrowAll(patron, basket);
+                    if (!borrowed.values().stream().allMatch(status -> status == LoanStatus.OK)) {
+                        continue;
+                    }
+                    if (library.getBorrowedBooks(patron).size() != basket.size()) {
+                        partialBaskets.incrementAndGet();
+                    }
+                    library.returnAll(patron, basket);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, partialBaskets.get());
+        assertEquals(0, library.getBorrowedBooks().size());
+        assertEquals(ISBNS.length, library.availableCount());
+    }
+
+    /**
+     * Tests that a title held by many patrons at once is passed down the queue to every one of them.
+     */
+    @Test
+    public void shouldHandBookToEveryHolderInTurn() throws Exception {
+
+        Library library = libraryWithBooks();
+        AtomicIntegerArray turns = new AtomicIntegerArray(THREADS * 100);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 100; i++) {
+                    String patron = "patron" + (thread * 100 + i);
+                    Loan loan = library.placeHold(patron, ISBNS[0]).get(10, TimeUnit.SECONDS);
+                    turns.incrementAndGet(thread * 100 + i);
+                    library.returnBook(loan.getPatronId(), ISBNS[0]);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < turns.length(); i++) {
+            assertEquals(1, turns.get(i));
+        }
+        assertEquals(0, library.getHoldCount(ISBNS[0]));
+        assertEquals(ISBNS.length, library.availableCount());
+    }
+
+    private static Library libraryWithBooks() throws InvalidIsbnException, BookAlreadyExistException {
+        Library library = new Library();
+        for (int i = 0; i < ISBNS.length; i++) {
+            library.addBook(new Book(ISBNS[i], "Book Title " + i, "Author Name " + i, 2020));
+        }
+        return library;
+    }
+}
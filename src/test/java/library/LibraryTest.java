@@ -1,9 +1,15 @@
 package library;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
@@ -240,4 +246,540 @@ public class LibraryTest {
         Exception e = assertThrows(IllegalArgumentException.class, () -> library.borrowBook("9781603095020"));
         assertEquals("User can not borrow more than 3 books", e.getMessage());
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests that the borrowing limit applies to each patron separately.
+     */
+    @Test
+    public void shouldApplyBorrowLimitPerPatron() throws InvalidIsbnException, BookAlreadyExistException, BookNotFoundException, BookNotAvailableException {
+
+        Library library = new Library();
+
+        library.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+        library.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022));
+        library.addBook(new Book("9780306406157", "Book Title 3", "Author Name 3", 2023));
+        library.addBook(new Book("9781603095020", "Book Title 4", "Author Name 4", 2023));
+
+        library.borrowBook("alice", "9780596520687");
+        library.borrowBook("alice", "9789295055025");
+        library.borrowBook("alice", "9780306406157");
+
+        // Verify that another patron can still borrow after alice reached the limit
+        assertThrows(IllegalArgumentException.class, () -> library.borrowBook("alice", "9781603095020"));
+        library.borrowBook("bob", "9781603095020");
+
+        assertEquals(3, library.getBorrowedBooks("alice").size());
+        assertEquals(List.of(library.getBookByIsbn("9781603095020")), library.getBorrowedBooks("bob"));
+    }
+
+    /**
+     * Tests that returning a book frees a borrowing slot for the patron.
+     */
+    @Test
+    public void shouldFreeBorrowSlotOnReturn() throws InvalidIsbnException, BookAlreadyExistException, BookNotFoundException, BookNotAvailableException, BookNotBorrowedException {
+
+        Library library = new Library();
+
+        library.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+        library.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022));
+        library.addBook(new Book("9780306406157", "Book Title 3", "Author Name 3", 2023));
+        library.addBook(new Book("9781603095020", "Book Title 4", "Author Name 4", 2023));
+
+        library.borrowBook("alice", "9780596520687");
+        library.borrowBook("alice", "9789295055025");
+        library.borrowBook("alice", "9780306406157");
+        library.returnBook("alice", "9789295055025");
+
+        // Verify that the returned slot can be used again
+        library.borrowBook("alice", "9781603095020");
+        assertEquals(3, library.getBorrowedBooks("alice").size());
+    }
+
+    /**
+     * Tests that a patron cannot return a book borrowed by someone else.
+     */
+    @Test
+    public void shouldNotReturnBookBorrowedByAnotherPatron() throws InvalidIsbnException, BookAlreadyExistException, BookNotFoundException, BookNotAvailableException {
+
+        Library library = new Library();
+
+        library.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+        library.borrowBook("alice", "9780596520687");
+
+        Throwable exception = assertThrows(BookNotBorrowedException.class, () -> library.returnBook("bob", "9780596520687"));
+        assertEquals("Book is not borrowed", exception.getMessage());
+        assertEquals("alice", library.getLoan("9780596520687").getPatronId());
+    }
+
+    /**
+     * Tests that the available books can be paged through with a cursor.
+     */
+    @Test
+    public void shouldPageThroughAvailableBooks() throws InvalidIsbnException, BookAlreadyExistException, BookNotFoundException, BookNotAvailableException, BookNotBorrowedException {
+
+        Library library = new Library();
+
+        library.addBook(new Book("9789295055025", "Book Title 1", "Author Name 1", 2022));
+        library.addBook(new Book("9780306406157", "Book Title 2", "Author Name 2", 2022));
+        library.addBook(new Book("9780596520687", "Book Title 3", "Author Name 3", 2022));
+        library.addBook(new Book("9781603095020", "Book Title 4", "Author Name 4", 2022));
+
+        library.borrowBook("9780596520687");
+        assertEquals(3, library.availableCount());
+
+        // Verify that pages come back in ISBN order and skip the borrowed book
+        List<Book> firstPage = library.getAvailableBooks(null, 2);
+        assertEquals(List.of(library.getBookByIsbn("9780306406157"), library.getBookByIsbn("9781603095020")), firstPage);
+
+        List<Book> secondPage = library.getAvailableBooks(firstPage.get(1).getIsbn(), 2);
+        assertEquals(List.of(library.getBookByIsbn("9789295055025")), secondPage);
+
+        // Verify that returning a book puts it back in the index
+        library.returnBook("9780596520687");
+        assertEquals(4, library.availableCount());
+        assertEquals(4, library.availableBooks().size());
+        assertEquals(List.of(library.getBookByIsbn("9780596520687")), library.getAvailableBooks("9780306406157", 1));
+    }
+
+    /**
+     * Tests that a book can be looked up by its ISBN packed into a long.
+     */
+    @Test
+    public void shouldFindBookByPackedIsbn() throws InvalidIsbnException, BookAlreadyExistException {
+
+        Library library = new Library();
+
+        Book book = new Book("9780306406157", "Book Title", "Author Name", 2022);
+        library.addBook(book);
+
+        assertEquals(book, library.getBookByIsbn(9780306406157L));
+        assertEquals(book, library.getBookByIsbn(Isbn.toString(book.getIsbnValue())));
+        assertEquals(null, library.getBookByIsbn("not an isbn"));
+    }
+
+    /**
+     * Tests that a basket of books is borrowed and returned as a whole.
+     */
+    @Test
+    public void shouldBorrowAndReturnBasket() throws BookAlreadyExistException {
+
+        Library library = new Library();
+        for (int i = 0; i < 4; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+
+        List<String> basket = List.of(CatalogFixtures.isbn(0), CatalogFixtures.isbn(1), CatalogFixtures.isbn(2));
+        Map<String, LoanStatus> borrowed = library.borrowAll("alice", basket);
+        assertEquals(basket, new ArrayList<>(borrowed.keySet()));
+        assertTrue(borrowed.values().stream().allMatch(status -> status == LoanStatus.OK));
+        assertEquals(3, library.getBorrowedBooks("alice").size());
+        assertEquals(1, library.availableCount());
+
+        // Returning someone else's basket fails without touching it
+        Map<String, LoanStatus> wrongPatron = library.returnAll("bob", basket);
+        assertEquals(LoanStatus.NOT_BORROWED, wrongPatron.get(CatalogFixtures.isbn(0)));
+        assertEquals(3, library.getBorrowedBooks("alice").size());
+
+        Map<String, LoanStatus> returned = library.returnAll("alice", basket);
+        assertTrue(returned.values().stream().allMatch(status -> status == LoanStatus.OK));
+        assertEquals(0, library.getBorrowedBooks("alice").size());
+        assertEquals(4, library.availableCount());
+    }
+
+    /**
+     * Tests that nothing in a basket is borrowed if one of its books cannot be.
+     */
+    @Test
+    public void shouldBorrowNothingIfOneBookFails() throws Exception {
+
+        Library library = new Library();
+        for (int i = 0; i < 4; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        library.borrowBook("bob", CatalogFixtures.isbn(1));
+
+        Map<String, LoanStatus> result = library.borrowAll("alice",
+                List.of(CatalogFixtures.isbn(0), CatalogFixtures.isbn(1), CatalogFixtures.isbn(9), "not an isbn"));
+        assertEquals(LoanStatus.ABORTED, result.get(CatalogFixtures.isbn(0)));
+        assertEquals(LoanStatus.NOT_AVAILABLE, result.get(CatalogFixtures.isbn(1)));
+        assertEquals(LoanStatus.NOT_FOUND, result.get(CatalogFixtures.isbn(9)));
+        assertEquals(LoanStatus.NOT_FOUND, result.get("not an isbn"));
+        assertEquals(0, library.getBorrowedBooks("alice").size());
+        assertEquals(3, library.availableCount());
+
+        // The limit applies to the basket as a whole
+        Map<String, LoanStatus> tooMany = library.borrowAll("alice",
+                List.of(CatalogFixtures.isbn(0), CatalogFixtures.isbn(2), CatalogFixtures.isbn(3), CatalogFixtures.isbn(3)));
+        assertEquals(LoanStatus.NOT_AVAILABLE, tooMany.get(CatalogFixtures.isbn(3)));
+        library.borrowBook("alice", CatalogFixtures.isbn(3));
+        Map<String, LoanStatus> overLimit = library.borrowAll("alice",
+                List.of(CatalogFixtures.isbn(0), CatalogFixtures.isbn(2), CatalogFixtures.isbn(1)));
+        assertEquals(LoanStatus.NOT_AVAILABLE, overLimit.get(CatalogFixtures.isbn(1)));
+        library.returnBook("bob", CatalogFixtures.isbn(1));
+        overLimit = library.borrowAll("alice",
+                List.of(CatalogFixtures.isbn(0), CatalogFixtures.isbn(2), CatalogFixtures.isbn(1)));
+        assertEquals(LoanStatus.LIMIT_REACHED, overLimit.get(CatalogFixtures.isbn(0)));
+        assertEquals(1, library.getBorrowedBooks("alice").size());
+    }
+
+    /**
+     * Tests that the non-throwing borrow and return report each ordinary failure as a status.
+     */
+    @Test
+    public void shouldReportFailuresAsStatus() throws BookAlreadyExistException {
+
+        Library library = new Library();
+        for (int i = 0; i < 5; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("alice", CatalogFixtures.isbn(0)));
+        assertEquals(LoanStatus.NOT_AVAILABLE, library.tryBorrowBook("bob", CatalogFixtures.isbn(0)));
+        assertEquals(LoanStatus.NOT_FOUND, library.tryBorrowBook("bob", CatalogFixtures.isbn(9)));
+        assertEquals(LoanStatus.NOT_FOUND, library.tryBorrowBook("bob", "not an isbn"));
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("alice", CatalogFixtures.isbn(1)));
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("alice", CatalogFixtures.isbn(2)));
+        assertEquals(LoanStatus.LIMIT_REACHED, library.tryBorrowBook("alice", CatalogFixtures.isbn(3)));
+
+        assertEquals(LoanStatus.NOT_BORROWED, library.tryReturnBook("bob", CatalogFixtures.isbn(0)));
+        assertEquals(LoanStatus.NOT_BORROWED, library.tryReturnBook("alice", CatalogFixtures.isbn(4)));
+        assertEquals(LoanStatus.NOT_FOUND, library.tryReturnBook("alice", CatalogFixtures.isbn(9)));
+        assertEquals(LoanStatus.OK, library.tryReturnBook("alice", CatalogFixtures.isbn(0)));
+        assertEquals(3, library.availableCount());
+        assertEquals(1L, library.getMetrics().snapshot().getErrorCounts().get("IllegalArgumentException"));
+    }
+
+    /**
+     * Tests that loans are dated by the library's clock and reported once overdue, until returned.
+     */
+    @Test
+    public void shouldReportOverdueLoans() throws BookAlreadyExistException {
+
+        MutableClock clock = new MutableClock(1_700_000_000_000L);
+        Library library = new Library(4, null, clock);
+        for (int i = 0; i < 3; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("alice", CatalogFixtures.isbn(0)));
+        clock.advance(Duration.ofDays(1));
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("bob", CatalogFixtures.isbn(1)));
+        library.borrowAll("carol", Arrays.asList(CatalogFixtures.isbn(2)));
+
+        Loan loan = library.getLoan(CatalogFixtures.isbn(1));
+        assertEquals(clock.millis(), loan.getBorrowedAt());
+        assertEquals(clock.millis() + Library.LOAN_PERIOD.toMillis(), loan.getDueAt());
+
+        clock.advance(Duration.ofDays(13));
+        List<Loan> overdue = library.getOverdueLoans();
+        assertEquals(1, overdue.size());
+        assertEquals("alice", overdue.get(0).getPatronId());
+
+        clock.advance(Duration.ofDays(1));
+        assertEquals(3, library.getOverdueLoans().size());
+        assertEquals("alice", library.getOverdueLoans().get(0).getPatronId());
+
+        library.tryReturnBook("alice", CatalogFixtures.isbn(0));
+        library.returnAll("carol", Arrays.asList(CatalogFixtures.isbn(2)));
+        assertEquals(Arrays.asList(loan), library.getOverdueLoans());
+    }
+
+    /**
+     * Tests that a returned book goes to the first patron still waiting who can take it.
+     */
+    @Test
+    public void shouldHandReturnedBookToFirstHold() throws Exception {
+
+        Library library = new Library();
+        for (int i = 0; i < 4; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        String isbn = CatalogFixtures.isbn(0);
+
+        assertTrue(library.placeHold("alice", isbn).isDone());
+        CompletableFuture<Loan> bob = library.placeHold("bob", isbn);
+        CompletableFuture<Loan> carol = library.placeHold("carol", isbn);
+        CompletableFuture<Loan> dave = library.placeHold("dave", isbn);
+        CompletableFuture<Loan> erin = library.placeHold("erin", isbn);
+        assertEquals(4, library.getHoldCount(isbn));
+
+        // Bob gives up, and Carol's hands are full by the time the book comes back
+        bob.cancel(false);
+        library.borrowAll("carol", Arrays.asList(CatalogFixtures.isbn(1), CatalogFixtures.isbn(2), CatalogFixtures.isbn(3)));
+        library.returnBook("alice", isbn);
+
+        ExecutionException limit = assertThrows(ExecutionException.class, carol::get);
+        assertTrue(limit.getCause() instanceof IllegalArgumentException);
+        assertEquals("dave", dave.get().getPatronId());
+        assertEquals("dave", library.getLoan(isbn).getPatronId());
+        assertEquals(1, library.getHoldCount(isbn));
+        assertEquals(0, library.availableCount());
+
+        library.returnBook("dave", isbn);
+        assertEquals("erin", erin.get().getPatronId());
+        library.returnBook("erin", isbn);
+        assertEquals(0, library.getHoldCount(isbn));
+        assertEquals(1, library.availableCount());
+
+        ExecutionException missing = assertThrows(ExecutionException.class,
+                () -> library.placeHold("alice", CatalogFixtures.isbn(9)).get());
+        assertTrue(missing.getCause() instanceof BookNotFoundException);
+    }
+
+    /**
+     * Tests that a patron who places a hold twice is queued once and lent one copy.
+     */
+    @Test
+    public void shouldQueuePatronOncePerTitle() throws Exception {
+
+        Library library = new Library();
+        String isbn = "9789295055025";
+        library.addBook(new Book(isbn, "Book Title", "Author Name", 2022, 2));
+        assertTrue(library.placeHold("alice", isbn).isDone());
+        ExecutionException twice = assertThrows(ExecutionException.class, () -> library.placeHold("alice", isbn).get());
+        assertTrue(twice.getCause() instanceof BookNotAvailableException);
+        library.returnBook("alice", isbn);
+
+        library.borrowBook("bob", isbn);
+        library.borrowBook("carol", isbn);
+        CompletableFuture<Loan> first = library.placeHold("alice", isbn);
+        CompletableFuture<Loan> second = library.placeHold("alice", isbn);
+        assertSame(first, second);
+        assertEquals(1, library.getHoldCount(isbn));
+
+        // Both copies come back, and only one of them goes to Alice
+        library.returnBook("bob", isbn);
+        library.returnBook("carol", isbn);
+        assertEquals("alice", first.get().getPatronId());
+        assertEquals(1, library.getBorrowedBooks("alice").size());
+        assertEquals(1, library.getCopiesOnShelf(isbn));
+        assertEquals(0, library.getHoldCount(isbn));
+    }
+
+    /**
+     * Tests that every copy of a title can be lent before it stops being available.
+     */
+    @Test
+    public void shouldLendEveryCopyOfATitle() throws Exception {
+
+        Library library = new Library();
+        String isbn = "9789295055025";
+        library.addBook(new Book(isbn, "Book Title", "Author Name", 2022, 2));
+
+        library.borrowBook("alice", isbn);
+        assertEquals(LoanStatus.NOT_AVAILABLE, library.tryBorrowBook("alice", isbn));
+        assertEquals(1, library.getCopiesOnShelf(isbn));
+        assertEquals(1, library.getAvailableBooks().size());
+
+        library.borrowBook("bob", isbn);
+        assertEquals(LoanStatus.NOT_AVAILABLE, library.tryBorrowBook("carol", isbn));
+        assertEquals(0, library.availableCount());
+        assertTrue(library.getAvailableBooks().isEmpty());
+        assertEquals(2, library.getLoans(isbn).size());
+        assertEquals("alice", library.getLoan(isbn).getPatronId());
+
+        // Only Bob's copy comes back, and it brings the title back on the list
+        library.returnBook("bob", isbn);
+        assertEquals("alice", library.getLoan(isbn).getPatronId());
+        assertEquals(1, library.availableCount());
+        assertEquals(1, library.getAvailableBooks().size());
+
+        library.returnBook(isbn);
+        assertEquals(2, library.getCopiesOnShelf(isbn));
+        assertEquals(1, library.availableCount());
+        assertThrows(IllegalArgumentException.class, () -> new Book(isbn, "Book Title", "Author Name", 2022, 0));
+    }
+
+    /**
+     * Tests that a snapshot keeps showing the library as it was when it was taken.
+     */
+    @Test
+    public void shouldKeepSnapshotUnchanged() throws Exception {
+
+        Library library = new Library();
+        String isbn1 = "9789295055025";
+        String isbn2 = "9780132350884";
+        library.addBook(new Book(isbn1, "Book Title 1", "Author Name 1", 2022));
+
+        LibrarySnapshot before = library.snapshot();
+        library.borrowBook("alice", isbn1);
+        library.addBook(new Book(isbn2, "Book Title 2", "Author Name 2", 2023));
+
+        // The snapshot still has the first book on the shelf and no second book
+        assertEquals(1, before.availableCount());
+        assertEquals(isbn1, before.getAvailableBooks(null, 10).get(0).getIsbn());
+        assertTrue(before.getLoans(isbn1).isEmpty());
+        assertEquals(null, before.getBook(isbn2));
+
+        LibrarySnapshot after = library.snapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(1, after.availableCount());
+        assertEquals(isbn2, after.getAvailableBooks(null, 10).get(0).getIsbn());
+        assertEquals("alice", after.getLoans(isbn1).get(0).getPatronId());
+
+        library.returnBook(isbn1);
+        assertEquals(0, after.getCopiesOnShelf(isbn1));
+        assertEquals(1, library.snapshot().getCopiesOnShelf(isbn1));
+        assertEquals(2, library.availableCount());
+    }
+
+    /**
+     * Tests that a listener that throws fails the call without leaving the change half
+     * applied: the book is added, lent and returned in full, and the patron's slot freed.
+     */
+    @Test
+    public void shouldStayConsistentWhenListenerThrows() throws Exception {
+
+        Library library = new Library();
+        String isbn = "9789295055025";
+        library.addListener(new LibraryListener() {
+            @Override
+            public void bookAdded(Book book) {
+                throw new IllegalStateException("added");
+            }
+
+            @Override
+            public void bookBorrowed(Loan loan) {
+                throw new IllegalStateException("borrowed");
+            }
+
+            @Override
+            public void bookReturned(Loan loan) {
+                throw new IllegalStateException("returned");
+            }
+        });
+        List<Loan> told = new ArrayList<>();
+        library.addListener(new LibraryListener() {
+            @Override
+            public void bookBorrowed(Loan loan) {
+                told.add(loan);
+            }
+        });
+
+        assertThrows(IllegalStateException.class, () -> library.addBook(new Book(isbn, "Book Title", "Author Name", 2022)));
+        assertEquals(1, library.availableCount());
+        assertEquals(isbn, library.getAvailableBooks(null, 10).get(0).getIsbn());
+
+        assertThrows(IllegalStateException.class, () -> library.borrowBook("alice", isbn));
+        assertEquals(0, library.availableCount());
+        assertEquals("alice", library.getLoan(isbn).getPatronId());
+        // The listeners after the one that threw are still told
+        assertEquals(1, told.size());
+
+        assertThrows(IllegalStateException.class, () -> library.returnBook("alice", isbn));
+        assertEquals(1, library.availableCount());
+        assertEquals(null, library.getLoan(isbn));
+        assertTrue(library.getBorrowedBooks("alice").isEmpty());
+    }
+
+    /**
+     * Tests that text too long for a journal record is rejected before anything changes.
+     */
+    @Test
+    public void shouldRejectTextTooLongForRecord() throws Exception {
+
+        Library library = new Library();
+        String isbn = "9789295055025";
+        char[] text = new char[BookValidator.MAX_TEXT_BYTES / 2 + 1];
+        Arrays.fill(text, '\u00e9');
+        String tooLong = new String(text);
+
+        assertThrows(IllegalArgumentException.class, () -> new Book(isbn, tooLong, "Author Name", 2022));
+        assertThrows(IllegalArgumentException.class, () -> new Book(isbn, "Book Title", tooLong, 2022));
+        library.addBook(new Book(isbn, "Book Title", tooLong.substring(1), 2022));
+
+        assertThrows(IllegalArgumentException.class, () -> library.borrowBook(tooLong, isbn));
+        assertThrows(IllegalArgumentException.class, () -> library.placeHold(tooLong, isbn));
+        assertThrows(IllegalArgumentException.class, () -> library.borrowAll(tooLong, Arrays.asList(isbn)));
+        assertEquals(1, library.availableCount());
+        assertTrue(library.getBorrowedBooks(tooLong).isEmpty());
+    }
+
+    /**
+     * Tests that listings merge every stripe in ISBN order, page after page, whichever
+     * order the books were added in and however many of them are on loan.
+     */
+    @Test
+    public void shouldListBooksInIsbnOrderAcrossStripes() throws Exception {
+
+        Library library = new Library(16);
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            books.add(CatalogFixtures.book(i * 7919 % 500));
+        }
+        library.addBooks(books);
+        for (int i = 0; i < 500; i += 3) {
+            library.borrowBook("patron-" + i, CatalogFixtures.isbn(i));
+        }
+
+        List<Book> all = new ArrayList<>();
+        List<Book> available = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            all.add(CatalogFixtures.book(i));
+            if (i % 3 != 0) {
+                available.add(CatalogFixtures.book(i));
+            }
+        }
+        LibrarySnapshot snapshot = library.snapshot();
+        List<Book> paged = new ArrayList<>();
+        for (List<Book> page; !(page = snapshot.getBooks(paged.isEmpty() ? null : paged.get(paged.size() - 1).getIsbn(), 37)).isEmpty(); ) {
+            paged.addAll(page);
+        }
+        assertEquals(all, paged);
+        assertEquals(available, new ArrayList<>(snapshot.availableBooks()));
+    }
+
+    /**
+     * Tests that loans are restored past the borrowing limit only while a library is
+     * recovered, never once it has been handed out.
+     */
+    @Test
+    public void shouldRestoreLoansOnlyWhileRecovering() throws Exception {
+
+        Recovery[] leaked = new Recovery[1];
+        Library library = Library.recover(recovery -> {
+            leaked[0] = recovery;
+            for (int i = 0; i < 5; i++) {
+                recovery.getLibrary().addBook(CatalogFixtures.book(i));
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals(LoanStatus.OK, recovery.restoreLoan("alice", CatalogFixtures.book(i).getIsbnValue()));
+            }
+        });
+
+        assertEquals(4, library.getBorrowedBooks("alice").size());
+        assertThrows(IllegalStateException.class, () -> leaked[0].restoreLoan("alice", CatalogFixtures.book(4).getIsbnValue()));
+        assertEquals(LoanStatus.LIMIT_REACHED, library.tryBorrowBook("alice", CatalogFixtures.isbn(4)));
+    }
+
+    /**
+     * Tests that a book is removed only while every copy is on the shelf, and that the
+     * listeners are told.
+     */
+    @Test
+    public void shouldRemoveBookWithEveryCopyOnShelf() throws Exception {
+
+        Library library = new Library();
+        String isbn = "9789295055025";
+        library.addBook(new Book(isbn, "Book Title", "Author Name", 2022, 2));
+        List<Book> removed = new ArrayList<>();
+        library.addListener(new LibraryListener() {
+            @Override
+            public void bookRemoved(Book book) {
+                removed.add(book);
+            }
+        });
+
+        library.borrowBook("alice", isbn);
+        assertEquals(LoanStatus.NOT_AVAILABLE, library.tryRemoveBook(isbn));
+        library.returnBook("alice", isbn);
+        assertEquals(LoanStatus.OK, library.tryRemoveBook(isbn));
+        assertEquals(LoanStatus.NOT_FOUND, library.tryRemoveBook(isbn));
+
+        assertEquals(null, library.getBookByIsbn(isbn));
+        assertEquals(0, library.availableCount());
+        assertTrue(library.getAvailableBooks().isEmpty());
+        assertEquals(isbn, removed.get(0).getIsbn());
+        assertEquals(1, removed.size());
+    }
+}
@@ -0,0 +1,99 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class LoanTimerTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    /**
+     * Tests that a loan surfaces once its due date has passed, and not a tick before.
+     */
+    @Test
+    public void shouldSurfaceLoanWhenDue() {
+        LoanTimer timer = new LoanTimer(START);
+        Loan loan = new Loan(CatalogFixtures.book(0), "alice", START, START + 90_500);
+        timer.schedule(loan);
+
+        timer.advance(START + 90_000);
+        assertEquals(0, overdue(timer).size());
+        timer.advance(START + 91_000);
+        assertEquals(Collections.singletonList(loan), overdue(timer));
+
+        timer.cancel(loan);
+        assertEquals(0, overdue(timer).size());
+    }
+
+    /**
+     * Tests that loans spread over years surface exactly when due, however far the timer jumps.
+     */
+    @Test
+    public void shouldSurfaceEveryLoanOnTime() {
+        LoanTimer timer = new LoanTimer(START);
+        Random random = new Random(42);
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            long due = START + (long) (random.nextDouble() * random.nextDouble() * 3 * 365 * 86_400_000L);
+            Loan loan = new Loan(CatalogFixtures.book(i), "patron", START, due);
+            timer.schedule(loan);
+            loans.add(loan);
+        }
+        // Returned books never surface
+        for (int i = 0; i < loans.size(); i += 10) {
+            timer.cancel(loans.get(i));
+        }
+
+        long now = START;
+        while (now < START + 4 * 365 * 86_400_000L) {
+            now += (long) (random.nextDouble() * random.nextDouble() * 30 * 86_400_000L);
+            timer.advance(now);
+            List<Loan> overdue = overdue(timer);
+            long expected = 0;
+            for (int i = 0; i < loans.size(); i++) {
+                // Surfaced at the first whole second at or after the due date
+                if (i % 10 != 0 && -Math.floorDiv(-loans.get(i).getDueAt(), 1000) * 1000 <= now) {
+                    expected++;
+                }
+            }
+            assertEquals(expected, overdue.size());
+            for (Loan loan : overdue) {
+                assertTrue(loan.getDueAt() <= now);
+            }
+        }
+    }
+
+    /**
+     * Tests that cancelling loans from the middle of a slot keeps the rest of the slot intact.
+     */
+    @Test
+    public void shouldCancelFromAnyPosition() {
+        LoanTimer timer = new LoanTimer(START);
+        List<Loan> loans = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Loan loan = new Loan(CatalogFixtures.book(i), "patron", START, START + 5_000);
+            timer.schedule(loan);
+            loans.add(loan);
+        }
+        timer.cancel(loans.get(2));
+        timer.cancel(loans.get(4));
+        timer.cancel(loans.get(0));
+
+        timer.advance(START + 10_000);
+        List<Loan> overdue = overdue(timer);
+        assertEquals(2, overdue.size());
+        assertTrue(overdue.contains(loans.get(1)) && overdue.contains(loans.get(3)));
+    }
+
+    private static List<Loan> overdue(LoanTimer timer) {
+        List<Loan> overdue = new ArrayList<>();
+        timer.collectOverdue(overdue);
+        return overdue;
+    }
+}
@@ -0,0 +1,95 @@
+package library.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.io.ColumnarCatalog;
+
+
+public class LibraryAnalyticsTest {
+
+    /**
+     * Tests that loans are counted per author and availability per decade, over the
+     * books of the library and of its store alike.
+     */
+    @Test
+    public void shouldAggregateLoansAndAvailability() throws Exception {
+        // Books 0 to 1999 in a read-only store, 2000 to 2399 in the library itself
+        List<Book> stored = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            stored.add(CatalogFixtures.book(i));
+        }
+        Library library = new Library(ColumnarCatalog.of(stored));
+        for (int i = 2000; i < 2400; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        // Author 7 has books 7, 1007 and 2007; the years of 7 and 1007 are 1907 and 1967
+        library.borrowBook("alice", CatalogFixtures.isbn(7));
+        library.borrowBook("bob", CatalogFixtures.isbn(1007));
+        library.borrowBook("bob", CatalogFixtures.isbn(2007));
+        library.borrowBook("carol", CatalogFixtures.isbn(8));
+
+        LibraryAnalytics analytics = LibraryAnalytics.attach(library);
+        Map<String, Long> perAuthor = analytics.loansPerAuthor();
+        assertEquals(2, perAuthor.size());
+        assertEquals(3L, perAuthor.get("Author 7").longValue());
+        assertEquals(1L, perAuthor.get("Author 8").longValue());
+
+        SortedMap<Integer, LibraryAnalytics.Availability> byDecade = analytics.availabilityByDecade();
+        assertEquals(12, byDecade.size());
+        assertEquals(1900, byDecade.firstKey().intValue());
+        long books = 0;
+        long available = 0;
+        for (LibraryAnalytics.Availability decade : byDecade.values()) {
+            books += decade.getBooks();
+            available += decade.getAvailable();
+        }
+        assertEquals(2400, books);
+        assertEquals(2396, available);
+        assertEquals(200, byDecade.get(1900).getBooks());
+        assertEquals(198, byDecade.get(1900).getAvailable());
+        assertEquals(0.99, byDecade.get(1900).getRatio(), 1e-9);
+    }
+
+    /**
+     * Tests that borrows are counted per ISBN and ranked, keeping the top k.
+     */
+    @Test
+    public void shouldRankMostBorrowedBooks() throws Exception {
+        Library library = new Library();
+        for (int i = 0; i < 100; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        library.borrowBook("alice", CatalogFixtures.isbn(50));
+        LibraryAnalytics analytics = LibraryAnalytics.attach(library);
+
+        // Book i is borrowed i % 10 times, on top of the loan already out for book 50
+        for (int i = 0; i < 100; i++) {
+            for (int n = 0; n < i % 10; n++) {
+                library.borrowBook("bob", CatalogFixtures.isbn(i));
+                library.returnBook("bob", CatalogFixtures.isbn(i));
+            }
+        }
+        assertEquals(9, analytics.getBorrowCount(CatalogFixtures.isbn(9)));
+        assertEquals(1, analytics.getBorrowCount(CatalogFixtures.isbn(50)));
+        assertEquals(0, analytics.getBorrowCount(CatalogFixtures.isbn(10)));
+
+        List<LibraryAnalytics.BorrowCount> top = analytics.mostBorrowed(12);
+        assertEquals(12, top.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(CatalogFixtures.book(9 + 10 * i), top.get(i).getBook());
+            assertEquals(9, top.get(i).getCount());
+        }
+        assertEquals(CatalogFixtures.book(8), top.get(10).getBook());
+        assertEquals(8, top.get(11).getCount());
+        assertEquals(0, analytics.mostBorrowed(0).size());
+    }
+}
@@ -0,0 +1,68 @@
+package library.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.CatalogFixtures;
+import library.Library;
+import library.ui.BatchRunner;
+
+/**
+ * Measures how long {@link BatchRunner} takes to replay a long log into an empty
+ * library: an add for every book, then a borrow and a return of each. The log is
+ * larger than the runner's buffer, so it is refilled along the way.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchRunnerBenchmark {
+
+    @Param({"20000", "200000"})
+    public int books;
+
+    private byte[] log;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < books; i++) {
+            line.setLength(0);
+            line.append("add\t").append(CatalogFixtures.isbn(i)).append("\tTitle ").append(i)
+                    .append("\tAuthor ").append(i % 1000).append('\t').append(1900 + i % 120).append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < books; i++) {
+            String isbn = CatalogFixtures.isbn(i);
+            out.write(("borrow\t" + isbn + "\tp" + i + "\nreturn\t" + isbn + "\tp" + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        log = out.toByteArray();
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        BatchRunner runner = new BatchRunner(new Library(), new StringWriter(books * 12));
+        runner.run(new ByteArrayInputStream(log));
+        return runner.getCommandCount();
+    }
+}
@@ -0,0 +1,105 @@
+package library.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import library.Book;
+import library.BookValidator;
+import library.CatalogFixtures;
+import library.Isbn;
+import library.exception.InvalidIsbnException;
+
+/**
+ * Compares the previous ISBN and publish year validation, which used
+ * Character.getNumericValue, String.valueOf and LocalDate.now per book, with
+ * {@link BookValidator}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookValidationBenchmark {
+
+    private static final int BATCH = 1024;
+
+    private String[] isbns;
+
+    @Setup
+    public void setUp() {
+        isbns = new String[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            isbns[i] = CatalogFixtures.isbn(i);
+        }
+    }
+
+    @Benchmark
+    public void legacyValidation(Blackhole blackhole) throws InvalidIsbnException {
+        for (String isbn : isbns) {
+            blackhole.consume(legacyValidate(isbn, 2020));
+        }
+    }
+
+    @Benchmark
+    public void validator(Blackhole blackhole) {
+        for (String isbn : isbns) {
+            long value = BookValidator.validateIsbn(isbn);
+            blackhole.consume(value + BookValidator.validatePublishYear(2020));
+        }
+    }
+
+    @Benchmark
+    public long[] validatorBatch() {
+        return BookValidator.validateAll(isbns);
+    }
+
+    @Benchmark
+    public void constructBooks(Blackhole blackhole) throws InvalidIsbnException {
+        for (String isbn : isbns) {
+            blackhole.consume(new Book(isbn, "Title", "Author", 2020));
+        }
+    }
+
+    /**
+     * The validation the Book constructor used to run, kept here as the baseline.
+     */
+    private static long legacyValidate(String isbn, int publishYear) throws InvalidIsbnException {
+        if (isbn.length() != 13) {
+            throw new InvalidIsbnException("Please provide a valid ISBN number (must be 13 characters long)");
+        }
+        int checksum;
+        try {
+            int sum = 0;
+            for (int i = 0; i < isbn.length() - 1; i++) {
+                int digit = Character.getNumericValue(isbn.charAt(i));
+                sum += (i % 2 == 0) ? digit : digit * 3;
+            }
+            int remainder = sum % 10;
+            checksum = remainder == 0 ? 0 : (10 - remainder);
+        } catch (Exception e) {
+            throw new InvalidIsbnException("Invalid ISBN checksum");
+        }
+        if (checksum != Character.getNumericValue(isbn.charAt(12))) {
+            throw new InvalidIsbnException("Invalid ISBN checksum");
+        }
+        if (String.valueOf(publishYear).length() != 4) {
+            throw new IllegalArgumentException("Publish year should be 4 digits long");
+        } else if (publishYear > LocalDate.now().getYear()) {
+            throw new IllegalArgumentException("Publish year should not be in the future");
+        }
+        return Isbn.parse(isbn);
+    }
+}
@@ -0,0 +1,91 @@
+package library.benchmark;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.search.CatalogIndex;
+
+/**
+ * Measures year range and author queries through the secondary indexes against
+ * filtering and sorting a full scan of the catalog.
+ *
+ * The fixture spreads the books over 120 years and 1000 authors, so the decade
+ * queried holds about 8% of the catalog and each author 0.1%.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogIndexBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+
+    private Library library;
+    private CatalogIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = new Library();
+        List<Book> books = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            books.add(CatalogFixtures.book(i));
+        }
+        library.addBooks(books);
+        index = CatalogIndex.attach(library);
+    }
+
+    @Benchmark
+    public List<Book> indexedYearRangePage() {
+        return index.publishedBetween(1990, 2000, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Book> indexedAuthor() {
+        return index.byAuthor("Author 42", null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The alternative without an index: the whole catalog, borrowed books included as
+     * they are in the index, is filtered, then sorted by year and ISBN as the index is.
+     */
+    @Benchmark
+    public List<Book> scanYearRangePage() {
+        return library.snapshot().books()
+                .filter(book -> book.getPublishYear() >= 1990 && book.getPublishYear() <= 2000)
+                .sorted(Comparator.comparingInt(Book::getPublishYear).thenComparingLong(Book::getIsbnValue))
+                .limit(PAGE_SIZE)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Book> scanAuthor() {
+        return library.snapshot().books()
+                .filter(book -> book.getAuthor().equalsIgnoreCase("Author 42"))
+                .sorted(Comparator.comparingInt(Book::getPublishYear).thenComparingLong(Book::getIsbnValue))
+                .collect(Collectors.toList());
+    }
+}
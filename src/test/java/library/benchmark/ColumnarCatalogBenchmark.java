@@ -0,0 +1,96 @@
+package library.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.io.ColumnarCatalog;
+
+/**
+ * Compares a library holding its catalog as {@link Book} objects on the heap with
+ * one reading it from a {@link ColumnarCatalog}: lookups, a title scan, and the heap
+ * each layout retains, printed in bytes per book when the trial is set up.
+ *
+ * The retained heap is the difference in used heap after a full collection, so it
+ * counts everything the library keeps for its books, the catalog maps included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ColumnarCatalogBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int catalogSize;
+
+    @Param({"heap", "columnar"})
+    public String layout;
+
+    private Library library;
+    private String[] isbns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        isbns = new String[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            isbns[i] = CatalogFixtures.isbn(i);
+        }
+
+        long before = usedHeap();
+        List<Book> books = new ArrayList<>(catalogSize);
+        for (int i = 0; i < catalogSize; i++) {
+            books.add(CatalogFixtures.book(i));
+        }
+        if (layout.equals("columnar")) {
+            library = new Library(ColumnarCatalog.of(books));
+        } else {
+            library = new Library();
+            library.addBooks(books);
+        }
+        books = null;
+        long retained = usedHeap() - before;
+        System.out.printf("%n%s layout: %d books retain about %d bytes (%.1f bytes per book)%n",
+                layout, catalogSize, retained, (double) retained / catalogSize);
+    }
+
+    @Benchmark
+    public Book lookup() {
+        return library.getBookByIsbn(isbns[ThreadLocalRandom.current().nextInt(catalogSize)]);
+    }
+
+    @Benchmark
+    public int scanTitles() {
+        int length = 0;
+        for (Book book : library.snapshot().availableBooks()) {
+            length += book.getTitle().length();
+        }
+        return length;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,146 @@
+package library.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.CatalogFixtures;
+import library.io.PersistentLibrary;
+
+/**
+ * Measures the durable write path of a {@link PersistentLibrary} and its recovery.
+ *
+ * journaledBorrowAndReturn has several threads borrow and return books of their own,
+ * each call returning only once its record is forced to the device, so the score
+ * shows how well group commit batches the threads' records. recover opens a
+ * directory whose journal holds an add, a borrow and a return for every book.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    @State(Scope.Benchmark)
+    public static class Journaled {
+
+        Path directory;
+        PersistentLibrary persistent;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("journal-benchmark");
+            persistent = PersistentLibrary.open(directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            persistent.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Patron {
+
+        String patronId;
+        String isbn;
+
+        @Setup(Level.Trial)
+        public void setUp(Journaled journaled) throws Exception {
+            int id = THREAD_IDS.getAndIncrement();
+            patronId = "patron-" + id;
+            isbn = CatalogFixtures.isbn(id);
+            journaled.persistent.addBook(CatalogFixtures.book(id));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recovery {
+
+        @Param({"4000", "40000"})
+        public int books;
+
+        Path template;
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            template = Files.createTempDirectory("recovery-template");
+            try (PersistentLibrary persistent = PersistentLibrary.open(template, false)) {
+                for (int i = 0; i < books; i++) {
+                    persistent.getLibrary().addBook(CatalogFixtures.book(i));
+                    persistent.getLibrary().borrowBook("patron", CatalogFixtures.isbn(i));
+                    persistent.getLibrary().returnBook("patron", CatalogFixtures.isbn(i));
+                }
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void copy() throws IOException {
+            // Every open starts a new segment, so each one gets a fresh copy
+            directory = Files.createTempDirectory("recovery");
+            try (Stream<Path> files = Files.list(template)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.copy(file, directory.resolve(file.getFileName()));
+                }
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void clean() throws IOException {
+            delete(directory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            delete(template);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void journaledBorrowAndReturn(Journaled journaled, Patron patron) throws Exception {
+        journaled.persistent.borrowBook(patron.patronId, patron.isbn);
+        journaled.persistent.returnBook(patron.patronId, patron.isbn);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int recover(Recovery recovery) throws IOException {
+        try (PersistentLibrary persistent = PersistentLibrary.open(recovery.directory, false)) {
+            return persistent.getLibrary().availableCount();
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
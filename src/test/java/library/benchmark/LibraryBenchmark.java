@@ -0,0 +1,163 @@
+package library.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotAvailableException;
+import library.exception.BookNotBorrowedException;
+import library.exception.BookNotFoundException;
+
+/**
+ * Measures the Library hot paths over a range of catalog sizes and borrowed ratios.
+ *
+ * Run with -prof gc to also report the allocation rate, and give the forked JVM a
+ * larger heap (-jvmArgsAppend -Xmx8g) for the 10M catalog.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int catalogSize;
+
+    // Share of the catalog that is on loan before measuring
+    @Param({"0.0", "0.5", "0.9"})
+    public double borrowedRatio;
+
+    private Library library;
+    private String[] isbns;
+    // The books at index borrowedCount and above start on the shelf
+    private int borrowedCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BookAlreadyExistException, BookNotFoundException, BookNotAvailableException {
+        library = new Library();
+        isbns = new String[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            Book book = CatalogFixtures.book(i);
+            isbns[i] = book.getIsbn();
+            library.addBook(book);
+        }
+
+        // Spread the loans over patrons so the per-patron limit is never hit
+        borrowedCount = (int) (catalogSize * borrowedRatio);
+        for (int i = 0; i < borrowedCount; i++) {
+            library.borrowBook("patron-" + (i / 3), isbns[i]);
+        }
+    }
+
+    /**
+     * Per-thread state, so each benchmark thread borrows as its own patron.
+     */
+    @State(Scope.Thread)
+    public static class Patron {
+
+        String id;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            id = "bench-" + Thread.currentThread().getId();
+        }
+    }
+
+    @Benchmark
+    public Book getBookByIsbn() {
+        return library.getBookByIsbn(isbns[ThreadLocalRandom.current().nextInt(catalogSize)]);
+    }
+
+    @Benchmark
+    public int getAvailableBooks() {
+        return library.getAvailableBooks().size();
+    }
+
+    @Benchmark
+    public List<Book> getAvailableBooksPage() {
+        int from = ThreadLocalRandom.current().nextInt(catalogSize);
+        return library.getAvailableBooks(isbns[from], 100);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean borrowReturn(Patron patron) throws BookNotFoundException, BookNotBorrowedException {
+        return borrowAndReturn(patron.id);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean borrowReturnContended(Patron patron) throws BookNotFoundException, BookNotBorrowedException {
+        return borrowAndReturn(patron.id);
+    }
+
+    /**
+     * Borrows a random book from the shelf and returns it straight away.
+     *
+     * @return false if another thread held the book at the time.
+     */
+    private boolean borrowAndReturn(String patronId) throws BookNotFoundException, BookNotBorrowedException {
+        if (borrowedCount == catalogSize) {
+            return false;
+        }
+        String isbn = isbns[borrowedCount + ThreadLocalRandom.current().nextInt(catalogSize - borrowedCount)];
+        try {
+            library.borrowBook(patronId, isbn);
+        } catch (BookNotAvailableException e) {
+            return false;
+        }
+        library.returnBook(patronId, isbn);
+        return true;
+    }
+
+    /**
+     * Measures loading a whole catalog through addBook, once per iteration.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Library addBooks(Catalog catalog) throws BookAlreadyExistException {
+        Library fresh = new Library();
+        for (Book book : catalog.books) {
+            fresh.addBook(book);
+        }
+        return fresh;
+    }
+
+    /**
+     * Prebuilt books for {@link #addBooks}, so only the inserts are measured.
+     */
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        Book[] books;
+
+        @Setup(Level.Trial)
+        public void setUp(LibraryBenchmark benchmark) {
+            books = new Book[benchmark.catalogSize];
+            for (int i = 0; i < books.length; i++) {
+                books[i] = CatalogFixtures.book(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package library.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.CatalogFixtures;
+import library.Library;
+import library.LoanStatus;
+import library.exception.BookNotAvailableException;
+import library.exception.BookNotFoundException;
+
+/**
+ * Compares the cost of an expected failure, borrowing a book that is already on
+ * loan, reported as a thrown exception and as a returned status.
+ *
+ * The stackless variant runs in a JVM with library.skipStackTraces set, so the
+ * exceptions it throws skip filling in their stack trace.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanStatusBenchmark {
+
+    private Library library;
+    private String isbn;
+
+    @Setup
+    public void setUp() throws Exception {
+        library = new Library();
+        library.addBook(CatalogFixtures.book(0));
+        isbn = CatalogFixtures.isbn(0);
+        library.borrowBook("alice", isbn);
+    }
+
+    @Benchmark
+    public Object borrowBorrowedBookThrowing() {
+        try {
+            library.borrowBook("bob", isbn);
+            return null;
+        } catch (BookNotAvailableException | BookNotFoundException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dlibrary.skipStackTraces=true")
+    public Object borrowBorrowedBookThrowingStackless() {
+        return borrowBorrowedBookThrowing();
+    }
+
+    @Benchmark
+    public LoanStatus borrowBorrowedBookWithStatus() {
+        return library.tryBorrowBook("bob", isbn);
+    }
+}
@@ -0,0 +1,82 @@
+package library.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.io.MappedCatalog;
+
+/**
+ * Measures how long a library takes to open on top of a {@link MappedCatalog} file,
+ * which should not grow with the size of the catalog, and how fast it then serves
+ * lookups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappedCatalogBenchmark {
+
+    @Param({"200000", "2000000"})
+    public int catalogSize;
+
+    private Path file;
+    private MappedCatalog catalog;
+    private Library library;
+    private String[] isbns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Book> books = new ArrayList<>(catalogSize);
+        isbns = new String[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            books.add(CatalogFixtures.book(i));
+            isbns[i] = CatalogFixtures.isbn(i);
+        }
+        file = Files.createTempFile("catalog", ".bin");
+        MappedCatalog.write(file, books);
+        catalog = MappedCatalog.open(file);
+        library = new Library(catalog);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        catalog.close();
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public int open() throws IOException {
+        try (MappedCatalog opened = MappedCatalog.open(file)) {
+            return new Library(opened).availableCount();
+        }
+    }
+
+    @Benchmark
+    public Book lookup() {
+        return library.getBookByIsbn(isbns[ThreadLocalRandom.current().nextInt(catalogSize)]);
+    }
+}
@@ -0,0 +1,82 @@
+package library.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.exception.BookAlreadyExistException;
+import library.exception.InvalidIsbnException;
+import library.search.SearchIndex;
+
+/**
+ * Measures title/author search latency with the inverted index against filtering
+ * the available books, and prints the estimated size of the index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final String[] WORDS = {
+        "java", "library", "history", "garden", "ocean", "machine", "learning", "winter", "city", "secret",
+        "river", "empire", "stars", "music", "kitchen", "silent", "journey", "night", "code", "design"
+    };
+
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+
+    private Library library;
+    private SearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BookAlreadyExistException, InvalidIsbnException {
+        library = new Library();
+        for (int i = 0; i < catalogSize; i++) {
+            String title = WORDS[i % WORDS.length] + " " + WORDS[(i / 7) % WORDS.length] + " volume " + i;
+            library.addBook(new Book(CatalogFixtures.isbn(i), title, "Author " + (i % 5000), 2000));
+        }
+        index = SearchIndex.attach(library);
+        System.out.printf("%nIndex: %d terms, about %d bytes (%.1f bytes per book)%n",
+                index.termCount(), index.estimatedBytes(), (double) index.estimatedBytes() / catalogSize);
+    }
+
+    @Benchmark
+    public List<Book> indexedSearchCommonWords() {
+        return index.search("garden mach", 10);
+    }
+
+    @Benchmark
+    public List<Book> indexedSearchRareWords() {
+        return index.search("winter 4321", 10);
+    }
+
+    /**
+     * The alternative without an index: every book has to be checked to rank the matches.
+     */
+    @Benchmark
+    public List<Book> scanAndFilter() {
+        return library.getAvailableBooks().stream()
+                .filter(book -> book.getTitle().toLowerCase().contains("garden")
+                        && book.getTitle().toLowerCase().contains("mach"))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,83 @@
+package library.cache;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.io.FileBookStore;
+
+
+public class CachingBookStoreTest {
+
+    /**
+     * Tests that repeated lookups are served from memory and counted as hits.
+     */
+    @Test
+    public void shouldCountHitsAndMisses(@TempDir Path dir) throws Exception {
+        try (FileBookStore store = FileBookStore.open(dir.resolve("books.dat"))) {
+            store.add(CatalogFixtures.book(1));
+            CachingBookStore cache = new CachingBookStore(store, 100);
+
+            Book book = cache.get(CatalogFixtures.book(1).getIsbnValue());
+            assertEquals(CatalogFixtures.book(1), book);
+            assertEquals(book, cache.get(CatalogFixtures.book(1).getIsbnValue()));
+            assertNull(cache.get(CatalogFixtures.book(2).getIsbnValue()));
+
+            assertEquals(1, cache.getHitCount());
+            assertEquals(2, cache.getMissCount());
+            assertEquals(1, cache.getCachedCount());
+        }
+    }
+
+    /**
+     * Tests that a scan over the long tail does not evict the hot books.
+     */
+    @Test
+    public void shouldKeepHotBooksDuringScan(@TempDir Path dir) throws Exception {
+        try (FileBookStore store = FileBookStore.open(dir.resolve("books.dat"))) {
+            for (int i = 0; i < 2000; i++) {
+                store.add(CatalogFixtures.book(i));
+            }
+            CachingBookStore cache = new CachingBookStore(store, 64);
+
+            // The first books stay hot while the rest of the catalog is scanned once
+            for (int i = 16; i < 2000; i++) {
+                cache.get(CatalogFixtures.book(i % 4 == 0 ? i / 4 % 16 : i).getIsbnValue());
+            }
+
+            long misses = cache.getMissCount();
+            for (int i = 0; i < 16; i++) {
+                cache.get(CatalogFixtures.book(i).getIsbnValue());
+            }
+            assertEquals(misses, cache.getMissCount());
+            assertTrue(cache.getRejectionCount() > 0);
+            assertTrue(cache.getCachedCount() <= 64);
+        }
+    }
+
+    /**
+     * Tests that a library reads its books through the cache when borrowing.
+     */
+    @Test
+    public void shouldServeLibraryThroughCache(@TempDir Path dir) throws Exception {
+        try (FileBookStore store = FileBookStore.open(dir.resolve("books.dat"))) {
+            CachingBookStore cache = new CachingBookStore(store, 16);
+            Library library = new Library(cache);
+            library.addBook(CatalogFixtures.book(1));
+
+            library.borrowBook("alice", CatalogFixtures.isbn(1));
+            library.returnBook("alice", CatalogFixtures.isbn(1));
+            assertEquals(CatalogFixtures.book(1), library.getBookByIsbn(CatalogFixtures.isbn(1)));
+
+            assertEquals(1, cache.getMissCount());
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+}
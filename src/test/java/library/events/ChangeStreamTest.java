@@ -0,0 +1,143 @@
+package library.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import library.CatalogFixtures;
+import library.Library;
+
+
+public class ChangeStreamTest {
+
+    /**
+     * Tests that every change is published in order, and that readers drain in batches and resume where they left off.
+     */
+    @Test
+    public void shouldPublishChangesToEveryReader() throws Exception {
+        Library library = new Library();
+        ChangeStream stream = ChangeStream.attach(library, 16);
+        ChangeStream.Subscription first = stream.subscribe();
+        ChangeStream.Subscription second = stream.subscribe();
+
+        String isbn = CatalogFixtures.isbn(1);
+        library.addBook(CatalogFixtures.book(1));
+        library.borrowBook("alice", isbn);
+        library.returnBook("alice", isbn);
+
+        List<ChangeEvent> events = new ArrayList<>();
+        assertEquals(2, first.drain(events::add, 2));
+        assertEquals(1, first.drain(events::add, 10));
+        assertEquals(0, first.drain(events::add, 10));
+        assertEquals(ChangeEvent.Type.BOOK_ADDED, events.get(0).getType());
+        assertEquals(ChangeEvent.Type.BOOK_BORROWED, events.get(1).getType());
+        assertEquals("alice", events.get(1).getLoan().getPatronId());
+        assertEquals(ChangeEvent.Type.BOOK_RETURNED, events.get(2).getType());
+        assertEquals(2, events.get(2).getSequence());
+
+        // The second reader is unaffected by the first, and a saved position resumes
+        assertEquals(1, second.drain(event -> { }, 1));
+        ChangeStream.Subscription resumed = stream.subscribe(second.position());
+        List<ChangeEvent> rest = new ArrayList<>();
+        assertEquals(2, resumed.drain(rest::add, 10));
+        assertEquals(events.subList(1, 3), rest);
+    }
+
+    /**
+     * Tests that writers never wait for a slow reader, which skips the events it lost.
+     */
+    @Test
+    public void shouldOverwriteEventsOfSlowReader() throws Exception {
+        Library library = new Library();
+        ChangeStream stream = ChangeStream.attach(library, 10);
+        assertEquals(16, stream.capacity());
+        ChangeStream.Subscription reader = stream.subscribe(0);
+
+        for (int i = 0; i < 40; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        stream.detach();
+        library.addBook(CatalogFixtures.book(40));
+
+        List<ChangeEvent> events = new ArrayList<>();
+        assertEquals(16, reader.drain(events::add, 100));
+        assertEquals(24, reader.lost());
+        assertEquals(24, events.get(0).getSequence());
+        assertEquals(CatalogFixtures.book(39), events.get(15).getBook());
+        assertEquals(40, stream.nextSequence());
+    }
+
+    /**
+     * Tests that a writer that stalled until the ring came round does not overwrite the
+     * newer event in its slot, and that its own event counts as lost.
+     */
+    @Test
+    public void shouldKeepNewerEventOverStalledWriter() throws Exception {
+        Library library = new Library();
+        ChangeStream stream = ChangeStream.attach(library, 4);
+        ChangeStream.Subscription reader = stream.subscribe(0);
+        for (int i = 0; i < 8; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+
+        // Event 2 arrives only now, in the slot that event 6 has taken meanwhile
+        stream.store(new ChangeEvent(2, ChangeEvent.Type.BOOK_ADDED, CatalogFixtures.book(99), null));
+
+        List<ChangeEvent> events = new ArrayList<>();
+        assertEquals(4, reader.drain(events::add, 100));
+        assertEquals(4, reader.lost());
+        assertEquals(6, events.get(2).getSequence());
+        assertEquals(CatalogFixtures.book(6), events.get(2).getBook());
+    }
+
+    /**
+     * Tests that a reader draining while several threads borrow and return sees every event once, in order.
+     */
+    @Test
+    public void shouldNumberConcurrentChangesWithoutGaps() throws Exception {
+        Library library = new Library();
+        for (int i = 0; i < 8; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        ChangeStream stream = ChangeStream.attach(library, 1 << 16);
+        ChangeStream.Subscription reader = stream.subscribe();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            String isbn = CatalogFixtures.isbn(t);
+            String patron = "patron-" + t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    library.tryBorrowBook(patron, isbn);
+                    library.tryReturnBook(patron, isbn);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        List<ChangeEvent> events = new ArrayList<>();
+        while (events.size() < 16_000) {
+            reader.drain(events::add, 256);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        reader.drain(events::add, Integer.MAX_VALUE);
+
+        assertEquals(16_000, events.size());
+        assertEquals(0, reader.lost());
+        ChangeEvent.Type[] last = new ChangeEvent.Type[8];
+        for (int i = 0; i < events.size(); i++) {
+            ChangeEvent event = events.get(i);
+            assertEquals(i, event.getSequence());
+            // Each book alternates between borrowed and returned
+            int book = Integer.parseInt(event.getLoan().getPatronId().substring(7));
+            assertEquals(last[book] == ChangeEvent.Type.BOOK_BORROWED ? ChangeEvent.Type.BOOK_RETURNED : ChangeEvent.Type.BOOK_BORROWED,
+                    event.getType());
+            last[book] = event.getType();
+        }
+    }
+}
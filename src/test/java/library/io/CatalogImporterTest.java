@@ -0,0 +1,97 @@
+package library.io;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import library.Library;
+
+
+public class CatalogImporterTest {
+
+    /**
+     * Tests that a CSV catalog is imported and bad rows are reported without aborting the load.
+     */
+    @Test
+    public void shouldImportCsvAndReportRejectedRows() throws IOException {
+        Library library = new Library();
+
+        String csv = "isbn,title,author,publishYear\n"
+                + "9780596520687,Book Title 1,Author Name 1,2021\n"
+                + "1234567,Short Isbn,Author,2020\n"
+                + "\"9789295055025\",\"Title, with comma\",\"Author \"\"Quoted\"\"\",2022\n"
+                + "9780306406157,Future Book,Author,9999\n"
+                + "9780596520687,Duplicate,Author,2021\n"
+                + "not,enough\n"
+                + "\n"
+                + "9781603095020,Book Title 4,Author Name 4,1999\n";
+
+        // A batch size of 2 makes the duplicate land in a later batch than the original
+        ImportReport report = new CatalogImporter(library, 2).importFrom(new StringReader(csv), CatalogFormat.CSV);
+
+        assertEquals(3, report.getImported());
+        assertEquals("Title, with comma", library.getBookByIsbn("9789295055025").getTitle());
+        assertEquals("Author \"Quoted\"", library.getBookByIsbn("9789295055025").getAuthor());
+
+        List<ImportReport.Rejection> rejections = report.getRejections();
+        assertEquals(4, rejections.size());
+        assertEquals(3, rejections.get(0).getLineNumber());
+        assertEquals(ImportReport.Reason.INVALID_ISBN, rejections.get(0).getReason());
+        assertEquals(5, rejections.get(1).getLineNumber());
+        assertEquals(ImportReport.Reason.INVALID_PUBLISH_YEAR, rejections.get(1).getReason());
+        assertEquals(6, rejections.get(2).getLineNumber());
+        assertEquals(ImportReport.Reason.DUPLICATE_ISBN, rejections.get(2).getReason());
+        assertEquals(7, rejections.get(3).getLineNumber());
+        assertEquals(ImportReport.Reason.MALFORMED_ROW, rejections.get(3).getReason());
+    }
+
+    /**
+     * Tests that an NDJSON catalog file is imported, picking the format from the extension.
+     */
+    @Test
+    public void shouldImportNdjsonFile(@TempDir Path dir) throws IOException {
+        Library library = new Library();
+
+        Path file = dir.resolve("catalog.ndjson");
+        Files.write(file, List.of(
+                "{\"isbn\": \"9780596520687\", \"title\": \"Book \\\"One\\\"\", \"author\": \"Author Name 1\", \"publishYear\": 2021}",
+                "{\"isbn\": \"9789295055025\", \"title\": \"Book Title 2\", \"author\": \"Author Name 2\", \"publishYear\": \"2022\", \"extra\": true}",
+                "{\"isbn\": \"9789295055025\", \"title\": \"Duplicate\", \"author\": \"Author\", \"publishYear\": 2022}",
+                "{\"isbn\": \"9780306406157\", \"title\": }",
+                "{\"isbn\": \"9780306406158\", \"title\": \"Bad Checksum\", \"author\": \"Author\", \"publishYear\": 2022}"
+        ), StandardCharsets.UTF_8);
+
+        ImportReport report = new CatalogImporter(library).importFile(file);
+
+        assertEquals(2, report.getImported());
+        assertEquals("Book \"One\"", library.getBookByIsbn("9780596520687").getTitle());
+        assertEquals(2, library.availableCount());
+
+        assertEquals(3, report.getRejections().size());
+        assertEquals(ImportReport.Reason.DUPLICATE_ISBN, report.getRejections().get(0).getReason());
+        assertEquals(ImportReport.Reason.MALFORMED_ROW, report.getRejections().get(1).getReason());
+        assertEquals(ImportReport.Reason.INVALID_ISBN, report.getRejections().get(2).getReason());
+    }
+
+    /**
+     * Tests that CSV rows need exactly four fields and closed quotes.
+     */
+    @Test
+    public void shouldRejectMalformedCsvRows() {
+        String[] fields = new String[4];
+
+        assertFalse(CatalogImporter.parseCsvLine("a,b,c", fields));
+        assertFalse(CatalogImporter.parseCsvLine("a,b,c,d,e", fields));
+        assertFalse(CatalogImporter.parseCsvLine("a,\"b,c,d", fields));
+        assertEquals(true, CatalogImporter.parseCsvLine("a,,\"c\",d", fields));
+        assertEquals("", fields[1]);
+    }
+}
@@ -0,0 +1,94 @@
+package library.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Isbn;
+import library.Library;
+import library.exception.BookAlreadyExistException;
+
+
+public class ColumnarCatalogTest {
+
+    /**
+     * Tests that the views handed out by a catalog equal the books it was built from.
+     */
+    @Test
+    public void shouldBuildCatalogFromBooks() throws Exception {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("9789295055025", "Book Title 2", "Autör Nämé", 2022, 3));
+        books.add(new Book("9780596520687", "Book Title 1", "Autör Nämé", 2021));
+        books.add(new Book("9780306406157", "", "Author Name 3", 1999));
+
+        ColumnarCatalog catalog = ColumnarCatalog.of(books);
+        assertEquals(3, catalog.size());
+        assertEquals(9780306406157L, catalog.isbnAt(0));
+        for (Book book : books) {
+            Book view = catalog.get(book.getIsbnValue());
+            assertEquals(book, view);
+            assertEquals(book.hashCode(), view.hashCode());
+            assertEquals(book.getCopies(), view.getCopies());
+        }
+        assertEquals("Autör Nämé", catalog.get(9789295055025L).getAuthor());
+        assertNull(catalog.get(9781603095020L));
+
+        // The shared author is stored once
+        assertEquals(5, catalog.distinctStrings());
+        assertEquals(9780596520687L, catalog.nextIsbn(9780306406157L));
+        assertEquals(9780306406157L, catalog.nextIsbn(Isbn.INVALID));
+        assertEquals(Isbn.INVALID, catalog.nextIsbn(9789295055025L));
+
+        assertThrows(IllegalArgumentException.class, () -> ColumnarCatalog.of(Arrays.asList(books.get(0), books.get(0))));
+    }
+
+    /**
+     * Tests that a library opened on a columnar catalog serves, lends and lists its books.
+     */
+    @Test
+    public void shouldServeLibraryFromColumnarCatalog() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            books.add(CatalogFixtures.book(i));
+        }
+        Library library = new Library(ColumnarCatalog.of(books));
+        assertEquals(500, library.availableCount());
+        assertEquals(books.get(10), library.getBookByIsbn(books.get(10).getIsbn()));
+
+        assertThrows(BookAlreadyExistException.class, () -> library.addBook(CatalogFixtures.book(0)));
+        library.addBook(CatalogFixtures.book(1));
+        library.borrowBook("alice", CatalogFixtures.isbn(0));
+
+        List<Book> page = library.getAvailableBooks(null, 2);
+        assertEquals(CatalogFixtures.book(1), page.get(0));
+        assertEquals(CatalogFixtures.book(2), page.get(1));
+        assertEquals(500, library.getAvailableBooks().size());
+    }
+
+    /**
+     * Tests that a catalog stores each distinct string once and stays under 48 bytes a
+     * book. The heap a library retains with it is reported by ColumnarCatalogBenchmark.
+     */
+    @Test
+    public void shouldStoreBooksCompactly() {
+        int size = 100_000;
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            books.add(CatalogFixtures.book(i));
+        }
+        ColumnarCatalog catalog = ColumnarCatalog.of(books);
+        double bytesPerBook = (double) catalog.estimatedBytes() / size;
+
+        // Each title is distinct, the 1000 authors are shared
+        assertEquals(size + 1000, catalog.distinctStrings());
+        assertTrue(bytesPerBook < 48);
+    }
+}
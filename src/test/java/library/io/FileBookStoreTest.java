@@ -0,0 +1,127 @@
+package library.io;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Isbn;
+import library.Library;
+import library.exception.BookAlreadyExistException;
+
+
+public class FileBookStoreTest {
+
+    /**
+     * Tests that books added to a store are read back after it is reopened.
+     */
+    @Test
+    public void shouldReadBooksBackAfterReopen(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("books.dat");
+        try (FileBookStore store = FileBookStore.open(file)) {
+            assertTrue(store.add(new Book("9789295055025", "Book Title 2", "Autör Nämé", 2022)));
+            assertTrue(store.add(CatalogFixtures.book(7)));
+            assertFalse(store.add(CatalogFixtures.book(7)));
+        }
+
+        try (FileBookStore store = FileBookStore.open(file)) {
+            assertEquals(2, store.size());
+            assertEquals(CatalogFixtures.book(7), store.get(CatalogFixtures.book(7).getIsbnValue()));
+            assertEquals("Autör Nämé", store.get(9789295055025L).getAuthor());
+            assertNull(store.get(9780306406157L));
+
+            // ISBN order, whatever order the books were added in
+            assertEquals(CatalogFixtures.book(7).getIsbnValue(), store.nextIsbn(Isbn.INVALID));
+            assertEquals(9789295055025L, store.nextIsbn(CatalogFixtures.book(7).getIsbnValue()));
+            assertEquals(Isbn.INVALID, store.nextIsbn(9789295055025L));
+        }
+    }
+
+    /**
+     * Tests that the number of copies of a book survives a reopen, and that a library
+     * backed by the store lends every copy.
+     */
+    @Test
+    public void shouldKeepCopiesAfterReopen(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("books.dat");
+        try (FileBookStore store = FileBookStore.open(file)) {
+            assertTrue(store.add(new Book("9789295055025", "Book Title", "Author Name", 2022, 3)));
+            assertTrue(store.add(CatalogFixtures.book(7)));
+        }
+
+        try (FileBookStore store = FileBookStore.open(file)) {
+            assertEquals(3, store.get(9789295055025L).getCopies());
+            assertEquals(1, store.get(CatalogFixtures.book(7).getIsbnValue()).getCopies());
+
+            Library library = new Library(store);
+            library.borrowBook("alice", "9789295055025");
+            library.borrowBook("bob", "9789295055025");
+            library.borrowBook("carol", "9789295055025");
+            assertEquals(0, library.getCopiesOnShelf("9789295055025"));
+        }
+    }
+
+    /**
+     * Tests that a record torn by a crash is dropped and later books are appended after the last intact one.
+     */
+    @Test
+    public void shouldDropTornRecordOnOpen(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("books.dat");
+        try (FileBookStore store = FileBookStore.open(file)) {
+            store.add(CatalogFixtures.book(1));
+            store.add(CatalogFixtures.book(2));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (FileBookStore store = FileBookStore.open(file)) {
+            assertEquals(1, store.size());
+            assertTrue(store.add(CatalogFixtures.book(3)));
+        }
+        try (FileBookStore store = FileBookStore.open(file)) {
+            assertEquals(2, store.size());
+            assertEquals(CatalogFixtures.book(3), store.get(CatalogFixtures.book(3).getIsbnValue()));
+        }
+    }
+
+    /**
+     * Tests that a library backed by a store writes new books to it and lends and lists them.
+     */
+    @Test
+    public void shouldServeLibraryFromStore(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("books.dat");
+        try (FileBookStore store = FileBookStore.open(file)) {
+            Library library = new Library(store);
+            for (int i = 0; i < 100; i++) {
+                library.addBook(CatalogFixtures.book(i));
+            }
+            assertThrows(BookAlreadyExistException.class, () -> library.addBook(CatalogFixtures.book(5)));
+            assertEquals(100, store.size());
+
+            library.borrowBook("alice", CatalogFixtures.isbn(0));
+            assertEquals(99, library.availableCount());
+            List<Book> page = library.getAvailableBooks(null, 2);
+            assertEquals(CatalogFixtures.book(1), page.get(0));
+            assertEquals(CatalogFixtures.book(2), page.get(1));
+            library.returnBook("alice", CatalogFixtures.isbn(0));
+            assertEquals(100, library.getAvailableBooks().size());
+        }
+
+        try (FileBookStore store = FileBookStore.open(file)) {
+            Library library = new Library(store);
+            assertEquals(100, library.availableCount());
+            assertEquals(CatalogFixtures.book(42), library.getBookByIsbn(CatalogFixtures.isbn(42)));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package library.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import library.CatalogFixtures;
+import library.Loan;
+
+
+public class JournalTest {
+
+    /**
+     * Tests that a failed write is never reported durable, and that the journal keeps
+     * failing afterwards instead of writing later records after a torn one.
+     */
+    @Test
+    public void shouldFailForGoodAfterFailedWrite(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("journal-0000000000000001.log");
+        FailingChannel channel = new FailingChannel(FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        Journal journal = new Journal(channel, true);
+        journal.bookAdded(CatalogFixtures.book(0));
+        journal.sync();
+
+        channel.failing = true;
+        journal.bookAdded(CatalogFixtures.book(1));
+        assertThrows(IOException.class, journal::sync);
+
+        // The device recovers, but the lost record must not be reported durable
+        channel.failing = false;
+        journal.bookBorrowed(new Loan(CatalogFixtures.book(0), "alice"));
+        assertThrows(IOException.class, journal::sync);
+        assertThrows(IOException.class, journal::syncAll);
+        assertThrows(IOException.class, journal::close);
+
+        List<Long> added = new ArrayList<>();
+        Journal.read(file, new Journal.Replay() {
+            @Override
+            public void bookAdded(long isbn, String title, String author, int publishYear, int copies) {
+                added.add(isbn);
+            }
+
+            @Override
+            public void bookBorrowed(long isbn, String patronId) {
+                throw new AssertionError("Borrow was written after a failure");
+            }
+
+            @Override
+            public void bookBorrowed(long isbn, String patronId, long borrowedAt, long dueAt) {
+                throw new AssertionError("Borrow was written after a failure");
+            }
+
+            @Override
+            public void bookReturned(long isbn, String patronId) {
+            }
+
+            @Override
+            public void bookRemoved(long isbn) {
+            }
+        });
+        assertEquals(List.of(CatalogFixtures.book(0).getIsbnValue()), added);
+    }
+
+    /**
+     * A file channel whose writes and forces fail while asked to, as a full or failing device would.
+     */
+    private static final class FailingChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        volatile boolean failing;
+
+        FailingChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        private void check() throws IOException {
+            if (failing) {
+                throw new IOException("No space left on device");
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            check();
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            check();
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            check();
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            check();
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            check();
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package library.io;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotAvailableException;
+
+
+public class MappedCatalogTest {
+
+    /**
+     * Tests that books written to a catalog file read back equal to the originals.
+     */
+    @Test
+    public void shouldWriteAndMapCatalog(@TempDir Path dir) throws Exception {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("9789295055025", "Book Title 2", "Autör Nämé", 2022));
+        books.add(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+        books.add(new Book("9780306406157", "", "Author Name 3", 1999));
+
+        Path file = dir.resolve("catalog.bin");
+        MappedCatalog.write(file, books);
+
+        try (MappedCatalog catalog = MappedCatalog.open(file)) {
+            assertEquals(3, catalog.size());
+            assertEquals(9780306406157L, catalog.isbnAt(0));
+            for (Book book : books) {
+                assertEquals(book, catalog.get(book.getIsbnValue()));
+                assertEquals(book.hashCode(), catalog.get(book.getIsbnValue()).hashCode());
+            }
+            assertEquals("Autör Nämé", catalog.get(9789295055025L).getAuthor());
+            assertNull(catalog.get(9781603095020L));
+        }
+    }
+
+    /**
+     * Tests that the number of copies of each book survives a round trip, and that a
+     * file written before copies were stored reads every book as a single copy.
+     */
+    @Test
+    public void shouldKeepCopies(@TempDir Path dir) throws Exception {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022, 3));
+        books.add(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+        books.add(new Book("9780306406157", "Book Title 3", "Author Name 3", 1999, 7));
+
+        Path file = dir.resolve("catalog.bin");
+        MappedCatalog.write(file, books);
+
+        try (MappedCatalog catalog = MappedCatalog.open(file)) {
+            for (Book book : books) {
+                assertEquals(book.getCopies(), catalog.get(book.getIsbnValue()).getCopies());
+                assertEquals(book.getTitle(), catalog.get(book.getIsbnValue()).getTitle());
+            }
+            Library library = new Library(catalog);
+            library.borrowBook("alice", "9789295055025");
+            assertEquals(2, library.getCopiesOnShelf("9789295055025"));
+        }
+
+        // Version 1 had no copies section: drop it and put the old version back
+        byte[] current = Files.readAllBytes(file);
+        ByteBuffer header = ByteBuffer.wrap(current);
+        int size = header.getInt(8);
+        int yearsEnd = align(32 + size * 10);
+        int copiesEnd = align(yearsEnd + size * 4);
+        byte[] old = new byte[current.length - (copiesEnd - yearsEnd)];
+        System.arraycopy(current, 0, old, 0, yearsEnd);
+        System.arraycopy(current, copiesEnd, old, yearsEnd, current.length - copiesEnd);
+        ByteBuffer.wrap(old).putInt(4, 1);
+        Path oldFile = dir.resolve("catalog-v1.bin");
+        Files.write(oldFile, old);
+
+        try (MappedCatalog catalog = MappedCatalog.open(oldFile)) {
+            for (Book book : books) {
+                assertEquals(book, catalog.get(book.getIsbnValue()));
+                assertEquals(1, catalog.get(book.getIsbnValue()).getCopies());
+            }
+        }
+    }
+
+    private static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    /**
+     * Tests that a library opened on a mapped catalog serves, lends and lists its books.
+     */
+    @Test
+    public void shouldServeLibraryFromMappedCatalog(@TempDir Path dir) throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            books.add(CatalogFixtures.book(i));
+        }
+        Path file = dir.resolve("catalog.bin");
+        MappedCatalog.write(file, books);
+
+        try (MappedCatalog catalog = MappedCatalog.open(file)) {
+            Library library = new Library(catalog);
+            assertEquals(500, library.availableCount());
+            assertEquals(books.get(10), library.getBookByIsbn(books.get(10).getIsbn()));
+
+            // Books in the file cannot be added again, new ones go to the heap
+            assertThrows(BookAlreadyExistException.class, () -> library.addBook(CatalogFixtures.book(0)));
+            library.addBook(CatalogFixtures.book(1));
+            assertEquals(501, library.availableCount());
+
+            library.borrowBook("alice", CatalogFixtures.isbn(0));
+            assertThrows(BookNotAvailableException.class, () -> library.borrowBook("bob", CatalogFixtures.isbn(0)));
+            assertEquals(500, library.availableCount());
+
+            // Pages merge both sources in ISBN order and skip the borrowed book
+            List<Book> page = library.getAvailableBooks(null, 3);
+            assertEquals(CatalogFixtures.book(1), page.get(0));
+            assertEquals(CatalogFixtures.book(2), page.get(1));
+            assertEquals(CatalogFixtures.book(4), page.get(2));
+
+            List<Book> all = library.getAvailableBooks();
+            assertEquals(500, all.size());
+            for (int i = 1; i < all.size(); i++) {
+                assertTrue(all.get(i - 1).getIsbnValue() < all.get(i).getIsbnValue());
+            }
+
+            library.returnBook("alice", CatalogFixtures.isbn(0));
+            assertEquals(501, library.getAvailableBooks().size());
+        }
+    }
+
+    /**
+     * Tests that a large catalog opens with every book served through the library.
+     * How long it takes to open is measured by MappedCatalogBenchmark.
+     */
+    @Test
+    public void shouldOpenLargeCatalog(@TempDir Path dir) throws Exception {
+        int size = 200_000;
+        List<Book> books = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            books.add(CatalogFixtures.book(i));
+        }
+        Path file = dir.resolve("catalog.bin");
+        MappedCatalog.write(file, books);
+
+        try (MappedCatalog catalog = MappedCatalog.open(file)) {
+            Library library = new Library(catalog);
+            assertEquals(size, library.availableCount());
+            assertEquals(books.get(size - 1), library.getBookByIsbn(books.get(size - 1).getIsbn()));
+        }
+    }
+}
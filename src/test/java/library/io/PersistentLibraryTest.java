@@ -0,0 +1,362 @@
+package library.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.Loan;
+import library.LoanStatus;
+
+
+public class PersistentLibraryTest {
+
+    /**
+     * Tests that books and loans survive a restart through the journal alone.
+     */
+    @Test
+    public void shouldRecoverFromJournal(@TempDir Path dir) throws Exception {
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            persistent.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+            persistent.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022));
+            persistent.borrowBook("alice", "9780596520687");
+            persistent.borrowBook("bob", "9789295055025");
+            persistent.returnBook("bob", "9789295055025");
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            Library library = persistent.getLibrary();
+            assertEquals("Book Title 2", library.getBookByIsbn("9789295055025").getTitle());
+            assertEquals("alice", library.getLoan("9780596520687").getPatronId());
+            assertNull(library.getLoan("9789295055025"));
+            assertEquals(1, library.availableCount());
+        }
+    }
+
+    /**
+     * Tests that a removed book stays removed across a restart.
+     */
+    @Test
+    public void shouldRecoverRemovedBook(@TempDir Path dir) throws Exception {
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            persistent.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+            persistent.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022));
+            assertEquals(LoanStatus.OK, persistent.getLibrary().tryRemoveBook("9780596520687"));
+            persistent.sync();
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            assertNull(persistent.getLibrary().getBookByIsbn("9780596520687"));
+            assertEquals(1, persistent.getLibrary().availableCount());
+        }
+    }
+
+    /**
+     * Tests that recovery loads the snapshot and replays only the journal written after it.
+     */
+    @Test
+    public void shouldRecoverFromSnapshotAndLaterJournal(@TempDir Path dir) throws Exception {
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            persistent.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+            persistent.borrowBook("alice", "9780596520687");
+            persistent.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022, 3));
+            persistent.borrowBook("alice", "9789295055025");
+            persistent.snapshot();
+
+            persistent.addBook(new Book("9780306406157", "Book Title 3", "Author Name 3", 2023, 2));
+            persistent.returnBook("alice", "9780596520687");
+            persistent.borrowBook("bob", "9780306406157");
+        }
+
+        // The first journal segment is covered by the snapshot and has been deleted
+        assertEquals(1, files(dir, "snapshot-").size());
+        assertEquals(1, files(dir, "journal-").size());
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            Library library = persistent.getLibrary();
+            assertEquals(3, library.availableCount());
+            assertEquals(2, library.getBorrowedBooks().size());
+            assertEquals("Book Title 3", library.getBookByIsbn("9780306406157").getTitle());
+            assertEquals(2, library.getCopiesOnShelf("9789295055025"));
+            assertEquals(1, library.getCopiesOnShelf("9780306406157"));
+        }
+    }
+
+    /**
+     * Tests that a record torn by a crash is dropped and everything before it is kept.
+     */
+    @Test
+    public void shouldIgnoreTornJournalTail(@TempDir Path dir) throws Exception {
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            persistent.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+            persistent.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022));
+        }
+
+        // Cut the last record in half, as a crash in the middle of a write would
+        Path segment = files(dir, "journal-").get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 10);
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            Library library = persistent.getLibrary();
+            assertEquals(1, library.availableCount());
+            assertNull(library.getBookByIsbn("9789295055025"));
+
+            // The library keeps working in a new segment
+            persistent.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022));
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            assertEquals(2, persistent.getLibrary().availableCount());
+        }
+    }
+
+    /**
+     * Tests that one patron borrowing and returning on many stripes at once leaves a
+     * journal that reopens, whatever order the threads interleave in.
+     */
+    @Test
+    public void shouldReopenAfterConcurrentLoansOfOnePatron(@TempDir Path dir) throws Exception {
+        int threads = 4;
+        int rounds = 500;
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir, false)) {
+            Library library = persistent.getLibrary();
+            for (int t = 0; t < threads; t++) {
+                library.addBook(CatalogFixtures.book(t));
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String isbn = CatalogFixtures.isbn(t);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < rounds; i++) {
+                        // One more thread than the limit, so slots are freed and taken all the time
+                        if (library.tryBorrowBook("alice", isbn) == LoanStatus.OK) {
+                            assertEquals(LoanStatus.OK, library.tryReturnBook("alice", isbn));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            library.borrowBook("alice", CatalogFixtures.isbn(0));
+            persistent.sync();
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            assertEquals("alice", persistent.getLibrary().getLoan(CatalogFixtures.isbn(0)).getPatronId());
+            assertEquals(1, persistent.getLibrary().getBorrowedBooks().size());
+        }
+    }
+
+    /**
+     * Tests that replaying a journal does not apply the borrowing limit again, since
+     * the loans it records were allowed when they were made.
+     */
+    @Test
+    public void shouldReplayLoansPastTheLimit(@TempDir Path dir) throws Exception {
+        // A history in which a return was recorded after a borrow it made room for
+        try (Journal journal = new Journal(dir.resolve("journal-0000000000000001.log"), false)) {
+            for (int i = 0; i < 4; i++) {
+                journal.bookAdded(CatalogFixtures.book(i));
+            }
+            for (int i = 0; i < 4; i++) {
+                journal.bookBorrowed(new Loan(CatalogFixtures.book(i), "alice"));
+            }
+            journal.bookReturned(new Loan(CatalogFixtures.book(0), "alice"));
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            Library library = persistent.getLibrary();
+            assertEquals(3, library.getBorrowedBooks("alice").size());
+            assertEquals(LoanStatus.LIMIT_REACHED, library.tryBorrowBook("alice", CatalogFixtures.isbn(0)));
+        }
+    }
+
+    /**
+     * Tests that loans keep the dates they were made with across restarts, through the
+     * journal and through a snapshot, so an overdue loan stays overdue.
+     */
+    @Test
+    public void shouldKeepLoanDatesAcrossRestarts(@TempDir Path dir) throws Exception {
+        long now = System.currentTimeMillis();
+        long borrowedAt = now - Duration.ofDays(30).toMillis();
+        long dueAt = borrowedAt + Library.LOAN_PERIOD.toMillis();
+        try (Journal journal = new Journal(dir.resolve("journal-0000000000000001.log"), false)) {
+            journal.bookAdded(CatalogFixtures.book(0));
+            journal.bookAdded(CatalogFixtures.book(1));
+            journal.bookBorrowed(new Loan(CatalogFixtures.book(0), "alice", borrowedAt, dueAt));
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            persistent.borrowBook("bob", CatalogFixtures.isbn(1));
+            assertOverdue(persistent.getLibrary(), borrowedAt, dueAt);
+            persistent.snapshot();
+        }
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            assertOverdue(persistent.getLibrary(), borrowedAt, dueAt);
+            assertTrue(persistent.getLibrary().getLoan(CatalogFixtures.isbn(1)).getDueAt() > now);
+        }
+    }
+
+    private static void assertOverdue(Library library, long borrowedAt, long dueAt) {
+        List<Loan> overdue = library.getOverdueLoans();
+        assertEquals(1, overdue.size());
+        assertEquals("alice", overdue.get(0).getPatronId());
+        assertEquals(borrowedAt, overdue.get(0).getBorrowedAt());
+        assertEquals(dueAt, overdue.get(0).getDueAt());
+    }
+
+    /**
+     * Tests that a snapshot whose checksum does not match is rejected before any of its
+     * records is replayed.
+     */
+    @Test
+    public void shouldReplayNothingFromCorruptSnapshot(@TempDir Path dir) throws Exception {
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir, false)) {
+            persistent.addBook(new Book("9780596520687", "Book Title 1", "Author Name 1", 2021));
+            persistent.addBook(new Book("9789295055025", "Book Title 2", "Author Name 2", 2022));
+            persistent.snapshot();
+        }
+
+        // Flip a byte near the end, in the last record
+        Path snapshot = files(dir, "snapshot-").get(0);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.seek(file.length() - 14);
+            int value = file.read();
+            file.seek(file.length() - 14);
+            file.write(value ^ 0xFF);
+        }
+
+        List<Long> replayed = new ArrayList<>();
+        assertThrows(IOException.class, () -> SnapshotFile.read(snapshot, new Journal.Replay() {
+            @Override
+            public void bookAdded(long isbn, String title, String author, int publishYear, int copies) {
+                replayed.add(isbn);
+            }
+
+            @Override
+            public void bookBorrowed(long isbn, String patronId) {
+                replayed.add(isbn);
+            }
+
+            @Override
+            public void bookBorrowed(long isbn, String patronId, long borrowedAt, long dueAt) {
+                replayed.add(isbn);
+            }
+
+            @Override
+            public void bookReturned(long isbn, String patronId) {
+                replayed.add(isbn);
+            }
+
+            @Override
+            public void bookRemoved(long isbn) {
+                replayed.add(isbn);
+            }
+        }));
+        assertTrue(replayed.isEmpty());
+        assertThrows(IOException.class, () -> PersistentLibrary.open(dir));
+    }
+
+    /**
+     * Tests that a scheduled snapshot that fails is counted, and reported by the next
+     * call to snapshot() or close() rather than lost.
+     */
+    @Test
+    public void shouldReportFailedScheduledSnapshot(@TempDir Path dir) throws Exception {
+        // A directory in the way of every temporary snapshot file the schedule may write
+        for (int generation = 2; generation < 1000; generation++) {
+            Files.createDirectory(dir.resolve(String.format("snapshot-%016d.bin.tmp", generation)));
+        }
+        PersistentLibrary persistent = PersistentLibrary.open(dir, false);
+        persistent.addBook(CatalogFixtures.book(0));
+        persistent.scheduleSnapshots(1, TimeUnit.MILLISECONDS);
+
+        awaitErrors(persistent, 1);
+        assertThrows(IOException.class, persistent::snapshot);
+        long errors = errorCount(persistent);
+        awaitErrors(persistent, errors + 1);
+        assertThrows(IOException.class, persistent::close);
+        assertTrue(files(dir, "snapshot-").stream().allMatch(Files::isDirectory));
+    }
+
+    private static void awaitErrors(PersistentLibrary persistent, long errors) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (errorCount(persistent) < errors) {
+            assertTrue(System.nanoTime() < deadline, "No scheduled snapshot failed");
+            Thread.sleep(1);
+        }
+    }
+
+    private static long errorCount(PersistentLibrary persistent) {
+        return persistent.getLibrary().getMetrics().getErrorCounts().values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Tests that books added, borrowed and returned by many threads at once are all
+     * recovered. The speed of the journal and of recovery is measured by JournalBenchmark.
+     */
+    @Test
+    public void shouldRecoverConcurrentJournaledOperations(@TempDir Path dir) throws Exception {
+        int threads = 8;
+        int booksPerThread = 500;
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(executor.submit(() -> {
+                    String patron = "patron-" + thread;
+                    for (int i = 0; i < booksPerThread; i++) {
+                        String isbn = CatalogFixtures.isbn(thread * booksPerThread + i);
+                        persistent.addBook(new Book(isbn, "Title " + i, "Author " + thread, 2000));
+                        persistent.borrowBook(patron, isbn);
+                        persistent.returnBook(patron, isbn);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            assertTrue(persistent.getJournalBytesWritten() > 0);
+        }
+
+        try (PersistentLibrary persistent = PersistentLibrary.open(dir)) {
+            assertEquals(threads * booksPerThread, persistent.getLibrary().availableCount());
+            assertTrue(persistent.getLibrary().getBorrowedBooks().isEmpty());
+        }
+    }
+
+    private static List<Path> files(Path dir, String prefix) throws IOException {
+        try (Stream<Path> stream = Files.list(dir)) {
+            return stream.filter(file -> file.getFileName().toString().startsWith(prefix)).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package library.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import org.junit.jupiter.api.Test;
+
+
+public class LatencyHistogramTest {
+
+    /**
+     * Tests that percentiles are reported within the precision of the buckets.
+     */
+    @Test
+    public void shouldReportPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000, snapshot.getMaxNanos());
+        assertEquals(50_000.5, snapshot.getMeanNanos(), 0.001);
+        assertEquals(50_000, snapshot.getValueAtPercentile(50), 50_000 * 0.04);
+        assertEquals(99_000, snapshot.getValueAtPercentile(99), 99_000 * 0.04);
+        assertEquals(100_000, snapshot.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().snapshot().getValueAtPercentile(99));
+    }
+
+    /**
+     * Tests that every value falls into a bucket whose bounds contain it.
+     */
+    @Test
+    public void shouldMapValuesToContainingBuckets() {
+        for (long value = 0; value < (1L << 40); value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.highestValueAt(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValueAt(index - 1) < value);
+        }
+    }
+
+    /**
+     * Tests that recording does not allocate.
+     */
+    @Test
+    public void shouldRecordWithoutAllocating() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LatencyHistogram histogram = new LatencyHistogram();
+        LibraryMetrics metrics = new LibraryMetrics();
+        IllegalArgumentException error = new IllegalArgumentException();
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i);
+            metrics.recordError(error);
+        }
+
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < 100_000; i++) {
+            histogram.record(i);
+            metrics.recordSuccess(LibraryMetrics.Operation.BORROW);
+            metrics.recordLatency(LibraryMetrics.Operation.BORROW, System.nanoTime());
+            metrics.recordError(error);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        // Allow for the measurement itself, which is far below a byte per call
+        assertTrue(allocated < 10_000, "Allocated " + allocated + " bytes");
+    }
+}
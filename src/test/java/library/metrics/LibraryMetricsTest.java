@@ -0,0 +1,84 @@
+package library.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+import library.CatalogFixtures;
+import library.Library;
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotAvailableException;
+import library.exception.BookNotBorrowedException;
+import library.exception.BookNotFoundException;
+import library.metrics.LibraryMetrics.Operation;
+
+
+public class LibraryMetricsTest {
+
+    /**
+     * Tests that a library counts and times its operations and the exceptions they throw.
+     */
+    @Test
+    public void shouldCountOperationsAndErrors() throws Exception {
+        Library library = new Library();
+        library.addBook(CatalogFixtures.book(1));
+        library.addBook(CatalogFixtures.book(2));
+        assertThrows(BookAlreadyExistException.class, () -> library.addBook(CatalogFixtures.book(1)));
+
+        library.borrowBook("alice", CatalogFixtures.isbn(1));
+        assertThrows(BookNotAvailableException.class, () -> library.borrowBook("bob", CatalogFixtures.isbn(1)));
+        assertThrows(BookNotFoundException.class, () -> library.borrowBook("bob", CatalogFixtures.isbn(3)));
+        library.returnBook("alice", CatalogFixtures.isbn(1));
+        assertThrows(BookNotBorrowedException.class, () -> library.returnBook("alice", CatalogFixtures.isbn(1)));
+
+        library.getBookByIsbn(CatalogFixtures.isbn(2));
+        library.getBookByIsbn(CatalogFixtures.isbn(3));
+        library.getBookByIsbn("not an isbn");
+
+        LibraryMetrics.Snapshot snapshot = library.getMetrics().snapshot();
+        assertEquals(2, snapshot.getCount(Operation.ADD));
+        assertEquals(1, snapshot.getCount(Operation.BORROW));
+        assertEquals(1, snapshot.getCount(Operation.RETURN));
+        assertEquals(3, snapshot.getCount(Operation.LOOKUP));
+        assertEquals(1, snapshot.getLookupHits());
+        assertEquals(2, snapshot.getLookupMisses());
+
+        // Failed calls are timed as well
+        assertEquals(3, snapshot.getLatency(Operation.ADD).getCount());
+        assertEquals(3, snapshot.getLatency(Operation.BORROW).getCount());
+        assertEquals(2, snapshot.getLatency(Operation.LOOKUP).getCount());
+
+        Map<String, Long> errors = snapshot.getErrorCounts();
+        assertEquals(1L, errors.get("BookAlreadyExistException"));
+        assertEquals(1L, errors.get("BookNotAvailableException"));
+        assertEquals(1L, errors.get("BookNotFoundException"));
+        assertEquals(1L, errors.get("BookNotBorrowedException"));
+        assertEquals(0L, errors.get("Other"));
+    }
+
+    /**
+     * Tests that the metrics can be read over JMX.
+     */
+    @Test
+    public void shouldExposeMetricsOverJmx() throws Exception {
+        Library library = new Library();
+        library.addBook(CatalogFixtures.book(1));
+        library.borrowBook(CatalogFixtures.isbn(1));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = library.getMetrics().registerMBean("test-library");
+        try {
+            assertEquals(1L, server.getAttribute(name, "AddCount"));
+            assertEquals(1L, server.getAttribute(name, "BorrowCount"));
+            assertEquals(0L, server.getAttribute(name, "ReturnCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package library.search;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+
+
+public class CatalogIndexTest {
+
+    /**
+     * Tests that a year range is listed in year order and can be paged through.
+     */
+    @Test
+    public void shouldPageThroughYearRange() throws Exception {
+        Library library = new Library();
+        for (int i = 0; i < 500; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        CatalogIndex index = CatalogIndex.attach(library);
+        // Books added after attaching are indexed through the listener
+        for (int i = 500; i < 1000; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+
+        List<Book> expected = new ArrayList<>();
+        for (Book book : library.getAvailableBooks()) {
+            if (book.getPublishYear() >= 1990 && book.getPublishYear() <= 2000) {
+                expected.add(book);
+            }
+        }
+        expected.sort((a, b) -> a.getPublishYear() != b.getPublishYear()
+                ? Integer.compare(a.getPublishYear(), b.getPublishYear())
+                : a.getIsbn().compareTo(b.getIsbn()));
+
+        List<Book> paged = new ArrayList<>();
+        String cursor = null;
+        for (List<Book> page; !(page = index.publishedBetween(1990, 2000, cursor, 7)).isEmpty(); ) {
+            assertTrue(page.size() <= 7);
+            paged.addAll(page);
+            cursor = page.get(page.size() - 1).getIsbn();
+        }
+        assertEquals(expected, paged);
+        assertTrue(index.publishedBetween(2000, 1990, null, 10).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.publishedBetween(1990, 2000, "9789295055025", 10));
+    }
+
+    /**
+     * Tests that attaching while books are being added lists each of them exactly once,
+     * the ones added while the snapshot is indexed included.
+     */
+    @Test
+    public void shouldIndexBooksAddedWhileAttaching() throws Exception {
+        Library library = new Library();
+        int books = 2000;
+        CountDownLatch started = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < books; i++) {
+                library.addBooks(List.of(CatalogFixtures.book(i)));
+                if (i == books / 4) {
+                    started.countDown();
+                }
+            }
+        });
+        writer.start();
+        started.await();
+        CatalogIndex index = CatalogIndex.attach(library);
+        writer.join();
+
+        List<Book> all = index.publishedBetween(0, 9999, null, 2 * books);
+        assertEquals(books, all.size());
+        assertEquals(books, new HashSet<>(all).size());
+        assertEquals(books / 1000, index.byAuthor("Author 7", null, books).size());
+    }
+
+    /**
+     * Tests that books are found by author however the name is capitalized or accented,
+     * ordered by publish year.
+     */
+    @Test
+    public void shouldListBooksByNormalizedAuthor() throws Exception {
+        Library library = new Library();
+        CatalogIndex index = CatalogIndex.attach(library);
+        library.addBook(new Book("9780596520687", "Nana", "Émile Zola", 1880));
+        library.addBook(new Book("9789295055025", "Germinal", "EMILE  ZOLA", 1885));
+        library.addBook(new Book("9780306406157", "Thérèse Raquin", "Emile Zola", 1867));
+        library.addBook(new Book("9780132350884", "Clean Code", "Robert C. Martin", 2008));
+
+        List<Book> zola = index.byAuthor("emile zola", null, 10);
+        assertEquals(List.of("Thérèse Raquin", "Nana", "Germinal"), titles(zola));
+        assertEquals(List.of("Germinal"), titles(index.byAuthor("Émile Zola", zola.get(1).getIsbn(), 10)));
+        assertTrue(index.byAuthor("Zola", null, 10).isEmpty());
+
+        assertEquals(List.of("emile zola", "robert c martin"), index.authors(null, 10));
+        assertEquals(List.of("robert c martin"), index.authors("Émile Zola", 10));
+    }
+
+    private static List<String> titles(List<Book> books) {
+        List<String> titles = new ArrayList<>();
+        for (Book book : books) {
+            titles.add(book.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,105 @@
+package library.search;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+
+
+public class SearchIndexTest {
+
+    /**
+     * Tests that books are found by title and author words, ignoring case.
+     */
+    @Test
+    public void shouldFindBooksByTitleAndAuthor() throws Exception {
+        Library library = new Library();
+        library.addBook(new Book("9780596520687", "Java Concurrency in Practice", "Brian Goetz", 2006));
+        library.addBook(new Book("9789295055025", "Effective Java", "Joshua Bloch", 2018));
+
+        SearchIndex index = SearchIndex.attach(library);
+
+        assertEquals(List.of(library.getBookByIsbn("9780596520687")), index.search("CONCURRENCY", 10));
+        assertEquals(List.of(library.getBookByIsbn("9789295055025")), index.search("bloch", 10));
+        assertEquals(List.of(library.getBookByIsbn("9789295055025")), index.search("effective java", 10));
+        assertTrue(index.search("python", 10).isEmpty());
+    }
+
+    /**
+     * Tests that attaching while books are being added misses none of them, the ones
+     * added while the snapshot is indexed included.
+     */
+    @Test
+    public void shouldIndexBooksAddedWhileAttaching() throws Exception {
+        Library library = new Library();
+        int books = 2000;
+        CountDownLatch started = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < books; i++) {
+                library.addBooks(List.of(CatalogFixtures.book(i)));
+                if (i == books / 4) {
+                    started.countDown();
+                }
+            }
+        });
+        writer.start();
+        started.await();
+        SearchIndex index = SearchIndex.attach(library);
+        writer.join();
+
+        assertEquals(books, index.searchHits("title", 2 * books).size());
+        assertEquals(List.of(CatalogFixtures.book(books - 1)), index.search("title " + (books - 1), 10));
+    }
+
+    /**
+     * Tests that the last word of a query also matches as a prefix.
+     */
+    @Test
+    public void shouldMatchLastWordAsPrefix() throws Exception {
+        Library library = new Library();
+        SearchIndex index = SearchIndex.attach(library);
+
+        // Books added after attaching are indexed through the listener
+        library.addBook(new Book("9780596520687", "Java Concurrency in Practice", "Brian Goetz", 2006));
+        library.addBook(new Book("9780306406157", "Concurrent Programming", "Doug Lea", 1999));
+
+        assertEquals(2, index.search("concurr", 10).size());
+        assertEquals(List.of(library.getBookByIsbn("9780596520687")), index.search("java concurr", 10));
+        assertTrue(index.search("concurr java", 10).isEmpty());
+    }
+
+    /**
+     * Tests that title matches rank above author matches and that results are capped.
+     */
+    @Test
+    public void shouldRankTitleMatchesFirstAndLimitResults() throws Exception {
+        Library library = new Library();
+        library.addBook(new Book("9780596520687", "Notes", "Martin Fowler", 2006));
+        library.addBook(new Book("9789295055025", "Martin's Book", "Someone Else", 2018));
+        library.addBook(new Book("9780306406157", "Martin Again", "Another Author", 2018));
+
+        SearchIndex index = SearchIndex.attach(library);
+
+        List<SearchIndex.Hit> hits = index.searchHits("martin", 10);
+        assertEquals(3, hits.size());
+        assertEquals(9780596520687L, hits.get(2).getIsbn());
+        assertTrue(hits.get(0).getScore() >= hits.get(1).getScore());
+
+        assertEquals(2, index.search("martin", 2).size());
+    }
+
+    /**
+     * Tests that text is split into lower-cased words.
+     */
+    @Test
+    public void shouldTokenizeText() {
+        assertEquals(List.of("the", "c", "programming", "language", "2nd", "ed"), SearchIndex.tokenize("The C Programming-Language, 2nd Ed."));
+        assertTrue(SearchIndex.tokenize(" -- ").isEmpty());
+    }
+}
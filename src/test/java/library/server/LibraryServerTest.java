@@ -0,0 +1,112 @@
+package library.server;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.CatalogFixtures;
+import library.Library;
+
+
+public class LibraryServerTest {
+
+    /**
+     * Tests that one keep-alive connection can add, look up, borrow, return and list books.
+     */
+    @Test
+    public void shouldServeLibraryOverKeepAliveConnection() throws Exception {
+        Library library = new Library();
+        try (LibraryServer server = new LibraryServer(library)) {
+            server.start(0);
+            try (Socket socket = new Socket("localhost", server.getPort())) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+
+                String isbn = CatalogFixtures.isbn(1);
+                send(out, "POST", "/books", "{\"isbn\":\"" + isbn + "\",\"title\":\"A \\\"quoted\\\" title\",\"author\":\"Autör\",\"publishYear\":2001}");
+                assertEquals("201 {\"isbn\":\"" + isbn + "\",\"title\":\"A \\\"quoted\\\" title\",\"author\":\"Autör\",\"publishYear\":2001,\"copies\":1}", read(in));
+                send(out, "POST", "/books", "{\"isbn\":\"" + isbn + "\",\"title\":\"Again\",\"author\":\"Someone\",\"publishYear\":2001}");
+                assertTrue(read(in).startsWith("409 "));
+                send(out, "POST", "/books", "{\"isbn\":\"123\",\"title\":\"Bad\",\"author\":\"Someone\",\"publishYear\":2001}");
+                assertTrue(read(in).startsWith("400 "));
+
+                send(out, "GET", "/books/" + isbn, "");
+                assertTrue(read(in).startsWith("200 {\"isbn\":\"" + isbn + "\""));
+                send(out, "POST", "/books/" + isbn + "/borrow?patron=alice", "");
+                assertEquals("200 {\"status\":\"OK\"}", read(in));
+                send(out, "POST", "/books/" + isbn + "/borrow?patron=bob", "");
+                assertEquals("409 {\"status\":\"NOT_AVAILABLE\"}", read(in));
+                send(out, "GET", "/books/available", "");
+                assertEquals("200 {\"books\":[],\"next\":null}", read(in));
+                send(out, "POST", "/books/" + isbn + "/return?patron=alice", "");
+                assertEquals("200 {\"status\":\"OK\"}", read(in));
+                send(out, "GET", "/books/" + CatalogFixtures.isbn(2), "");
+                assertEquals("404 {\"status\":\"NOT_FOUND\"}", read(in));
+            }
+        }
+        assertEquals(1, library.availableCount());
+    }
+
+    /**
+     * Tests that requests pipelined in a single write are all answered, in order.
+     */
+    @Test
+    public void shouldAnswerPipelinedRequestsInOrder() throws Exception {
+        Library library = new Library();
+        for (int i = 0; i < 5; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        try (LibraryServer server = new LibraryServer(library)) {
+            server.start(0);
+            try (Socket socket = new Socket("localhost", server.getPort())) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                StringBuilder requests = new StringBuilder();
+                for (int i = 0; i < 5; i++) {
+                    requests.append("GET /books/").append(CatalogFixtures.isbn(i)).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                }
+                requests.append("GET /books/available?limit=2 HTTP/1.1\r\nConnection: close\r\n\r\n");
+                socket.getOutputStream().write(requests.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+                for (int i = 0; i < 5; i++) {
+                    assertTrue(read(in).startsWith("200 {\"isbn\":\"" + CatalogFixtures.isbn(i) + "\""));
+                }
+                String page = read(in);
+                assertTrue(page.endsWith("\"next\":\"" + CatalogFixtures.isbn(1) + "\"}"), page);
+                // The server closes the connection after a request that asked for it
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    private static void send(OutputStream out, String method, String target, String body) throws IOException {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        String head = method + " " + target + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + content.length + "\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(content);
+        out.flush();
+    }
+
+    // Reads one response as its status code and body
+    private static String read(InputStream in) throws IOException {
+        String statusLine = HttpRequest.readLine(in);
+        int contentLength = 0;
+        String line;
+        while (!(line = HttpRequest.readLine(in)).isEmpty()) {
+            if (line.startsWith("Content-Length:")) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        byte[] body = new byte[contentLength];
+        for (int read = 0; read < contentLength; ) {
+            read += in.read(body, read, contentLength - read);
+        }
+        return statusLine.substring(9, 12) + " " + new String(body, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,64 @@
+package library.server;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.LoanStatus;
+import library.shard.ShardedLibrary;
+
+
+public class RemoteShardTest {
+
+    /**
+     * Tests that a coordinator drives shards served over HTTP like local ones.
+     */
+    @Test
+    public void shouldServeShardsOverHttp() throws Exception {
+        Library first = new Library();
+        Library second = new Library();
+        Library third = new Library();
+        try (LibraryServer firstServer = new LibraryServer(first); LibraryServer secondServer = new LibraryServer(second)) {
+            firstServer.start(0);
+            secondServer.start(0);
+            try (ShardedLibrary library = new ShardedLibrary(Arrays.asList(
+                    new RemoteShard("localhost", firstServer.getPort()), new RemoteShard("localhost", secondServer.getPort())))) {
+                library.addBook(new Book(CatalogFixtures.isbn(0), "A \"quoted\" {title}", "Autör", 2001, 2));
+                for (int i = 1; i < 50; i++) {
+                    library.addBook(CatalogFixtures.book(i));
+                }
+                assertTrue(first.availableCount() > 0 && second.availableCount() > 0);
+                assertEquals(50, first.availableCount() + second.availableCount());
+
+                Book book = library.getBookByIsbn(CatalogFixtures.isbn(0));
+                assertEquals("A \"quoted\" {title}", book.getTitle());
+                assertEquals(2, book.getCopies());
+                assertEquals(LoanStatus.OK, library.tryBorrowBook("alice & bob", CatalogFixtures.isbn(3)));
+                assertEquals(LoanStatus.NOT_BORROWED, library.tryReturnBook("carol", CatalogFixtures.isbn(3)));
+
+                List<Book> page = library.getAvailableBooks(null, 10);
+                assertEquals(10, page.size());
+                assertEquals(CatalogFixtures.isbn(0), page.get(0).getIsbn());
+                assertEquals(CatalogFixtures.isbn(4), library.getAvailableBooks(CatalogFixtures.isbn(2), 1).get(0).getIsbn());
+
+                library.returnBook("alice & bob", CatalogFixtures.isbn(3));
+                assertEquals(50, library.getAvailableBooks(null, 100).size());
+
+                // Books moved to an added shard are removed from the shard they left
+                try (LibraryServer thirdServer = new LibraryServer(third)) {
+                    thirdServer.start(0);
+                    library.addShard(new RemoteShard("localhost", thirdServer.getPort()));
+                    assertTrue(third.availableCount() > 0);
+                    assertEquals(50, first.availableCount() + second.availableCount() + third.availableCount());
+                    assertEquals(50, library.getAvailableBooks(null, 100).size());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package library.shard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.Book;
+import library.CatalogFixtures;
+import library.Library;
+import library.LoanStatus;
+import library.exception.BookAlreadyExistException;
+import library.exception.BookNotBorrowedException;
+
+
+public class ShardedLibraryTest {
+
+    /**
+     * Tests that books are spread over the shards and found, borrowed and listed through the coordinator.
+     */
+    @Test
+    public void shouldRouteAndMergeAcrossShards() throws Exception {
+        List<LocalShard> shards = Arrays.asList(new LocalShard(new Library()), new LocalShard(new Library()),
+                new LocalShard(new Library()));
+        ShardedLibrary library = new ShardedLibrary(shards);
+        for (int i = 0; i < 300; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        assertThrows(BookAlreadyExistException.class, () -> library.addBook(CatalogFixtures.book(7)));
+        for (LocalShard shard : shards) {
+            // Every shard gets a share of the catalog
+            assertTrue(shard.getLibrary().availableCount() > 50);
+        }
+
+        assertEquals(CatalogFixtures.book(42), library.getBookByIsbn(CatalogFixtures.isbn(42)));
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("alice", CatalogFixtures.isbn(42)));
+        assertEquals(LoanStatus.NOT_AVAILABLE, library.tryBorrowBook("bob", CatalogFixtures.isbn(42)));
+
+        List<String> listed = pageThrough(library, 17);
+        assertEquals(299, listed.size());
+        for (int i = 1; i < listed.size(); i++) {
+            assertTrue(listed.get(i - 1).compareTo(listed.get(i)) < 0);
+        }
+    }
+
+    /**
+     * Tests that the borrowing limit of a patron holds across shards, and that a
+     * refused borrow or a return frees the slot it took.
+     */
+    @Test
+    public void shouldLimitLoansAcrossShards() throws Exception {
+        List<LocalShard> shards = Arrays.asList(new LocalShard(new Library()), new LocalShard(new Library()),
+                new LocalShard(new Library()));
+        ShardedLibrary library = new ShardedLibrary(shards);
+        // One book per shard, and a second one on the first shard
+        List<String> isbns = new ArrayList<>();
+        boolean[] covered = new boolean[shards.size()];
+        for (int i = 0; isbns.size() < shards.size() + 1; i++) {
+            int bucket = ShardedLibrary.bucketOf(CatalogFixtures.book(i).getIsbnValue(), shards.size());
+            if (!covered[bucket] || (bucket == 0 && isbns.size() == shards.size())) {
+                covered[bucket] = true;
+                library.addBook(CatalogFixtures.book(i));
+                isbns.add(CatalogFixtures.isbn(i));
+            }
+        }
+
+        for (int i = 0; i < Library.MAX_BORROWED_BOOKS; i++) {
+            assertEquals(LoanStatus.OK, library.tryBorrowBook("alice", isbns.get(i)));
+        }
+        assertEquals(LoanStatus.LIMIT_REACHED, library.tryBorrowBook("alice", isbns.get(3)));
+        assertThrows(IllegalArgumentException.class, () -> library.borrowBook("alice", isbns.get(3)));
+        for (LocalShard shard : shards) {
+            assertEquals(1, shard.getLibrary().getBorrowedBooks("alice").size());
+        }
+
+        library.returnBook("alice", isbns.get(1));
+        // A refused borrow gives its slot back
+        assertEquals(LoanStatus.NOT_AVAILABLE, library.tryBorrowBook("alice", isbns.get(0)));
+        assertEquals(LoanStatus.NOT_FOUND, library.tryBorrowBook("alice", CatalogFixtures.isbn(9999)));
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("alice", isbns.get(3)));
+        assertEquals(LoanStatus.LIMIT_REACHED, library.tryBorrowBook("alice", isbns.get(1)));
+        assertEquals(LoanStatus.OK, library.tryBorrowBook("bob", isbns.get(1)));
+    }
+
+    /**
+     * Tests that adding a shard moves books to it, leaving books on loan in place until they are returned.
+     */
+    @Test
+    public void shouldMoveBooksToAddedShard() throws Exception {
+        ShardedLibrary library = new ShardedLibrary(Arrays.asList(new LocalShard(new Library()), new LocalShard(new Library())));
+        for (int i = 0; i < 400; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        // Borrow every tenth book, so some of those that move are on loan
+        for (int i = 0; i < 400; i += 10) {
+            library.borrowBook("patron-" + i, CatalogFixtures.isbn(i));
+        }
+
+        LocalShard added = new LocalShard(new Library());
+        library.addShard(added);
+        assertEquals(3, library.getShardCount());
+        int moved = added.getLibrary().availableCount();
+        assertTrue(moved > 50 && moved < 250, "moved " + moved);
+
+        // Loans on moved books are still honored by their old shard
+        for (int i = 0; i < 400; i += 10) {
+            assertNotNull(library.getBookByIsbn(CatalogFixtures.isbn(i)));
+            assertEquals(LoanStatus.NOT_AVAILABLE, library.tryBorrowBook("someone", CatalogFixtures.isbn(i)));
+            library.returnBook("patron-" + i, CatalogFixtures.isbn(i));
+        }
+        assertEquals(0, library.rebalance());
+        assertTrue(added.getLibrary().availableCount() > moved);
+
+        // Nothing is lost or listed twice
+        List<String> listed = pageThrough(library, 64);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            expected.add(CatalogFixtures.isbn(i));
+        }
+        assertEquals(expected, listed);
+    }
+
+    /**
+     * Tests that once a rebalance has moved every book, each shard lists only the books
+     * routed to it, and the coordinator lists the whole catalog once.
+     */
+    @Test
+    public void shouldListBooksOnOneShardAfterRebalance() throws Exception {
+        List<LocalShard> shards = new ArrayList<>(Arrays.asList(new LocalShard(new Library()), new LocalShard(new Library())));
+        ShardedLibrary library = new ShardedLibrary(shards);
+        for (int i = 0; i < 400; i++) {
+            library.addBook(CatalogFixtures.book(i));
+        }
+        for (int i = 0; i < 400; i += 10) {
+            library.borrowBook("patron-" + i, CatalogFixtures.isbn(i));
+        }
+        shards.add(new LocalShard(new Library()));
+        library.addShard(shards.get(2));
+        for (int i = 0; i < 400; i += 10) {
+            library.returnBook("patron-" + i, CatalogFixtures.isbn(i));
+        }
+        assertEquals(0, library.rebalance());
+
+        int listed = 0;
+        for (int s = 0; s < shards.size(); s++) {
+            List<Book> books = shards.get(s).getBooks(null, 1000);
+            for (Book book : books) {
+                assertEquals(s, ShardedLibrary.bucketOf(book.getIsbnValue(), shards.size()), book.getIsbn());
+            }
+            assertEquals(books.size(), shards.get(s).getLibrary().availableCount());
+            listed += books.size();
+        }
+        assertEquals(400, listed);
+        assertEquals(400, pageThrough(library, 50).size());
+        assertThrows(BookNotBorrowedException.class, () -> library.returnBook("patron-0", CatalogFixtures.isbn(0)));
+    }
+
+    private static List<String> pageThrough(ShardedLibrary library, int pageSize) {
+        List<String> listed = new ArrayList<>();
+        String cursor = null;
+        for (List<Book> page; !(page = library.getAvailableBooks(cursor, pageSize)).isEmpty(); ) {
+            for (Book book : page) {
+                listed.add(book.getIsbn());
+            }
+            cursor = page.get(page.size() - 1).getIsbn();
+        }
+        return listed;
+    }
+}
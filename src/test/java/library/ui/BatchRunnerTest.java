@@ -0,0 +1,94 @@
+package library.ui;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import library.CatalogFixtures;
+import library.Library;
+
+
+public class BatchRunnerTest {
+
+    /**
+     * Tests that every command writes its outcome in order, adds batched or not.
+     */
+    @Test
+    public void shouldReplayCommands() throws Exception {
+        String isbn = CatalogFixtures.isbn(1);
+        String commands = "# a comment\n"
+                + "add\t" + isbn + "\tBook Title\tAutör Nämé\t2021\n"
+                + "add\t" + isbn + "\tBook Title\tAutör Nämé\t2021\n"
+                + "add\t" + CatalogFixtures.isbn(2) + "\tOther Title\tAuthor\t1999\t2\r\n"
+                + "add\t9780596520688\tBad\tAuthor\t2021\n"
+                + "\n"
+                + "borrow\t" + isbn + "\talice\n"
+                + "borrow\t" + isbn + "\n"
+                + "return\t" + isbn + "\tbob\n"
+                + "list\n"
+                + "return\t" + isbn + "\talice\n"
+                + "lend\t" + isbn + "\n"
+                + "borrow\t" + CatalogFixtures.isbn(3);
+
+        Library library = new Library();
+        StringWriter out = new StringWriter();
+        BatchRunner runner = new BatchRunner(library, out);
+        runner.run(new ByteArrayInputStream(commands.getBytes(StandardCharsets.UTF_8)));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals("OK", lines[0]);
+        assertEquals("EXISTS", lines[1]);
+        assertEquals("OK", lines[2]);
+        assertEquals("ERROR\tInvalid ISBN checksum", lines[3]);
+        assertEquals("OK", lines[4]);
+        assertEquals("NOT_AVAILABLE", lines[5]);
+        assertEquals("NOT_BORROWED", lines[6]);
+        assertEquals("OK", lines[7]);
+        assertEquals(CatalogFixtures.isbn(2) + "\tOther Title\tAuthor\t1999", lines[8]);
+        assertEquals("OK", lines[9]);
+        assertEquals("ERROR\tUnknown command or wrong number of fields", lines[10]);
+        assertEquals("NOT_FOUND", lines[11]);
+        assertTrue(lines[12].startsWith("# 11 commands in "));
+        assertEquals("# 5 succeeded, 4 failed, 2 malformed", lines[13]);
+
+        assertEquals(2, library.getBookByIsbn(CatalogFixtures.isbn(2)).getCopies());
+        assertEquals("Autör Nämé", library.getBookByIsbn(isbn).getAuthor());
+        assertEquals(2, library.availableCount());
+    }
+
+    /**
+     * Tests that a log longer than the read buffer is replayed in full, including the
+     * lines that straddle a refill. Its speed is measured by BatchRunnerBenchmark.
+     */
+    @Test
+    public void shouldReplayLongLog() throws Exception {
+        int size = 20_000;
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            line.setLength(0);
+            line.append("add\t").append(CatalogFixtures.isbn(i)).append("\tTitle ").append(i)
+                    .append("\tAuthor ").append(i % 1000).append('\t').append(1900 + i % 120).append('\n');
+            log.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < size; i++) {
+            String isbn = CatalogFixtures.isbn(i);
+            log.write(("borrow\t" + isbn + "\tp" + i + "\nreturn\t" + isbn + "\tp" + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        Library library = new Library();
+        StringWriter out = new StringWriter();
+        BatchRunner runner = new BatchRunner(library, out);
+        runner.run(new ByteArrayInputStream(log.toByteArray()));
+
+        assertEquals(3L * size, runner.getCommandCount());
+        assertEquals(0, runner.getFailedCount() + runner.getMalformedCount());
+        assertEquals(size, library.availableCount());
+        assertTrue(out.toString().contains("# " + 3 * size + " succeeded, 0 failed, 0 malformed"));
+    }
+}
@@ -0,0 +1,63 @@
+package library.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+
+
+public class LongObjectHashMapTest {
+
+    /**
+     * Tests that put, get and remove behave like a regular map.
+     */
+    @Test
+    public void shouldPutGetAndRemove() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+
+        assertNull(map.put(9780596520687L, "a"));
+        assertEquals("a", map.put(9780596520687L, "b"));
+        assertEquals("b", map.putIfAbsent(9780596520687L, "c"));
+        assertEquals("b", map.get(9780596520687L));
+        assertEquals(1, map.size());
+
+        assertEquals("b", map.remove(9780596520687L));
+        assertNull(map.get(9780596520687L));
+        assertNull(map.remove(9780596520687L));
+        assertEquals(0, map.size());
+
+        // Zero is a valid key, emptiness is tracked by the value
+        map.put(0L, "zero");
+        assertEquals("zero", map.get(0L));
+
+        assertThrows(NullPointerException.class, () -> map.put(1L, null));
+    }
+
+    /**
+     * Tests that random inserts and removals, including collisions and resizes, match a HashMap.
+     */
+    @Test
+    public void shouldMatchHashMapUnderRandomOperations() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
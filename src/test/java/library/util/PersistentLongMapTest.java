@@ -0,0 +1,123 @@
+package library.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+
+public class PersistentLongMapTest {
+
+    /**
+     * Tests that random updates behave like a sorted map, including walks from any key.
+     */
+    @Test
+    public void shouldMatchSortedMap() {
+        Random random = new Random(7);
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        PersistentLongMap<Long> map = PersistentLongMap.empty();
+
+        for (int i = 0; i < 50_000; i++) {
+            // Clustered ISBN-like keys, with the occasional outlier to force deep branches
+            long key = random.nextInt(10) == 0 ? random.nextLong() >>> 1 : 9_780_000_000_000L + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, (long) i);
+                map = map.put(key, (long) i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        List<Long> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertEquals(new ArrayList<>(expected.values()), values);
+
+        long key = -1;
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            key = map.higherKey(key);
+            assertEquals(entry.getKey().longValue(), key);
+            assertEquals(entry.getValue(), map.get(key));
+        }
+        assertEquals(-1, map.higherKey(key));
+        for (int i = 0; i < 1000; i++) {
+            long probe = random.nextLong() >>> 1;
+            Long higher = expected.higherKey(probe);
+            assertEquals(higher == null ? -1 : higher, map.higherKey(probe));
+        }
+    }
+
+    /**
+     * Tests that an update leaves the earlier versions of the map untouched, whether made
+     * directly or through an editor.
+     */
+    @Test
+    public void shouldKeepEarlierVersions() {
+        PersistentLongMap<String> empty = PersistentLongMap.empty();
+        PersistentLongMap<String> first = empty.put(1L, "a").put(100L, "b");
+        PersistentLongMap<String> second = first.put(1L, "c").remove(100L);
+
+        assertEquals("a", first.get(1L));
+        assertEquals("b", first.get(100L));
+        assertEquals("c", second.get(1L));
+        assertNull(second.get(100L));
+        assertSame(second, second.remove(5L));
+
+        PersistentLongMap.Editor<String> editor = first.edit();
+        for (long i = 0; i < 1000; i++) {
+            editor.put(i, "e" + i);
+        }
+        PersistentLongMap<String> edited = editor.toMap();
+        editor.put(1L, "later");
+        editor.remove(2L);
+
+        assertEquals(2, first.size());
+        assertEquals("a", first.get(1L));
+        assertEquals(1000, edited.size());
+        assertEquals("e1", edited.get(1L));
+        assertEquals("e2", edited.get(2L));
+        assertEquals("later", editor.toMap().get(1L));
+        assertEquals(999, editor.size());
+    }
+
+    /**
+     * Tests that the spliterator splits the map into disjoint parts that cover it in key order.
+     */
+    @Test
+    public void shouldSplitValuesInKeyOrder() {
+        PersistentLongMap.Editor<Long> editor = PersistentLongMap.<Long>empty().edit();
+        List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < 10_000; i++) {
+            long key = 9_780_000_000_000L + i * 7;
+            editor.put(key, key);
+            expected.add(key);
+        }
+        PersistentLongMap<Long> map = editor.toMap();
+
+        Spliterator<Long> second = map.spliterator();
+        Spliterator<Long> first = second.trySplit();
+        assertNotNull(first);
+        List<Long> values = new ArrayList<>();
+        first.forEachRemaining(values::add);
+        int firstSize = values.size();
+        while (second.tryAdvance(values::add)) {
+        }
+        assertEquals(expected, values);
+        assertTrue(firstSize > 0 && firstSize < expected.size());
+
+        assertEquals(expected, StreamSupport.stream(map.spliterator(), true).collect(Collectors.toList()));
+        assertEquals(0, StreamSupport.stream(PersistentLongMap.empty().spliterator(), true).count());
+    }
+}